@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Clock of flip animation
+ * <p>
+ * Animation is parameterised by time of this clock, the default clock is
+ * {@link System#nanoTime()} which has the same base as vsync frame time of
+ * Choreographer. Give a virtual clock to step animation by hand, see
+ * {@link PageFlip#setAnimationClock(AnimationClock)}
+ * </p>
+ *
+ * @author eschao
+ */
+
+public interface AnimationClock {
+
+    /**
+     * Get current time
+     *
+     * @return current time in nanoseconds
+     */
+    long nanoTime();
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Cone deformation model
+ * <p>
+ * A more realistic model than cylinder, the curled part of page is wrapped
+ * around a cone whose radius is growing with the distance from flipping
+ * corner along the fold line, that makes the page corner curl more tightly
+ * than the rest. The curling angle is computed from the local radius of
+ * cone, so the arc length on curled surface equals the distance on flat
+ * page and paper isn't stretched, the surface stays developable.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public final class ConeDeformation implements DeformationModel {
+
+    // default growth of cone radius per pixel along the fold line
+    private final static float DEFAULT_SLOPE = 0.15f;
+
+    // growth of cone radius per pixel along the fold line
+    private final float mSlope;
+
+    /**
+     * Default constructor
+     */
+    public ConeDeformation() {
+        this(DEFAULT_SLOPE);
+    }
+
+    /**
+     * Constructor with growth of cone radius
+     *
+     * @param slope growth of cone radius per pixel along the fold line, it is
+     *              in [0..1], 0 means it is same with cylinder model
+     */
+    public ConeDeformation(float slope) {
+        if (slope < 0 || slope > 1) {
+            throw new IllegalArgumentException("Invalid slope value: " +
+                                               slope);
+        }
+
+        mSlope = slope;
+    }
+
+    @Override
+    public void deform(float x, float y, float tX, float r, float[] out) {
+        float cr = r + Math.abs(y) * mSlope;
+        float rad = (x - tX) / cr;
+        float sinR = (float)Math.sin(rad);
+        out[0] = tX + cr * sinR;
+        out[1] = (float)(cr * (1 - Math.cos(rad)));
+        out[2] = sinR;
+    }
+
+    @Override
+    public int meshCount(int meshCount) {
+        return meshCount;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Cylinder deformation model
+ * <p>
+ * The default model, the curled part of page is wrapped around a half
+ * cylinder, it costs a sin and a cos computation for every vertex
+ * </p>
+ *
+ * @author eschao
+ */
+
+public final class CylinderDeformation implements DeformationModel {
+
+    @Override
+    public void deform(float x, float y, float tX, float r, float[] out) {
+        float rad = (x - tX) / r;
+        float sinR = (float)Math.sin(rad);
+        out[0] = tX + r * sinR;
+        out[1] = (float)(r * (1 - Math.cos(rad)));
+        out[2] = sinR;
+    }
+
+    @Override
+    public int meshCount(int meshCount) {
+        return meshCount;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Benchmark of deformation model
+ * <p>
+ * It measures the cost of a deformation model by running only its deform
+ * loop over vertexes spread across the curled part of page, computing key
+ * points, shadows and packing vertex buffers aren't included. Run it on
+ * device to choose a model by its per-vertex cost, for example:
+ * </p>
+ * <pre>
+ *     float nanos = DeformationBenchmark.nanosPerVertex(new ConeDeformation());
+ *     if (nanos * vertexesOfFold > budgetOfFrame) {
+ *         pageFlip.setDeformationModel(new FlatFoldDeformation());
+ *     }
+ * </pre>
+ *
+ * @author eschao
+ */
+
+public final class DeformationBenchmark {
+
+    // default vertex count of one round
+    private final static int DEFAULT_VERTEXES = 1024;
+    // rounds for JIT warm-up and rounds being measured
+    private final static int WARM_UP_ROUNDS = 8;
+    private final static int ROUNDS = 16;
+    // radius of fold cylinder
+    private final static float RADIUS = 100f;
+
+    // results of deformation are accumulated into it, that keeps the loop
+    // from being eliminated by compiler
+    private static volatile float sSink;
+
+    private DeformationBenchmark() {
+    }
+
+    /**
+     * Measure cost of deformation model with default vertex count
+     *
+     * @param model deformation model
+     * @return nanoseconds of deforming a vertex
+     * @throws IllegalArgumentException if model is null
+     */
+    public static float nanosPerVertex(DeformationModel model) {
+        return nanosPerVertex(model, DEFAULT_VERTEXES);
+    }
+
+    /**
+     * Measure cost of deformation model
+     * <p>
+     * The deform loop is run several rounds to warm up, then the fastest of
+     * the measured rounds is taken to filter out interruption of scheduler
+     * and garbage collection
+     * </p>
+     *
+     * @param model deformation model
+     * @param vertexes vertex count of a round
+     * @return nanoseconds of deforming a vertex
+     * @throws IllegalArgumentException if model is null or vertex count isn't
+     *                                  greater than 0
+     */
+    public static float nanosPerVertex(DeformationModel model, int vertexes) {
+        if (model == null || vertexes < 1) {
+            throw new IllegalArgumentException("Invalid model: " + model +
+                                               " or vertex count: " +
+                                               vertexes);
+        }
+
+        final float[] out = new float[DeformationModel.OUT_SIZE];
+        for (int i = 0; i < WARM_UP_ROUNDS; ++i) {
+            deformVertexes(model, vertexes, out);
+        }
+
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            final long start = System.nanoTime();
+            deformVertexes(model, vertexes, out);
+            min = Math.min(min, System.nanoTime() - start);
+        }
+
+        // nanoTime may not be fine enough to measure a fast round
+        return Math.max(min, 1) / (float)vertexes;
+    }
+
+    /**
+     * Deform vertexes across curled part of page
+     *
+     * @param model deformation model
+     * @param vertexes vertex count
+     * @param out output array of deformation
+     */
+    private static void deformVertexes(DeformationModel model, int vertexes,
+                                       float[] out) {
+        final float step = (float)Math.PI * RADIUS / vertexes;
+        float sum = 0;
+        for (int i = 0; i < vertexes; ++i) {
+            final float x = i * step;
+            model.deform(x, x, 0, RADIUS, out);
+            sum += out[0] + out[1] + out[2];
+        }
+        sSink = sum;
+    }
+}
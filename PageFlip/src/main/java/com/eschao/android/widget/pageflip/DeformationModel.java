@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Deformation model of fold page
+ * <p>
+ * It maps a point of fold page onto the curled surface. The point is given in
+ * a coordinate system which origin point is the page corner being flipped and
+ * X axis is rotated to the direction of flipping, so the fold line is always
+ * vertical and deformation is only done along X axis. The result of mapping
+ * is written into output array:
+ * </p>
+ * <ul>
+ *     <li>out[0]: x coordinate on curled surface</li>
+ *     <li>out[1]: z coordinate on curled surface</li>
+ *     <li>out[2]: shading value in [-1..1] for back of fold page, its
+ *     absolute value will be larger when the point is closer to the fold
+ *     line</li>
+ * </ul>
+ * <p>
+ * Implementations must not hold any state during mapping since they could be
+ * called in multiple threads at the same time
+ * </p>
+ *
+ * @author eschao
+ */
+
+public interface DeformationModel {
+
+    /**
+     * Size of output array for {@link #deform(float, float, float, float,
+     * float[])}
+     */
+    int OUT_SIZE = 3;
+
+    /**
+     * Map a point onto curled surface
+     *
+     * @param x x coordinate in rotated coordinate system
+     * @param y y coordinate in rotated coordinate system
+     * @param tX x of the line where page starts curling
+     * @param r radius of fold cylinder
+     * @param out output array for x, z and shading value
+     */
+    void deform(float x, float y, float tX, float r, float[] out);
+
+    /**
+     * Get mesh count used by this model
+     * <p>A model without curvature doesn't need a dense mesh</p>
+     *
+     * @param meshCount mesh count computed upon pixels of mesh
+     * @return mesh count for this model, it must be greater than 0
+     */
+    int meshCount(int meshCount);
+}
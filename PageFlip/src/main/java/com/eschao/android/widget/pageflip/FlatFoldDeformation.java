@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Flat fold deformation model
+ * <p>
+ * The cheapest model, the page is folded flat along the middle line of curled
+ * part like folding a paper, no curvature is computed and only a few meshes
+ * are used to draw fold page
+ * </p>
+ *
+ * @author eschao
+ */
+
+public final class FlatFoldDeformation implements DeformationModel {
+
+    // mesh count of fold page, the page is flat and doesn't need more meshes
+    private final static int MESH_COUNT = 2;
+
+    // z coordinate of front and back of fold page, they must be in front of
+    // the unfold page whose z coordinate is 0
+    private final static float FRONT_Z = 0.5f;
+    private final static float BACK_Z = 1f;
+
+    // half of PI
+    private final static float HALF_PI = (float)(Math.PI / 2);
+
+    @Override
+    public void deform(float x, float y, float tX, float r, float[] out) {
+        // the fold line is where the half cylinder reaches its top
+        float len = HALF_PI * r;
+        float d = x - tX;
+        float absD = Math.abs(d);
+        if (absD <= len) {
+            out[0] = x;
+            out[1] = FRONT_Z;
+            out[2] = d / len;
+        }
+        else {
+            // mirror the back part based on fold line
+            float foldX = d > 0 ? tX + len : tX - len;
+            out[0] = foldX + foldX - x;
+            out[1] = BACK_Z;
+            out[2] = Math.max(0, 2 - absD / len);
+        }
+    }
+
+    @Override
+    public int meshCount(int meshCount) {
+        return Math.min(meshCount, MESH_COUNT);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Time based animator of touch point for flip animation
+ * <p>
+ * It replaces {@link android.widget.Scroller}: position is computed from
+ * the given frame time instead of the time when it is called, so a 90Hz or
+ * 120Hz display gets exact intermediate positions and a late frame skips
+ * ahead instead of slowing animation down. It uses the same viscous fluid
+ * interpolation as Scroller and nothing is allocated while animating.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class FlipAnimator {
+
+    // scale of viscous fluid interpolation, the same as Scroller
+    private final static float VISCOUS_FLUID_SCALE = 8.0f;
+    private final static float VISCOUS_FLUID_NORMALIZE;
+    private final static float VISCOUS_FLUID_OFFSET;
+
+    static {
+        VISCOUS_FLUID_NORMALIZE = 1.0f / viscousFluid(1.0f);
+        VISCOUS_FLUID_OFFSET = 1.0f - VISCOUS_FLUID_NORMALIZE *
+                                      viscousFluid(1.0f);
+    }
+
+    // default clock
+    final static AnimationClock SYSTEM_CLOCK = new AnimationClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private AnimationClock mClock;
+
+    // start point and distance
+    private float mStartX;
+    private float mStartY;
+    private float mDeltaX;
+    private float mDeltaY;
+
+    // start time and duration in nanoseconds
+    private long mStartNanos;
+    private long mDurationNanos;
+
+    // current point
+    private float mCurrX;
+    private float mCurrY;
+    private boolean mIsFinished;
+
+    /**
+     * Default constructor with system clock
+     */
+    FlipAnimator() {
+        mClock = SYSTEM_CLOCK;
+        mIsFinished = true;
+    }
+
+    /**
+     * Set clock
+     *
+     * @param clock clock of animation, null means the system clock
+     */
+    void setClock(AnimationClock clock) {
+        mClock = clock == null ? SYSTEM_CLOCK : clock;
+    }
+
+    /**
+     * Get current time of clock
+     *
+     * @return current time in nanoseconds
+     */
+    long now() {
+        return mClock.nanoTime();
+    }
+
+    /**
+     * Start animating from current time of clock
+     *
+     * @param startX x of start point
+     * @param startY y of start point
+     * @param dx distance in x direction
+     * @param dy distance in y direction
+     * @param duration duration in milliseconds
+     */
+    void start(float startX, float startY, float dx, float dy, int duration) {
+        mStartX = startX;
+        mStartY = startY;
+        mDeltaX = dx;
+        mDeltaY = dy;
+        mCurrX = startX;
+        mCurrY = startY;
+        mDurationNanos = duration * 1000000L;
+        mStartNanos = mClock.nanoTime();
+        mIsFinished = false;
+    }
+
+    /**
+     * Compute current point at given frame time
+     * <p>
+     * Frame time before start time is treated as start time, a frame time
+     * after the end of duration moves point to the end and finishes
+     * animation
+     * </p>
+     *
+     * @param frameTimeNanos frame time in base of clock
+     * @return true if animation isn't finished before this computing
+     */
+    boolean compute(long frameTimeNanos) {
+        if (mIsFinished) {
+            return false;
+        }
+
+        final long elapsed = frameTimeNanos - mStartNanos;
+        if (elapsed >= mDurationNanos) {
+            abort();
+            return true;
+        }
+
+        float t = 0;
+        if (elapsed > 0) {
+            t = interpolate((float)elapsed / mDurationNanos);
+        }
+        mCurrX = mStartX + t * mDeltaX;
+        mCurrY = mStartY + t * mDeltaY;
+        return true;
+    }
+
+    /**
+     * Stop animating and move point to the end
+     */
+    void abort() {
+        mCurrX = mStartX + mDeltaX;
+        mCurrY = mStartY + mDeltaY;
+        mIsFinished = true;
+    }
+
+    /**
+     * Is animation finished?
+     *
+     * @return true if animation is finished
+     */
+    boolean isFinished() {
+        return mIsFinished;
+    }
+
+    /**
+     * Get x of current point
+     *
+     * @return x of current point
+     */
+    float getCurrX() {
+        return mCurrX;
+    }
+
+    /**
+     * Get y of current point
+     *
+     * @return y of current point
+     */
+    float getCurrY() {
+        return mCurrY;
+    }
+
+    /**
+     * Interpolate elapsed ratio of duration with viscous fluid effect
+     *
+     * @param input elapsed ratio in [0 .. 1]
+     * @return interpolated ratio
+     */
+    private static float interpolate(float input) {
+        final float interpolated = VISCOUS_FLUID_NORMALIZE *
+                                   viscousFluid(input);
+        if (interpolated > 0) {
+            return interpolated + VISCOUS_FLUID_OFFSET;
+        }
+        return interpolated;
+    }
+
+    /**
+     * Viscous fluid function of Scroller
+     *
+     * @param x elapsed ratio in [0 .. 1]
+     * @return unnormalized ratio
+     */
+    private static float viscousFluid(float x) {
+        x *= VISCOUS_FLUID_SCALE;
+        if (x < 1.0f) {
+            x -= (1.0f - (float)Math.exp(-x));
+        }
+        else {
+            // 1/e == exp(-1)
+            final float start = 0.36787944117f;
+            x = 1.0f - (float)Math.exp(1.0f - x);
+            x = start + x * (1.0f - start);
+        }
+        return x;
+    }
+}
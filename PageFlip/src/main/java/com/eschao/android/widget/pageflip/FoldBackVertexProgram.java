@@ -17,7 +17,6 @@ package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
 
-import static android.opengl.GLES20.glGetUniformLocation;
 
 /**
  * FoldBack vertex shader program which is used to load:
@@ -33,18 +32,80 @@ public class FoldBackVertexProgram extends VertexProgram {
 
     final static String VAR_TEXTRUE_OFFSET = "u_texXOffset";
     final static String VAR_MASK_COLOR     = "u_maskColor";
-    final static String VAR_SHADOW_TEXTURE = "u_shadow";
+    final static String VAR_SHADOW_STOPS   = "u_shadowStops";
+    final static String VAR_SHADOW_SCALES  = "u_shadowScales";
+    final static String VAR_SHADOW_COLORS  = "u_shadowColors";
+    final static String VAR_LAYER_INDEX    = "u_layer";
+    final static String VAR_EDGE_SCALE     = "u_edgeScale";
 
-    int mShadowLoc;
+    // variant flags of program, every flag except edge antialiasing removes
+    // a feature from fragment shader to save fill rate, they are combined as
+    // index of variant
+    final static int VARIANT_FULL        = 0x00;
+    final static int VARIANT_NO_MASK     = 0x01;
+    final static int VARIANT_NO_GRADIENT = 0x02;
+    final static int VARIANT_LOWP        = 0x04;
+    final static int VARIANT_EDGE_AA     = 0x08;
+    final static int VARIANT_COUNT       = 0x10;
+
+    // macros of variant flags in shader script, in the order of flag bits
+    private final static String[] VARIANT_DEFINES = new String[] {
+        "PF_NO_MASK",
+        "PF_NO_GRADIENT",
+        "PF_LOWP",
+        "PF_EDGE_AA",
+    };
+
+    // gradient shadow stops: start positions and reciprocal lengths of
+    // segments, premultiplied colors of stops. They are constant uniforms
+    // which are set once after program is linked
+    private final static float[] SHADOW_STOPS;
+    private final static float[] SHADOW_SCALES;
+    private final static float[] SHADOW_COLORS;
+
+    static {
+        final int[] colors = PageFlipUtils.GRADIENT_SHADOW_COLORS;
+        final float[] positions = PageFlipUtils.GRADIENT_SHADOW_POSITIONS;
+        SHADOW_STOPS = new float[positions.length - 1];
+        SHADOW_SCALES = new float[positions.length - 1];
+        SHADOW_COLORS = new float[colors.length << 2];
+        for (int i = 0; i < SHADOW_STOPS.length; ++i) {
+            SHADOW_STOPS[i] = positions[i];
+            SHADOW_SCALES[i] = 1f / (positions[i + 1] - positions[i]);
+        }
+
+        for (int i = 0, j = 0; i < colors.length; ++i) {
+            final float a = ((colors[i] >>> 24) & 0xFF) / 255f;
+            SHADOW_COLORS[j++] = ((colors[i] >> 16) & 0xFF) / 255f * a;
+            SHADOW_COLORS[j++] = ((colors[i] >> 8) & 0xFF) / 255f * a;
+            SHADOW_COLORS[j++] = (colors[i] & 0xFF) / 255f * a;
+            SHADOW_COLORS[j++] = a;
+        }
+    }
+
+    int mShadowColorsLoc;
     int mMaskColorLoc;
     int mTexXOffsetLoc;
+    int mLayerIndexLoc;
+    int mEdgeScaleLoc;
 
     public FoldBackVertexProgram() {
-        super();
+        this(new GLES20Backend());
+    }
 
-        mShadowLoc = INVALID_GL_HANDLE;
+    /**
+     * Constructor with GL backend
+     *
+     * @param gl GL backend
+     */
+    public FoldBackVertexProgram(GLBackend gl) {
+        super(gl);
+
+        mShadowColorsLoc = INVALID_GL_HANDLE;
         mMaskColorLoc = INVALID_GL_HANDLE;
         mTexXOffsetLoc = INVALID_GL_HANDLE;
+        mLayerIndexLoc = INVALID_GL_HANDLE;
+        mEdgeScaleLoc = INVALID_GL_HANDLE;
     }
 
     /**
@@ -62,6 +123,31 @@ public class FoldBackVertexProgram extends VertexProgram {
         return this;
     }
 
+    /**
+     * Get macros for given variant
+     *
+     * @param variant variant flags
+     * @param defines other macros which are defined for all variants
+     * @return macros of variant followed by given macros
+     */
+    static String[] getDefines(int variant, String... defines) {
+        if (variant < 0 || variant >= VARIANT_COUNT) {
+            throw new IllegalArgumentException("Invalid variant: " + variant);
+        }
+
+        String[] result = new String[Integer.bitCount(variant) +
+                                     defines.length];
+        int n = 0;
+        for (int i = 0; i < VARIANT_DEFINES.length; ++i) {
+            if ((variant & (1 << i)) != 0) {
+                result[n++] = VARIANT_DEFINES[i];
+            }
+        }
+
+        System.arraycopy(defines, 0, result, n, defines.length);
+        return result;
+    }
+
     /**
      * Get variable handles defined in shader script
      */
@@ -69,10 +155,32 @@ public class FoldBackVertexProgram extends VertexProgram {
         super.getVarsLocation();
 
         if (mProgramRef != 0) {
-            mShadowLoc = glGetUniformLocation(mProgramRef, VAR_SHADOW_TEXTURE);
-            mMaskColorLoc = glGetUniformLocation(mProgramRef, VAR_MASK_COLOR);
-            mTexXOffsetLoc = glGetUniformLocation(mProgramRef,
-                                                  VAR_TEXTRUE_OFFSET);
+            mShadowColorsLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                        VAR_SHADOW_COLORS);
+            mMaskColorLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                     VAR_MASK_COLOR);
+            mTexXOffsetLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                      VAR_TEXTRUE_OFFSET);
+            mLayerIndexLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                      VAR_LAYER_INDEX);
+            mEdgeScaleLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                     VAR_EDGE_SCALE);
+
+            // program is in use after it is linked, set gradient shadow if
+            // program variant has it
+            if (mShadowColorsLoc > -1) {
+                mGL.glUniform3f(mGL.glGetUniformLocation(mProgramRef,
+                                                         VAR_SHADOW_STOPS),
+                                SHADOW_STOPS[0], SHADOW_STOPS[1],
+                                SHADOW_STOPS[2]);
+                mGL.glUniform3f(mGL.glGetUniformLocation(mProgramRef,
+                                                         VAR_SHADOW_SCALES),
+                                SHADOW_SCALES[0], SHADOW_SCALES[1],
+                                SHADOW_SCALES[2]);
+                mGL.glUniform4fv(mShadowColorsLoc,
+                                 PageFlipUtils.GRADIENT_SHADOW_COLORS.length,
+                                 SHADOW_COLORS, 0);
+            }
         }
     }
 
@@ -82,8 +190,10 @@ public class FoldBackVertexProgram extends VertexProgram {
     public void delete() {
         super.delete();
 
-        mShadowLoc = INVALID_GL_HANDLE;
+        mShadowColorsLoc = INVALID_GL_HANDLE;
         mMaskColorLoc = INVALID_GL_HANDLE;
         mTexXOffsetLoc = INVALID_GL_HANDLE;
+        mLayerIndexLoc = INVALID_GL_HANDLE;
+        mEdgeScaleLoc = INVALID_GL_HANDLE;
     }
 }
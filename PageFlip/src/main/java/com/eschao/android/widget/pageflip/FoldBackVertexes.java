@@ -15,16 +15,8 @@
  */
 package com.eschao.android.widget.pageflip;
 
-import android.opengl.GLES20;
-
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
 
 /**
  * Vertex buffer management for back of fold page
@@ -39,8 +31,8 @@ final class FoldBackVertexes extends Vertexes {
     // mask color is in Page class since it follows the back of first bitmap
     float mMaskAlpha;
 
-    public FoldBackVertexes() {
-        super();
+    public FoldBackVertexes(GLBackend gl) {
+        super(gl);
 
         mSizeOfPerVex = 4;
         mMaskAlpha = 0.6f;
@@ -84,29 +76,40 @@ final class FoldBackVertexes extends Vertexes {
         mMaskAlpha = alpha;
     }
 
+    /**
+     * Is mask color visible on fold back?
+     * <p>Mask is never applied in double pages mode</p>
+     *
+     * @param hasSecondPage there has second page or not
+     * @return true if mask color need to be mixed with fold back texture
+     */
+    boolean isMaskVisible(boolean hasSecondPage) {
+        return !hasSecondPage && mMaskAlpha > 0;
+    }
+
     /**
      * Draw fold back and shadow
+     * <p>Program should be in use with MVP matrix uploaded</p>
      *
      * @param program fold back vertex program
      * @param page the current operating page: First Page
      * @param hasSecondPage there has second page or not
-     * @param gradientShadowId gradient shadow id
      */
     public void draw(FoldBackVertexProgram program,
                      Page page,
-                     boolean hasSecondPage,
-                     int gradientShadowId) {
-        glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false,
-                           VertexProgram.MVPMatrix, 0);
-
-        // load fold back texture
-        glBindTexture(GL_TEXTURE_2D, page.getBackTextureID());
-        glUniform1i(program.mTextureLoc, 0);
-
-        // load gradient shadow texture
-        glActiveTexture(GLES20.GL_TEXTURE1);
-        glBindTexture(GL_TEXTURE_2D, gradientShadowId);
-        glUniform1i(program.mShadowLoc, 1);
+                     boolean hasSecondPage) {
+        // load fold back texture, it is a layer of page texture array if the
+        // array is used
+        final PageTextureArray textureArray = page.getTextureArray();
+        if (textureArray != null) {
+            textureArray.bind();
+            textureArray.setAtlasUniform(program.mAtlasLoc);
+            mGL.glUniform1f(program.mLayerIndexLoc, page.getBackTextureID());
+        }
+        else {
+            mGL.glBindTexture(GL_TEXTURE_2D, page.getBackTextureID());
+        }
+        mGL.glUniform1i(program.mTextureLoc, 0);
 
         // set x offset of texture coordinate. In single page mode, the value is
         // set 0 to draw the back texture with x coordinate inversely against
@@ -115,14 +118,16 @@ final class FoldBackVertexes extends Vertexes {
         // it is the next page content texture and should be drawn in the same
         // order with the first texture, so the value is set 1. For computing
         // details, please see the shader script.
-        glUniform1f(program.mTexXOffsetLoc, hasSecondPage ? 1.0f : 0);
-
-        // set mask color and alpha
-        glUniform4f(program.mMaskColorLoc,
-                    page.maskColor[0][0],
-                    page.maskColor[0][1],
-                    page.maskColor[0][2],
-                    hasSecondPage ? 0 : mMaskAlpha);
+        mGL.glUniform1f(program.mTexXOffsetLoc, hasSecondPage ? 1.0f : 0);
+
+        // set mask color and alpha if program variant has it
+        if (program.mMaskColorLoc > -1) {
+            mGL.glUniform4f(program.mMaskColorLoc,
+                            page.maskColor[0][0],
+                            page.maskColor[0][1],
+                            page.maskColor[0][2],
+                            hasSecondPage ? 0 : mMaskAlpha);
+        }
 
         // draw triangles
         drawWith(GL_TRIANGLE_STRIP,
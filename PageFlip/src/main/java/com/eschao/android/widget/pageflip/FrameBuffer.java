@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import static android.opengl.GLES20.GL_CLAMP_TO_EDGE;
+import static android.opengl.GLES20.GL_COLOR_ATTACHMENT0;
+import static android.opengl.GLES20.GL_DEPTH_ATTACHMENT;
+import static android.opengl.GLES20.GL_DEPTH_COMPONENT16;
+import static android.opengl.GLES20.GL_FRAMEBUFFER;
+import static android.opengl.GLES20.GL_FRAMEBUFFER_COMPLETE;
+import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_RENDERBUFFER;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_STENCIL_ATTACHMENT;
+import static android.opengl.GLES20.GL_STENCIL_INDEX8;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_WRAP_S;
+import static android.opengl.GLES20.GL_TEXTURE_WRAP_T;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+
+/**
+ * Off-screen frame buffer object with a color texture, optional depth and
+ * stencil render buffers
+ * <p>
+ * The color texture can be drawn or blitted to another frame buffer, see
+ * {@link PageFlip}. Frame buffer is created lazily in {@link #bind()} and is
+ * created again if its size is changed.
+ * </p>
+ * <p>All functions except {@link #setSize(int, int)} and
+ * {@link #invalidate()} should be called in OpenGL thread</p>
+ *
+ * @author eschao
+ */
+
+final class FrameBuffer {
+
+    private final static int INVALID_REF = 0;
+
+    // frame buffer, color texture, depth and stencil render buffer names,
+    // they are arrays for glGen*/glDelete*
+    private final int[] mFrameBufferRef;
+    private final int[] mTextureRef;
+    private final int[] mDepthRef;
+    private final int[] mStencilRef;
+
+    // has depth and stencil render buffers
+    private boolean mHasDepth;
+    private boolean mHasStencil;
+
+    // required size and size of created frame buffer
+    private int mWidth;
+    private int mHeight;
+    private int mCreatedW;
+    private int mCreatedH;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     * @param hasDepth true if frame buffer has a depth render buffer
+     */
+    FrameBuffer(GLBackend gl, boolean hasDepth) {
+        mGL = gl;
+        mHasDepth = hasDepth;
+        mFrameBufferRef = new int[] {INVALID_REF};
+        mTextureRef = new int[] {INVALID_REF};
+        mDepthRef = new int[] {INVALID_REF};
+        mStencilRef = new int[] {INVALID_REF};
+        mHasStencil = false;
+        mWidth = 0;
+        mHeight = 0;
+        mCreatedW = 0;
+        mCreatedH = 0;
+    }
+
+    /**
+     * Set size of frame buffer, it takes effect in the next {@link #bind()}
+     *
+     * @param width width in pixels
+     * @param height height in pixels
+     * @return self
+     */
+    FrameBuffer setSize(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid frame buffer size: " +
+                                               width + "x" + height);
+        }
+
+        mWidth = width;
+        mHeight = height;
+        return this;
+    }
+
+    /**
+     * Set if frame buffer has a depth render buffer, frame buffer is created
+     * again in the next {@link #bind()} if it is changed
+     *
+     * @param hasDepth true if frame buffer has a depth render buffer
+     * @return self
+     */
+    FrameBuffer setDepth(boolean hasDepth) {
+        if (mHasDepth != hasDepth) {
+            mHasDepth = hasDepth;
+            mCreatedW = 0;
+            mCreatedH = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Set if frame buffer has a stencil render buffer, frame buffer is
+     * created again in the next {@link #bind()} if it is changed
+     *
+     * @param hasStencil true if frame buffer has a stencil render buffer
+     * @return self
+     */
+    FrameBuffer setStencil(boolean hasStencil) {
+        if (mHasStencil != hasStencil) {
+            mHasStencil = hasStencil;
+            mCreatedW = 0;
+            mCreatedH = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Get width of frame buffer
+     *
+     * @return width in pixels
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get height of frame buffer
+     *
+     * @return height in pixels
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get frame buffer name
+     *
+     * @return frame buffer name, 0 if it isn't created yet
+     */
+    int getFrameBufferRef() {
+        return mFrameBufferRef[0];
+    }
+
+    /**
+     * Get color texture name
+     *
+     * @return texture name, 0 if it isn't created yet
+     */
+    int getTextureRef() {
+        return mTextureRef[0];
+    }
+
+    /**
+     * Is frame buffer created with the current size?
+     *
+     * @return true if its content can be kept from the last drawing
+     */
+    boolean isValid() {
+        return mFrameBufferRef[0] != INVALID_REF &&
+               mCreatedW == mWidth && mCreatedH == mHeight;
+    }
+
+    /**
+     * Bind frame buffer as drawing target and set viewport to its size,
+     * create it if it isn't created yet or its size is changed
+     * <p>Texture bound on active texture unit may be changed</p>
+     *
+     * @return true if frame buffer is complete and bound
+     */
+    boolean bind() {
+        if (!isValid()) {
+            delete();
+            mGL.glGenFramebuffers(1, mFrameBufferRef, 0);
+            mGL.glGenTextures(1, mTextureRef, 0);
+            mGL.glBindTexture(GL_TEXTURE_2D, mTextureRef[0]);
+            mGL.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER,
+                                GL_LINEAR);
+            mGL.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER,
+                                GL_LINEAR);
+            mGL.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S,
+                                GL_CLAMP_TO_EDGE);
+            mGL.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T,
+                                GL_CLAMP_TO_EDGE);
+            mGL.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, mWidth, mHeight, 0,
+                             GL_RGBA, GL_UNSIGNED_BYTE, null);
+            mGL.glBindFramebuffer(GL_FRAMEBUFFER, mFrameBufferRef[0]);
+            mGL.glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0,
+                                       GL_TEXTURE_2D, mTextureRef[0], 0);
+            if (mHasDepth) {
+                mGL.glGenRenderbuffers(1, mDepthRef, 0);
+                mGL.glBindRenderbuffer(GL_RENDERBUFFER, mDepthRef[0]);
+                mGL.glRenderbufferStorage(GL_RENDERBUFFER,
+                                          GL_DEPTH_COMPONENT16, mWidth,
+                                          mHeight);
+                mGL.glFramebufferRenderbuffer(GL_FRAMEBUFFER,
+                                              GL_DEPTH_ATTACHMENT,
+                                              GL_RENDERBUFFER, mDepthRef[0]);
+                mGL.glBindRenderbuffer(GL_RENDERBUFFER, INVALID_REF);
+            }
+
+            if (mHasStencil) {
+                mGL.glGenRenderbuffers(1, mStencilRef, 0);
+                mGL.glBindRenderbuffer(GL_RENDERBUFFER, mStencilRef[0]);
+                mGL.glRenderbufferStorage(GL_RENDERBUFFER, GL_STENCIL_INDEX8,
+                                          mWidth, mHeight);
+                mGL.glFramebufferRenderbuffer(GL_FRAMEBUFFER,
+                                              GL_STENCIL_ATTACHMENT,
+                                              GL_RENDERBUFFER,
+                                              mStencilRef[0]);
+                mGL.glBindRenderbuffer(GL_RENDERBUFFER, INVALID_REF);
+            }
+
+            mCreatedW = mWidth;
+            mCreatedH = mHeight;
+            if (mGL.glCheckFramebufferStatus(GL_FRAMEBUFFER) !=
+                GL_FRAMEBUFFER_COMPLETE) {
+                delete();
+                return false;
+            }
+        }
+        else {
+            mGL.glBindFramebuffer(GL_FRAMEBUFFER, mFrameBufferRef[0]);
+        }
+
+        mGL.glViewport(0, 0, mWidth, mHeight);
+        return true;
+    }
+
+    /**
+     * Delete frame buffer, color texture, depth and stencil render buffers
+     * <p>The default frame buffer is bound if this one is bound</p>
+     */
+    void delete() {
+        if (mFrameBufferRef[0] != INVALID_REF) {
+            mGL.glDeleteFramebuffers(1, mFrameBufferRef, 0);
+        }
+        if (mTextureRef[0] != INVALID_REF) {
+            mGL.glDeleteTextures(1, mTextureRef, 0);
+        }
+        if (mDepthRef[0] != INVALID_REF) {
+            mGL.glDeleteRenderbuffers(1, mDepthRef, 0);
+        }
+        if (mStencilRef[0] != INVALID_REF) {
+            mGL.glDeleteRenderbuffers(1, mStencilRef, 0);
+        }
+
+        invalidate();
+    }
+
+    /**
+     * Forget all objects without deleting them when GL context is lost
+     */
+    void invalidate() {
+        mFrameBufferRef[0] = INVALID_REF;
+        mTextureRef[0] = INVALID_REF;
+        mDepthRef[0] = INVALID_REF;
+        mStencilRef[0] = INVALID_REF;
+        mCreatedW = 0;
+        mCreatedH = 0;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * OpenGL backend which all GL calls of page flip are routed through
+ * <p>
+ * Every function has the same name and parameters with its counterpart in
+ * {@link android.opengl.GLES20}, {@link android.opengl.GLES30} or
+ * {@link android.opengl.GLUtils}. Besides the
+ * real {@link GLES20Backend}, a different implementation can be given to
+ * {@link PageFlip} to record or inspect GL commands without a device, see
+ * {@link RecordingGLBackend}
+ * </p>
+ *
+ * @author eschao
+ */
+
+public interface GLBackend {
+
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindFramebuffer(int target, int framebuffer);
+
+    void glBindRenderbuffer(int target, int renderbuffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBlendFunc(int sFactor, int dFactor);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    int glCheckFramebufferStatus(int target);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glClearDepthf(float depth);
+
+    void glClearStencil(int s);
+
+    void glCompileShader(int shader);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset);
+
+    void glDeleteShader(int shader);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glDisable(int cap);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, Buffer indices);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glEnable(int cap);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glFinish();
+
+    void glFramebufferRenderbuffer(int target, int attachment,
+                               int renderbufferTarget, int renderbuffer);
+
+    void glFramebufferTexture2D(int target, int attachment,
+                            int textureTarget, int texture, int level);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glGenRenderbuffers(int n, int[] renderbuffers, int offset);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetError();
+
+    void glGetIntegerv(int pName, int[] params, int offset);
+
+    void glGetProgramiv(int program, int pName, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glGetShaderiv(int shader, int pName, int[] params, int offset);
+
+    String glGetString(int name);
+
+    int glGetUniformLocation(int program, String name);
+
+    boolean glIsProgram(int program);
+
+    void glLinkProgram(int program);
+
+    void glRenderbufferStorage(int target, int internalFormat,
+                           int width, int height);
+
+    void glScissor(int x, int y, int width, int height);
+
+    void glShaderSource(int shader, String source);
+
+    void glStencilFunc(int func, int ref, int mask);
+
+    void glStencilMask(int mask);
+
+    void glStencilOp(int fail, int zFail, int zPass);
+
+    void glTexImage2D(int target, int level, int internalFormat, int width,
+                      int height, int border, int format, int type,
+                      Buffer pixels);
+
+    void glTexParameterf(int target, int pName, float param);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform2f(int location, float x, float y);
+
+    void glUniform3f(int location, float x, float y, float z);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose,
+                            float[] value, int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttribPointer(int index, int size, int type,
+                               boolean normalized, int stride, Buffer ptr);
+
+    void glVertexAttribPointer(int index, int size, int type,
+                               boolean normalized, int stride, int offset);
+
+    void glViewport(int x, int y, int width, int height);
+
+    /**
+     * Upload bitmap to the texture which is bound on given target
+     *
+     * @param target texture target
+     * @param level mipmap level
+     * @param bitmap bitmap to be uploaded
+     * @param border border width
+     */
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+
+    /**
+     * Upload bitmap to a region of the texture which is bound on given target
+     *
+     * @param target texture target
+     * @param level mipmap level
+     * @param xOffset x offset of region in texture
+     * @param yOffset y offset of region in texture
+     * @param bitmap bitmap to be uploaded
+     */
+    void texSubImage2D(int target, int level, int xOffset, int yOffset,
+                       Bitmap bitmap);
+
+    /**
+     * Begin a group of GL commands with a marker which names it, groups can
+     * be nested
+     * <p>Marker is for debugging and profiling tools only, it has no effect
+     * on rendering</p>
+     *
+     * @param marker name of group
+     */
+    void glPushGroupMarker(String marker);
+
+    /**
+     * End the group which is begun by the last
+     * {@link #glPushGroupMarker(String)}
+     */
+    void glPopGroupMarker();
+
+    /**
+     * Are GLES 3.0 functions available in this backend?
+     * <p>
+     * GL context must be GLES 3.0 too before calling any GLES 3.0 function
+     * below, otherwise they throw UnsupportedOperationException
+     * </p>
+     *
+     * @return true if GLES 3.0 functions are available
+     */
+    boolean hasGLES30();
+
+    void glBindBufferBase(int target, int index, int buffer);
+
+    void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                           int dstX0, int dstY0, int dstX1, int dstY1,
+                           int mask, int filter);
+
+    void glBindVertexArray(int array);
+
+    void glDeleteVertexArrays(int n, int[] arrays, int offset);
+
+    void glGenVertexArrays(int n, int[] arrays, int offset);
+
+    void glGetProgramBinary(int program, int bufSize, int[] length,
+                            int lengthOffset, int[] binaryFormat,
+                            int binaryFormatOffset, Buffer binary);
+
+    int glGetUniformBlockIndex(int program, String uniformBlockName);
+
+    void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                         int length);
+
+    void glProgramParameteri(int program, int pName, int value);
+
+    void glTexStorage2D(int target, int levels, int internalFormat, int width,
+                        int height);
+
+    void glTexStorage3D(int target, int levels, int internalFormat, int width,
+                        int height, int depth);
+
+    void glTexSubImage3D(int target, int level, int xOffset, int yOffset,
+                         int zOffset, int width, int height, int depth,
+                         int format, int type, Buffer pixels);
+
+    void glUniformBlockBinding(int program, int blockIndex, int blockBinding);
+}
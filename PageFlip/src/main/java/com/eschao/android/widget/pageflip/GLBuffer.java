@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.nio.Buffer;
+
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+
+/**
+ * GL buffer object which holds vertex data in GPU memory
+ * <p>
+ * A static buffer is uploaded once and can be drawn again and again without
+ * any upload. A streamed buffer is re-specified for every frame: its old
+ * storage is orphaned by glBufferData with null data, driver can allocate a
+ * new storage instead of waiting for GPU to finish the draws which are still
+ * reading the old one, then new data is uploaded by glBufferSubData
+ * </p>
+ * <p>
+ * Buffer object is created lazily in the first {@link #bind()} or
+ * {@link #upload(Buffer, int)}, all functions except {@link #invalidate()}
+ * should be called in OpenGL thread
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class GLBuffer {
+
+    private final static int INVALID_BUFFER = 0;
+
+    // target and usage of buffer object
+    private final int mTarget;
+    private final int mUsage;
+
+    // buffer object name, it is an array for glGenBuffers/glDeleteBuffers
+    private final int[] mBufferRef;
+
+    // bytes of allocated storage and bytes should be reserved at least
+    private int mCapacity;
+    private int mReserved;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     * @param target GL_ARRAY_BUFFER, GL_ELEMENT_ARRAY_BUFFER or
+     *               GL_UNIFORM_BUFFER
+     * @param usage GL_STATIC_DRAW, GL_DYNAMIC_DRAW or GL_STREAM_DRAW
+     */
+    GLBuffer(GLBackend gl, int target, int usage) {
+        mGL = gl;
+        mTarget = target;
+        mUsage = usage;
+        mBufferRef = new int[] {INVALID_BUFFER};
+        mCapacity = 0;
+        mReserved = 0;
+    }
+
+    /**
+     * Is buffer object created in GL?
+     *
+     * @return true if buffer object is created
+     */
+    boolean isCreated() {
+        return mBufferRef[0] != INVALID_BUFFER;
+    }
+
+    /**
+     * Get buffer object name
+     *
+     * @return buffer object name, 0 if it isn't created yet
+     */
+    int getBufferRef() {
+        return mBufferRef[0];
+    }
+
+    /**
+     * Reserve storage with given bytes at least when buffer is allocated
+     * <p>It avoids re-allocating a streamed buffer when data grows</p>
+     *
+     * @param bytes bytes to be reserved
+     */
+    void reserve(int bytes) {
+        mReserved = bytes;
+    }
+
+    /**
+     * Bind buffer object, create it if it isn't created yet
+     */
+    void bind() {
+        if (mBufferRef[0] == INVALID_BUFFER) {
+            mGL.glGenBuffers(1, mBufferRef, 0);
+            mCapacity = 0;
+        }
+
+        mGL.glBindBuffer(mTarget, mBufferRef[0]);
+    }
+
+    /**
+     * Upload data to buffer object
+     * <p>Buffer object is left bound after uploading</p>
+     *
+     * @param data data to be uploaded from its current position
+     * @param bytes bytes of data
+     */
+    void upload(Buffer data, int bytes) {
+        bind();
+
+        // static buffer is always specified with its data directly
+        if (mUsage == GL_STATIC_DRAW) {
+            mGL.glBufferData(mTarget, bytes, data, mUsage);
+            mCapacity = bytes;
+            return;
+        }
+
+        // orphan old storage and upload new data to the fresh one
+        if (bytes > mCapacity) {
+            mCapacity = Math.max(bytes, mReserved);
+        }
+        mGL.glBufferData(mTarget, mCapacity, null, mUsage);
+        if (bytes > 0) {
+            mGL.glBufferSubData(mTarget, 0, bytes, data);
+        }
+    }
+
+    /**
+     * Delete buffer object
+     */
+    void delete() {
+        if (mBufferRef[0] != INVALID_BUFFER) {
+            mGL.glDeleteBuffers(1, mBufferRef, 0);
+            invalidate();
+        }
+    }
+
+    /**
+     * Forget buffer object without deleting it
+     * <p>Call it when GL context is lost, the buffer object is released with
+     * the context and will be created again when it is used</p>
+     */
+    void invalidate() {
+        mBufferRef[0] = INVALID_BUFFER;
+        mCapacity = 0;
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import java.nio.Buffer;
+
+/**
+ * OpenGL backend which directly calls {@link GLES20} and {@link GLUtils}
+ * <p>
+ * It is the default backend of {@link PageFlip} before Android 4.3. GLES 3.0
+ * functions are not available in it, see {@link GLES30Backend}
+ * </p>
+ *
+ * @author eschao
+ */
+
+public class GLES20Backend implements GLBackend {
+
+    @Override
+    public void glActiveTexture(int texture) {
+        GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        GLES20.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        GLES20.glBindRenderbuffer(target, renderbuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        GLES20.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBlendFunc(int sFactor, int dFactor) {
+        GLES20.glBlendFunc(sFactor, dFactor);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        GLES20.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size,
+                                Buffer data) {
+        GLES20.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        return GLES20.glCheckFramebufferStatus(target);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        GLES20.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClearDepthf(float depth) {
+        GLES20.glClearDepthf(depth);
+    }
+
+    @Override
+    public void glClearStencil(int s) {
+        GLES20.glClearStencil(s);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        GLES20.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        GLES20.glDeleteFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        GLES20.glDeleteRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        GLES20.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        GLES20.glDisable(cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        GLES20.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        GLES20.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        GLES20.glEnable(cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glFinish() {
+        GLES20.glFinish();
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment,
+                                          int renderbufferTarget,
+                                          int renderbuffer) {
+        GLES20.glFramebufferRenderbuffer(target, attachment, renderbufferTarget,
+                                        renderbuffer);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment,
+                                       int textureTarget, int texture,
+                                       int level) {
+        GLES20.glFramebufferTexture2D(target, attachment, textureTarget,
+                                      texture, level);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        GLES20.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        GLES20.glGenFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        GLES20.glGenRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        GLES20.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetError() {
+        return GLES20.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int pName, int[] params, int offset) {
+        GLES20.glGetIntegerv(pName, params, offset);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pName, int[] params,
+                               int offset) {
+        GLES20.glGetProgramiv(program, pName, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return GLES20.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pName, int[] params, int offset) {
+        GLES20.glGetShaderiv(shader, pName, params, offset);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return GLES20.glGetString(name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public boolean glIsProgram(int program) {
+        return GLES20.glIsProgram(program);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalFormat,
+                                      int width, int height) {
+        GLES20.glRenderbufferStorage(target, internalFormat, width, height);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        GLES20.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        GLES20.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glStencilFunc(int func, int ref, int mask) {
+        GLES20.glStencilFunc(func, ref, mask);
+    }
+
+    @Override
+    public void glStencilMask(int mask) {
+        GLES20.glStencilMask(mask);
+    }
+
+    @Override
+    public void glStencilOp(int fail, int zFail, int zPass) {
+        GLES20.glStencilOp(fail, zFail, zPass);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat,
+                             int width, int height, int border, int format,
+                             int type, Buffer pixels) {
+        GLES20.glTexImage2D(target, level, internalFormat, width, height,
+                            border, format, type, pixels);
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pName, float param) {
+        GLES20.glTexParameterf(target, pName, param);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        GLES20.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        GLES20.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        GLES20.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        GLES20.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        GLES20.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        GLES20.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                   float[] value, int offset) {
+        GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+                                      boolean normalized, int stride,
+                                      Buffer ptr) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride,
+                                     ptr);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+                                      boolean normalized, int stride,
+                                      int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride,
+                                     offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        GLUtils.texImage2D(target, level, bitmap, border);
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xOffset, int yOffset,
+                              Bitmap bitmap) {
+        GLUtils.texSubImage2D(target, level, xOffset, yOffset, bitmap);
+    }
+
+    @Override
+    public void glPushGroupMarker(String marker) {
+        // EXT_debug_marker has no binding in Android SDK, markers are only
+        // useful with a recording backend
+    }
+
+    @Override
+    public void glPopGroupMarker() {
+    }
+
+    @Override
+    public boolean hasGLES30() {
+        return false;
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                                  int dstX0, int dstY0, int dstX1, int dstY1,
+                                  int mask, int filter) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length,
+                                   int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary) {
+        throw unsupported();
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                                int length) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pName, int value) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalFormat,
+                               int width, int height) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glTexStorage3D(int target, int levels, int internalFormat,
+                               int width, int height, int depth) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glTexSubImage3D(int target, int level, int xOffset,
+                                int yOffset, int zOffset, int width,
+                                int height, int depth, int format, int type,
+                                Buffer pixels) {
+        throw unsupported();
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int blockIndex,
+                                      int blockBinding) {
+        throw unsupported();
+    }
+
+    /**
+     * Create exception for unsupported GLES 3.0 function
+     *
+     * @return exception
+     */
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("GLES 3.0 is not available" +
+                                                 " in GLES20Backend");
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+
+/**
+ * OpenGL backend which calls {@link GLES30} for GLES 3.0 functions
+ * <p>
+ * It is the default backend of {@link PageFlip} since Android 4.3. GLES 3.0
+ * functions are only called when GL context is GLES 3.0, so it works with
+ * GLES 2.0 context too
+ * </p>
+ *
+ * @author eschao
+ */
+
+public class GLES30Backend extends GLES20Backend {
+
+    @Override
+    public boolean hasGLES30() {
+        return true;
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer) {
+        GLES30.glBindBufferBase(target, index, buffer);
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                                  int dstX0, int dstY0, int dstX1, int dstY1,
+                                  int mask, int filter) {
+        GLES30.glBlitFramebuffer(srcX0, srcY0, srcX1, srcY1, dstX0, dstY0,
+                                 dstX1, dstY1, mask, filter);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        GLES30.glBindVertexArray(array);
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        GLES30.glDeleteVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        GLES30.glGenVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length,
+                                   int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary) {
+        GLES30.glGetProgramBinary(program, bufSize, length, lengthOffset,
+                                  binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        return GLES30.glGetUniformBlockIndex(program, uniformBlockName);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                                int length) {
+        GLES30.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pName, int value) {
+        GLES30.glProgramParameteri(program, pName, value);
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalFormat,
+                               int width, int height) {
+        GLES30.glTexStorage2D(target, levels, internalFormat, width, height);
+    }
+
+    @Override
+    public void glTexStorage3D(int target, int levels, int internalFormat,
+                               int width, int height, int depth) {
+        GLES30.glTexStorage3D(target, levels, internalFormat, width, height,
+                              depth);
+    }
+
+    @Override
+    public void glTexSubImage3D(int target, int level, int xOffset,
+                                int yOffset, int zOffset, int width,
+                                int height, int depth, int format, int type,
+                                Buffer pixels) {
+        GLES30.glTexSubImage3D(target, level, xOffset, yOffset, zOffset, width,
+                               height, depth, format, type, pixels);
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int blockIndex,
+                                      int blockBinding) {
+        GLES30.glUniformBlockBinding(program, blockIndex, blockBinding);
+    }
+}
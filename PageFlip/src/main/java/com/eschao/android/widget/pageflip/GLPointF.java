@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * GLPointF includes (x,y) in OpenGL coordinate system
+ * <p>
+ * It is used instead of android.graphics.PointF to keep geometry of page
+ * flip in pure Java, so it can be computed in JVM unit tests where methods
+ * of android classes do nothing
+ * </p>
+ *
+ * @author eschao
+ */
+public final class GLPointF {
+
+    float x;
+    float y;
+
+    /**
+     * Default constructor with (0, 0)
+     */
+    GLPointF() {
+    }
+
+    /**
+     * Constructor with given values
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    GLPointF(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Set point with given values
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    public void set(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+}
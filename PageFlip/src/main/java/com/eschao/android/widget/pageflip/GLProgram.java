@@ -17,15 +17,14 @@ package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
 
+import java.util.Arrays;
+
 import static android.opengl.GLES20.GL_FRAGMENT_SHADER;
 import static android.opengl.GLES20.GL_LINK_STATUS;
 import static android.opengl.GLES20.GL_VERTEX_SHADER;
-import static android.opengl.GLES20.glAttachShader;
-import static android.opengl.GLES20.glCreateProgram;
-import static android.opengl.GLES20.glDeleteProgram;
-import static android.opengl.GLES20.glGetProgramiv;
-import static android.opengl.GLES20.glLinkProgram;
-import static android.opengl.GLES20.glUseProgram;
+import static android.opengl.GLES20.GL_TRUE;
+import static android.opengl.GLES30.GL_INVALID_INDEX;
+import static android.opengl.GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
 
 /**
  * GLSL program class is used to load, compile and link shader scripts
@@ -38,6 +37,11 @@ public class GLProgram {
     // invalid GL getShaderRef including program reference and variable location
     protected final int INVALID_GL_HANDLE = -1;
 
+    // uniform block of MVP matrix and its binding point in GLES 3.0, all
+    // programs share one uniform buffer for MVP matrix
+    final static String MVP_BLOCK = "MVPBlock";
+    final static int MVP_BLOCK_BINDING = 0;
+
     // GLSL program reference
     protected int mProgramRef;
 
@@ -47,10 +51,90 @@ public class GLProgram {
     // Fragment shader
     protected GLShader mFragment;
 
+    // GL backend
+    protected GLBackend mGL;
+
+    // the last MVP matrix uploaded to program, uniform values are kept by
+    // program object, so it is only needed to upload again when it is changed
+    private final float[] mMVPMatrix = new float[16];
+    private boolean mIsMVPMatrixUploaded;
+
+    // is program compiled for GLES 3.0
+    protected boolean mIsGLES3;
+
+    // macros defined in shader scripts
+    protected String[] mDefines;
+
+    // cache of linked program binary, null if it isn't used
+    ProgramBinaryCache mBinaryCache;
+
     public GLProgram() {
+        this(new GLES20Backend());
+    }
+
+    /**
+     * Constructor with GL backend
+     *
+     * @param gl GL backend
+     */
+    public GLProgram(GLBackend gl) {
+        mGL = gl;
         mProgramRef = INVALID_GL_HANDLE;
-        mVertex = new GLShader();
-        mFragment = new GLShader();
+        mVertex = new GLShader(gl);
+        mFragment = new GLShader(gl);
+        mIsGLES3 = false;
+        mDefines = new String[0];
+        mBinaryCache = null;
+    }
+
+    /**
+     * Set if program is compiled for GLES 3.0
+     * <p>It should be set before {@link #init(Context, int, int)}</p>
+     *
+     * @param isGLES3 true if GLES 3.0 context is used
+     * @return self
+     */
+    public GLProgram setGLES3(boolean isGLES3) {
+        mIsGLES3 = isGLES3;
+        return this;
+    }
+
+    /**
+     * Is program compiled for GLES 3.0?
+     *
+     * @return true if program is compiled for GLES 3.0
+     */
+    public boolean isGLES3() {
+        return mIsGLES3;
+    }
+
+    /**
+     * Set macros which are defined in both vertex and fragment shader scripts
+     * <p>It should be set before {@link #init(Context, int, int)}</p>
+     *
+     * @param defines macro names
+     * @return self
+     */
+    public GLProgram setDefines(String... defines) {
+        mDefines = defines.clone();
+        return this;
+    }
+
+    /**
+     * Set cache of linked program binary
+     * <p>
+     * It is only used for GLES 3.0 and should be set before
+     * {@link #init(Context, int, int)}. Program is loaded from cached binary
+     * if it exists, otherwise it is compiled from shader scripts and its
+     * binary is saved into cache
+     * </p>
+     *
+     * @param cache program binary cache, null to always compile program
+     * @return self
+     */
+    GLProgram setBinaryCache(ProgramBinaryCache cache) {
+        mBinaryCache = cache;
+        return this;
     }
 
     /**
@@ -64,10 +148,47 @@ public class GLProgram {
      */
     public GLProgram init(Context context, int vertexResId, int fragmentResId)
                                                     throws PageFlipException {
-        // 1. init shader
+        return init(GLShader.fromResources(context), vertexResId,
+                    fragmentResId);
+    }
+
+    /**
+     * Initiate with given vertex shader and fragment shader which are read
+     * from given source
+     *
+     * @param source source of shader scripts
+     * @param vertexResId vertex shader script id
+     * @param fragmentResId fragment shader script id
+     * @return self
+     * @throws PageFlipException if fail to read or compile shader scripts
+     */
+    GLProgram init(ShaderSource source, int vertexResId, int fragmentResId)
+                                                    throws PageFlipException {
+        // 1. read shader scripts and try to load program from binary cache
+        final boolean isCached = mIsGLES3 && mBinaryCache != null;
+        final String vertexCodes = mVertex.loadSource(
+                source, GL_VERTEX_SHADER, vertexResId, mIsGLES3, mDefines);
+        final String fragmentCodes = mFragment.loadSource(
+                source, GL_FRAGMENT_SHADER, fragmentResId, mIsGLES3,
+                mDefines);
+        mIsMVPMatrixUploaded = false;
+        if (isCached) {
+            mProgramRef = mGL.glCreateProgram();
+            if (mProgramRef != 0 &&
+                mBinaryCache.load(mProgramRef, vertexCodes, fragmentCodes)) {
+                return onLinked();
+            }
+
+            if (mProgramRef != 0) {
+                mGL.glDeleteProgram(mProgramRef);
+            }
+            mProgramRef = INVALID_GL_HANDLE;
+        }
+
+        // 2. compile shaders
         try {
-            mVertex.compile(context, GL_VERTEX_SHADER, vertexResId);
-            mFragment.compile(context, GL_FRAGMENT_SHADER, fragmentResId);
+            mVertex.compile(GL_VERTEX_SHADER, vertexCodes);
+            mFragment.compile(GL_FRAGMENT_SHADER, fragmentCodes);
         }
         catch (PageFlipException e) {
             mVertex.delete();
@@ -75,31 +196,58 @@ public class GLProgram {
             throw e;
         }
 
-        // 2. create texture program and link shader
-        mProgramRef = glCreateProgram();
+        // 3. create texture program and link shader
+        mProgramRef = mGL.glCreateProgram();
         if (mProgramRef == 0) {
             mVertex.delete();
             mFragment.delete();
             throw new PageFlipException("Can't create texture program");
         }
 
-        // 3. attach vertex and fragment shader
-        glAttachShader(mProgramRef, mVertex.getShaderRef());
-        glAttachShader(mProgramRef, mFragment.getShaderRef());
-        glLinkProgram(mProgramRef);
+        // 4. attach vertex and fragment shader
+        mGL.glAttachShader(mProgramRef, mVertex.getShaderRef());
+        mGL.glAttachShader(mProgramRef, mFragment.getShaderRef());
+        if (isCached) {
+            mGL.glProgramParameteri(mProgramRef,
+                                    GL_PROGRAM_BINARY_RETRIEVABLE_HINT,
+                                    GL_TRUE);
+        }
+        mGL.glLinkProgram(mProgramRef);
 
-        // 4. check shader link status
+        // 5. check shader link status
         int[] result = new int[1];
-        glGetProgramiv(mProgramRef, GL_LINK_STATUS, result, 0);
+        mGL.glGetProgramiv(mProgramRef, GL_LINK_STATUS, result, 0);
         if (result[0] == 0) {
             delete();
             throw new PageFlipException("Can't link program");
         }
 
-        // 5. get all variable handles defined in scripts
+        if (isCached) {
+            mBinaryCache.save(mProgramRef, vertexCodes, fragmentCodes);
+        }
+
+        return onLinked();
+    }
+
+    /**
+     * Prepare linked program for drawing
+     *
+     * @return self
+     */
+    private GLProgram onLinked() {
+        // bind MVP uniform block to the shared uniform buffer in GLES 3.0
+        if (mIsGLES3) {
+            int index = mGL.glGetUniformBlockIndex(mProgramRef, MVP_BLOCK);
+            if (index != GL_INVALID_INDEX) {
+                mGL.glUniformBlockBinding(mProgramRef, index,
+                                          MVP_BLOCK_BINDING);
+            }
+        }
+
+        // get all variable handles defined in scripts
         // subclass should implement getVarsLocation to be responsible for its
         // own variables in script
-        glUseProgram(mProgramRef);
+        mGL.glUseProgram(mProgramRef);
         getVarsLocation();
         return this;
     }
@@ -112,9 +260,22 @@ public class GLProgram {
         mFragment.delete();
 
         if (mProgramRef != INVALID_GL_HANDLE) {
-            glDeleteProgram(mProgramRef);
+            mGL.glDeleteProgram(mProgramRef);
             mProgramRef = INVALID_GL_HANDLE;
         }
+
+        mIsMVPMatrixUploaded = false;
+    }
+
+    /**
+     * Get key of program, programs with the same key are compiled from the
+     * same scripts and macros, they are interchangeable in a GL share group
+     *
+     * @return key of program
+     */
+    String getKey() {
+        return getClass().getName() + (mIsGLES3 ? "|GLES3|" : "|GLES2|") +
+               Arrays.toString(mDefines);
     }
 
     /**
@@ -126,6 +287,29 @@ public class GLProgram {
         return mProgramRef;
     }
 
+    /**
+     * Upload MVP matrix to program if it is different with the last uploaded
+     * one
+     * <p>
+     * Program must be in use before calling it. Nothing is uploaded if MVP
+     * matrix is in uniform block, its location is invalid in that case
+     * </p>
+     *
+     * @param location uniform location of MVP matrix
+     * @param matrix MVP matrix
+     */
+    protected void updateMVPMatrix(int location, float[] matrix) {
+        if (location == INVALID_GL_HANDLE) {
+            return;
+        }
+
+        if (!mIsMVPMatrixUploaded || !Arrays.equals(mMVPMatrix, matrix)) {
+            mGL.glUniformMatrix4fv(location, 1, false, matrix, 0);
+            System.arraycopy(matrix, 0, mMVPMatrix, 0, mMVPMatrix.length);
+            mIsMVPMatrixUploaded = true;
+        }
+    }
+
     /**
      * Subclass should implement it to get its own variable handles which are
      * defined in its shader scripts
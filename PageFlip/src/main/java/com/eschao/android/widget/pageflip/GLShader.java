@@ -23,16 +23,18 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 
 import static android.opengl.GLES20.GL_COMPILE_STATUS;
-import static android.opengl.GLES20.glCompileShader;
-import static android.opengl.GLES20.glCreateShader;
-import static android.opengl.GLES20.glDeleteShader;
-import static android.opengl.GLES20.glGetError;
-import static android.opengl.GLES20.glGetShaderInfoLog;
-import static android.opengl.GLES20.glGetShaderiv;
-import static android.opengl.GLES20.glShaderSource;
+import static android.opengl.GLES20.GL_VERTEX_SHADER;
 
 /**
  * GLSL shader class is used to load and compile shader script
+ * <p>
+ * Shader scripts are written in GLSL ES 1.0 and a prologue is prepended
+ * before compiling. For GLES 3.0, the prologue declares GLSL ES 3.0 version
+ * and maps the old keywords to new ones, so the same script can be compiled
+ * for both. Script should use FRAG_COLOR as fragment output and can check
+ * PF_GLES3 macro for GLES 3.0 only features. Other macros can be defined
+ * when compiling to select features of script
+ * </p>
  *
  * @author eschao
  */
@@ -42,13 +44,42 @@ public class GLShader {
     private final static String TAG = "GLShader";
     private final int INVALID_GL_HANDLE = -1;
 
+    // shader prologues for GLES 2.0 and 3.0
+    private final static String GLES2_PROLOGUE =
+            "#define FRAG_COLOR gl_FragColor\n";
+    private final static String GLES3_VERTEX_PROLOGUE =
+            "#version 300 es\n" +
+            "#define PF_GLES3\n" +
+            "#define attribute in\n" +
+            "#define varying out\n";
+    private final static String GLES3_FRAGMENT_PROLOGUE =
+            "#version 300 es\n" +
+            "#define PF_GLES3\n" +
+            "#define varying in\n" +
+            "#define texture2D texture\n" +
+            "#define FRAG_COLOR fragColor\n" +
+            "out mediump vec4 fragColor;\n";
+
     // shader object reference
     int mShaderRef;
 
+    // GL backend
+    private GLBackend mGL;
+
     /**
      * Default constructor
      */
     public GLShader() {
+        this(new GLES20Backend());
+    }
+
+    /**
+     * Constructor with GL backend
+     *
+     * @param gl GL backend
+     */
+    public GLShader(GLBackend gl) {
+        mGL = gl;
         mShaderRef = INVALID_GL_HANDLE;
     }
 
@@ -63,38 +94,128 @@ public class GLShader {
      */
     public GLShader compile(Context context, int type, int resId)
                                                     throws PageFlipException {
-        // read shader scripts from resource
-        String codes = readGLSLFromResource(context, resId);
+        return compile(context, type, resId, false);
+    }
+
+    /**
+     * Read shader script from resources and compile it for GLES 2.0 or 3.0
+     *
+     * @param context android context
+     * @param type  GL_VERTEX_SHADER or GL_FRAGMENT_SHADER
+     * @param resId script resource id
+     * @param isGLES3 true if compile script for GLES 3.0
+     * @param defines macros defined after prologue to select features of
+     *                script
+     * @return self
+     * @throws PageFlipException if fail to compile shader script
+     */
+    public GLShader compile(Context context, int type, int resId,
+                            boolean isGLES3, String... defines)
+                                                    throws PageFlipException {
+        return compile(type, loadSource(context, type, resId, isGLES3,
+                                        defines));
+    }
+
+    /**
+     * Read shader script from resources and prepend prologue and macros for
+     * GLES 2.0 or 3.0
+     *
+     * @param context android context
+     * @param type  GL_VERTEX_SHADER or GL_FRAGMENT_SHADER
+     * @param resId script resource id
+     * @param isGLES3 true if script is for GLES 3.0
+     * @param defines macros defined after prologue to select features of
+     *                script
+     * @return final shader source which can be compiled
+     * @throws PageFlipException if fail to read script from resources
+     */
+    String loadSource(Context context, int type, int resId, boolean isGLES3,
+                      String... defines) throws PageFlipException {
+        return loadSource(fromResources(context), type, resId, isGLES3,
+                          defines);
+    }
+
+    /**
+     * Read shader script from given source and prepend prologue and macros
+     * for GLES 2.0 or 3.0
+     *
+     * @param source source of shader scripts
+     * @param type  GL_VERTEX_SHADER or GL_FRAGMENT_SHADER
+     * @param resId script resource id
+     * @param isGLES3 true if script is for GLES 3.0
+     * @param defines macros defined after prologue to select features of
+     *                script
+     * @return final shader source which can be compiled
+     * @throws PageFlipException if fail to read script from source
+     */
+    String loadSource(ShaderSource source, int type, int resId,
+                      boolean isGLES3, String... defines)
+                                                    throws PageFlipException {
+        // read shader scripts from source
+        String codes = source.read(resId);
         if (codes.length() < 1) {
             throw new PageFlipException("Empty GLSL shader for resource id:"
                                         + resId);
         }
 
+        if (!isGLES3) {
+            codes = GLES2_PROLOGUE + codes;
+        }
+        else if (type == GL_VERTEX_SHADER) {
+            codes = GLES3_VERTEX_PROLOGUE + codes;
+        }
+        else {
+            codes = GLES3_FRAGMENT_PROLOGUE + codes;
+        }
+
+        if (defines.length > 0) {
+            StringBuilder s = new StringBuilder();
+            for (String define : defines) {
+                s.append("#define ").append(define).append("\n");
+            }
+
+            // insert defines after prologue, #version must be the first line
+            final int i = isGLES3 ? codes.indexOf('\n') + 1 : 0;
+            codes = codes.substring(0, i) + s + codes.substring(i);
+        }
+
+        return codes;
+    }
+
+    /**
+     * Compile given shader source
+     *
+     * @param type  GL_VERTEX_SHADER or GL_FRAGMENT_SHADER
+     * @param codes shader source
+     * @return self
+     * @throws PageFlipException if fail to compile shader source
+     */
+    GLShader compile(int type, String codes) throws PageFlipException {
         // create a shader
-        mShaderRef = glCreateShader(type);
+        mShaderRef = mGL.glCreateShader(type);
         if (mShaderRef != INVALID_GL_HANDLE) {
             // upload shader scripts to GL
-            glShaderSource(mShaderRef, codes);
+            mGL.glShaderSource(mShaderRef, codes);
 
             // compile shader scripts
-            glCompileShader(mShaderRef);
+            mGL.glCompileShader(mShaderRef);
 
             // get compile results to check if it is successful
             final int[] result = new int[1];
-            glGetShaderiv(mShaderRef, GL_COMPILE_STATUS, result, 0);
+            mGL.glGetShaderiv(mShaderRef, GL_COMPILE_STATUS, result, 0);
             if (result[0] == 0) {
                 // delete shader if compile is failed
                 Log.e(TAG, "Can'top compile shader for type: " + type +
-                           "Error: " + glGetError());
+                           "Error: " + mGL.glGetError());
                 Log.e(TAG, "Compile shader error: " +
-                           glGetShaderInfoLog(mShaderRef));
-                glDeleteShader(mShaderRef);
+                           mGL.glGetShaderInfoLog(mShaderRef));
+                mGL.glDeleteShader(mShaderRef);
                 throw new PageFlipException("Can't compile shader for" +
                                             "type: " + type);
             }
         } else {
             throw new PageFlipException("Can't create shader. Error: " +
-                                        glGetError());
+                                        mGL.glGetError());
         }
 
         return this;
@@ -105,7 +226,7 @@ public class GLShader {
      */
     public void delete() {
         if (mShaderRef != INVALID_GL_HANDLE) {
-            glDeleteShader(mShaderRef);
+            mGL.glDeleteShader(mShaderRef);
             mShaderRef = INVALID_GL_HANDLE;
         }
     }
@@ -119,6 +240,21 @@ public class GLShader {
         return mShaderRef;
     }
 
+    /**
+     * Get source of shader scripts which reads scripts from raw resources
+     *
+     * @param context android context
+     * @return source of shader scripts
+     */
+    static ShaderSource fromResources(final Context context) {
+        return new ShaderSource() {
+            @Override
+            public String read(int resId) throws PageFlipException {
+                return readGLSLFromResource(context, resId);
+            }
+        };
+    }
+
     /**
      * Read shader script from resources
      *
@@ -127,7 +263,7 @@ public class GLShader {
      * @return shader script contents
      * @throws PageFlipException if fail to read script from resources
      */
-    String readGLSLFromResource(Context context, int resId) throws
+    static String readGLSLFromResource(Context context, int resId) throws
                                                             PageFlipException {
         StringBuilder s = new StringBuilder();
         BufferedReader reader = null;
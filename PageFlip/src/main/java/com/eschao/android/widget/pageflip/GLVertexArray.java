@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * GLES 3.0 vertex array object of a mesh
+ * <p>
+ * Vertex attribute pointers of a mesh are recorded in vertex array object at
+ * the first drawing, the following drawings only bind it instead of
+ * specifying every attribute again. Attribute pointers must not be changed
+ * between drawings, for example: mesh should be always at the same offset of
+ * buffer object. The recorded attributes are keyed by their locations in
+ * shader program, they are recorded again if locations are changed.
+ * </p>
+ * <p>All functions except {@link #invalidate()} should be called in OpenGL
+ * thread</p>
+ *
+ * @author eschao
+ */
+
+final class GLVertexArray {
+
+    private final static int INVALID_ARRAY = 0;
+    private final static long INVALID_KEY = Long.MIN_VALUE;
+    private final static long KEY_MASK = 0x1FFFFFL;
+
+    // vertex array object name, it is an array for glGenVertexArrays
+    private final int[] mArrayRef;
+
+    // key of recorded attribute locations
+    private long mKey;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     */
+    GLVertexArray(GLBackend gl) {
+        mGL = gl;
+        mArrayRef = new int[] {INVALID_ARRAY};
+        mKey = INVALID_KEY;
+    }
+
+    /**
+     * Bind vertex array object, create it if it isn't created yet
+     *
+     * @param hVertexPos vertex position var in shader program
+     * @param hTextureCoord texture var in shader program, -1 if no texture
+     * @return true if vertex attributes need to be specified and recorded
+     */
+    boolean bind(int hVertexPos, int hTextureCoord) {
+        return bind(hVertexPos, hTextureCoord, -1);
+    }
+
+    /**
+     * Bind vertex array object, create it if it isn't created yet
+     *
+     * @param hVertexPos vertex position var in shader program
+     * @param hTextureCoord texture var in shader program, -1 if no texture
+     * @param hLayer layer index var in shader program, -1 if no layer
+     * @return true if vertex attributes need to be specified and recorded
+     */
+    boolean bind(int hVertexPos, int hTextureCoord, int hLayer) {
+        if (mArrayRef[0] == INVALID_ARRAY) {
+            mGL.glGenVertexArrays(1, mArrayRef, 0);
+            mKey = INVALID_KEY;
+        }
+
+        mGL.glBindVertexArray(mArrayRef[0]);
+        // locations are less than GL_MAX_VERTEX_ATTRIBS, 21 bits is enough
+        // for every one of them, -1 is packed as 0x1FFFFF
+        final long key = ((hVertexPos & KEY_MASK) << 42) |
+                         ((hTextureCoord & KEY_MASK) << 21) |
+                         (hLayer & KEY_MASK);
+        if (key != mKey) {
+            mKey = key;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Bind default vertex array object
+     *
+     * @param gl GL backend
+     */
+    static void unbind(GLBackend gl) {
+        gl.glBindVertexArray(INVALID_ARRAY);
+    }
+
+    /**
+     * Delete vertex array object
+     */
+    void delete() {
+        if (mArrayRef[0] != INVALID_ARRAY) {
+            mGL.glDeleteVertexArrays(1, mArrayRef, 0);
+            invalidate();
+        }
+    }
+
+    /**
+     * Forget vertex array object without deleting it when GL context is lost
+     */
+    void invalidate() {
+        mArrayRef[0] = INVALID_ARRAY;
+        mKey = INVALID_KEY;
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static android.opengl.GLES20.GL_ALWAYS;
+import static android.opengl.GLES20.GL_DECR;
+import static android.opengl.GLES20.GL_DECR_WRAP;
+import static android.opengl.GLES20.GL_EQUAL;
+import static android.opengl.GLES20.GL_GEQUAL;
+import static android.opengl.GLES20.GL_GREATER;
+import static android.opengl.GLES20.GL_INCR;
+import static android.opengl.GLES20.GL_INCR_WRAP;
+import static android.opengl.GLES20.GL_INVERT;
+import static android.opengl.GLES20.GL_KEEP;
+import static android.opengl.GLES20.GL_LEQUAL;
+import static android.opengl.GLES20.GL_LESS;
+import static android.opengl.GLES20.GL_NEVER;
+import static android.opengl.GLES20.GL_NOTEQUAL;
+import static android.opengl.GLES20.GL_REPLACE;
+import static android.opengl.GLES20.GL_STENCIL_BUFFER_BIT;
+import static android.opengl.GLES20.GL_ZERO;
+
+/**
+ * Software rasterizer which counts pixels shaded by triangles
+ * <p>
+ * Triangles are given in window coordinate and sampled at pixel centers,
+ * every pixel which passes the clip rectangle and the stencil test is
+ * counted as shaded for the current layer. An 8-bit stencil buffer is
+ * simulated for every frame buffer, depth test is not simulated, so the
+ * count is exact for drawings without depth test and is an upper bound for
+ * drawings with it. Frame buffers grow to cover the clip rectangles which
+ * are drawn in them.
+ * </p>
+ * <p>It is used by {@link RecordingGLBackend} to measure overdraw</p>
+ *
+ * @author eschao
+ */
+
+final class OverdrawCounter {
+
+    private final static int STENCIL_MAX = 0xFF;
+
+    /**
+     * Shade counts and stencil values of a frame buffer, they are stored
+     * row by row from the bottom-left pixel
+     */
+    private final static class Surface {
+        int width;
+        int height;
+        int[] counts;
+        int[] stencil;
+
+        /**
+         * Grow surface to cover given size, counts and stencil values of the
+         * old area are kept and the new area is zero
+         *
+         * @param w width
+         * @param h height
+         */
+        void ensureSize(int w, int h) {
+            if (w <= width && h <= height) {
+                return;
+            }
+
+            final int newWidth = Math.max(w, width);
+            final int newHeight = Math.max(h, height);
+            counts = grow(counts, newWidth, newHeight);
+            stencil = grow(stencil, newWidth, newHeight);
+            width = newWidth;
+            height = newHeight;
+        }
+
+        /**
+         * Copy rows of buffer to a new buffer with given size
+         *
+         * @param old old buffer with current size, can be null
+         * @param newWidth new width
+         * @param newHeight new height
+         * @return new buffer
+         */
+        private int[] grow(int[] old, int newWidth, int newHeight) {
+            final int[] buffer = new int[newWidth * newHeight];
+            if (old != null) {
+                for (int y = 0; y < height; ++y) {
+                    System.arraycopy(old, y * width, buffer, y * newWidth,
+                                     width);
+                }
+            }
+            return buffer;
+        }
+    }
+
+    // shaded pixels of every layer in the order of first drawing
+    private final Map<String, long[]> mLayers;
+    // surfaces of frame buffers keyed by frame buffer name
+    private final Map<Integer, Surface> mSurfaces;
+
+    // stencil states
+    private int mStencilFunc;
+    private int mStencilRef;
+    private int mStencilValueMask;
+    private int mStencilWriteMask;
+    private int mStencilFail;
+    private int mStencilPass;
+    private int mClearStencil;
+
+    /**
+     * Constructor
+     */
+    OverdrawCounter() {
+        mLayers = new LinkedHashMap<>();
+        mSurfaces = new HashMap<>();
+        mStencilFunc = GL_ALWAYS;
+        mStencilRef = 0;
+        mStencilValueMask = STENCIL_MAX;
+        mStencilWriteMask = STENCIL_MAX;
+        mStencilFail = GL_KEEP;
+        mStencilPass = GL_KEEP;
+        mClearStencil = 0;
+    }
+
+    /**
+     * Reset counts of layers and pixels, stencil values are kept
+     */
+    void reset() {
+        mLayers.clear();
+        for (Surface s : mSurfaces.values()) {
+            if (s.counts != null) {
+                Arrays.fill(s.counts, 0);
+            }
+        }
+    }
+
+    /**
+     * Set stencil function
+     *
+     * @param func compare function
+     * @param ref reference value
+     * @param mask mask of compared bits
+     */
+    void setStencilFunc(int func, int ref, int mask) {
+        mStencilFunc = func;
+        mStencilRef = ref & STENCIL_MAX;
+        mStencilValueMask = mask & STENCIL_MAX;
+    }
+
+    /**
+     * Set stencil operations
+     * <p>Depth test isn't simulated, depth-pass operation is always used
+     * for the pixels which pass stencil test</p>
+     *
+     * @param sFail operation when stencil test fails
+     * @param dpFail operation when depth test fails, it is ignored
+     * @param dpPass operation when stencil test passes
+     */
+    void setStencilOp(int sFail, int dpFail, int dpPass) {
+        mStencilFail = sFail;
+        mStencilPass = dpPass;
+    }
+
+    /**
+     * Set stencil write mask
+     *
+     * @param mask mask of written bits
+     */
+    void setStencilMask(int mask) {
+        mStencilWriteMask = mask & STENCIL_MAX;
+    }
+
+    /**
+     * Set stencil clear value
+     *
+     * @param s clear value
+     */
+    void setClearStencil(int s) {
+        mClearStencil = s & STENCIL_MAX;
+    }
+
+    /**
+     * Clear stencil buffer of frame buffer if it is in given mask
+     *
+     * @param frameBuffer frame buffer name
+     * @param mask buffer bits of glClear
+     * @param clip clip rectangle: x, y, width and height
+     */
+    void clear(int frameBuffer, int mask, int[] clip) {
+        if ((mask & GL_STENCIL_BUFFER_BIT) == 0 || clip[2] < 1 ||
+            clip[3] < 1) {
+            return;
+        }
+
+        final Surface s = surfaceOf(frameBuffer, clip);
+        for (int y = clip[1], yEnd = clip[1] + clip[3]; y < yEnd; ++y) {
+            for (int x = clip[0], xEnd = clip[0] + clip[2]; x < xEnd; ++x) {
+                final int i = y * s.width + x;
+                s.stencil[i] = (s.stencil[i] & ~mStencilWriteMask) |
+                               (mClearStencil & mStencilWriteMask);
+            }
+        }
+    }
+
+    /**
+     * Rasterize a triangle and count its shaded pixels
+     *
+     * @param frameBuffer frame buffer name
+     * @param layer layer name
+     * @param xy window coordinates of three vertexes: x0, y0, x1, y1, x2, y2
+     * @param clip clip rectangle: x, y, width and height
+     * @param isStencilTest true if stencil test is enabled
+     */
+    void drawTriangle(int frameBuffer, String layer, float[] xy, int[] clip,
+                      boolean isStencilTest) {
+        for (float v : xy) {
+            if (Float.isNaN(v) || Float.isInfinite(v)) {
+                return;
+            }
+        }
+
+        double x0 = xy[0], y0 = xy[1];
+        double x1 = xy[2], y1 = xy[3];
+        double x2 = xy[4], y2 = xy[5];
+        double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0 || clip[2] < 1 || clip[3] < 1) {
+            return;
+        }
+
+        // make vertexes counter-clockwise
+        if (area < 0) {
+            double t = x1;
+            x1 = x2;
+            x2 = t;
+            t = y1;
+            y1 = y2;
+            y2 = t;
+        }
+
+        final int left = Math.max(clip[0], (int)Math.floor(
+                Math.min(x0, Math.min(x1, x2))));
+        final int right = Math.min(clip[0] + clip[2], (int)Math.ceil(
+                Math.max(x0, Math.max(x1, x2))));
+        final int bottom = Math.max(clip[1], (int)Math.floor(
+                Math.min(y0, Math.min(y1, y2))));
+        final int top = Math.min(clip[1] + clip[3], (int)Math.ceil(
+                Math.max(y0, Math.max(y1, y2))));
+        if (left >= right || bottom >= top) {
+            return;
+        }
+
+        long[] count = mLayers.get(layer);
+        if (count == null) {
+            count = new long[1];
+            mLayers.put(layer, count);
+        }
+
+        final Surface s = surfaceOf(frameBuffer, clip);
+        for (int y = bottom; y < top; ++y) {
+            final double py = y + 0.5;
+            for (int x = left; x < right; ++x) {
+                final double px = x + 0.5;
+                if (!isInside(x0, y0, x1, y1, px, py) ||
+                    !isInside(x1, y1, x2, y2, px, py) ||
+                    !isInside(x2, y2, x0, y0, px, py)) {
+                    continue;
+                }
+
+                final int i = y * s.width + x;
+                if (isStencilTest) {
+                    final boolean isPassed = testStencil(s.stencil[i]);
+                    s.stencil[i] = updateStencil(s.stencil[i],
+                                                 isPassed ? mStencilPass :
+                                                            mStencilFail);
+                    if (!isPassed) {
+                        continue;
+                    }
+                }
+
+                s.counts[i]++;
+                count[0]++;
+            }
+        }
+    }
+
+    /**
+     * Get shaded pixels of every layer
+     *
+     * @return unmodifiable map of layer name and shaded pixels, in the order
+     * of first drawing
+     */
+    Map<String, Long> getShadedPixelsOfLayers() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> e : mLayers.entrySet()) {
+            result.put(e.getKey(), e.getValue()[0]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Get shaded pixels of all layers
+     *
+     * @return shaded pixels
+     */
+    long getShadedPixels() {
+        long total = 0;
+        for (long[] count : mLayers.values()) {
+            total += count[0];
+        }
+        return total;
+    }
+
+    /**
+     * Get pixels which are shaded at least once
+     *
+     * @return covered pixels of all frame buffers
+     */
+    long getCoveredPixels() {
+        long total = 0;
+        for (Surface s : mSurfaces.values()) {
+            if (s.counts != null) {
+                for (int c : s.counts) {
+                    if (c > 0) {
+                        total++;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get surface of frame buffer which covers given clip rectangle
+     *
+     * @param frameBuffer frame buffer name
+     * @param clip clip rectangle
+     * @return surface
+     */
+    private Surface surfaceOf(int frameBuffer, int[] clip) {
+        Surface s = mSurfaces.get(frameBuffer);
+        if (s == null) {
+            s = new Surface();
+            mSurfaces.put(frameBuffer, s);
+        }
+
+        s.ensureSize(clip[0] + clip[2], clip[1] + clip[3]);
+        return s;
+    }
+
+    /**
+     * Is point on the inner side of counter-clockwise edge?
+     * <p>
+     * Pixel center on the edge belongs to the triangle only if the edge is
+     * a left or bottom edge, so a pixel is never shaded twice by triangles
+     * which share an edge
+     * </p>
+     *
+     * @param ax x of edge start
+     * @param ay y of edge start
+     * @param bx x of edge end
+     * @param by y of edge end
+     * @param px x of point
+     * @param py y of point
+     * @return true if point is inside
+     */
+    private static boolean isInside(double ax, double ay, double bx,
+                                    double by, double px, double py) {
+        final double w = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        if (w != 0) {
+            return w > 0;
+        }
+
+        return by < ay || (by == ay && bx > ax);
+    }
+
+    /**
+     * Test stencil value with current stencil function
+     *
+     * @param value stencil value in buffer
+     * @return true if stencil test passes
+     */
+    private boolean testStencil(int value) {
+        final int ref = mStencilRef & mStencilValueMask;
+        final int v = value & mStencilValueMask;
+        switch (mStencilFunc) {
+            case GL_NEVER:
+                return false;
+            case GL_LESS:
+                return ref < v;
+            case GL_LEQUAL:
+                return ref <= v;
+            case GL_GREATER:
+                return ref > v;
+            case GL_GEQUAL:
+                return ref >= v;
+            case GL_EQUAL:
+                return ref == v;
+            case GL_NOTEQUAL:
+                return ref != v;
+            case GL_ALWAYS:
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Update stencil value by operation
+     *
+     * @param value stencil value in buffer
+     * @param op stencil operation
+     * @return new stencil value
+     */
+    private int updateStencil(int value, int op) {
+        int v;
+        switch (op) {
+            case GL_ZERO:
+                v = 0;
+                break;
+            case GL_REPLACE:
+                v = mStencilRef;
+                break;
+            case GL_INCR:
+                v = Math.min(STENCIL_MAX, value + 1);
+                break;
+            case GL_DECR:
+                v = Math.max(0, value - 1);
+                break;
+            case GL_INVERT:
+                v = ~value;
+                break;
+            case GL_INCR_WRAP:
+                v = value + 1;
+                break;
+            case GL_DECR_WRAP:
+                v = value - 1;
+                break;
+            case GL_KEEP:
+            default:
+                return value;
+        }
+
+        return ((value & ~mStencilWriteMask) | (v & mStencilWriteMask)) &
+               STENCIL_MAX;
+    }
+}
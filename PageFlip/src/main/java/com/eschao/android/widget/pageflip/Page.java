@@ -17,31 +17,22 @@ package com.eschao.android.widget.pageflip;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.graphics.PointF;
-import android.opengl.GLUtils;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
 import static android.opengl.GLES20.GL_FLOAT;
 import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
 import static android.opengl.GLES20.GL_TEXTURE0;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
 import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
 import static android.opengl.GLES20.GL_TRIANGLE_FAN;
 import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glDeleteTextures;
-import static android.opengl.GLES20.glDrawArrays;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
-import static android.opengl.GLES20.glGenTextures;
-import static android.opengl.GLES20.glTexParameterf;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniformMatrix4fv;
-import static android.opengl.GLES20.glVertexAttribPointer;
+import static android.opengl.GLES30.GL_RGBA8;
 
 /**
  * Page class
@@ -86,6 +77,12 @@ public class Page {
     private final static int BACK_TEXTURE_ID = 2;
     private final static int INVALID_TEXTURE_ID = -1;
 
+    // float size of full page buffer and offset of texture coordinates and
+    // layer indexes in it
+    private final static int FULL_PAGE_BUF_SIZE = 24;
+    private final static int FULL_PAGE_TEX_COORDS_OFFSET = 12;
+    private final static int FULL_PAGE_LAYERS_OFFSET = 20;
+
     /**
      * <p>
      * 4 apexes of page has different permutation order according to original
@@ -192,9 +189,18 @@ public class Page {
     private GLPoint mXFoldP;
     private GLPoint mYFoldP;
 
-    // vertexes and texture coordinates buffer for full page
-    private FloatBuffer mFullPageVexBuf;
-    private FloatBuffer mFullPageTexCoordsBuf;
+    // vertexes and texture coordinates buffer for full page, 4 vertexes are
+    // followed by 4 texture coordinates and 4 layer indexes, the static buffer
+    // object is uploaded once and then full page is redrawn without any
+    // vertex upload
+    private FloatBuffer mFullPageBuf;
+    private GLBuffer mFullPageVBO;
+    private boolean mIsFullPageVBODirty;
+    private GLVertexArray mFullPageVAO;
+
+    // is GLES 3.0 context used, it enables vertex array object and immutable
+    // texture storage
+    private boolean mIsGLES3;
 
     // storing 4 apexes data of page
     private float[] mApexes;
@@ -202,30 +208,51 @@ public class Page {
     private float[] mApexTexCoords;
     // vertex size of front of fold page and unfold page
     private int mFrontVertexSize;
+    // is unfold page cached in a stationary layer, it isn't built in front
+    // vertexes when page is flipping
+    private boolean mIsUnfoldPartCached;
+    // is page drawn in painter's order without depth test
+    private boolean mIsPainterOrder;
     // index of apex order array for current original point
     private int mApexOrderIndex;
 
     // mask color of back texture
     float[][] maskColor;
 
-    // texture(front, back and second) ids allocated by OpenGL
+    // texture(front, back and second) ids allocated by OpenGL, they are layer
+    // indexes if page texture array is used
     private int[] mTexIDs;
     // unused texture ids, will be deleted when next OpenGL drawing
     private int[] mUnusedTexIDs;
     // actual size of mUnusedTexIDs
     private int mUnusedTexSize;
 
+    // page texture array shared by all pages, null if every texture is a
+    // separate GL texture
+    private PageTextureArray mTextureArray;
+
+    // GL backend
+    private GLBackend mGL;
+
     /**
      * Constructor
      */
     public Page() {
-        init(0, 0, 0, 0);
+        this(0, 0, 0, 0);
     }
 
     /**
      * Constructor with page size
      */
     public Page(float l, float r, float t, float b) {
+        this(l, r, t, b, new GLES20Backend());
+    }
+
+    /**
+     * Constructor with page size and GL backend
+     */
+    public Page(float l, float r, float t, float b, GLBackend gl) {
+        mGL = gl;
         init(l, r, t, b);
     }
 
@@ -239,6 +266,8 @@ public class Page {
         texWidth = width;
         texHeight = height;
         mFrontVertexSize = 0;
+        mIsUnfoldPartCached = false;
+        mIsPainterOrder = false;
         mApexOrderIndex = 0;
 
         mXFoldP = new GLPoint();
@@ -257,6 +286,7 @@ public class Page {
         mUnusedTexIDs = new int[] {INVALID_TEXTURE_ID,
                                    INVALID_TEXTURE_ID,
                                    INVALID_TEXTURE_ID};
+        mTextureArray = null;
 
         createVertexesBuffer();
         buildVertexesOfFullPage();
@@ -333,11 +363,29 @@ public class Page {
      */
     public void deleteUnusedTextures() {
         if (mUnusedTexSize > 0) {
-            glDeleteTextures(mUnusedTexSize, mUnusedTexIDs, 0);
+            mGL.glDeleteTextures(mUnusedTexSize, mUnusedTexIDs, 0);
             mUnusedTexSize = 0;
         }
     }
 
+    /**
+     * Recycle texture id, it will be deleted when next OpenGL drawing
+     * <p>
+     * Layer of page texture array is freed at once since no GL call is needed
+     * and the free layer can be reused by the next texture
+     * </p>
+     *
+     * @param textureID texture id or layer index
+     */
+    private void recycleTexture(int textureID) {
+        if (mTextureArray != null) {
+            mTextureArray.free(textureID);
+        }
+        else {
+            mUnusedTexIDs[mUnusedTexSize++] = textureID;
+        }
+    }
+
     /**
      * Recycle the first texture id and set it with the second texture
      * <p>Manually call this function to set the first texture with the second
@@ -347,7 +395,7 @@ public class Page {
      */
     public Page setFirstTextureWithSecond() {
         if (mTexIDs[FIRST_TEXTURE_ID] > INVALID_TEXTURE_ID) {
-            mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[FIRST_TEXTURE_ID];
+            recycleTexture(mTexIDs[FIRST_TEXTURE_ID]);
         }
 
         maskColor[FIRST_TEXTURE_ID][0] = maskColor[SECOND_TEXTURE_ID][0];
@@ -367,7 +415,7 @@ public class Page {
      */
     public Page setSecondTextureWithFirst() {
         if (mTexIDs[SECOND_TEXTURE_ID] > INVALID_TEXTURE_ID) {
-            mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[SECOND_TEXTURE_ID];
+            recycleTexture(mTexIDs[SECOND_TEXTURE_ID]);
         }
 
         maskColor[SECOND_TEXTURE_ID][0] = maskColor[FIRST_TEXTURE_ID][0];
@@ -388,11 +436,11 @@ public class Page {
      */
     public Page swapTexturesWithPage(Page page) {
         // [second page]: second -> first
-        mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[SECOND_TEXTURE_ID];
+        recycleTexture(mTexIDs[SECOND_TEXTURE_ID]);
         mTexIDs[SECOND_TEXTURE_ID] = mTexIDs[FIRST_TEXTURE_ID];
 
         // [first page] first -> [second page] back of first
-        mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[BACK_TEXTURE_ID];
+        recycleTexture(mTexIDs[BACK_TEXTURE_ID]);
         mTexIDs[BACK_TEXTURE_ID] = page.mTexIDs[FIRST_TEXTURE_ID];
 
         // [first page] back of first -> [second page] first
@@ -405,6 +453,16 @@ public class Page {
         return this;
     }
 
+    /**
+     * Get the first texture ID
+     *
+     * @return the first texture id, it is layer index if page texture array
+     *         is used
+     */
+    int getFirstTextureID() {
+        return mTexIDs[FIRST_TEXTURE_ID];
+    }
+
     /**
      * Get back texture ID
      *
@@ -549,7 +607,15 @@ public class Page {
      * Delete all textures
      */
     public void deleteAllTextures() {
-        glDeleteTextures(TEXTURE_SIZE, mTexIDs, 0);
+        if (mTextureArray != null) {
+            for (int i = 0; i < TEXTURE_SIZE; ++i) {
+                mTextureArray.free(mTexIDs[i]);
+            }
+        }
+        else {
+            mGL.glDeleteTextures(TEXTURE_SIZE, mTexIDs, 0);
+        }
+
         mTexIDs[FIRST_TEXTURE_ID] = INVALID_TEXTURE_ID;
         mTexIDs[SECOND_TEXTURE_ID] = INVALID_TEXTURE_ID;
         mTexIDs[BACK_TEXTURE_ID] = INVALID_TEXTURE_ID;
@@ -567,12 +633,7 @@ public class Page {
         maskColor[FIRST_TEXTURE_ID][1] = Color.green(color) / 255.0f;
         maskColor[FIRST_TEXTURE_ID][2] = Color.blue(color) / 255.0f;
 
-        glGenTextures(1, mTexIDs, FIRST_TEXTURE_ID);
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[FIRST_TEXTURE_ID]);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+        setTexture(FIRST_TEXTURE_ID, b);
     }
 
     /**
@@ -587,12 +648,7 @@ public class Page {
         maskColor[SECOND_TEXTURE_ID][1] = Color.green(color) / 255.0f;
         maskColor[SECOND_TEXTURE_ID][2] = Color.blue(color) / 255.0f;
 
-        glGenTextures(1, mTexIDs, SECOND_TEXTURE_ID);
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[SECOND_TEXTURE_ID]);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+        setTexture(SECOND_TEXTURE_ID, b);
     }
 
     /**
@@ -606,7 +662,7 @@ public class Page {
         if (b == null) {
             // back texture is same with the first texture
             if (mTexIDs[BACK_TEXTURE_ID] != INVALID_TEXTURE_ID) {
-                mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[BACK_TEXTURE_ID];
+                recycleTexture(mTexIDs[BACK_TEXTURE_ID]);
             }
             mTexIDs[BACK_TEXTURE_ID] = INVALID_TEXTURE_ID;
         }
@@ -617,11 +673,57 @@ public class Page {
             maskColor[BACK_TEXTURE_ID][1] = Color.green(color) / 255.0f;
             maskColor[BACK_TEXTURE_ID][2] = Color.blue(color) / 255.0f;
 
-            glGenTextures(1, mTexIDs, BACK_TEXTURE_ID);
-            glBindTexture(GL_TEXTURE_2D, mTexIDs[BACK_TEXTURE_ID]);
-            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-            GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+            setTexture(BACK_TEXTURE_ID, b);
+        }
+    }
+
+    /**
+     * Create texture with given bitmap for given texture index
+     * <p>
+     * If page texture array is used, bitmap is uploaded to a layer of it. The
+     * layer which is already held by the index is reused since its content
+     * will be replaced anyway
+     * </p>
+     *
+     * @param index texture index: first, second or back
+     * @param b Bitmap object for texture
+     */
+    private void setTexture(int index, Bitmap b) {
+        mGL.glActiveTexture(GL_TEXTURE0);
+        if (mTextureArray != null) {
+            if (mTexIDs[index] == INVALID_TEXTURE_ID) {
+                mTexIDs[index] = mTextureArray.alloc();
+            }
+            mTextureArray.upload(mTexIDs[index], b);
+        }
+        else {
+            mGL.glGenTextures(1, mTexIDs, index);
+            mGL.glBindTexture(GL_TEXTURE_2D, mTexIDs[index]);
+            uploadTexture(b);
+        }
+    }
+
+    /**
+     * Upload bitmap to the bound texture
+     * <p>
+     * For GLES 3.0, an immutable storage is allocated for ARGB_8888 bitmap, it
+     * saves driver from validating mipmap completeness and format changes for
+     * every drawing. Other bitmaps are still uploaded by texImage2D since
+     * their formats can't be mapped to a sized internal format directly
+     * </p>
+     *
+     * @param b Bitmap object for texture
+     */
+    private void uploadTexture(Bitmap b) {
+        mGL.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        mGL.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        if (mIsGLES3 && b.getConfig() == Bitmap.Config.ARGB_8888) {
+            mGL.glTexStorage2D(GL_TEXTURE_2D, 1, GL_RGBA8, b.getWidth(),
+                               b.getHeight());
+            mGL.texSubImage2D(GL_TEXTURE_2D, 0, 0, 0, b);
+        }
+        else {
+            mGL.texImage2D(GL_TEXTURE_2D, 0, b, 0);
         }
     }
 
@@ -633,22 +735,77 @@ public class Page {
      */
     public void drawFrontPage(VertexProgram program,
                               Vertexes vertexes) {
+        drawFrontPage(program, vertexes, null);
+    }
+
+    /**
+     * Draw front page when page is flipping
+     * <p>
+     * If page texture array is used, the whole front page is drawn in one
+     * call: every vertex carries layer index 0, 1 or 2 which selects the
+     * first texture, the second texture or the first texture of opposite
+     * page. The full page vertexes of opposite page should be appended to
+     * vertexes by {@link #addFullPageVertexes(Vertexes)} before. Program
+     * should be in use with MVP matrix uploaded
+     * </p>
+     *
+     * @param program GL shader program
+     * @param vertexes Vertexes of the curled front page
+     * @param oppositePage the opposite page in double pages mode, it is only
+     *                     used with page texture array, can be null
+     */
+    public void drawFrontPage(VertexProgram program,
+                              Vertexes vertexes,
+                              Page oppositePage) {
+        if (mTextureArray != null) {
+            mTextureArray.bind();
+            mGL.glUniform1i(program.mTextureLoc, 0);
+            mTextureArray.setAtlasUniform(program.mAtlasLoc);
+            mGL.glUniform3f(program.mLayersLoc,
+                            mTexIDs[FIRST_TEXTURE_ID],
+                            mTexIDs[SECOND_TEXTURE_ID],
+                            oppositePage != null ?
+                            oppositePage.mTexIDs[FIRST_TEXTURE_ID] : 0);
+            // in painter's order, the part with the second texture is drawn
+            // first since it is under the curled part
+            vertexes.drawWithLayer(GL_TRIANGLE_STRIP,
+                                   program.mVertexPosLoc,
+                                   program.mTexCoordLoc,
+                                   program.mLayerLoc,
+                                   mIsPainterOrder ? mFrontVertexSize : 0);
+            return;
+        }
+
+        // in painter's order, the part with the second texture is drawn first
+        // since it is under the curled part
+        if (mIsPainterOrder) {
+            mGL.glBindTexture(GL_TEXTURE_2D, mTexIDs[SECOND_TEXTURE_ID]);
+            mGL.glUniform1i(program.mTextureLoc, 0);
+            vertexes.drawWith(GL_TRIANGLE_STRIP,
+                              program.mVertexPosLoc,
+                              program.mTexCoordLoc,
+                              mFrontVertexSize,
+                              vertexes.mVertexesSize - mFrontVertexSize);
+
+            mGL.glBindTexture(GL_TEXTURE_2D, mTexIDs[FIRST_TEXTURE_ID]);
+            vertexes.draw(GL_TRIANGLE_STRIP, 0, mFrontVertexSize);
+            return;
+        }
+
         // 1. draw unfold part and curled part with the first texture
-        glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false,
-                           VertexProgram.MVPMatrix, 0);
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[FIRST_TEXTURE_ID]);
-        glUniform1i(program.mTextureLoc, 0);
+        mGL.glBindTexture(GL_TEXTURE_2D, mTexIDs[FIRST_TEXTURE_ID]);
+        mGL.glUniform1i(program.mTextureLoc, 0);
         vertexes.drawWith(GL_TRIANGLE_STRIP,
                           program.mVertexPosLoc,
                           program.mTexCoordLoc,
                           0, mFrontVertexSize);
 
         // 2. draw the second texture
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[SECOND_TEXTURE_ID]);
-        glUniform1i(program.mTextureLoc, 0);
-        glDrawArrays(GL_TRIANGLE_STRIP,
-                     mFrontVertexSize,
-                     vertexes.mVertexesSize - mFrontVertexSize);
+        mGL.glBindTexture(GL_TEXTURE_2D, mTexIDs[SECOND_TEXTURE_ID]);
+        mGL.glUniform1i(program.mTextureLoc, 0);
+        vertexes.draw(GL_TRIANGLE_STRIP,
+                      mFrontVertexSize,
+                      vertexes.mVertexesSize - mFrontVertexSize);
     }
 
     /**
@@ -670,32 +827,76 @@ public class Page {
      * Draw full page with given texture id
      */
     private void drawFullPage(VertexProgram program, int textureID) {
-        glBindTexture(GL_TEXTURE_2D, textureID);
-        glUniform1i(program.mTextureLoc, 0);
+        final boolean hasLayer = mTextureArray != null;
+        if (hasLayer) {
+            // layer indexes of full page are 0
+            mTextureArray.bind();
+            mTextureArray.setAtlasUniform(program.mAtlasLoc);
+            mGL.glUniform3f(program.mLayersLoc, textureID, 0, 0);
+        }
+        else {
+            mGL.glBindTexture(GL_TEXTURE_2D, textureID);
+        }
+        mGL.glUniform1i(program.mTextureLoc, 0);
 
-        glVertexAttribPointer(program.mVertexPosLoc, 3, GL_FLOAT, false, 0,
-                              mFullPageVexBuf);
-        glEnableVertexAttribArray(program.mVertexPosLoc);
+        if (mIsFullPageVBODirty || !mFullPageVBO.isCreated()) {
+            mFullPageVBO.upload(mFullPageBuf, FULL_PAGE_BUF_SIZE << 2);
+            mIsFullPageVBODirty = false;
+        }
+        else {
+            mFullPageVBO.bind();
+        }
 
-        glVertexAttribPointer(program.mTexCoordLoc, 2, GL_FLOAT, false, 0,
-                              mFullPageTexCoordsBuf);
-        glEnableVertexAttribArray(program.mTexCoordLoc);
+        // attributes are recorded in vertex array object once for GLES 3.0
+        final int hLayer = hasLayer ? program.mLayerLoc : -1;
+        if (!mIsGLES3 ||
+            mFullPageVAO.bind(program.mVertexPosLoc, program.mTexCoordLoc,
+                              hLayer)) {
+            setFullPageAttribPointer(program, hLayer);
+        }
+
+        mGL.glDrawArrays(GL_TRIANGLE_FAN, 0, 4);
 
-        glDrawArrays(GL_TRIANGLE_FAN, 0, 4);
+        // other programs don't have layer index, disable it if it isn't kept
+        // in vertex array object
+        if (!mIsGLES3 && hLayer >= 0) {
+            mGL.glDisableVertexAttribArray(hLayer);
+        }
+    }
+
+    /**
+     * Pass vertex and texture data of full page in bound buffer object to
+     * shader program
+     *
+     * @param program GL shader program
+     * @param hLayer layer index var in shader program, -1 if not used
+     */
+    private void setFullPageAttribPointer(VertexProgram program, int hLayer) {
+        mGL.glVertexAttribPointer(program.mVertexPosLoc, 3, GL_FLOAT, false, 0,
+                                  0);
+        mGL.glEnableVertexAttribArray(program.mVertexPosLoc);
+
+        mGL.glVertexAttribPointer(program.mTexCoordLoc, 2, GL_FLOAT, false, 0,
+                                  FULL_PAGE_TEX_COORDS_OFFSET << 2);
+        mGL.glEnableVertexAttribArray(program.mTexCoordLoc);
+
+        if (hLayer >= 0) {
+            mGL.glVertexAttribPointer(hLayer, 1, GL_FLOAT, false, 0,
+                                      FULL_PAGE_LAYERS_OFFSET << 2);
+            mGL.glEnableVertexAttribArray(hLayer);
+        }
     }
 
     /**
      * Create vertexes buffer
      */
     private void createVertexesBuffer() {
-        // 4 vertexes for full page
-        mFullPageVexBuf = ByteBuffer.allocateDirect(48)
-                                    .order(ByteOrder.nativeOrder())
-                                    .asFloatBuffer();
-
-        mFullPageTexCoordsBuf = ByteBuffer.allocateDirect(32)
-                                          .order(ByteOrder.nativeOrder())
-                                          .asFloatBuffer();
+        // 4 vertexes and texture coordinates for full page
+        mFullPageBuf = ByteBuffer.allocateDirect(FULL_PAGE_BUF_SIZE << 2)
+                                 .order(ByteOrder.nativeOrder())
+                                 .asFloatBuffer();
+        mFullPageVBO = new GLBuffer(mGL, GL_ARRAY_BUFFER, GL_STATIC_DRAW);
+        mFullPageVAO = new GLVertexArray(mGL);
 
         mApexes = new float[12];
         mApexTexCoords = new float[8];
@@ -731,7 +932,7 @@ public class Page {
      * @param xFoldP1 fold point on X axis
      */
     public void buildVertexesOfPageWhenVertical(Vertexes frontVertexes,
-                                                PointF xFoldP1) {
+                                                GLPointF xFoldP1) {
         // if xFoldX and yFoldY are both outside the page, use the last vertex
         // order to draw page
         int index = 4;
@@ -756,8 +957,9 @@ public class Page {
             frontVertexes.addVertex(mXFoldP).addVertex(mYFoldP);
         }
 
-        // add the leftover vertexes for the first texture
-        for (int i = 1; i < vexOrder[0]; ++i) {
+        // add the leftover vertexes for the first texture, they are unfold
+        // page which may be cached out of front vertexes
+        for (int i = 1; i < vexOrder[0] && !mIsUnfoldPartCached; ++i) {
             int k = apexOrder[vexOrder[i]];
             int m = k * 3;
             int n = k << 1;
@@ -766,23 +968,9 @@ public class Page {
         }
 
         // the vertex size for drawing front of fold page and first texture
-        mFrontVertexSize = frontVertexes.mNext / 3;
-
-        // if xFoldX and yFoldY are in the page, need add them for drawing the
-        // second texture
-        if (vexOrder[0] > 1) {
-            mXFoldP.z = mYFoldP.z = -1;
-            frontVertexes.addVertex(mXFoldP).addVertex(mYFoldP);
-        }
+        mFrontVertexSize = frontVertexes.vertexCount();
 
-        // add the remaining vertexes for the second texture
-        for (int i = vexOrder[0]; i < vexOrder.length; ++i) {
-            int k = apexOrder[vexOrder[i]];
-            int m = k * 3;
-            int n = k << 1;
-            frontVertexes.addVertex(mApexes[m], mApexes[m + 1], -1,
-                                    mApexTexCoords[n], mApexTexCoords[n + 1]);
-        }
+        addVertexesOfSecondTexture(frontVertexes, apexOrder, vexOrder);
     }
 
     /**
@@ -796,8 +984,8 @@ public class Page {
      * @param kValue tan value of page curling angle
      */
     public void buildVertexesOfPageWhenSlope(Vertexes frontVertexes,
-                                             PointF xFoldP1,
-                                             PointF yFoldP1,
+                                             GLPointF xFoldP1,
+                                             GLPointF yFoldP1,
                                              float kValue) {
         // compute xFoldX point
         float halfH = height * 0.5f;
@@ -837,8 +1025,9 @@ public class Page {
             frontVertexes.addVertex(mXFoldP).addVertex(mYFoldP);
         }
 
-        // add the leftover vertexes for the first texture
-        for (int i = 1; i < vexOrder[0]; ++i) {
+        // add the leftover vertexes for the first texture, they are unfold
+        // page which may be cached out of front vertexes
+        for (int i = 1; i < vexOrder[0] && !mIsUnfoldPartCached; ++i) {
             int k = apexOrder[vexOrder[i]];
             int m = k * 3;
             int n = k << 1;
@@ -847,13 +1036,45 @@ public class Page {
         }
 
         // the vertex size for drawing front of fold page and first texture
-        mFrontVertexSize = frontVertexes.mNext / 3;
+        mFrontVertexSize = frontVertexes.vertexCount();
+
+        addVertexesOfSecondTexture(frontVertexes, apexOrder, vexOrder);
+    }
+
+    /**
+     * Add vertexes for drawing the second texture after the first texture
+     * <p>
+     * If page texture array is used, the two parts are joined in one triangle
+     * strip with degenerate triangles: the last vertex of the first texture
+     * and the first vertex of the second texture are repeated, and vertexes
+     * of the second texture have layer index 1
+     * </p>
+     *
+     * @param frontVertexes vertexes for drawing front part of page
+     * @param apexOrder apex order of current original point
+     * @param vexOrder fold vertex order of current fold points
+     */
+    private void addVertexesOfSecondTexture(Vertexes frontVertexes,
+                                            int[] apexOrder,
+                                            int[] vexOrder) {
+        // the first vertex of the second texture need to be repeated
+        boolean isJoining = mTextureArray != null &&
+                            frontVertexes.vertexCount() > 0;
+        if (isJoining) {
+            frontVertexes.repeatLastVertex();
+        }
+        frontVertexes.setLayer(1);
 
         // if xFoldX and yFoldY are in the page, need add them for drawing the
         // second texture
         if (vexOrder[0] > 1) {
             mXFoldP.z = mYFoldP.z = -1;
-            frontVertexes.addVertex(mXFoldP).addVertex(mYFoldP);
+            frontVertexes.addVertex(mXFoldP);
+            if (isJoining) {
+                frontVertexes.repeatLastVertex();
+                isJoining = false;
+            }
+            frontVertexes.addVertex(mYFoldP);
         }
 
         // add the remaining vertexes for the second texture
@@ -863,9 +1084,42 @@ public class Page {
             int n = k << 1;
             frontVertexes.addVertex(mApexes[m], mApexes[m + 1], -1,
                                     mApexTexCoords[n], mApexTexCoords[n + 1]);
+            if (isJoining) {
+                frontVertexes.repeatLastVertex();
+                isJoining = false;
+            }
         }
     }
 
+    /**
+     * Add vertexes of full page with layer index 2 to vertexes of the opposite
+     * page, it is joined with the existing vertexes by degenerate triangles
+     * <p>It is only used with page texture array, see
+     * {@link #drawFrontPage(VertexProgram, Vertexes, Page)}</p>
+     *
+     * @param vertexes vertexes of the opposite page
+     */
+    void addFullPageVertexes(Vertexes vertexes) {
+        final boolean isJoined = vertexes.vertexCount() > 0;
+        if (isJoined) {
+            vertexes.repeatLastVertex();
+        }
+
+        // strip order of full page: 0 -> 1 -> 3 -> 2
+        vertexes.setLayer(2);
+        vertexes.addVertex(mApexes[0], mApexes[1], mApexes[2],
+                           mApexTexCoords[0], mApexTexCoords[1]);
+        if (isJoined) {
+            vertexes.repeatLastVertex();
+        }
+        vertexes.addVertex(mApexes[3], mApexes[4], mApexes[5],
+                           mApexTexCoords[2], mApexTexCoords[3])
+                .addVertex(mApexes[9], mApexes[10], mApexes[11],
+                           mApexTexCoords[6], mApexTexCoords[7])
+                .addVertex(mApexes[6], mApexes[7], mApexes[8],
+                           mApexTexCoords[4], mApexTexCoords[5]);
+    }
+
     /**
      * Build vertexes of full page
      * <pre>
@@ -915,7 +1169,88 @@ public class Page {
         mApexTexCoords[j++] = textureX(left);
         mApexTexCoords[j] = textureY(bottom);
 
-        mFullPageVexBuf.put(mApexes, 0, 12).position(0);
-        mFullPageTexCoordsBuf.put(mApexTexCoords, 0, 8).position(0);
+        mFullPageBuf.put(mApexes, 0, 12)
+                    .put(mApexTexCoords, 0, 8)
+                    .put(new float[4])
+                    .position(0);
+        mIsFullPageVBODirty = true;
+    }
+
+    /**
+     * Delete buffer object of full page
+     * <p>It should be called in OpenGL thread</p>
+     */
+    public void deleteVBO() {
+        mFullPageVBO.delete();
+        mFullPageVAO.delete();
+    }
+
+    /**
+     * Forget buffer object of full page without deleting it when GL context is
+     * lost
+     */
+    void invalidateVBO() {
+        mFullPageVBO.invalidate();
+        mFullPageVAO.invalidate();
+    }
+
+    /**
+     * Set page texture array which is shared by all pages
+     * <p>
+     * It should be set before any texture is created, all texture ids become
+     * layer indexes of it. Set null to use separate GL texture for every
+     * texture
+     * </p>
+     *
+     * @param textureArray page texture array or null
+     */
+    void setTextureArray(PageTextureArray textureArray) {
+        mTextureArray = textureArray;
+    }
+
+    /**
+     * Get page texture array
+     *
+     * @return page texture array, null if it isn't used
+     */
+    PageTextureArray getTextureArray() {
+        return mTextureArray;
+    }
+
+    /**
+     * Set if GLES 3.0 context is used
+     * <p>It should be set before textures are created</p>
+     *
+     * @param isGLES3 true if GLES 3.0 context is used
+     */
+    void setGLES3(boolean isGLES3) {
+        mIsGLES3 = isGLES3;
+    }
+
+    /**
+     * Set if unfold page is cached in a stationary layer
+     * <p>
+     * If it is cached, the flat unfold part of page is not built in front
+     * vertexes, only the front of fold page and the part with the second
+     * texture are built, see {@link PageFlip#enableStationaryLayer(boolean)}
+     * </p>
+     *
+     * @param isCached true if unfold page is cached
+     */
+    void setUnfoldPartCached(boolean isCached) {
+        mIsUnfoldPartCached = isCached;
+    }
+
+    /**
+     * Set if page is drawn in painter's order without depth test
+     * <p>
+     * The part with the second texture is drawn before the unfold and curled
+     * part in painter's order, see {@link PageFlip#enableDepthTest(boolean)}
+     * </p>
+     *
+     * @param isPainterOrder true if drawing in painter's order
+     */
+    void setPainterOrder(boolean isPainterOrder) {
+        mIsPainterOrder = isPainterOrder;
     }
 }
@@ -16,33 +16,53 @@
 package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Point;
-import android.graphics.PointF;
-import android.opengl.GLUtils;
+import android.os.Build;
 import android.util.Log;
 import android.view.animation.AccelerateInterpolator;
-import android.widget.Scroller;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static android.opengl.GLES20.GL_ALWAYS;
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_BLEND;
 import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
 import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
 import static android.opengl.GLES20.GL_DEPTH_TEST;
+import static android.opengl.GLES20.GL_DYNAMIC_DRAW;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_FRAMEBUFFER;
+import static android.opengl.GLES20.GL_FRAMEBUFFER_BINDING;
+import static android.opengl.GLES20.GL_KEEP;
+import static android.opengl.GLES20.GL_MAX_TEXTURE_SIZE;
 import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_NEAREST;
+import static android.opengl.GLES20.GL_NOTEQUAL;
+import static android.opengl.GLES20.GL_ONE_MINUS_SRC_ALPHA;
+import static android.opengl.GLES20.GL_REPLACE;
+import static android.opengl.GLES20.GL_SCISSOR_TEST;
+import static android.opengl.GLES20.GL_SRC_ALPHA;
+import static android.opengl.GLES20.GL_STENCIL_BITS;
+import static android.opengl.GLES20.GL_STENCIL_BUFFER_BIT;
+import static android.opengl.GLES20.GL_STENCIL_TEST;
 import static android.opengl.GLES20.GL_TEXTURE0;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
-import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
-import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glClear;
-import static android.opengl.GLES20.glClearColor;
-import static android.opengl.GLES20.glClearDepthf;
-import static android.opengl.GLES20.glEnable;
-import static android.opengl.GLES20.glGenTextures;
-import static android.opengl.GLES20.glTexParameterf;
-import static android.opengl.GLES20.glUniformMatrix4fv;
-import static android.opengl.GLES20.glUseProgram;
-import static android.opengl.GLES20.glViewport;
+import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES20.GL_VIEWPORT;
+import static android.opengl.GLES30.GL_READ_FRAMEBUFFER;
+import static android.opengl.GLES30.GL_UNIFORM_BUFFER;
 
 /**
  * 3D Style Page Flip
@@ -52,10 +72,55 @@ import static android.opengl.GLES20.glViewport;
 public class PageFlip {
     final static String TAG    = "PageFlip";
 
+    // directory name of program binary cache in app cache directory
+    private final static String PROGRAM_BINARY_DIR = "pageflip_programs";
+
     // default pixels of mesh vertex
     private final static int DEFAULT_MESH_VERTEX_PIXELS = 10;
     private final static int MESH_COUNT_THRESHOLD = 20;
 
+    // vertex of client-side triangle strip: (x, y, z, w, s, t, layer or id)
+    private final static int CLIENT_VEX_SIZE = 7;
+    // dummy triangle strip for shader warm-up
+    private final static float[] WARM_UP_VERTEXES = new float[] {
+        -1f, -1f, 0f, 1f, 0f, 1f, 0f,
+        -1f,  1f, 0f, 1f, 0f, 0f, 0f,
+         1f, -1f, 0f, 1f, 1f, 1f, 0f,
+         1f,  1f, 0f, 1f, 1f, 0f, 0f,
+    };
+    // extra pixels around fold region for damage redraw, it covers rounding
+    // and anti-aliased edges
+    private final static int DAMAGE_MARGIN = 2;
+    // dynamic resolution: the frame which takes longer than SLOW_FRAME_RATIO
+    // of refresh period scales resolution down by one step, and resolution
+    // is scaled up after FAST_FRAMES_TO_SCALE_UP frames in a row are faster
+    // than FAST_FRAME_RATIO of it. A gap longer than MAX_FRAME_GAP_PERIODS
+    // periods means no frame is requested in it, e.g. finger stops moving,
+    // it isn't a frame time
+    private final static float DEFAULT_REFRESH_RATE = 60f;
+    private final static int MAX_FRAME_GAP_PERIODS = 4;
+    private final static float SLOW_FRAME_RATIO = 1.25f;
+    private final static float FAST_FRAME_RATIO = 1.1f;
+    private final static int FAST_FRAMES_TO_SCALE_UP = 8;
+    private final static float RESOLUTION_SCALE_STEP = 0.1f;
+    private final static float DEFAULT_MIN_RESOLUTION_SCALE = 0.6f;
+    // group markers of drawing layers, overdraw is measured by them with a
+    // recording backend
+    final static String MARKER_STATIONARY_LAYER = "StationaryLayer";
+    final static String MARKER_FOLD_BACK = "FoldBack";
+    final static String MARKER_FRONT_PAGE = "FrontPage";
+    final static String MARKER_SECOND_PAGE = "SecondPage";
+    final static String MARKER_FOLD_SHADOWS = "FoldShadows";
+    final static String MARKER_FRAME_COPY = "FrameCopy";
+    final static String MARKER_PAGE_FRAME = "PageFrame";
+    // min mesh count of fold page to build mesh in parallel until the cost
+    // of handing task over to worker thread is measured on device, it is a
+    // conservative guess which keeps the default mesh of a phone screen in
+    // caller thread
+    private final static int DEFAULT_PARALLEL_MESH_BUILD_THRESHOLD = 160;
+    // idle seconds before worker thread of parallel mesh build exits
+    private final static long MESH_BUILD_WORKER_KEEP_ALIVE = 3;
+
     // The min page curl angle (5 degree)
     private final static int MIN_PAGE_CURL_ANGLE = 5;
     // The max page curl angle (5 degree)
@@ -111,17 +176,14 @@ public class PageFlip {
     // the pixel size for each mesh
     private int mPixelsOfMesh;
 
-    // gradient shadow texture id
-    private int mGradientShadowTextureID;
-
     // touch point and last touch point
-    private PointF mTouchP;
+    private GLPointF mTouchP;
     // the last touch point (could be deleted?)
-    private PointF mLastTouchP;
+    private GLPointF mLastTouchP;
     // the first touch point when finger down on the screen
-    private PointF mStartTouchP;
+    private GLPointF mStartTouchP;
     // the middle point between touch point and origin point
-    private PointF mMiddleP;
+    private GLPointF mMiddleP;
 
     // from 2D perspective, the line will intersect Y axis and X axis that being
     // through middle point and perpendicular to the line which is from touch
@@ -152,12 +214,12 @@ public class PageFlip {
     //X <-----+------+------+---+ originP
     //   mXFoldP1 mXFoldP mXFoldP0
     //
-    private PointF mYFoldP;
-    private PointF mYFoldP0;
-    private PointF mYFoldP1;
-    private PointF mXFoldP;
-    private PointF mXFoldP0;
-    private PointF mXFoldP1;
+    private GLPointF mYFoldP;
+    private GLPointF mYFoldP0;
+    private GLPointF mYFoldP1;
+    private GLPointF mXFoldP;
+    private GLPointF mXFoldP0;
+    private GLPointF mXFoldP1;
 
     //            ^ Y
     //   mTouchP  |
@@ -195,19 +257,80 @@ public class PageFlip {
     private FoldBackVertexes mFoldBackVertexes;
     private ShadowVertexes mFoldEdgesShadow;
     private ShadowVertexes mFoldBaseShadow;
+    // base and edge shadows are drawn in one batch
+    private ShadowBatch mFoldShadowBatch;
+    // vertex buffer shared by all fold meshes, they are packed in it and
+    // uploaded to GL once in a frame
+    private SharedVertexBuffer mFoldMeshBuffer;
+
+    // is GLES 3.0 enabled by caller and is it active in current GL context
+    private boolean mIsGLES3Enabled;
+    private boolean mIsGLES3;
+    // is depth test enabled by caller and is it active in current GL context,
+    // without it pages, fold page and shadows are drawn in painter's order
+    // and surface needs no depth buffer
+    private boolean mIsDepthTestEnabled;
+    private boolean mIsDepthTest;
+    // is stencil rejection enabled by caller and is it active in current GL
+    // context, pixels covered by fold back are rejected by stencil test in
+    // the following drawings without depth test
+    private boolean mIsStencilRejectionEnabled;
+    private boolean mIsStencilRejection;
+    // is every drawing layer wrapped in a group marker
+    private boolean mIsDebugMarkerEnabled;
+    // MVP matrix of this instance and its uniform buffer shared by all
+    // programs in GLES 3.0
+    private final float[] mMVPMatrix;
+    private GLBuffer mMVPBuffer;
+    private FloatBuffer mMVPBuf;
+
+    // is page texture array enabled by caller and is it active in current GL
+    // context, all page textures are in one texture array or atlas to draw
+    // the whole front page in one call
+    private boolean mIsPageTextureArrayEnabled;
+    private boolean mIsPageTextureArray;
+    private PageTextureArray mPageTextureArray;
+    // max texture size of current GL context
+    private int mMaxTextureSize;
 
     // Shader program for openGL drawing
     private VertexProgram mVertexProgram;
     private FoldBackVertexProgram mFoldBackVertexProgram;
     private ShadowVertexProgram mShadowVertexProgram;
+    // variants of fold back program indexed by variant flags, they are
+    // compiled when they are used at the first time. The full featured
+    // variant is always compiled and used if other variant is failed
+    private FoldBackVertexProgram[] mFoldBackVariants;
+    // registry of programs given by caller and the registry which programs
+    // of current GL context are acquired from
+    private SharedGLResources mSharedResources;
+    private SharedGLResources mResources;
+    // macros defined for all shader programs
+    private String[] mShaderDefines;
+    // is gradient shadow of fold back enabled and is low precision enabled
+    // for color computing in shader
+    private boolean mIsFoldGradientEnabled;
+    private boolean mIsLowPrecisionEnabled;
+    // are page edges of fold back antialiased in shader
+    private boolean mIsEdgeAntialiasingEnabled;
+    // is program binary cache enabled and the cache of current GL context
+    private boolean mIsProgramBinaryCacheEnabled;
+    private ProgramBinaryCache mProgramBinaryCache;
 
     // is vertical page flip
     private boolean mIsVertical;
     private PageFlipState mFlipState;
 
-    // use for flip animation
-    private Scroller mScroller;
+    // time based animator of touch point for flip animation
+    private final FlipAnimator mAnimator;
     private Context mContext;
+    // source of shader scripts, they are read from resources of context
+    private ShaderSource mShaderSource;
+
+    // GL backend which all GL calls are routed through, it is the state cache
+    // which wraps the given backend
+    private GLBackend mGL;
+    private StateCacheGLBackend mStateCache;
 
     // pages and page mode
     // in single page mode, there is only one page in the index 0
@@ -224,12 +347,111 @@ public class PageFlip {
     // listener for page flipping
     private OnPageFlipListener mListener;
 
+    // is shader warm-up needed for current GL context and its listener
+    private boolean mIsWarmUpNeeded;
+    private OnWarmUpListener mWarmUpListener;
+
+    // is building mesh of fold page in parallel
+    private boolean mIsParallelMeshBuild;
+    // executor for building back of fold page in parallel and count of
+    // worker threads it has started, the worker exits when it is idle and
+    // is started again by the next task
+    private ExecutorService mMeshBuildExecutor;
+    private final AtomicInteger mMeshBuildWorkerStarts;
+    // measured average nanoseconds of building a mesh of back of fold page
+    // and cost of handing it over to worker thread, they decide if it is
+    // worth building mesh in parallel
+    private float mNanosPerBackMesh;
+    private float mMeshBuildHandOffNanos;
+    // start and end time of building back of fold page in worker thread
+    private long mBackBuildStart;
+    private long mBackBuildEnd;
+
+    // deformation model of fold page and the output buffers of mapping for
+    // back and front of fold page, they are separated since back and front
+    // could be computed in different threads
+    private DeformationModel mDeformationModel;
+    private float[] mBackDeformOut;
+    private float[] mFrontDeformOut;
+    // nanoseconds of deforming a vertex with current model, 0 if it isn't
+    // measured yet
+    private float mNanosPerFoldVertex;
+
+    // damage redraw: only the fold region of flip frame is cleared and drawn,
+    // the rest is kept from the last frame in the surface whose content is
+    // preserved after swapping, or in an off-screen frame buffer which is
+    // copied to surface
+    private boolean mIsDamageRedraw;
+    private boolean mIsSurfacePreserved;
+    private boolean mIsFullRedrawNeeded;
+    private FrameBuffer mDamageFrameBuffer;
+    // full screen quad for copying off-screen frame buffer with GLES 2.0
+    private FloatBuffer mCopyQuadBuf;
+    // bounds of fold region in OpenGL coordinate: left, bottom, right, top,
+    // they are computed with vertexes of fold page in main thread
+    private final float[] mFoldBounds;
+    // fold region of current frame and damaged region which is drawn in the
+    // last frame in window coordinate: left, bottom, right, top
+    private final int[] mFoldRect;
+    private final int[] mDamageRect;
+
+    // stationary layer: unfold pages are drawn into an off-screen frame
+    // buffer once at the beginning of flip, every flip frame copies it and
+    // only draws the moving parts of fold page on it
+    private boolean mIsStationaryLayerEnabled;
+    private boolean mIsStationaryLayerDirty;
+    private FrameBuffer mStationaryLayer;
+    // the first texture ids of pages which are drawn in stationary layer
+    private final int[] mStationaryTexIDs;
+
+    // dynamic resolution: flip frames are drawn into a part of off-screen
+    // frame buffer which is scaled from surface size and the part is scaled
+    // up to surface, the scale is adjusted by measured frame time
+    private boolean mIsDynamicResolution;
+    private float mMinResolutionScale;
+    private float mResolutionScale;
+    private FrameBuffer mDynamicFrameBuffer;
+    // refresh period of display
+    private long mRefreshPeriodNanos;
+    // start time of the last flip frame, 0 if it isn't in flip
+    private long mLastFlipFrameNanos;
+    private int mFastFrameCount;
+
     /**
      * Constructor
      */
     public PageFlip(Context context) {
+        this(context,
+             Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 ?
+             new GLES30Backend() : new GLES20Backend());
+    }
+
+    /**
+     * Constructor with GL backend
+     * <p>
+     * All GL calls of page flip will be routed through the given backend, it
+     * is useful to record or inspect GL commands, for example: use
+     * {@link RecordingGLBackend} to measure cost of frame without a device.
+     * The given backend is wrapped by a {@link StateCacheGLBackend}, see
+     * {@link #enableGLStateCache(boolean)}. If it is a state cache already,
+     * it is used as is, so instances drawing in one GL context can share the
+     * cache of context, see {@link PageFlipRenderHost#getGLBackend()}
+     * </p>
+     *
+     * @param context android context
+     * @param gl GL backend
+     */
+    public PageFlip(Context context, GLBackend gl) {
+        if (gl == null) {
+            throw new IllegalArgumentException("GL backend is null");
+        }
+
+        mStateCache = gl instanceof StateCacheGLBackend ?
+                      (StateCacheGLBackend)gl : new StateCacheGLBackend(gl);
+        mGL = mStateCache;
         mContext = context;
-        mScroller = new Scroller(context);
+        mShaderSource = GLShader.fromResources(context);
+        mAnimator = new FlipAnimator();
         mFlipState = PageFlipState.END_FLIP;
         mIsVertical = false;
         mViewRect = new GLViewRect();
@@ -237,6 +459,36 @@ public class PageFlip {
         mSemiPerimeterRatio = 0.8f;
         mIsClickToFlip = true;
         mListener = null;
+        mIsWarmUpNeeded = false;
+        mWarmUpListener = null;
+        mIsParallelMeshBuild = false;
+        mMeshBuildExecutor = null;
+        mMeshBuildWorkerStarts = new AtomicInteger();
+        mNanosPerBackMesh = 0;
+        mMeshBuildHandOffNanos = 0;
+        mDeformationModel = new CylinderDeformation();
+        mBackDeformOut = new float[DeformationModel.OUT_SIZE];
+        mFrontDeformOut = new float[DeformationModel.OUT_SIZE];
+        mNanosPerFoldVertex = 0;
+        mIsDamageRedraw = false;
+        mIsSurfacePreserved = false;
+        mIsFullRedrawNeeded = true;
+        mDamageFrameBuffer = new FrameBuffer(mGL, true);
+        mCopyQuadBuf = null;
+        mFoldBounds = new float[4];
+        mFoldRect = new int[4];
+        mDamageRect = new int[4];
+        mIsStationaryLayerEnabled = false;
+        mIsStationaryLayerDirty = true;
+        mStationaryLayer = new FrameBuffer(mGL, false);
+        mStationaryTexIDs = new int[2];
+        mIsDynamicResolution = false;
+        mMinResolutionScale = DEFAULT_MIN_RESOLUTION_SCALE;
+        mResolutionScale = 1f;
+        mRefreshPeriodNanos = (long)(1e9 / DEFAULT_REFRESH_RATE);
+        mDynamicFrameBuffer = new FrameBuffer(mGL, true);
+        mLastFlipFrameNanos = 0;
+        mFastFrameCount = 0;
         mWidthRationOfClickToFlip = WIDTH_RATIO_OF_CLICK_TO_FLIP;
 
         // init pages
@@ -244,39 +496,81 @@ public class PageFlip {
         mPageMode = SINGLE_PAGE_MODE;
 
         // key points
-        mMiddleP = new PointF();
-        mYFoldP = new PointF();
-        mYFoldP0 = new PointF();
-        mYFoldP1 = new PointF();
-        mXFoldP = new PointF();
-        mXFoldP0 = new PointF();
-        mXFoldP1 = new PointF();
-        mTouchP = new PointF();
-        mLastTouchP = new PointF();
-        mStartTouchP = new PointF();
+        mMiddleP = new GLPointF();
+        mYFoldP = new GLPointF();
+        mYFoldP0 = new GLPointF();
+        mYFoldP1 = new GLPointF();
+        mXFoldP = new GLPointF();
+        mXFoldP0 = new GLPointF();
+        mXFoldP1 = new GLPointF();
+        mTouchP = new GLPointF();
+        mLastTouchP = new GLPointF();
+        mStartTouchP = new GLPointF();
 
         // init shadow width
         mFoldEdgesShadowWidth = new ShadowWidth(5, 30, 0.25f);
         mFoldBaseShadowWidth = new ShadowWidth(2, 40, 0.4f);
 
         // init shader program
-        mVertexProgram = new VertexProgram();
-        mFoldBackVertexProgram = new FoldBackVertexProgram();
-        mShadowVertexProgram = new ShadowVertexProgram();
+        // programs are acquired in onSurfaceCreated()
+        mVertexProgram = null;
+        mFoldBackVertexProgram = null;
+        mShadowVertexProgram = null;
+        mFoldBackVariants =
+                new FoldBackVertexProgram[FoldBackVertexProgram.VARIANT_COUNT];
+        mShaderDefines = new String[0];
+        // programs aren't shared by default
+        mSharedResources = new SharedGLResources();
+        mResources = null;
+        mIsFoldGradientEnabled = true;
+        mIsLowPrecisionEnabled = false;
+        mIsEdgeAntialiasingEnabled = false;
+        mIsProgramBinaryCacheEnabled = false;
+        mProgramBinaryCache = null;
 
         // init vertexes
-        mFoldFrontVertexes = new Vertexes();
-        mFoldBackVertexes = new FoldBackVertexes();
-        mFoldEdgesShadow = new ShadowVertexes(FOLD_TOP_EDGE_SHADOW_VEX_COUNT,
+        mFoldFrontVertexes = new Vertexes(mGL);
+        mFoldBackVertexes = new FoldBackVertexes(mGL);
+        mFoldEdgesShadow = new ShadowVertexes(mGL,
+                                              FOLD_TOP_EDGE_SHADOW_VEX_COUNT,
                                               FOLD_EDGE_SHADOW_START_COLOR,
                                               FOLD_EDGE_SHADOW_START_ALPHA,
                                               FOLD_EDGE_SHADOW_END_COLOR,
                                               FOLD_EDGE_SHADOW_END_ALPHA);
-        mFoldBaseShadow = new ShadowVertexes(0,
+        mFoldBaseShadow = new ShadowVertexes(mGL, 0,
                                              FOLD_BASE_SHADOW_START_COLOR,
                                              FOLD_BASE_SHADOW_START_ALPHA,
                                              FOLD_BASE_SHADOW_END_COLOR,
                                              FOLD_BASE_SHADOW_END_ALPHA);
+        mFoldMeshBuffer = new SharedVertexBuffer(mGL);
+        mFoldFrontVertexes.setSharedBuffer(mFoldMeshBuffer);
+        mFoldBackVertexes.setSharedBuffer(mFoldMeshBuffer);
+        mFoldEdgesShadow.setSharedBuffer(mFoldMeshBuffer);
+        mFoldBaseShadow.setSharedBuffer(mFoldMeshBuffer);
+        mFoldShadowBatch = new ShadowBatch(mGL, mFoldMeshBuffer,
+                                           mFoldBaseShadow, mFoldEdgesShadow);
+
+        // GLES 3.0 is used if context supports
+        mIsGLES3Enabled = false;
+        mIsGLES3 = false;
+
+        // depth test is enabled by default
+        mIsDepthTestEnabled = true;
+        mIsDepthTest = true;
+        mIsStencilRejectionEnabled = false;
+        mIsStencilRejection = false;
+        mIsDebugMarkerEnabled = false;
+        mMVPMatrix = new float[16];
+        mMVPBuffer = new GLBuffer(mGL, GL_UNIFORM_BUFFER, GL_DYNAMIC_DRAW);
+        mMVPBuf = ByteBuffer.allocateDirect(mMVPMatrix.length << 2)
+                            .order(ByteOrder.nativeOrder())
+                            .asFloatBuffer();
+
+        // page texture array is disabled by default
+        mIsPageTextureArrayEnabled = false;
+        mIsPageTextureArray = false;
+        mPageTextureArray = null;
+        mMaxTextureSize = 0;
     }
 
     /**
@@ -368,6 +662,37 @@ public class PageFlip {
         return this;
     }
 
+    /**
+     * Set listener for shader warm-up
+     *
+     * @param listener a listener which is notified with duration of warm-up
+     * @return self
+     * @see #warmUp()
+     */
+    public PageFlip setOnWarmUpListener(OnWarmUpListener listener) {
+        mWarmUpListener = listener;
+        return this;
+    }
+
+    /**
+     * Set clock of flip animation
+     * <p>
+     * Animation is started at current time of clock and
+     * {@link #animating()} advances it to current time of clock. The default
+     * clock is {@link System#nanoTime()}, a virtual clock can be given to
+     * step animation by hand. Frame time of dynamic resolution is read from
+     * it too
+     * </p>
+     *
+     * @param clock clock of animation, null means the default clock
+     * @return self
+     * @see #animating(long)
+     */
+    public PageFlip setAnimationClock(AnimationClock clock) {
+        mAnimator.setClock(clock);
+        return this;
+    }
+
     /**
      * Sets pixels of each mesh
      * <p>The default value is 10 pixels for each mesh</p>
@@ -390,6 +715,565 @@ public class PageFlip {
         return mPixelsOfMesh;
     }
 
+    /**
+     * Enable/disable building mesh of fold page in parallel
+     * <p>
+     * It is disabled by default. When it is enabled, the back and front of
+     * fold page will be computed in two threads if the mesh count of fold page
+     * is large enough, for example: set 1 pixel of mesh on a high resolution
+     * screen. For a small mesh count, it is still computed in caller thread.
+     * The threshold is calibrated on device by measuring the cost of
+     * building back of fold page and handing it over to worker thread. The
+     * worker thread exits when it is idle or {@link #releasePrograms()} is
+     * called
+     * </p>
+     *
+     * @param enable true if build mesh in parallel
+     * @return self
+     */
+    public PageFlip enableParallelMeshBuild(boolean enable) {
+        mIsParallelMeshBuild = enable &&
+                               Runtime.getRuntime().availableProcessors() > 1;
+        if (!mIsParallelMeshBuild) {
+            shutdownMeshBuildExecutor();
+        }
+
+        return this;
+    }
+
+    /**
+     * Is building mesh of fold page in parallel enabled?
+     *
+     * @return true if parallel mesh build is enabled
+     */
+    public boolean isParallelMeshBuildEnabled() {
+        return mIsParallelMeshBuild;
+    }
+
+    /**
+     * Enable/disable drawing fold page and shadow with indexed triangles
+     * <p>
+     * By default, all meshes are drawn with triangle strips. When it is
+     * enabled, they are drawn as triangles with a static index buffer which
+     * keeps triangles in vertex cache friendly order, that lets GPU reuse the
+     * transformed vertexes on some devices.
+     * </p>
+     *
+     * @param enable true if draw meshes with indexed triangles
+     * @return self
+     */
+    public PageFlip enableIndexedMeshes(boolean enable) {
+        mFoldFrontVertexes.mIsIndexed = enable;
+        mFoldBackVertexes.mIsIndexed = enable;
+        mFoldEdgesShadow.mIsIndexed = enable;
+        mFoldBaseShadow.mIsIndexed = enable;
+        mFoldShadowBatch.mIsIndexed = enable;
+        return this;
+    }
+
+    /**
+     * Is drawing meshes with indexed triangles?
+     *
+     * @return true if indexed drawing is enabled
+     */
+    public boolean isIndexedMeshesEnabled() {
+        return mFoldFrontVertexes.mIsIndexed;
+    }
+
+    /**
+     * Enable or disable GL state cache
+     * <p>
+     * GL state cache drops the GL calls which don't change any state, for
+     * example: binding the same texture or using the same program again. It is
+     * enabled by default. If the GL states are changed outside of page flip in
+     * the same GL context, call {@link #invalidateGLStateCache()} before
+     * drawing a frame or disable cache.
+     * </p>
+     *
+     * @param isEnabled true if enabling GL state cache
+     * @return self
+     */
+    public PageFlip enableGLStateCache(boolean isEnabled) {
+        mStateCache.setEnabled(isEnabled);
+        return this;
+    }
+
+    /**
+     * Is GL state cache enabled?
+     *
+     * @return true if GL state cache is enabled
+     */
+    public boolean isGLStateCacheEnabled() {
+        return mStateCache.isEnabled();
+    }
+
+    /**
+     * Invalidate GL state cache
+     * <p>Call it if GL states are changed outside of page flip</p>
+     */
+    public void invalidateGLStateCache() {
+        mStateCache.invalidate();
+    }
+
+    /**
+     * Get GL backend which all GL calls of this instance are routed through
+     *
+     * @return GL state cache of this instance
+     */
+    GLBackend getGLBackend() {
+        return mGL;
+    }
+
+    /**
+     * Restore GL states of this instance which may be changed by other
+     * instances drawing in the same GL context: viewport, depth test and
+     * uniform buffer binding of MVP matrix
+     * <p>It should be called after the surface of instance is made current
+     * </p>
+     */
+    void restoreContextState() {
+        mGL.glViewport(0, 0, (int)mViewRect.surfaceW,
+                       (int)mViewRect.surfaceH);
+        if (mIsDepthTest) {
+            mGL.glEnable(GL_DEPTH_TEST);
+        }
+        else {
+            mGL.glDisable(GL_DEPTH_TEST);
+        }
+
+        if (mIsGLES3 && mMVPBuffer.isCreated()) {
+            mGL.glBindBufferBase(GL_UNIFORM_BUFFER,
+                                 GLProgram.MVP_BLOCK_BINDING,
+                                 mMVPBuffer.getBufferRef());
+        }
+    }
+
+    /**
+     * Enable or disable GLES 3.0
+     * <p>
+     * GLES 3.0 is disabled by default, once enabled it is only used when the
+     * backend supports it and GL context is created with GLES 3.0, otherwise
+     * GLES 2.0 is used. With GLES 3.0, vertex attributes are recorded in
+     * vertex array objects, page textures are allocated with immutable
+     * storage and MVP matrix is shared by all shader programs in a uniform
+     * buffer. It takes effect in the next {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param isEnabled true if enabling GLES 3.0
+     * @return self
+     */
+    public PageFlip enableGLES3(boolean isEnabled) {
+        mIsGLES3Enabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Is GLES 3.0 active in current GL context?
+     *
+     * @return true if GLES 3.0 is used for drawing
+     */
+    public boolean isGLES3Active() {
+        return mIsGLES3;
+    }
+
+    /**
+     * Enable or disable depth test
+     * <p>
+     * Depth test is enabled by default and orders pages, fold page and
+     * shadows by their z values. Without it, they are drawn in painter's
+     * order: unfold page and front of fold page, shadows of fold page, back
+     * of fold page. Surface can be created without depth buffer and no depth
+     * is cleared in every frame, it saves memory and bandwidth. It takes
+     * effect in the next {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param isEnabled true if enabling depth test
+     * @return self
+     */
+    public PageFlip enableDepthTest(boolean isEnabled) {
+        mIsDepthTestEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Is depth test active in current GL context?
+     *
+     * @return true if depth test is used for drawing
+     */
+    public boolean isDepthTestActive() {
+        return mIsDepthTest;
+    }
+
+    /**
+     * Enable or disable stencil rejection
+     * <p>
+     * It is disabled by default and only works without depth test, see
+     * {@link #enableDepthTest(boolean)}. When it is active, back of fold
+     * page is drawn first and marks its pixels in stencil buffer, unfold
+     * page, front of fold page and shadows skip shading the marked pixels
+     * which are covered by fold page. Surface must have a stencil buffer,
+     * otherwise it is inactive. With depth test, drawing back of fold page
+     * first already rejects the hidden pixels by early depth test. It takes
+     * effect in the next {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param isEnabled true if enabling stencil rejection
+     * @return self
+     */
+    public PageFlip enableStencilRejection(boolean isEnabled) {
+        mIsStencilRejectionEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Is stencil rejection active in current GL context?
+     *
+     * @return true if stencil test is used to reject covered pixels
+     */
+    public boolean isStencilRejectionActive() {
+        return mIsStencilRejection;
+    }
+
+    /**
+     * Enable or disable debug markers
+     * <p>
+     * It is disabled by default. When it is enabled, every drawing layer of
+     * page flip is wrapped in a group marker of GL backend, for example:
+     * back of fold page, front page and shadows. A recording backend can
+     * count overdraw of every layer by them, see
+     * {@link RecordingGLBackend#setOverdrawCounting(boolean)}
+     * </p>
+     *
+     * @param isEnabled true if enabling debug markers
+     * @return self
+     */
+    public PageFlip enableDebugMarkers(boolean isEnabled) {
+        mIsDebugMarkerEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Enable or disable page texture array
+     * <p>
+     * All page textures are put in one texture: a 2D texture array with GLES
+     * 3.0 or an atlas with GLES 2.0, every vertex of front page carries a
+     * layer index to select its texture. So the unfold part, the revealed
+     * part and the opposite page in double pages mode are drawn in one call
+     * without texture binding between them. Page textures may be scaled down
+     * to fit the atlas in max texture size of GL. It takes effect in the next
+     * {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param isEnabled true if enabling page texture array
+     * @return self
+     */
+    public PageFlip enablePageTextureArray(boolean isEnabled) {
+        mIsPageTextureArrayEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Is page texture array active in current GL context?
+     *
+     * @return true if page textures are in one texture array or atlas
+     */
+    public boolean isPageTextureArrayActive() {
+        return mIsPageTextureArray;
+    }
+
+    /**
+     * Enable or disable gradient shadow on back of fold page
+     * <p>A cheaper shader variant without gradient shadow is used if
+     * it is disabled</p>
+     *
+     * @param isEnabled true if enabling gradient shadow, it is enabled by
+     *                  default
+     * @return self
+     */
+    public PageFlip enableGradientShadowOfFold(boolean isEnabled) {
+        mIsFoldGradientEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Enable or disable low precision for color computing in shader
+     * <p>
+     * It is disabled by default. Enable it on fill rate bound device to use
+     * shader variant with lowp precision for color computing of fold back,
+     * texture coordinates are still computed with mediump precision
+     * </p>
+     *
+     * @param isEnabled true if enabling low precision
+     * @return self
+     */
+    public PageFlip enableLowPrecisionShader(boolean isEnabled) {
+        mIsLowPrecisionEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Enable or disable edge antialiasing of fold page
+     * <p>
+     * It is disabled by default. When it is enabled, shader variant of fold
+     * back fades alpha across one pixel at page edges, so the curled edges
+     * are smooth on a single sample surface without MSAA. Back of fold page
+     * is blended and drawn at last, it isn't used to reject covered pixels
+     * by depth test or stencil rejection
+     * </p>
+     *
+     * @param isEnabled true if enabling edge antialiasing
+     * @return self
+     */
+    public PageFlip enableEdgeAntialiasing(boolean isEnabled) {
+        mIsEdgeAntialiasingEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Is edge antialiasing of fold page enabled?
+     *
+     * @return true if page edges of fold back are antialiased
+     */
+    public boolean isEdgeAntialiasingEnabled() {
+        return mIsEdgeAntialiasingEnabled;
+    }
+
+    /**
+     * Enable or disable program binary cache
+     * <p>
+     * It is disabled by default and only works with GLES 3.0. Linked shader
+     * programs are saved in app cache directory and loaded next time instead
+     * of compiling shader scripts again, cached binaries are keyed by GL
+     * driver and scripts and the programs are compiled from scripts if their
+     * binaries are rejected. It takes effect in the next
+     * {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param isEnabled true if enabling program binary cache
+     * @return self
+     */
+    public PageFlip enableProgramBinaryCache(boolean isEnabled) {
+        mIsProgramBinaryCacheEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Enable or disable damage redraw of flip frame
+     * <p>
+     * It is disabled by default. When it is enabled, {@link #drawFlipFrame()}
+     * only clears and draws the region which is covered by fold page in the
+     * current and the last frame, the rest of frame is kept from the last
+     * frame. If surface content is preserved after swapping, for example: EGL
+     * surface has EGL_SWAP_BEHAVIOR with EGL_BUFFER_PRESERVED, the region is
+     * drawn in surface directly. Otherwise, the frame is drawn in an
+     * off-screen frame buffer which is copied to surface after drawing, it
+     * costs a full screen copy but saves the fill rate of page meshes
+     * </p>
+     *
+     * @param isEnabled true if enabling damage redraw
+     * @param isSurfacePreserved true if surface content is preserved after
+     *                           swapping
+     * @return self
+     */
+    public PageFlip enableDamageRedraw(boolean isEnabled,
+                                       boolean isSurfacePreserved) {
+        mIsDamageRedraw = isEnabled;
+        mIsSurfacePreserved = isSurfacePreserved;
+        mIsFullRedrawNeeded = true;
+        return this;
+    }
+
+    /**
+     * Is damage redraw enabled?
+     *
+     * @return true if damage redraw is enabled
+     */
+    public boolean isDamageRedrawEnabled() {
+        return mIsDamageRedraw;
+    }
+
+    /**
+     * Enable or disable stationary layer of flip frame
+     * <p>
+     * It is disabled by default. When it is enabled, the unfold pages are
+     * drawn into an off-screen frame buffer once at the beginning of flip,
+     * the following flip frames copy it and only draw the moving parts on
+     * it: fold page, the part which is revealed under fold page and shadows.
+     * The unfold part of page and the opposite page in double pages mode
+     * are not sampled from their textures again, it saves overdraw and
+     * texture bandwidth for one full screen copy. It takes effect in the
+     * next flip
+     * </p>
+     *
+     * @param isEnabled true if enabling stationary layer
+     * @return self
+     */
+    public PageFlip enableStationaryLayer(boolean isEnabled) {
+        mIsStationaryLayerEnabled = isEnabled;
+        mIsStationaryLayerDirty = true;
+        setUnfoldPartCached(isEnabled);
+        return this;
+    }
+
+    /**
+     * Is stationary layer enabled?
+     *
+     * @return true if stationary layer is enabled
+     */
+    public boolean isStationaryLayerEnabled() {
+        return mIsStationaryLayerEnabled;
+    }
+
+    /**
+     * Enable or disable dynamic resolution of flip frame
+     * <p>
+     * It is disabled by default. When it is enabled, flip frames are drawn
+     * into an off-screen frame buffer with surface size scaled by a factor
+     * in [minScale .. 1] and scaled up to surface. The factor is lowered
+     * when a frame takes longer than a refresh period of display, see
+     * {@link #setRefreshRate(float)}, and raised back when frames are fast
+     * enough again, the motion of flip hides the lost resolution. Page
+     * frame is always drawn with native resolution. Damage redraw is
+     * suspended while the factor is less than 1
+     * </p>
+     *
+     * @param isEnabled true if enabling dynamic resolution
+     * @param minScale min scale factor of resolution, (0 .. 1]
+     * @return self
+     * @throws IllegalArgumentException if minScale is out of range
+     */
+    public PageFlip enableDynamicResolution(boolean isEnabled,
+                                            float minScale) {
+        if (minScale <= 0 || minScale > 1) {
+            throw new IllegalArgumentException("Invalid min scale: " +
+                                               minScale);
+        }
+
+        mIsDynamicResolution = isEnabled;
+        mMinResolutionScale = minScale;
+        mResolutionScale = 1f;
+        mLastFlipFrameNanos = 0;
+        mFastFrameCount = 0;
+        return this;
+    }
+
+    /**
+     * Set refresh rate of display which flip frames are shown on
+     * <p>
+     * Frame time of dynamic resolution is compared with the refresh period,
+     * give {@link android.view.Display#getRefreshRate()} on 90Hz or 120Hz
+     * display. The default is 60Hz
+     * </p>
+     *
+     * @param fps refresh rate in frames per second
+     * @return self
+     * @throws IllegalArgumentException if fps isn't positive
+     */
+    public PageFlip setRefreshRate(float fps) {
+        if (!(fps > 0)) {
+            throw new IllegalArgumentException("Invalid refresh rate: " +
+                                               fps);
+        }
+
+        mRefreshPeriodNanos = (long)(1e9 / fps);
+        return this;
+    }
+
+    /**
+     * Is dynamic resolution enabled?
+     *
+     * @return true if dynamic resolution is enabled
+     */
+    public boolean isDynamicResolutionEnabled() {
+        return mIsDynamicResolution;
+    }
+
+    /**
+     * Get current resolution scale of flip frame
+     *
+     * @return resolution scale, 1 if it is native resolution
+     */
+    public float getResolutionScale() {
+        return mIsDynamicResolution ? mResolutionScale : 1f;
+    }
+
+    /**
+     * Set if unfold part of pages is cached in stationary layer
+     *
+     * @param isCached true if it is cached
+     */
+    private void setUnfoldPartCached(boolean isCached) {
+        for (Page page : mPages) {
+            if (page != null) {
+                page.setUnfoldPartCached(isCached);
+            }
+        }
+    }
+
+    /**
+     * Request a full redraw in the next flip frame
+     * <p>
+     * Call it if the part of flip frame out of fold region is changed with
+     * damage redraw or stationary layer, for example: page texture is changed
+     * during flipping
+     * </p>
+     */
+    public void requestFullRedraw() {
+        mIsFullRedrawNeeded = true;
+        mIsStationaryLayerDirty = true;
+    }
+
+    /**
+     * Set deformation model of fold page
+     * <p>
+     * The default model is {@link CylinderDeformation}. For low-end device,
+     * {@link FlatFoldDeformation} can be used to keep a steady frame rate, and
+     * {@link ConeDeformation} can be used for a more realistic curl on
+     * high-end device. Use {@link #getNanosPerFoldVertex()} or
+     * {@link DeformationBenchmark} to check the real cost of a model on
+     * device
+     * </p>
+     *
+     * @param model deformation model
+     * @return self
+     */
+    public PageFlip setDeformationModel(DeformationModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("Deformation model is null");
+        }
+
+        mDeformationModel = model;
+        mNanosPerFoldVertex = 0;
+        return this;
+    }
+
+    /**
+     * Get deformation model of fold page
+     *
+     * @return deformation model
+     */
+    public DeformationModel getDeformationModel() {
+        return mDeformationModel;
+    }
+
+    /**
+     * Get cost of deforming a vertex of fold page with current deformation
+     * model
+     * <p>
+     * Only the deform loop of model is measured by
+     * {@link DeformationBenchmark}, it is measured once for every model
+     * </p>
+     *
+     * @return nanoseconds of deforming a vertex
+     */
+    public float getNanosPerFoldVertex() {
+        if (mNanosPerFoldVertex == 0) {
+            mNanosPerFoldVertex =
+                    DeformationBenchmark.nanosPerVertex(mDeformationModel);
+        }
+        return mNanosPerFoldVertex;
+    }
+
     /**
      * Set ratio of semi-perimeter of fold cylinder
      * <p>
@@ -519,29 +1403,291 @@ public class PageFlip {
     }
 
     /**
-     * Handle surface creation event
-     *
-     * @throws PageFlipException if failed to compile and link OpenGL shader
+     * Handle surface creation event
+     *
+     * @throws PageFlipException if failed to compile and link OpenGL shader
+     */
+    public void onSurfaceCreated() throws PageFlipException {
+        // GL context may be recreated, all cached states and buffer objects
+        // are out of date
+        mStateCache.invalidate();
+        invalidateVBOs();
+        mGL.glClearColor(0, 0, 0, 1f);
+        mGL.glClearDepthf(1.0f);
+        mIsDepthTest = mIsDepthTestEnabled;
+        if (mIsDepthTest) {
+            mGL.glEnable(GL_DEPTH_TEST);
+        }
+        else {
+            mGL.glDisable(GL_DEPTH_TEST);
+        }
+        // stencil rejection needs stencil buffer in surface and off-screen
+        // frame buffers
+        final int[] stencilBits = new int[1];
+        mGL.glGetIntegerv(GL_STENCIL_BITS, stencilBits, 0);
+        mIsStencilRejection = mIsStencilRejectionEnabled && !mIsDepthTest &&
+                              stencilBits[0] > 0;
+        if (mIsStencilRejection) {
+            mGL.glClearStencil(0);
+        }
+        mDamageFrameBuffer.setDepth(mIsDepthTest)
+                          .setStencil(mIsStencilRejection);
+        mDynamicFrameBuffer.setDepth(mIsDepthTest)
+                           .setStencil(mIsStencilRejection);
+
+        // check if GLES 3.0 can be used in new GL context
+        String version = mGL.glGetString(GL_VERSION);
+        mIsGLES3 = mIsGLES3Enabled && mGL.hasGLES30() && version != null &&
+                   version.startsWith("OpenGL ES 3");
+        setGLES3(mIsGLES3);
+
+        // shader programs select page texture from array by layer index
+        final int[] maxTextureSize = new int[1];
+        mGL.glGetIntegerv(GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+        mMaxTextureSize = maxTextureSize[0];
+        mIsPageTextureArray = mIsPageTextureArrayEnabled && mMaxTextureSize > 0;
+        mShaderDefines = mIsPageTextureArray ?
+                         new String[] {VertexProgram.DEFINE_PAGE_ARRAY} :
+                         new String[0];
+
+        // load programs from binary cache if it is enabled
+        mProgramBinaryCache = null;
+        if (mIsGLES3 && mIsProgramBinaryCacheEnabled) {
+            File dir = new File(mContext.getCacheDir(), PROGRAM_BINARY_DIR);
+            mProgramBinaryCache = new ProgramBinaryCache(mGL, dir);
+        }
+
+        // every new GL context needs to be warmed up
+        mIsWarmUpNeeded = true;
+
+        // programs of the old GL context are gone with it, but they are
+        // still alive if other instances in its share group are using them
+        releasePrograms(false);
+        mResources = mSharedResources;
+
+        try {
+            // init shader programs or acquire them from shared resources
+            mVertexProgram = acquireProgram(new VertexProgram(mGL),
+                                            R.raw.vertex_shader,
+                                            R.raw.fragment_shader,
+                                            mShaderDefines);
+            mFoldBackVertexProgram = acquireProgram(
+                    new FoldBackVertexProgram(mGL),
+                    R.raw.fold_back_vertex_shader,
+                    R.raw.fold_back_fragment_shader,
+                    mShaderDefines);
+            mFoldBackVariants[FoldBackVertexProgram.VARIANT_FULL] =
+                    mFoldBackVertexProgram;
+            mShadowVertexProgram = acquireProgram(
+                    new ShadowVertexProgram(mGL),
+                    R.raw.shadow_vertex_shader,
+                    R.raw.shadow_fragment_shader);
+        }
+        catch (PageFlipException e) {
+            releasePrograms(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Set shared GL resources
+     * <p>
+     * Give the same resources to page flip instances whose GL contexts are
+     * in one share group, shader programs are compiled once and shared by
+     * them, see {@link SharedGLResources}. Programs aren't shared by default.
+     * It takes effect in the next {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param resources shared GL resources, null if programs aren't shared
+     * @return self
+     */
+    public PageFlip setSharedResources(SharedGLResources resources) {
+        mSharedResources = resources != null ? resources :
+                                               new SharedGLResources();
+        return this;
+    }
+
+    /**
+     * Set source of shader scripts
+     * <p>
+     * Scripts are read from raw resources of context by default, JVM tests
+     * without android context can read them from elsewhere. It takes effect
+     * in the next {@link #onSurfaceCreated()}
+     * </p>
+     *
+     * @param source source of shader scripts
+     * @return self
+     */
+    PageFlip setShaderSource(ShaderSource source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Shader source is null");
+        }
+
+        mShaderSource = source;
+        return this;
+    }
+
+    /**
+     * Release shader programs of this instance
+     * <p>
+     * It should be called in GL thread when this instance isn't used any more
+     * but its GL context is still alive, programs are deleted if they aren't
+     * used by other instances. Worker thread of parallel mesh build is also
+     * stopped. {@link #onSurfaceCreated()} is needed before drawing again
+     * </p>
+     */
+    public void releasePrograms() {
+        releasePrograms(true);
+        shutdownMeshBuildExecutor();
+    }
+
+    /**
+     * Acquire program from shared resources, compile it if it isn't in
+     * resources and put it into resources
+     *
+     * @param program new program which isn't initiated
+     * @param vertexResId vertex shader script id
+     * @param fragmentResId fragment shader script id
+     * @param defines macros defined in shader scripts
+     * @return program in shared resources
+     * @throws PageFlipException if fail to compile program
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends GLProgram> T acquireProgram(T program,
+                                                   int vertexResId,
+                                                   int fragmentResId,
+                                                   String... defines)
+                                                    throws PageFlipException {
+        program.setGLES3(mIsGLES3)
+               .setDefines(defines)
+               .setBinaryCache(mProgramBinaryCache);
+        final GLProgram shared = mResources.acquireProgram(program.getKey());
+        if (shared != null) {
+            return (T)shared;
+        }
+
+        program.init(mShaderSource, vertexResId, fragmentResId);
+        mResources.putProgram(program);
+        return program;
+    }
+
+    /**
+     * Release all programs to shared resources
+     *
+     * @param isDeleted true if delete programs which aren't used by others,
+     *                  false if the GL context is lost
+     */
+    private void releasePrograms(boolean isDeleted) {
+        if (mResources == null) {
+            return;
+        }
+
+        // a failed variant refers to the full featured variant
+        for (int i = 0; i < mFoldBackVariants.length; ++i) {
+            final FoldBackVertexProgram variant = mFoldBackVariants[i];
+            if (variant != null &&
+                (i == FoldBackVertexProgram.VARIANT_FULL ||
+                 variant != mFoldBackVertexProgram)) {
+                mResources.releaseProgram(variant, isDeleted);
+            }
+        }
+        Arrays.fill(mFoldBackVariants, null);
+        if (mVertexProgram != null) {
+            mResources.releaseProgram(mVertexProgram, isDeleted);
+        }
+        if (mShadowVertexProgram != null) {
+            mResources.releaseProgram(mShadowVertexProgram, isDeleted);
+        }
+
+        // released programs may be used by others, never release them again
+        mVertexProgram = null;
+        mFoldBackVertexProgram = null;
+        mShadowVertexProgram = null;
+        mResources = null;
+    }
+
+    /**
+     * Use vertex program and upload MVP matrix of this instance
+     *
+     * @param program vertex program or fold back program
+     */
+    private void useProgram(VertexProgram program) {
+        mGL.glUseProgram(program.mProgramRef);
+        program.updateMVPMatrix(mMVPMatrix);
+    }
+
+    /**
+     * Use shadow program and upload MVP matrix of this instance
+     *
+     * @param program shadow program
+     */
+    private void useProgram(ShadowVertexProgram program) {
+        mGL.glUseProgram(program.mProgramRef);
+        program.updateMVPMatrix(mMVPMatrix);
+    }
+
+    /**
+     * Delete all GL resources of this instance
+     * <p>
+     * It should be called in GL thread when the surface of this instance is
+     * destroyed but its GL context is still alive, for example a surface is
+     * removed from {@link PageFlipRenderHost}. Buffer objects, vertex array
+     * objects, frame buffers and page textures are deleted and programs are
+     * released, see {@link #releasePrograms()}. {@link #onSurfaceCreated()}
+     * and {@link #onSurfaceChanged(int, int)} are needed before drawing
+     * again, page textures should be loaded again too
+     * </p>
+     */
+    public void deleteGLResources() {
+        mFoldMeshBuffer.delete();
+        mFoldFrontVertexes.deleteVBOs();
+        mFoldBackVertexes.deleteVBOs();
+        mFoldEdgesShadow.deleteVBO();
+        mFoldBaseShadow.deleteVBO();
+        mFoldShadowBatch.deleteVBO();
+        mMVPBuffer.delete();
+        mDamageFrameBuffer.delete();
+        mStationaryLayer.delete();
+        mDynamicFrameBuffer.delete();
+
+        // page textures are freed to texture array before it is deleted
+        for (Page page : mPages) {
+            if (page != null) {
+                page.deleteAllTextures();
+                page.deleteVBO();
+            }
+        }
+        if (mPageTextureArray != null) {
+            mPageTextureArray.delete();
+        }
+
+        releasePrograms();
+    }
+
+    /**
+     * Forget all buffer objects which are released with the old GL context
+     * <p>Nothing is deleted, see {@link #deleteGLResources()} if the context
+     * is still alive</p>
      */
-    public void onSurfaceCreated() throws PageFlipException {
-        glClearColor(0, 0, 0, 1f);
-        glClearDepthf(1.0f);
-        glEnable(GL_DEPTH_TEST);
-
-        try {
-            // init shader programs
-            mVertexProgram.init(mContext);
-            mFoldBackVertexProgram.init(mContext);
-            mShadowVertexProgram.init(mContext);
-
-            // create gradient shadow texture
-            createGradientShadowTexture();
+    private void invalidateVBOs() {
+        mFoldMeshBuffer.invalidate();
+        mFoldFrontVertexes.invalidateVBOs();
+        mFoldBackVertexes.invalidateVBOs();
+        mFoldEdgesShadow.invalidateVBO();
+        mFoldBaseShadow.invalidateVBO();
+        mFoldShadowBatch.invalidateVBO();
+        mMVPBuffer.invalidate();
+        mDamageFrameBuffer.invalidate();
+        mStationaryLayer.invalidate();
+        mDynamicFrameBuffer.invalidate();
+        if (mPageTextureArray != null) {
+            mPageTextureArray.invalidate();
         }
-        catch (PageFlipException e) {
-            mVertexProgram.delete();
-            mFoldBackVertexProgram.delete();
-            mShadowVertexProgram.delete();
-            throw e;
+
+        for (Page page : mPages) {
+            if (page != null) {
+                page.invalidateVBO();
+            }
         }
     }
 
@@ -555,39 +1701,115 @@ public class PageFlip {
     public void onSurfaceChanged(int width, int height) throws
                                                         PageFlipException {
         mViewRect.set(width, height);
-        glViewport(0, 0, width, height);
-        mVertexProgram.initMatrix(-mViewRect.halfW, mViewRect.halfW,
-                                  -mViewRect.halfH, mViewRect.halfH);
+        mGL.glViewport(0, 0, width, height);
+        mDamageFrameBuffer.setSize(width, height);
+        mStationaryLayer.setSize(width, height);
+        mDynamicFrameBuffer.setSize(width, height);
+        mIsFullRedrawNeeded = true;
+        mIsStationaryLayerDirty = true;
+        VertexProgram.initMatrix(mMVPMatrix,
+                                 -mViewRect.halfW, mViewRect.halfW,
+                                 -mViewRect.halfH, mViewRect.halfH);
+        if (mIsGLES3) {
+            uploadMVPMatrix();
+        }
+
         computeMaxMeshCount();
         createPages();
     }
 
+    /**
+     * Set GLES 3.0 flag for meshes and pages
+     * <p>Instanced draws aren't used in GLES 3.0 path: a flip frame draws
+     * one front fold, one back fold and one shadow batch, every mesh has its
+     * own geometry recomputed in every frame and edge and base shadows are
+     * already merged into one draw call, there is no repeated geometry which
+     * instancing could draw in one call</p>
+     *
+     * @param isGLES3 true if GLES 3.0 is active
+     */
+    private void setGLES3(boolean isGLES3) {
+        mFoldFrontVertexes.enableVAO(isGLES3);
+        mFoldBackVertexes.enableVAO(isGLES3);
+        mFoldEdgesShadow.enableVAO(isGLES3);
+        mFoldBaseShadow.enableVAO(isGLES3);
+        mFoldShadowBatch.enableVAO(isGLES3);
+
+        for (Page page : mPages) {
+            if (page != null) {
+                page.setGLES3(isGLES3);
+            }
+        }
+    }
+
+    /**
+     * Upload MVP matrix to uniform buffer and bind it to the binding point of
+     * MVP uniform block in all programs
+     */
+    private void uploadMVPMatrix() {
+        mMVPBuf.put(mMVPMatrix).position(0);
+        mMVPBuffer.upload(mMVPBuf, mMVPMatrix.length << 2);
+        mGL.glBindBufferBase(GL_UNIFORM_BUFFER, GLProgram.MVP_BLOCK_BINDING,
+                             mMVPBuffer.getBufferRef());
+    }
+
     /**
      * Create pages
      */
     private void createPages() {
-        // release textures hold in pages
+        // release textures and buffer objects hold in pages
         if (mPages[FIRST_PAGE] != null) {
             mPages[FIRST_PAGE].deleteAllTextures();
+            mPages[FIRST_PAGE].deleteVBO();
         }
 
         if (mPages[SECOND_PAGE] != null) {
             mPages[SECOND_PAGE].deleteAllTextures();
+            mPages[SECOND_PAGE].deleteVBO();
         }
 
         // landscape
         if (mPageMode == AUTO_PAGE_MODE &&
             mViewRect.surfaceW > mViewRect.surfaceH) {
             mPages[FIRST_PAGE] = new Page(mViewRect.left, 0,
-                                          mViewRect.top, mViewRect.bottom);
+                                          mViewRect.top, mViewRect.bottom,
+                                          mGL);
             mPages[SECOND_PAGE] = new Page(0, mViewRect.right,
-                                           mViewRect.top, mViewRect.bottom);
+                                           mViewRect.top, mViewRect.bottom,
+                                           mGL);
         }
         else {
             mPages[FIRST_PAGE] = new Page(mViewRect.left, mViewRect.right,
-                                          mViewRect.top, mViewRect.bottom);
+                                          mViewRect.top, mViewRect.bottom,
+                                          mGL);
             mPages[SECOND_PAGE] = null;
         }
+
+        // all pages share one texture array, every page has 3 textures at
+        // most. GLES 3.0 supports 256 array layers at least, it is enough
+        if (mPageTextureArray != null) {
+            mPageTextureArray.delete();
+            mPageTextureArray = null;
+        }
+
+        if (mIsPageTextureArray) {
+            final Page page = mPages[FIRST_PAGE];
+            final int count = mPages[SECOND_PAGE] != null ? 6 : 3;
+            mPageTextureArray = PageTextureArray.create(mGL, mIsGLES3,
+                                                        (int)page.width,
+                                                        (int)page.height,
+                                                        count,
+                                                        mMaxTextureSize);
+        }
+
+        for (Page page : mPages) {
+            if (page != null) {
+                page.setGLES3(mIsGLES3);
+                page.setTextureArray(mPageTextureArray);
+                page.setUnfoldPartCached(mIsStationaryLayerEnabled);
+                page.setPainterOrder(!mIsDepthTest);
+            }
+        }
     }
 
     /**
@@ -776,8 +1998,8 @@ public class PageFlip {
         final GLPoint originP = page.originP;
         final GLPoint diagonalP = page.diagonalP;
         final boolean hasSecondPage = mPages[SECOND_PAGE] != null;
-        Point start = new Point((int)mTouchP.x, (int)mTouchP.y);
-        Point end = new Point(0, 0);
+        GLPointF start = new GLPointF((int)mTouchP.x, (int)mTouchP.y);
+        GLPointF end = new GLPointF(0, 0);
 
         // forward flipping
         if (mFlipState == PageFlipState.FORWARD_FLIP) {
@@ -813,19 +2035,19 @@ public class PageFlip {
             mFlipState = PageFlipState.END_FLIP;
             page.setOriginAndDiagonalPoints(hasSecondPage, -touchY);
 
-            // if enable clicking to flip, compute scroller points for animation
+            // if enable clicking to flip, compute animator points for animation
             if (mIsClickToFlip && Math.abs(touchX - mStartTouchP.x) < 2) {
                 computeScrollPointsForClickingFlip(touchX, start, end);
             }
         }
 
-        // start scroller for animating
+        // start animator for animating
         if (mFlipState == PageFlipState.FORWARD_FLIP ||
             mFlipState == PageFlipState.BACKWARD_FLIP ||
             mFlipState == PageFlipState.RESTORE_FLIP) {
-            mScroller.startScroll(start.x, start.y,
-                                  end.x - start.x, end.y - start.y,
-                                  duration);
+            mAnimator.start(start.x, start.y,
+                            end.x - start.x, end.y - start.y,
+                            duration);
             return true;
         }
 
@@ -846,15 +2068,15 @@ public class PageFlip {
     }
 
     /**
-     * Compute scroller points for animating
+     * Compute animator points for animating
      *
      * @param x x of clicking point
-     * @param start start point of scroller will be set
-     * @param end end point of scroller will be set
+     * @param start start point of animator will be set
+     * @param end end point of animator will be set
      */
     private void computeScrollPointsForClickingFlip(float x,
-                                                    Point start,
-                                                    Point end) {
+                                                    GLPointF start,
+                                                    GLPointF end) {
         Page page = mPages[FIRST_PAGE];
         GLPoint originP = page.originP;
         GLPoint diagonalP = page.diagonalP;
@@ -912,21 +2134,38 @@ public class PageFlip {
     }
 
     /**
-     * Compute animating and check if it can continue
+     * Compute animating at current time of animation clock and check if it
+     * can continue
      *
      * @return true animating is continue or it is stopped
+     * @see #animating(long)
      */
     public boolean animating() {
+        return animating(mAnimator.now());
+    }
+
+    /**
+     * Compute animating at given frame time and check if it can continue
+     * <p>
+     * Position of animation is computed from frame time, give vsync frame
+     * time of Choreographer to get exact position on any refresh rate, a late
+     * frame skips ahead to its position. Frame time must be in the base of
+     * animation clock, see {@link #setAnimationClock(AnimationClock)}
+     * </p>
+     *
+     * @param frameTimeNanos frame time in nanoseconds
+     * @return true animating is continue or it is stopped
+     */
+    public boolean animating(long frameTimeNanos) {
         final Page page = mPages[FIRST_PAGE];
         final GLPoint originP = page.originP;
         final GLPoint diagonalP = page.diagonalP;
 
         // is to end animating?
-        boolean isAnimating = !mScroller.isFinished();
+        boolean isAnimating = mAnimator.compute(frameTimeNanos);
         if (isAnimating) {
             // get new (x, y)
-            mScroller.computeScrollOffset();
-            mTouchP.set(mScroller.getCurrX(), mScroller.getCurrY());
+            mTouchP.set(mAnimator.getCurrX(), mAnimator.getCurrY());
 
             // for backward and restore flip, compute x to check if it can
             // continue to flip
@@ -1003,142 +2242,874 @@ public class PageFlip {
         else if (mIsVertical) {
             computeVertexesWhenVertical();
         }
-        else {
-            computeVertexesWhenSlope();
+        else {
+            computeVertexesWhenSlope();
+        }
+
+        return isAnimating;
+    }
+
+    /**
+     * Is animating ?
+     *
+     * @return true if page is flipping
+     */
+    public boolean isAnimating() {
+        return !mAnimator.isFinished();
+    }
+
+    /**
+     * Abort animating
+     */
+    public void abortAnimating() {
+        mAnimator.abort();
+        if (mFlipState == PageFlipState.FORWARD_FLIP) {
+            mFlipState = PageFlipState.END_WITH_FORWARD;
+        }
+        else if (mFlipState == PageFlipState.BACKWARD_FLIP) {
+            mFlipState = PageFlipState.END_WITH_BACKWARD;
+        }
+        else if (mFlipState == PageFlipState.RESTORE_FLIP) {
+            mFlipState = PageFlipState.END_WITH_RESTORE;
+        }
+    }
+
+    /**
+     * Is animation stated?
+     *
+     * @return true if flip is started
+     */
+    public boolean isStartedFlip() {
+        return mFlipState == PageFlipState.BACKWARD_FLIP ||
+               mFlipState == PageFlipState.FORWARD_FLIP ||
+               mFlipState == PageFlipState.RESTORE_FLIP;
+    }
+
+    /**
+     * The moving is ended?
+     *
+     * @return true if flip is ended
+     */
+    public boolean isEndedFlip() {
+        return mFlipState == PageFlipState.END_FLIP ||
+               mFlipState == PageFlipState.END_WITH_RESTORE ||
+               mFlipState == PageFlipState.END_WITH_BACKWARD ||
+               mFlipState == PageFlipState.END_WITH_FORWARD;
+    }
+
+    /**
+     * Get the first page
+     * First page is currently operating page which means it is the page user
+     * finger is clicking or moving
+     *
+     * @return flip state, See {@link PageFlipState}
+     */
+    public Page getFirstPage() {
+        return mPages[FIRST_PAGE];
+    }
+
+    /**
+     * Get the second page
+     * <p>
+     * Second page is only valid in double page mode, if it is null, that means
+     * there is only one page for whole screen whatever the screen is portrait
+     * or landscape
+     * </p>
+     *
+     * @return the second page, null if no second page
+     */
+    public Page getSecondPage() {
+        return mPages[SECOND_PAGE];
+    }
+
+    /**
+     * Delete unused textures
+     */
+    public void deleteUnusedTextures() {
+        mPages[FIRST_PAGE].deleteUnusedTextures();
+        if (mPages[SECOND_PAGE] != null) {
+            mPages[SECOND_PAGE].deleteUnusedTextures();
+        }
+    }
+
+    /**
+     * Draw flipping frame
+     */
+    public void drawFlipFrame() {
+        final boolean hasLayer = updateStationaryLayer();
+        final boolean isScaled = beginDynamicResolution();
+        final boolean isDamageRedraw = !isScaled && beginDamageRedraw();
+        final boolean hasSecondPage = mPages[SECOND_PAGE] != null;
+        if (hasLayer) {
+            // stationary layer covers the whole frame, color isn't cleared
+            final int mask = getClearMask() & ~GL_COLOR_BUFFER_BIT;
+            if (mask != 0) {
+                mGL.glClear(mask);
+            }
+
+            pushMarker(MARKER_FRAME_COPY);
+
+            int dstRef = 0;
+            if (isScaled) {
+                dstRef = mDynamicFrameBuffer.getFrameBufferRef();
+            }
+            else if (isDamageRedraw && !mIsSurfacePreserved) {
+                dstRef = mDamageFrameBuffer.getFrameBufferRef();
+            }
+            copyFrameBuffer(mStationaryLayer, mStationaryLayer.getWidth(),
+                            mStationaryLayer.getHeight(), dstRef,
+                            getScaledSize(mStationaryLayer.getWidth()),
+                            getScaledSize(mStationaryLayer.getHeight()));
+            popMarker();
+        }
+        else {
+            mGL.glClear(getClearMask());
+        }
+
+        // 1. draw back of fold page first with depth test or stencil
+        // rejection, it is covered by nothing and the hidden pixels of other
+        // parts can be rejected before shading, it is drawn at last in
+        // painter's order or with edge antialiasing since its edge pixels
+        // are blended with other parts
+        final boolean isStencilRejection = mIsStencilRejection &&
+                                           !mIsEdgeAntialiasingEnabled;
+        final boolean isFoldBackFirst = !mIsEdgeAntialiasingEnabled &&
+                                        mIsDepthTest;
+        if (isStencilRejection) {
+            mGL.glEnable(GL_STENCIL_TEST);
+            mGL.glStencilFunc(GL_ALWAYS, 1, 0xFF);
+            mGL.glStencilOp(GL_KEEP, GL_KEEP, GL_REPLACE);
+            drawFoldBack(hasSecondPage);
+            mGL.glStencilFunc(GL_NOTEQUAL, 1, 0xFF);
+            mGL.glStencilOp(GL_KEEP, GL_KEEP, GL_KEEP);
+        }
+        else if (isFoldBackFirst) {
+            drawFoldBack(hasSecondPage);
+        }
+
+        // 2. draw unfold page and front of fold page
+        pushMarker(MARKER_FRONT_PAGE);
+        useProgram(mVertexProgram);
+        mGL.glActiveTexture(GL_TEXTURE0);
+        // the second page is drawn together with front page if page texture
+        // array is used, it is in stationary layer if the layer is used
+        mPages[FIRST_PAGE].drawFrontPage(mVertexProgram,
+                                         mFoldFrontVertexes,
+                                         mPages[SECOND_PAGE]);
+        popMarker();
+        if (hasSecondPage && !mIsPageTextureArray && !hasLayer) {
+            pushMarker(MARKER_SECOND_PAGE);
+            mPages[SECOND_PAGE].drawFullPage(mVertexProgram, true);
+            popMarker();
+        }
+
+        // 3. draw edge and base shadow of fold parts in one batch, skip
+        // shadow program if both of them are invisible
+        if (mFoldShadowBatch.isVisible()) {
+            pushMarker(MARKER_FOLD_SHADOWS);
+            useProgram(mShadowVertexProgram);
+            mFoldShadowBatch.draw(mShadowVertexProgram);
+            popMarker();
+        }
+
+        if (isStencilRejection) {
+            mGL.glDisable(GL_STENCIL_TEST);
+        }
+        else if (!isFoldBackFirst) {
+            drawFoldBack(hasSecondPage);
+        }
+
+        if (isDamageRedraw) {
+            endDamageRedraw();
+        }
+        else if (isScaled) {
+            endDynamicResolution();
+        }
+
+        // restore default vertex array object for drawings outside page flip
+        if (mIsGLES3) {
+            GLVertexArray.unbind(mGL);
+        }
+    }
+
+    /**
+     * Begin dynamic resolution: adjust resolution scale by the time of the
+     * last flip frame and bind off-screen frame buffer with the scaled
+     * viewport if the scale is less than 1
+     *
+     * @return true if flip frame is drawn with scaled resolution
+     */
+    private boolean beginDynamicResolution() {
+        if (!mIsDynamicResolution) {
+            mDynamicFrameBuffer.delete();
+            return false;
+        }
+
+        // the interval between two flip frames drawn back to back is the
+        // frame time, a long gap is idle time between requested frames.
+        // Time is read from animation clock which is the base of vsync
+        final long now = mAnimator.now();
+        if (mLastFlipFrameNanos > 0) {
+            final long nanos = now - mLastFlipFrameNanos;
+            if (nanos > mRefreshPeriodNanos * MAX_FRAME_GAP_PERIODS) {
+                mFastFrameCount = 0;
+            }
+            else if (nanos > mRefreshPeriodNanos * SLOW_FRAME_RATIO) {
+                mResolutionScale = Math.max(mMinResolutionScale,
+                                            mResolutionScale -
+                                            RESOLUTION_SCALE_STEP);
+                mFastFrameCount = 0;
+            }
+            else if (nanos < mRefreshPeriodNanos * FAST_FRAME_RATIO &&
+                     ++mFastFrameCount >= FAST_FRAMES_TO_SCALE_UP) {
+                mResolutionScale = Math.min(1f, mResolutionScale +
+                                                RESOLUTION_SCALE_STEP);
+                mFastFrameCount = 0;
+            }
+        }
+        mLastFlipFrameNanos = now;
+
+        if (mResolutionScale >= 1f) {
+            return false;
+        }
+
+        if (!mDynamicFrameBuffer.bind()) {
+            Log.w(TAG, "Can't create frame buffer, dynamic resolution is " +
+                       "disabled");
+            mIsDynamicResolution = false;
+            return false;
+        }
+
+        // frame buffer keeps surface size, only a part of it is drawn, the
+        // scale can be changed without recreating it
+        mGL.glViewport(0, 0, getScaledSize(mDynamicFrameBuffer.getWidth()),
+                       getScaledSize(mDynamicFrameBuffer.getHeight()));
+        // surface and off-screen frame buffer of damage redraw are fully
+        // covered by scaled frame
+        mIsFullRedrawNeeded = true;
+        return true;
+    }
+
+    /**
+     * End dynamic resolution: scale the drawn part of off-screen frame
+     * buffer up to the default frame buffer
+     */
+    private void endDynamicResolution() {
+        final int w = mDynamicFrameBuffer.getWidth();
+        final int h = mDynamicFrameBuffer.getHeight();
+        mGL.glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        mGL.glViewport(0, 0, w, h);
+        pushMarker(MARKER_FRAME_COPY);
+        copyFrameBuffer(mDynamicFrameBuffer, getScaledSize(w),
+                        getScaledSize(h), 0, w, h);
+        popMarker();
+    }
+
+    /**
+     * Get size scaled by current resolution scale
+     *
+     * @param size size in pixels
+     * @return scaled size, at least 1 pixel
+     */
+    private int getScaledSize(int size) {
+        if (!mIsDynamicResolution || mResolutionScale >= 1f) {
+            return size;
+        }
+
+        return Math.max(1, Math.round(size * mResolutionScale));
+    }
+
+    /**
+     * Draw back of fold page with the cheapest program variant
+     *
+     * @param hasSecondPage has the second page in double pages mode?
+     */
+    private void drawFoldBack(boolean hasSecondPage) {
+        pushMarker(MARKER_FOLD_BACK);
+        final FoldBackVertexProgram foldBackProgram =
+                getFoldBackVertexProgram(hasSecondPage);
+        useProgram(foldBackProgram);
+        mGL.glActiveTexture(GL_TEXTURE0);
+        if (mIsEdgeAntialiasingEnabled) {
+            // pixels per unit of texture coordinate for the variant without
+            // derivatives, page size is in surface pixels
+            if (foldBackProgram.mEdgeScaleLoc > -1) {
+                final Page page = mPages[FIRST_PAGE];
+                mGL.glUniform2f(foldBackProgram.mEdgeScaleLoc,
+                                page.texWidth * mResolutionScale,
+                                page.texHeight * mResolutionScale);
+            }
+            mGL.glEnable(GL_BLEND);
+            mGL.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        }
+
+        mFoldBackVertexes.draw(foldBackProgram,
+                               mPages[FIRST_PAGE],
+                               hasSecondPage);
+        if (mIsEdgeAntialiasingEnabled) {
+            mGL.glDisable(GL_BLEND);
+        }
+        popMarker();
+    }
+
+    /**
+     * Begin a group of drawings with marker if debug markers are enabled
+     *
+     * @param marker name of group
+     */
+    private void pushMarker(String marker) {
+        if (mIsDebugMarkerEnabled) {
+            mGL.glPushGroupMarker(marker);
+        }
+    }
+
+    /**
+     * End the last group of drawings if debug markers are enabled
+     */
+    private void popMarker() {
+        if (mIsDebugMarkerEnabled) {
+            mGL.glPopGroupMarker();
+        }
+    }
+
+    /**
+     * Get buffer bits of clearing frame, depth buffer is only cleared with
+     * depth test and stencil buffer is only cleared with stencil rejection
+     * which isn't used with edge antialiasing
+     *
+     * @return buffer bits
+     */
+    private int getClearMask() {
+        int mask = GL_COLOR_BUFFER_BIT;
+        if (mIsDepthTest) {
+            mask |= GL_DEPTH_BUFFER_BIT;
+        }
+        if (mIsStencilRejection && !mIsEdgeAntialiasingEnabled) {
+            mask |= GL_STENCIL_BUFFER_BIT;
+        }
+        return mask;
+    }
+
+    /**
+     * Draw unfold pages into stationary layer if it is enabled and out of
+     * date: at the beginning of flip or after the first texture of any page
+     * is changed
+     * <p>The default frame buffer is bound after drawing</p>
+     *
+     * @return true if stationary layer can be used
+     */
+    private boolean updateStationaryLayer() {
+        if (!mIsStationaryLayerEnabled) {
+            mStationaryLayer.delete();
+            return false;
+        }
+
+        final Page first = mPages[FIRST_PAGE];
+        final Page second = mPages[SECOND_PAGE];
+        final int secondTexID = second != null ? second.getFirstTextureID() :
+                                                 0;
+        if (!mIsStationaryLayerDirty && mStationaryLayer.isValid() &&
+            mStationaryTexIDs[0] == first.getFirstTextureID() &&
+            mStationaryTexIDs[1] == secondTexID) {
+            return true;
+        }
+
+        if (!mStationaryLayer.bind()) {
+            Log.w(TAG, "Can't create frame buffer, stationary layer is " +
+                       "disabled");
+            mIsStationaryLayerEnabled = false;
+            setUnfoldPartCached(false);
+            return false;
+        }
+
+        pushMarker(MARKER_STATIONARY_LAYER);
+        mGL.glClear(GL_COLOR_BUFFER_BIT);
+        useProgram(mVertexProgram);
+        mGL.glActiveTexture(GL_TEXTURE0);
+        first.drawFullPage(mVertexProgram, true);
+        if (second != null) {
+            second.drawFullPage(mVertexProgram, true);
+        }
+        popMarker();
+        mGL.glBindFramebuffer(GL_FRAMEBUFFER, 0);
+
+        mStationaryTexIDs[0] = first.getFirstTextureID();
+        mStationaryTexIDs[1] = secondTexID;
+        mIsStationaryLayerDirty = false;
+        // the part out of fold region is changed with layer
+        mIsFullRedrawNeeded = true;
+        return true;
+    }
+
+    /**
+     * Begin damage redraw of flip frame if it is enabled
+     * <p>
+     * Bind off-screen frame buffer if surface isn't preserved and set scissor
+     * to the union of fold regions of current and last frame. The whole frame
+     * is drawn if a full redraw is requested or off-screen frame buffer is
+     * created again
+     * </p>
+     *
+     * @return true if damage redraw is begun
+     */
+    private boolean beginDamageRedraw() {
+        if (!mIsDamageRedraw || mIsSurfacePreserved) {
+            mDamageFrameBuffer.delete();
+            if (!mIsDamageRedraw) {
+                return false;
+            }
+        }
+
+        boolean isFull = mIsFullRedrawNeeded;
+        if (!mIsSurfacePreserved) {
+            isFull |= !mDamageFrameBuffer.isValid();
+            if (!mDamageFrameBuffer.bind()) {
+                Log.w(TAG, "Can't create frame buffer, damage redraw is " +
+                           "disabled");
+                mIsDamageRedraw = false;
+                return false;
+            }
+        }
+
+        // convert fold bounds to window coordinate, the projection maps view
+        // width to surface width
+        final GLViewRect r = mViewRect;
+        final float scaleX = r.surfaceW / r.width;
+        final int w = (int)r.surfaceW;
+        final int h = (int)r.surfaceH;
+        mFoldRect[0] = clamp((int)Math.floor((mFoldBounds[0] + r.halfW) *
+                                             scaleX), w);
+        mFoldRect[1] = clamp((int)Math.floor(mFoldBounds[1] + r.halfH), h);
+        mFoldRect[2] = clamp((int)Math.ceil((mFoldBounds[2] + r.halfW) *
+                                            scaleX), w);
+        mFoldRect[3] = clamp((int)Math.ceil(mFoldBounds[3] + r.halfH), h);
+
+        // the region which is covered by fold in the last frame needs to be
+        // restored too
+        mIsFullRedrawNeeded = false;
+        if (!isFull) {
+            final int left = Math.min(mFoldRect[0], mDamageRect[0]);
+            final int bottom = Math.min(mFoldRect[1], mDamageRect[1]);
+            final int right = Math.max(mFoldRect[2], mDamageRect[2]);
+            final int top = Math.max(mFoldRect[3], mDamageRect[3]);
+            mGL.glEnable(GL_SCISSOR_TEST);
+            mGL.glScissor(left, bottom, right - left, top - bottom);
+        }
+
+        System.arraycopy(mFoldRect, 0, mDamageRect, 0, mFoldRect.length);
+        return true;
+    }
+
+    /**
+     * End damage redraw: disable scissor and copy off-screen frame buffer to
+     * the default frame buffer if surface isn't preserved
+     */
+    private void endDamageRedraw() {
+        mGL.glDisable(GL_SCISSOR_TEST);
+        if (mIsSurfacePreserved) {
+            return;
+        }
+
+        mGL.glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        final int w = mDamageFrameBuffer.getWidth();
+        final int h = mDamageFrameBuffer.getHeight();
+        pushMarker(MARKER_FRAME_COPY);
+        copyFrameBuffer(mDamageFrameBuffer, w, h, 0, w, h);
+        popMarker();
+    }
+
+    /**
+     * Copy color of off-screen frame buffer to the bound draw frame buffer
+     * <p>
+     * The bottom-left part of source is scaled to the bottom-left part of
+     * destination, the destination part should be the current viewport.
+     * Copying is limited by scissor if scissor test is enabled
+     * </p>
+     *
+     * @param src source frame buffer
+     * @param srcW width of source part
+     * @param srcH height of source part
+     * @param dstRef name of the bound draw frame buffer
+     * @param dstW width of destination part
+     * @param dstH height of destination part
+     */
+    private void copyFrameBuffer(FrameBuffer src, int srcW, int srcH,
+                                 int dstRef, int dstW, int dstH) {
+        final int w = src.getWidth();
+        final int h = src.getHeight();
+        if (mIsGLES3) {
+            final int filter = srcW == dstW && srcH == dstH ? GL_NEAREST :
+                                                              GL_LINEAR;
+            mGL.glBindFramebuffer(GL_READ_FRAMEBUFFER, src.getFrameBufferRef());
+            mGL.glBlitFramebuffer(0, 0, srcW, srcH, 0, 0, dstW, dstH,
+                                  GL_COLOR_BUFFER_BIT, filter);
+            mGL.glBindFramebuffer(GL_READ_FRAMEBUFFER, dstRef);
+            return;
+        }
+
+        // GLES 2.0 has no blitting, draw color texture of frame buffer as a
+        // full screen quad by page program, texture is the only cell of atlas
+        // if page texture array is used
+        if (mCopyQuadBuf == null) {
+            mCopyQuadBuf = ByteBuffer.allocateDirect(CLIENT_VEX_SIZE << 4)
+                                     .order(ByteOrder.nativeOrder())
+                                     .asFloatBuffer();
         }
 
-        return isAnimating;
+        // quad covers the viewport and maps the source part on it
+        final float x = mViewRect.halfW;
+        final float y = mViewRect.halfH;
+        final float s = (float)srcW / w;
+        final float t = (float)srcH / h;
+        mCopyQuadBuf.position(0);
+        mCopyQuadBuf.put(-x).put(-y).put(0).put(1).put(0).put(0).put(0)
+                    .put(-x).put(y).put(0).put(1).put(0).put(t).put(0)
+                    .put(x).put(-y).put(0).put(1).put(s).put(0).put(0)
+                    .put(x).put(y).put(0).put(1).put(s).put(t).put(0);
+
+        mGL.glDisable(GL_DEPTH_TEST);
+        mGL.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        useProgram(mVertexProgram);
+        mGL.glActiveTexture(GL_TEXTURE0);
+        mGL.glBindTexture(GL_TEXTURE_2D, src.getTextureRef());
+        mGL.glUniform1i(mVertexProgram.mTextureLoc, 0);
+        if (mIsPageTextureArray) {
+            mGL.glUniform4f(mVertexProgram.mAtlasLoc, 1, 1, 0.5f / w,
+                            0.5f / h);
+            mGL.glUniform3f(mVertexProgram.mLayersLoc, 0, 0, 0);
+        }
+        drawClientStrip(mCopyQuadBuf, CLIENT_VEX_SIZE << 2,
+                        mVertexProgram.mVertexPosLoc, 4,
+                        mVertexProgram.mTexCoordLoc, mVertexProgram.mLayerLoc);
+        if (mIsDepthTest) {
+            mGL.glEnable(GL_DEPTH_TEST);
+        }
     }
 
     /**
-     * Is animating ?
+     * Clamp value to [0 .. max]
      *
-     * @return true if page is flipping
+     * @param value value
+     * @param max max value
+     * @return clamped value
      */
-    public boolean isAnimating() {
-        return !mScroller.isFinished();
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
     }
 
     /**
-     * Abort animating
+     * Get the cheapest variant of fold back program which matches current
+     * configuration, compile it if it isn't compiled yet
+     *
+     * @param hasSecondPage there has second page or not
+     * @return fold back program
      */
-    public void abortAnimating() {
-        mScroller.abortAnimation();
-        if (mFlipState == PageFlipState.FORWARD_FLIP) {
-            mFlipState = PageFlipState.END_WITH_FORWARD;
+    private FoldBackVertexProgram getFoldBackVertexProgram(
+                                                    boolean hasSecondPage) {
+        int variant = FoldBackVertexProgram.VARIANT_FULL;
+        if (!mFoldBackVertexes.isMaskVisible(hasSecondPage)) {
+            variant |= FoldBackVertexProgram.VARIANT_NO_MASK;
         }
-        else if (mFlipState == PageFlipState.BACKWARD_FLIP) {
-            mFlipState = PageFlipState.END_WITH_BACKWARD;
+        if (!mIsFoldGradientEnabled) {
+            variant |= FoldBackVertexProgram.VARIANT_NO_GRADIENT;
         }
-        else if (mFlipState == PageFlipState.RESTORE_FLIP) {
-            mFlipState = PageFlipState.END_WITH_RESTORE;
+        if (mIsLowPrecisionEnabled) {
+            variant |= FoldBackVertexProgram.VARIANT_LOWP;
+        }
+        if (mIsEdgeAntialiasingEnabled) {
+            variant |= FoldBackVertexProgram.VARIANT_EDGE_AA;
+        }
+
+        FoldBackVertexProgram program = mFoldBackVariants[variant];
+        if (program == null) {
+            try {
+                program = acquireProgram(
+                        new FoldBackVertexProgram(mGL),
+                        R.raw.fold_back_vertex_shader,
+                        R.raw.fold_back_fragment_shader,
+                        FoldBackVertexProgram.getDefines(variant,
+                                                         mShaderDefines));
+            }
+            catch (PageFlipException e) {
+                Log.w(TAG, "Can't compile fold back variant: " + variant, e);
+                program = mFoldBackVertexProgram;
+            }
+
+            mFoldBackVariants[variant] = program;
         }
+
+        return program;
     }
 
     /**
-     * Is animation stated?
-     *
-     * @return true if flip is started
+     * Draw frame with full page
      */
-    public boolean isStartedFlip() {
-        return mFlipState == PageFlipState.BACKWARD_FLIP ||
-               mFlipState == PageFlipState.FORWARD_FLIP ||
-               mFlipState == PageFlipState.RESTORE_FLIP;
+    public void drawPageFrame() {
+        // page textures may be changed before the next flip, and off-screen
+        // frame buffer of damage redraw isn't updated by page frame
+        mIsFullRedrawNeeded = true;
+        mIsStationaryLayerDirty = true;
+        // page frame is drawn with native resolution, the idle time until
+        // the next flip isn't a frame time
+        mLastFlipFrameNanos = 0;
+        mFastFrameCount = 0;
+        mGL.glClear(getClearMask());
+        pushMarker(MARKER_PAGE_FRAME);
+        useProgram(mVertexProgram);
+        mGL.glActiveTexture(GL_TEXTURE0);
+
+        // 1. draw first page
+        mPages[FIRST_PAGE].drawFullPage(mVertexProgram, true);
+
+        // 2. draw second page if have
+        if (mPages[SECOND_PAGE] != null) {
+            mPages[SECOND_PAGE].drawFullPage(mVertexProgram, true);
+        }
+        popMarker();
+
+        // restore default vertex array object for drawings outside page flip
+        if (mIsGLES3) {
+            GLVertexArray.unbind(mGL);
+        }
     }
 
     /**
-     * The moving is ended?
+     * Is shader warm-up needed?
+     * <p>
+     * It is true after surface is created and changed until
+     * {@link #warmUp()} is called
+     * </p>
      *
-     * @return true if flip is ended
+     * @return true if shader warm-up is needed
      */
-    public boolean isEndedFlip() {
-        return mFlipState == PageFlipState.END_FLIP ||
-               mFlipState == PageFlipState.END_WITH_RESTORE ||
-               mFlipState == PageFlipState.END_WITH_BACKWARD ||
-               mFlipState == PageFlipState.END_WITH_FORWARD;
+    public boolean isWarmUpNeeded() {
+        return mIsWarmUpNeeded && mPages[FIRST_PAGE] != null;
     }
 
     /**
-     * Get the first page
-     * First page is currently operating page which means it is the page user
-     * finger is clicking or moving
+     * Warm up shader programs
+     * <p>
+     * GL driver usually defers the final compiling of shader program until
+     * it is used to draw with a specific state, the first flip will be
+     * hitched by it. This function draws a dummy triangle strip with every
+     * program and state which is used in flipping into a 1x1 off-screen frame
+     * buffer, the result is never shown. It should be called in OpenGL thread
+     * when it is idle after surface is created and changed, for example:
+     * queue it by {@link android.opengl.GLSurfaceView#queueEvent(Runnable)}
+     * after the first frame is drawn
+     * </p>
      *
-     * @return flip state, See {@link PageFlipState}
+     * @return duration of warm-up in nanoseconds
      */
-    public Page getFirstPage() {
-        return mPages[FIRST_PAGE];
+    public long warmUp() {
+        final long start = System.nanoTime();
+
+        // keep the current frame buffer and viewport
+        final int[] binding = new int[1];
+        final int[] viewport = new int[4];
+        mGL.glGetIntegerv(GL_FRAMEBUFFER_BINDING, binding, 0);
+        mGL.glGetIntegerv(GL_VIEWPORT, viewport, 0);
+
+        // draw into 1x1 off-screen frame buffer with color, depth if depth
+        // test is active and stencil if stencil rejection is active, the
+        // viewport is set to 1x1 when it is bound
+        final FrameBuffer frameBuffer = new FrameBuffer(mGL, mIsDepthTest)
+                .setStencil(mIsStencilRejection && !mIsEdgeAntialiasingEnabled);
+        mGL.glActiveTexture(GL_TEXTURE0);
+        if (frameBuffer.setSize(1, 1).bind()) {
+            drawWarmUpFrame();
+            // wait until driver really finishes all drawings
+            mGL.glFinish();
+        }
+        else {
+            Log.w(TAG, "Can't create frame buffer for warm-up");
+        }
+
+        // restore frame buffer and viewport, release off-screen buffer
+        mGL.glBindFramebuffer(GL_FRAMEBUFFER, binding[0]);
+        mGL.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        frameBuffer.delete();
+        mIsWarmUpNeeded = false;
+
+        final long nanos = System.nanoTime() - start;
+        if (mWarmUpListener != null) {
+            mWarmUpListener.onWarmUpFinished(nanos);
+        }
+        return nanos;
     }
 
     /**
-     * Get the second page
+     * Draw a dummy triangle strip with every program and state of flipping
      * <p>
-     * Second page is only valid in double page mode, if it is null, that means
-     * there is only one page for whole screen whatever the screen is portrait
-     * or landscape
+     * Programs are used in the same order and with the same blend, stencil
+     * and depth states as {@link #drawFlipFrame()}. Vertexes are client-side
+     * arrays: (x, y, z, w, s, t, layer or id) for every vertex, every
+     * program picks the attributes it needs
      * </p>
-     *
-     * @return the second page, null if no second page
      */
-    public Page getSecondPage() {
-        return mPages[SECOND_PAGE];
+    private void drawWarmUpFrame() {
+        final int stride = CLIENT_VEX_SIZE << 2;
+        final FloatBuffer vexBuf = ByteBuffer
+                .allocateDirect(WARM_UP_VERTEXES.length << 2)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        vexBuf.put(WARM_UP_VERTEXES);
+        final boolean hasSecondPage = mPages[SECOND_PAGE] != null;
+
+        // client-side arrays can only be used with default vertex array
+        // object and no array buffer object
+        if (mIsGLES3) {
+            GLVertexArray.unbind(mGL);
+        }
+        mGL.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        // 0. copy of stationary layer or scaled frame without depth test
+        if (mIsStationaryLayerEnabled || mIsDynamicResolution) {
+            mGL.glDisable(GL_DEPTH_TEST);
+            useProgram(mVertexProgram);
+            bindWarmUpTexture(mVertexProgram);
+            drawClientStrip(vexBuf, stride, mVertexProgram.mVertexPosLoc, 4,
+                            mVertexProgram.mTexCoordLoc,
+                            mVertexProgram.mLayerLoc);
+            if (mIsDepthTest) {
+                mGL.glEnable(GL_DEPTH_TEST);
+            }
+        }
+        mGL.glClear(getClearMask());
+
+        // 1. back of fold page first with stencil rejection or depth test
+        final boolean isStencilRejection = mIsStencilRejection &&
+                                           !mIsEdgeAntialiasingEnabled;
+        final boolean isFoldBackFirst = !mIsEdgeAntialiasingEnabled &&
+                                        mIsDepthTest;
+        if (isStencilRejection) {
+            mGL.glEnable(GL_STENCIL_TEST);
+            mGL.glStencilFunc(GL_ALWAYS, 1, 0xFF);
+            mGL.glStencilOp(GL_KEEP, GL_KEEP, GL_REPLACE);
+            drawWarmUpFoldBack(vexBuf, stride, hasSecondPage);
+            mGL.glStencilFunc(GL_NOTEQUAL, 1, 0xFF);
+            mGL.glStencilOp(GL_KEEP, GL_KEEP, GL_KEEP);
+        }
+        else if (isFoldBackFirst) {
+            drawWarmUpFoldBack(vexBuf, stride, hasSecondPage);
+        }
+
+        // 2. unfold page and front of fold page
+        useProgram(mVertexProgram);
+        bindWarmUpTexture(mVertexProgram);
+        drawClientStrip(vexBuf, stride, mVertexProgram.mVertexPosLoc, 3,
+                        mVertexProgram.mTexCoordLoc,
+                        mVertexProgram.mLayerLoc);
+
+        // 3. shadows of fold page with blend
+        useProgram(mShadowVertexProgram);
+        mGL.glUniform2f(mShadowVertexProgram.mVertexZLoc, 0, 0);
+        mGL.glEnable(GL_BLEND);
+        mGL.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        mGL.glUniform4f(mShadowVertexProgram.mShadowColorLoc, 0, 0, 0, 0);
+        mGL.glUniform1f(mShadowVertexProgram.mBoundaryLoc,
+                        ShadowVertexProgram.NO_BOUNDARY);
+        drawClientStrip(vexBuf, stride, mShadowVertexProgram.mVertexPosLoc, 2,
+                        -1, mShadowVertexProgram.mVertexIdLoc);
+        mGL.glDisable(GL_BLEND);
+
+        // 4. back of fold page at last in painter's order or blended with
+        // edge antialiasing
+        if (isStencilRejection) {
+            mGL.glDisable(GL_STENCIL_TEST);
+        }
+        else if (!isFoldBackFirst) {
+            drawWarmUpFoldBack(vexBuf, stride, hasSecondPage);
+        }
     }
 
     /**
-     * Delete unused textures
+     * Draw a dummy triangle strip with fold back program in the same blend
+     * state as {@link #drawFoldBack(boolean)}
+     *
+     * @param vexBuf vertexes buffer
+     * @param stride stride of vertex in bytes
+     * @param hasSecondPage has the second page in double pages mode?
      */
-    public void deleteUnusedTextures() {
-        mPages[FIRST_PAGE].deleteUnusedTextures();
-        if (mPages[SECOND_PAGE] != null) {
-            mPages[SECOND_PAGE].deleteUnusedTextures();
+    private void drawWarmUpFoldBack(FloatBuffer vexBuf, int stride,
+                                    boolean hasSecondPage) {
+        final FoldBackVertexProgram foldBackProgram =
+                getFoldBackVertexProgram(hasSecondPage);
+        useProgram(foldBackProgram);
+        bindWarmUpTexture(foldBackProgram);
+        mGL.glUniform1f(foldBackProgram.mLayerIndexLoc, 0);
+        if (mIsEdgeAntialiasingEnabled) {
+            if (foldBackProgram.mEdgeScaleLoc > -1) {
+                mGL.glUniform2f(foldBackProgram.mEdgeScaleLoc, 1, 1);
+            }
+            mGL.glEnable(GL_BLEND);
+            mGL.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        }
+
+        drawClientStrip(vexBuf, stride, foldBackProgram.mVertexPosLoc, 4,
+                        foldBackProgram.mTexCoordLoc, -1);
+        if (mIsEdgeAntialiasingEnabled) {
+            mGL.glDisable(GL_BLEND);
         }
     }
 
     /**
-     * Draw flipping frame
+     * Bind texture for warm-up drawing, it is page texture array if the array
+     * is used, otherwise the default 2D texture is enough
+     *
+     * @param program vertex program
      */
-    public void drawFlipFrame() {
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        final boolean hasSecondPage = mPages[SECOND_PAGE] != null;
-
-        // 1. draw back of fold page
-        glUseProgram(mFoldBackVertexProgram.mProgramRef);
-        glActiveTexture(GL_TEXTURE0);
-        mFoldBackVertexes.draw(mFoldBackVertexProgram,
-                               mPages[FIRST_PAGE],
-                               hasSecondPage,
-                               mGradientShadowTextureID);
-
-        // 2. draw unfold page and front of fold page
-        glUseProgram(mVertexProgram.mProgramRef);
-        glActiveTexture(GL_TEXTURE0);
-        mPages[FIRST_PAGE].drawFrontPage(mVertexProgram,
-                                         mFoldFrontVertexes);
-        if (hasSecondPage) {
-            mPages[SECOND_PAGE].drawFullPage(mVertexProgram, true);
+    private void bindWarmUpTexture(VertexProgram program) {
+        if (mPageTextureArray != null) {
+            mPageTextureArray.bind();
+            mPageTextureArray.setAtlasUniform(program.mAtlasLoc);
         }
-
-        // 3. draw edge and base shadow of fold parts
-        glUseProgram(mShadowVertexProgram.mProgramRef);
-        mFoldBaseShadow.draw(mShadowVertexProgram);
-        mFoldEdgesShadow.draw(mShadowVertexProgram);
+        else {
+            mGL.glBindTexture(GL_TEXTURE_2D, 0);
+        }
+        mGL.glUniform1i(program.mTextureLoc, 0);
     }
 
     /**
-     * Draw frame with full page
+     * Draw a triangle strip of 4 vertexes from client-side arrays
+     *
+     * @param vexBuf vertexes buffer
+     * @param stride stride of vertex in bytes
+     * @param hVertexPos vertex position var in shader program
+     * @param posSize component size of vertex position
+     * @param hTextureCoord texture var in shader program, -1 if no texture
+     * @param hScalar var of one float attribute in shader program: layer
+     *                index or vertex id, -1 if no such attribute
      */
-    public void drawPageFrame() {
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        glUseProgram(mVertexProgram.mProgramRef);
-        glUniformMatrix4fv(mVertexProgram.mMVPMatrixLoc, 1, false,
-                           VertexProgram.MVPMatrix, 0);
-        glActiveTexture(GL_TEXTURE0);
+    private void drawClientStrip(FloatBuffer vexBuf, int stride,
+                                 int hVertexPos, int posSize,
+                                 int hTextureCoord, int hScalar) {
+        vexBuf.position(0);
+        mGL.glVertexAttribPointer(hVertexPos, posSize, GL_FLOAT, false, stride,
+                                  vexBuf);
+        mGL.glEnableVertexAttribArray(hVertexPos);
+        if (hTextureCoord > -1) {
+            vexBuf.position(4);
+            mGL.glVertexAttribPointer(hTextureCoord, 2, GL_FLOAT, false,
+                                      stride, vexBuf);
+            mGL.glEnableVertexAttribArray(hTextureCoord);
+        }
+        if (hScalar > -1) {
+            vexBuf.position(6);
+            mGL.glVertexAttribPointer(hScalar, 1, GL_FLOAT, false, stride,
+                                      vexBuf);
+            mGL.glEnableVertexAttribArray(hScalar);
+        }
 
-        // 1. draw first page
-        mPages[FIRST_PAGE].drawFullPage(mVertexProgram, true);
+        mGL.glDrawArrays(GL_TRIANGLE_STRIP, 0, 4);
 
-        // 2. draw second page if have
-        if (mPages[SECOND_PAGE] != null) {
-            mPages[SECOND_PAGE].drawFullPage(mVertexProgram, true);
+        // client-side arrays mustn't be left for the following drawings
+        mGL.glDisableVertexAttribArray(hVertexPos);
+        if (hTextureCoord > -1) {
+            mGL.glDisableVertexAttribArray(hTextureCoord);
+        }
+        if (hScalar > -1) {
+            mGL.glDisableVertexAttribArray(hScalar);
         }
     }
 
@@ -1156,33 +3127,28 @@ public class PageFlip {
 
         // init vertexes buffers
         mFoldBackVertexes.set(maxMeshCount + 2);
-        mFoldFrontVertexes.set((maxMeshCount << 1) + 8, 3, true);
+        // reserve room for joining the second texture and the opposite page
+        // in one triangle strip with page texture array
+        mFoldFrontVertexes.set((maxMeshCount << 1) + 16, 3, true,
+                               mIsPageTextureArray);
         mFoldEdgesShadow.set(maxMeshCount + 2);
         mFoldBaseShadow.set(maxMeshCount + 2);
-    }
-
-    /**
-     * Create gradient shadow texture for lighting effect
-     */
-    private void createGradientShadowTexture() {
-        int textureIDs[] = new int[1];
-        glGenTextures(1, textureIDs, 0);
-        glActiveTexture(GL_TEXTURE0);
-        mGradientShadowTextureID = textureIDs[0];
-
-        // gradient shadow texture
-        Bitmap shadow = PageFlipUtils.createGradientBitmap();
-        glBindTexture(GL_TEXTURE_2D, mGradientShadowTextureID);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        GLUtils.texImage2D(GL_TEXTURE_2D, 0, shadow, 0);
-        shadow.recycle();
+        // every mesh is aligned to its vertex stride in buffer, reserve the
+        // padding for 4 meshes whose stride is 6 floats at most, and 2
+        // degenerate vertexes for joining shadows
+        mFoldMeshBuffer.ensureCapacity(mFoldBackVertexes.mVertexes.length +
+                                       mFoldFrontVertexes.mVertexes.length +
+                                       mFoldEdgesShadow.mVertexes.length +
+                                       mFoldBaseShadow.mVertexes.length +
+                                       (4 * 6) + 4);
     }
 
     /**
      * Compute vertexes of page
      */
     private void computeVertexesAndBuildPage() {
+        // all fold meshes will be put into shared buffer again
+        mFoldMeshBuffer.reset();
         if (mIsVertical) {
             computeKeyVertexesWhenVertical();
             computeVertexesWhenVertical();
@@ -1241,18 +3207,16 @@ public class PageFlip {
         // compute the point on back page half cylinder
         mFoldBackVertexes.reset();
 
+        final float[] out = mBackDeformOut;
         for (int i = 0; i <= mMeshCount; ++i, x -= stepX) {
-            // compute radian of x point
-            float x2t = x - mXFoldP1.x;
-            float radius = x2t / mR;
-            float sinR = (float)Math.sin(radius);
-            float coordX = page.textureX(x);
-            float fx = mXFoldP1.x + mR * sinR;
-            float fz = (float) (mR * (1 - Math.cos(radius)));
-
             // compute vertex when it is curled
-            mFoldBackVertexes.addVertex(fx, dY, fz, sinR, coordX, cDY)
-                             .addVertex(fx, oY, fz, sinR, coordX, cOY);
+            float coordX = page.textureX(x);
+            mDeformationModel.deform(x, dY - oY, mXFoldP1.x, mR, out);
+            mFoldBackVertexes.addVertex(out[0], dY, out[1], out[2], coordX,
+                                        cDY);
+            mDeformationModel.deform(x, 0, mXFoldP1.x, mR, out);
+            mFoldBackVertexes.addVertex(out[0], oY, out[1], out[2], coordX,
+                                        cOY);
         }
 
         float tx0 = mTouchP.x;
@@ -1271,17 +3235,22 @@ public class PageFlip {
         // fold base shadow
         float bx0 = mFoldBackVertexes.mVertexes[0];
         mFoldBaseShadow.setVertexes(0, bx0, oY, bx0 + bw, oY)
-                       .setVertexes(8, bx0, dY, bx0 + bw, dY)
-                       .toFloatBuffer(16);
+                       .setVertexes(ShadowVertexes.PAIR_SIZE,
+                                    bx0, dY, bx0 + bw, dY)
+                       .toFloatBuffer(ShadowVertexes.PAIR_SIZE << 1);
 
         // fold edge shadow
         mFoldEdgesShadow.setVertexes(0, tx0, oY, tx0 + sw, oY)
-                        .setVertexes(8, tx0, dY, tx0 + sw, dY)
-                        .toFloatBuffer(16);
+                        .setVertexes(ShadowVertexes.PAIR_SIZE,
+                                     tx0, dY, tx0 + sw, dY)
+                        .toFloatBuffer(ShadowVertexes.PAIR_SIZE << 1);
+        mFoldShadowBatch.toFloatBuffer();
+        computeFoldBounds(Math.max(Math.abs(sw), Math.abs(bw)));
 
         // fold front
         mFoldFrontVertexes.reset();
         page.buildVertexesOfPageWhenVertical(mFoldFrontVertexes, mXFoldP1);
+        addOppositePageVertexes();
         mFoldFrontVertexes.toFloatBuffer();
     }
 
@@ -1371,20 +3340,19 @@ public class PageFlip {
         float sx = sx0 * cosA - sy0 * sinA;
         float sy = sx0 * sinA + sy0 * cosA;
 
-        // compute mapping point on cylinder
-        float rad = (x - tX) / mR;
-        double sinR = Math.sin(rad);
-        x = (float) (tX + mR * sinR);
-        float cz = (float) (mR * (1 - Math.cos(rad)));
+        // compute mapping point on curled surface
+        final float[] out = mBackDeformOut;
+        mDeformationModel.deform(x, y, tX, mR, out);
+        x = out[0];
 
         // rotate degree -A, sin(-A) = -sin(A), cos(-A) = cos(A)
         float cx = x * cosA + y * sinA + oX;
         float cy = y * cosA - x * sinA + oY;
-        mFoldBackVertexes.addVertex(cx, cy, cz, (float)sinR, coordX, coordY);
+        mFoldBackVertexes.addVertex(cx, cy, out[1], out[2], coordX, coordY);
 
         // compute coordinates of fold shadow edge
-        float sRadian = (sx - tX) / mR;
-        sx = (float)(tX + mR * Math.sin(sRadian));
+        mDeformationModel.deform(sx, sy, tX, mR, out);
+        sx = out[0];
         mFoldEdgesShadow.addVertexes(isX, cx, cy,
                                          sx * cosA + sy * sinA + oX,
                                          sy * cosA - sx * sinA + oY);
@@ -1414,16 +3382,15 @@ public class PageFlip {
         float x = x0 * cosA - y0 * sinA;
         float y = x0 * sinA + y0 * cosA;
 
-        // compute mapping point on cylinder
-        float rad = (x - tX) / mR;
-        double sinR = Math.sin(rad);
-        x = (float) (tX + mR * sinR);
-        float cz = (float) (mR * (1 - Math.cos(rad)));
+        // compute mapping point on curled surface
+        final float[] out = mBackDeformOut;
+        mDeformationModel.deform(x, y, tX, mR, out);
+        x = out[0];
 
         // rotate degree -A, sin(-A) = -sin(A), cos(-A) = cos(A)
         float cx = x * cosA + y * sinA + oX;
         float cy = y * cosA - x * sinA + oY;
-        mFoldBackVertexes.addVertex(cx, cy, cz, (float)sinR, coordX, coordY);
+        mFoldBackVertexes.addVertex(cx, cy, out[1], out[2], coordX, coordY);
     }
 
     /**
@@ -1454,15 +3421,15 @@ public class PageFlip {
         float x = x0 * cosA - y0 * sinA;
         float y = x0 * sinA + y0 * cosA;
 
-        // compute mapping point on cylinder
-        float rad = (x - tX)/ mR;
-        x = (float)(tX + mR * Math.sin(rad));
-        float cz = (float)(mR * (1 - Math.cos(rad)));
+        // compute mapping point on curled surface
+        final float[] out = mFrontDeformOut;
+        mDeformationModel.deform(x, y, tX, mR, out);
+        x = out[0];
 
         // rotate degree -A, sin(-A) = -sin(A), cos(-A) = cos(A)
         float cx = x * cosA + y * sinA + oX;
         float cy = y * cosA - x * sinA + oY;
-        mFoldFrontVertexes.addVertex(cx, cy, cz, coordX, coordY);
+        mFoldFrontVertexes.addVertex(cx, cy, out[1], coordX, coordY);
         mFoldBaseShadow.addVertexes(isX, cx, cy,
                                          cx + baseWcosA, cy - baseWsinA);
     }
@@ -1492,15 +3459,15 @@ public class PageFlip {
         float x = x0 * cosA - y0 * sinA;
         float y = x0 * sinA + y0 * cosA;
 
-        // compute mapping point on cylinder
-        float rad = (x - tX)/ mR;
-        x = (float)(tX + mR * Math.sin(rad));
-        float cz = (float)(mR * (1 - Math.cos(rad)));
+        // compute mapping point on curled surface
+        final float[] out = mFrontDeformOut;
+        mDeformationModel.deform(x, y, tX, mR, out);
+        x = out[0];
 
         // rotate degree -A, sin(-A) = -sin(A), cos(-A) = cos(A)
         float cx = x * cosA + y * sinA + oX;
         float cy = y * cosA - x * sinA + oY;
-        mFoldFrontVertexes.addVertex(cx, cy, cz, coordX, coordY);
+        mFoldFrontVertexes.addVertex(cx, cy, out[1], coordX, coordY);
     }
 
     /**
@@ -1548,9 +3515,9 @@ public class PageFlip {
         float x = x0 * cosA - y0 * sinA;
         float y = x0 * sinA + y0 * cosA;
 
-        // compute mapping point on cylinder
-        float rad = (x - tX)/ mR;
-        x = (float)(tX + mR * Math.sin(rad));
+        // compute mapping point on curled surface
+        mDeformationModel.deform(x, y, tX, mR, mFrontDeformOut);
+        x = mFrontDeformOut[0];
 
         float cx1 = x * cosA + y * sinA + oX;
         float cy1 = y * cosA - x * sinA + oY;
@@ -1575,33 +3542,30 @@ public class PageFlip {
 
     /**
      * Compute vertexes when page flip is slope
+     * <p>
+     * The back of fold page with its edge shadow and the front of fold page
+     * with its base shadow are written into four separate buffers, so they
+     * can be computed independently. If parallel mesh build is enabled and
+     * the mesh is dense enough, the back part is computed on a worker thread
+     * while the caller thread computes the front part, both are joined before
+     * float buffers are filled.
+     * </p>
      */
     private void computeVertexesWhenSlope() {
         final Page page = mPages[FIRST_PAGE];
         final float oX = page.originP.x;
         final float oY = page.originP.y;
-        final float dY = page.diagonalP.y;
-        final float cOX = page.originP.texX;
-        final float cOY = page.originP.texY;
-        final float cDY = page.diagonalP.texY;
-        final float height = page.height;
-        final float d2oY = dY - oY;
 
         // compute radius and sin/cos of angle
-        float sinA = (mTouchP.y - oY) / mLenOfTouchOrigin;
-        float cosA = (oX - mTouchP.x) / mLenOfTouchOrigin;
+        final float sinA = (mTouchP.y - oY) / mLenOfTouchOrigin;
+        final float cosA = (oX - mTouchP.x) / mLenOfTouchOrigin;
 
         // need to translate before rotate, and then translate back
-        int count = mMeshCount;
-        float xFoldP1 = (mXFoldP1.x - oX) * cosA;
-        float edgeW = mFoldEdgesShadowWidth.width(mR);
-        float baseW = mFoldBaseShadowWidth.width(mR);
-        float baseWcosA = baseW * cosA;
-        float baseWsinA = baseW * sinA;
-        float edgeY = oY > 0 ? edgeW : -edgeW;
-        float edgeX = oX > 0 ? edgeW : -edgeW;
-        float stepSY = edgeY / count;
-        float stepSX = edgeX / count;
+        final float xFoldP1 = (mXFoldP1.x - oX) * cosA;
+        final float edgeW = mFoldEdgesShadowWidth.width(mR);
+        final float baseW = mFoldBaseShadowWidth.width(mR);
+        final float edgeY = oY > 0 ? edgeW : -edgeW;
+        final float edgeX = oX > 0 ? edgeW : -edgeW;
 
         // reset vertexes buffer counter
         mFoldEdgesShadow.reset();
@@ -1609,6 +3573,126 @@ public class PageFlip {
         mFoldFrontVertexes.reset();
         mFoldBackVertexes.reset();
 
+        // back and front of fold page are split into two tasks, but the X
+        // and Y axis halves of each aren't: vertexes of both halves are
+        // interleaved into one triangle strip and the index where a half
+        // starts is data dependent, so they can't be written in parallel
+        if (mIsParallelMeshBuild && isParallelMeshBuildWorthy()) {
+            final int workerStarts = mMeshBuildWorkerStarts.get();
+            final long submitted = System.nanoTime();
+            Future<?> backTask = getMeshBuildExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    mBackBuildStart = System.nanoTime();
+                    computeBackVertexesWhenSlope(page, sinA, cosA, xFoldP1,
+                                                 edgeX, edgeY);
+                    mBackBuildEnd = System.nanoTime();
+                }
+            });
+
+            computeFrontVertexesWhenSlope(page, sinA, cosA, xFoldP1,
+                                          baseW * cosA, baseW * sinA);
+            final long frontEnd = System.nanoTime();
+            waitForMeshBuildTask(backTask);
+            final long joined = System.nanoTime();
+
+            // hand-off is the delay before worker starts and the delay of
+            // joining after both halves are done, waiting for a slower back
+            // half isn't hand-off. Starting a worker thread isn't either, a
+            // sample with a new worker is skipped
+            final boolean isNewWorker =
+                    mMeshBuildWorkerStarts.get() != workerStarts;
+            final long lastEnd = Math.max(frontEnd, mBackBuildEnd);
+            updateMeshBuildCost(mBackBuildEnd - mBackBuildStart,
+                                isNewWorker ? -1 :
+                                (mBackBuildStart - submitted) +
+                                Math.max(0, joined - lastEnd));
+        }
+        else {
+            final long start = System.nanoTime();
+            computeBackVertexesWhenSlope(page, sinA, cosA, xFoldP1,
+                                         edgeX, edgeY);
+            updateMeshBuildCost(System.nanoTime() - start, -1);
+            computeFrontVertexesWhenSlope(page, sinA, cosA, xFoldP1,
+                                          baseW * cosA, baseW * sinA);
+        }
+
+        // set uniform Z value for shadow vertexes
+        mFoldEdgesShadow.vertexZ = mFoldFrontVertexes.getFloatAt(2);
+        mFoldBaseShadow.vertexZ = -0.5f;
+
+        mFoldBackVertexes.toFloatBuffer();
+        mFoldFrontVertexes.toFloatBuffer();
+        mFoldBaseShadow.toFloatBuffer();
+        mFoldEdgesShadow.toFloatBuffer();
+        mFoldShadowBatch.toFloatBuffer();
+        computeFoldBounds(Math.max(edgeW, baseW));
+    }
+
+    /**
+     * Compute bounds of fold region for damage redraw
+     * <p>
+     * Fold page, its shadows and the revealed part of page are all inside
+     * the bounds of origin point, touch point and fold points on X and Y
+     * axis, the bounds are expanded with shadow width since shadows are out
+     * of fold edges
+     * </p>
+     *
+     * @param shadowW max width of edge and base shadow
+     */
+    private void computeFoldBounds(float shadowW) {
+        if (!mIsDamageRedraw) {
+            return;
+        }
+
+        final GLPoint originP = mPages[FIRST_PAGE].originP;
+        final float margin = shadowW + DAMAGE_MARGIN;
+        mFoldBounds[0] = Math.min(Math.min(Math.min(originP.x, mTouchP.x),
+                                           Math.min(mXFoldP0.x, mXFoldP1.x)),
+                                  Math.min(mYFoldP0.x, mYFoldP1.x)) - margin;
+        mFoldBounds[1] = Math.min(Math.min(Math.min(originP.y, mTouchP.y),
+                                           Math.min(mXFoldP0.y, mXFoldP1.y)),
+                                  Math.min(mYFoldP0.y, mYFoldP1.y)) - margin;
+        mFoldBounds[2] = Math.max(Math.max(Math.max(originP.x, mTouchP.x),
+                                           Math.max(mXFoldP0.x, mXFoldP1.x)),
+                                  Math.max(mYFoldP0.x, mYFoldP1.x)) + margin;
+        mFoldBounds[3] = Math.max(Math.max(Math.max(originP.y, mTouchP.y),
+                                           Math.max(mXFoldP0.y, mXFoldP1.y)),
+                                  Math.max(mYFoldP0.y, mYFoldP1.y)) + margin;
+    }
+
+    /**
+     * Compute vertexes of back of fold page and its edge shadow when page flip
+     * is slope
+     * <p>
+     * It only writes {@link #mFoldBackVertexes} and {@link #mFoldEdgesShadow}
+     * and reads states which are computed before, so it is safe to run it in
+     * parallel with {@link #computeFrontVertexesWhenSlope(Page, float, float,
+     * float, float, float)}
+     * </p>
+     *
+     * @param page the first page
+     * @param sinA sin value of page curling angle
+     * @param cosA cos value of page curling angle
+     * @param xFoldP1 x of xFoldP1 point in rotated coordinate system
+     * @param edgeX edge shadow width on X axis
+     * @param edgeY edge shadow width on Y axis
+     */
+    private void computeBackVertexesWhenSlope(Page page, float sinA,
+                                              float cosA, float xFoldP1,
+                                              float edgeX, float edgeY) {
+        final float oX = page.originP.x;
+        final float oY = page.originP.y;
+        final float dY = page.diagonalP.y;
+        final float cOX = page.originP.texX;
+        final float cOY = page.originP.texY;
+        final float cDY = page.diagonalP.texY;
+        final float height = page.height;
+        final float d2oY = dY - oY;
+        final int count = mMeshCount;
+        final float stepSY = edgeY / count;
+        final float stepSX = edgeX / count;
+
         // add the first 3 float numbers is fold triangle
         mFoldBackVertexes.addVertex(mTouchP.x, mTouchP.y, 1, 0, cOX, cOY);
 
@@ -1704,9 +3788,43 @@ public class PageFlip {
             }
         }
 
-        mFoldBackVertexes.toFloatBuffer();
+        // compute vertexes of fold edge shadow
+        computeVertexesOfFoldTopEdgeShadow(mTouchP.x, mTouchP.y, sinA, cosA,
+                                           -edgeX, edgeY);
+    }
+
+    /**
+     * Compute vertexes of front of fold page and its base shadow when page
+     * flip is slope
+     * <p>
+     * It only writes {@link #mFoldFrontVertexes} and {@link #mFoldBaseShadow}
+     * and reads states which are computed before, so it is safe to run it in
+     * parallel with {@link #computeBackVertexesWhenSlope(Page, float, float,
+     * float, float, float)}
+     * </p>
+     *
+     * @param page the first page
+     * @param sinA sin value of page curling angle
+     * @param cosA cos value of page curling angle
+     * @param xFoldP1 x of xFoldP1 point in rotated coordinate system
+     * @param baseWcosA base shadow width * cosA
+     * @param baseWsinA base shadow width * sinA
+     */
+    private void computeFrontVertexesWhenSlope(Page page, float sinA,
+                                               float cosA, float xFoldP1,
+                                               float baseWcosA,
+                                               float baseWsinA) {
+        final float oX = page.originP.x;
+        final float oY = page.originP.y;
+        final float dY = page.diagonalP.y;
+        final float cOX = page.originP.texX;
+        final float cOY = page.originP.texY;
+        final float cDY = page.diagonalP.texY;
+        final float height = page.height;
+        final float d2oY = dY - oY;
+        final int count = mMeshCount;
 
-        // Like above computation, the below steps are computing vertexes of
+        // Like back computation, the below steps are computing vertexes of
         // front of fold page
         // Case 1: y coordinate of point YFP -> YFP1 is < diagonalP.y
         //
@@ -1733,10 +3851,10 @@ public class PageFlip {
         // 3. P point will be computed
         //
         // compute points within the page
-        stepX = (mXFoldP.x - mXFoldP1.x) / count;
-        stepY = (mYFoldP.y - mYFoldP1.y) / count;
-        x = mXFoldP.x - oX - stepX;
-        y = mYFoldP.y - oY - stepY;
+        float stepX = (mXFoldP.x - mXFoldP1.x) / count;
+        float stepY = (mYFoldP.y - mYFoldP1.y) / count;
+        float x = mXFoldP.x - oX - stepX;
+        float y = mYFoldP.y - oY - stepY;
         int j = 0;
         for (; j < count && Math.abs(y) < height; ++j, x -= stepX, y -= stepY) {
             computeFrontVertex(true, x, 0, xFoldP1, sinA, cosA,
@@ -1779,20 +3897,129 @@ public class PageFlip {
 
         }
 
-        // set uniform Z value for shadow vertexes
-        mFoldEdgesShadow.vertexZ = mFoldFrontVertexes.getFloatAt(2);
-        mFoldBaseShadow.vertexZ = -0.5f;
-
         // add two vertexes to connect with the unfold front page
         page.buildVertexesOfPageWhenSlope(mFoldFrontVertexes, mXFoldP1, mYFoldP1,
                                           mKValue);
-        mFoldFrontVertexes.toFloatBuffer();
+        addOppositePageVertexes();
+    }
 
-        // compute vertexes of fold edge shadow
-        mFoldBaseShadow.toFloatBuffer();
-        computeVertexesOfFoldTopEdgeShadow(mTouchP.x, mTouchP.y, sinA, cosA,
-                                           -edgeX, edgeY);
-        mFoldEdgesShadow.toFloatBuffer();
+    /**
+     * Add full page vertexes of the second page to front vertexes when page
+     * texture array is used, they are drawn together in one call. Nothing is
+     * added if the second page is in stationary layer
+     */
+    private void addOppositePageVertexes() {
+        if (mIsPageTextureArray && !mIsStationaryLayerEnabled &&
+            mPages[SECOND_PAGE] != null) {
+            mPages[SECOND_PAGE].addFullPageVertexes(mFoldFrontVertexes);
+        }
+    }
+
+    /**
+     * Is it worth building back of fold page in worker thread?
+     * <p>
+     * It is worth if building back costs more than handing it over to
+     * worker thread and waiting for it. Before the hand-off cost is measured,
+     * mesh count is compared with a default threshold
+     * </p>
+     *
+     * @return true if build back of fold page in worker thread
+     */
+    private boolean isParallelMeshBuildWorthy() {
+        if (mMeshBuildHandOffNanos == 0 || mNanosPerBackMesh == 0) {
+            return mMeshCount >= DEFAULT_PARALLEL_MESH_BUILD_THRESHOLD;
+        }
+
+        return mNanosPerBackMesh * mMeshCount > mMeshBuildHandOffNanos;
+    }
+
+    /**
+     * Update average costs of building mesh
+     *
+     * @param backNanos nanoseconds of building back of fold page
+     * @param handOffNanos nanoseconds of handing back building over to
+     *                     worker thread, -1 if it isn't measured
+     */
+    private void updateMeshBuildCost(long backNanos, long handOffNanos) {
+        if (mMeshCount > 0) {
+            float nanos = (float)backNanos / mMeshCount;
+            mNanosPerBackMesh = mNanosPerBackMesh == 0 ? nanos :
+                                mNanosPerBackMesh * 0.9f + nanos * 0.1f;
+        }
+
+        if (handOffNanos >= 0) {
+            mMeshBuildHandOffNanos = mMeshBuildHandOffNanos == 0 ?
+                                     handOffNanos :
+                                     mMeshBuildHandOffNanos * 0.9f +
+                                     handOffNanos * 0.1f;
+        }
+    }
+
+    /**
+     * Get executor for building mesh in parallel, create it if need
+     *
+     * @return executor with a daemon worker thread which exits when it is
+     *         idle
+     */
+    private ExecutorService getMeshBuildExecutor() {
+        if (mMeshBuildExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1, MESH_BUILD_WORKER_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "PageFlipMeshBuilder");
+                            t.setDaemon(true);
+                            mMeshBuildWorkerStarts.incrementAndGet();
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            mMeshBuildExecutor = executor;
+        }
+
+        return mMeshBuildExecutor;
+    }
+
+    /**
+     * Shut down executor for building mesh in parallel if it is created
+     */
+    private void shutdownMeshBuildExecutor() {
+        if (mMeshBuildExecutor != null) {
+            mMeshBuildExecutor.shutdown();
+            mMeshBuildExecutor = null;
+        }
+    }
+
+    /**
+     * Wait until mesh building task is done
+     * <p>
+     * The task is writing vertex buffers which will be read immediately, so we
+     * can't return before it is done even if current thread is interrupted
+     * </p>
+     *
+     * @param task mesh building task
+     */
+    private void waitForMeshBuildTask(Future<?> task) {
+        boolean isInterrupted = false;
+        while (true) {
+            try {
+                task.get();
+                break;
+            }
+            catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+            catch (ExecutionException e) {
+                throw new RuntimeException("Failed to build mesh of back of " +
+                                           "fold page", e.getCause());
+            }
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -1830,7 +4057,8 @@ public class PageFlip {
         // 1. compute quarter circle at origin point
         // 2. rotate quarter circle to touch point direction
         // 3. move quarter circle to touch point as top edge shadow
-        for (int i = 0; i < size; ++i, r += dr, j += 8) {
+        for (int i = 0; i < size;
+             ++i, r += dr, j += ShadowVertexes.PAIR_SIZE) {
             float x = (float)(sx * Math.cos(r));
             float y = (float)(sy * Math.sin(r));
 
@@ -1865,6 +4093,9 @@ public class PageFlip {
 
         // half count for fold page
         mMeshCount >>= 1;
+
+        // let deformation model decide how many meshes it really needs
+        mMeshCount = mDeformationModel.meshCount(mMeshCount);
     }
 
     /**
@@ -0,0 +1,673 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+/**
+ * Render host which drives many page flip instances in one GL thread
+ * <p>
+ * Every GLSurfaceView has its own GL thread and EGL context, many page flip
+ * widgets on screen mean many threads and contexts contending. The host has
+ * only one GL thread and one EGL context, every page flip instance draws to
+ * its own window surface: a {@link Surface}, {@link SurfaceHolder} of
+ * SurfaceView or {@link SurfaceTexture} of TextureView. Thread and context
+ * count stay constant as widgets are added.
+ * </p>
+ * <p>
+ * A frame only draws the surfaces which are requested by
+ * {@link #requestRender(Target)}, a renderer keeps animating by requesting
+ * render again in {@link Renderer#onDrawFrame(long)}. Frames are driven by
+ * {@link VsyncDriver} at vsync of GL thread. All instances share one GL
+ * context, so they must be created with the GL backend of host, see
+ * {@link #getGLBackend()}, and should share programs by the resources of
+ * host, see {@link #getSharedResources()}.
+ * </p>
+ * <p>All functions are thread safe except the ones of {@link Renderer}
+ * which are called in GL thread of host</p>
+ *
+ * @author eschao
+ */
+
+public class PageFlipRenderHost {
+
+    private final static String TAG = "PageFlipRenderHost";
+
+    // EGL constants which aren't defined in EGL10
+    private final static int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private final static int EGL_OPENGL_ES2_BIT = 0x0004;
+    private final static int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+    private final static int EGL_CONTEXT_LOST = 0x300E;
+
+    /**
+     * Renderer of a surface, all functions are called in GL thread of host
+     * with the surface made current
+     */
+    public interface Renderer {
+
+        /**
+         * Called when surface is created or GL context is recreated, call
+         * {@link PageFlip#onSurfaceCreated()} in it
+         */
+        void onSurfaceCreated();
+
+        /**
+         * Called when surface size is changed, call
+         * {@link PageFlip#onSurfaceChanged(int, int)} in it
+         *
+         * @param width surface width
+         * @param height surface height
+         */
+        void onSurfaceChanged(int width, int height);
+
+        /**
+         * Draw a frame, call
+         * {@link PageFlipRenderHost#requestRender(Target)} to draw the next
+         * frame if it is animating
+         *
+         * @param frameTimeNanos vsync time of frame in
+         *                       {@link System#nanoTime()} base, animation
+         *                       should be advanced to it
+         */
+        void onDrawFrame(long frameTimeNanos);
+
+        /**
+         * Called before surface is destroyed, GL context is still alive and
+         * GL resources of renderer itself can be released. GL resources of
+         * page flip are deleted by host after it, see
+         * {@link PageFlip#deleteGLResources()}
+         */
+        void onSurfaceDestroyed();
+    }
+
+    /**
+     * Window surface of a page flip instance in host
+     */
+    public final static class Target {
+
+        final Object mWindow;
+        final PageFlip mPageFlip;
+        final Renderer mRenderer;
+
+        // EGL surface and its swap interval which are only accessed in GL
+        // thread
+        EGLSurface mSurface;
+        int mSwapInterval;
+        int mWidth;
+        int mHeight;
+
+        // is a frame requested
+        volatile boolean mIsDirty;
+
+        Target(Object window, int width, int height, PageFlip pageFlip,
+               Renderer renderer) {
+            mWindow = window;
+            mWidth = width;
+            mHeight = height;
+            mPageFlip = pageFlip;
+            mRenderer = renderer;
+            mSurface = null;
+            mSwapInterval = 1;
+            mIsDirty = true;
+        }
+    }
+
+    // GL thread and its handler
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    // surfaces drawn by host, it is only accessed in GL thread
+    private final List<Target> mTargets;
+    // the current surface of GL context
+    private Target mCurrent;
+
+    // EGL objects
+    private EGL10 mEGL;
+    private EGLDisplay mDisplay;
+    private EGLConfig mConfig;
+    private EGLContext mContext;
+    private final int mDepthSize;
+    private final int mStencilSize;
+
+    // GL state cache and programs shared by all instances of context
+    private final StateCacheGLBackend mGL;
+    private final SharedGLResources mResources;
+
+    // vsync driver of frames in GL thread
+    private final VsyncDriver mDriver;
+
+    /**
+     * Constructor with 16 bits depth buffer and no stencil buffer
+     */
+    public PageFlipRenderHost() {
+        this(16, 0);
+    }
+
+    /**
+     * Constructor
+     * <p>GL thread is started and EGL context is created in it, depth
+     * buffer isn't needed if depth test of page flip is disabled, see
+     * {@link PageFlip#enableDepthTest(boolean)}</p>
+     *
+     * @param depthSize bits of depth buffer, 0 if no depth buffer
+     * @param stencilSize bits of stencil buffer, 0 if no stencil buffer
+     * @throws IllegalArgumentException if size is negative
+     */
+    public PageFlipRenderHost(int depthSize, int stencilSize) {
+        if (depthSize < 0 || stencilSize < 0) {
+            throw new IllegalArgumentException("Invalid depth size: " +
+                                               depthSize + " or stencil " +
+                                               "size: " + stencilSize);
+        }
+
+        mDepthSize = depthSize;
+        mStencilSize = stencilSize;
+        mTargets = new ArrayList<>();
+        mCurrent = null;
+        mGL = new StateCacheGLBackend(
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 ?
+                new GLES30Backend() : new GLES20Backend());
+        mResources = new SharedGLResources();
+
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mDriver = new VsyncDriver(mThread.getLooper(),
+                                  new VsyncDriver.Callback() {
+            @Override
+            public boolean onFrame(long frameTimeNanos) {
+                return drawFrame(frameTimeNanos);
+            }
+        });
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                createContext();
+            }
+        });
+    }
+
+    /**
+     * Get GL backend of host, page flip instances drawn by host must be
+     * created with it, see {@link PageFlip#PageFlip(android.content.Context,
+     * GLBackend)}
+     *
+     * @return GL backend of host
+     */
+    public GLBackend getGLBackend() {
+        return mGL;
+    }
+
+    /**
+     * Get shared resources of host GL context, give it to page flip
+     * instances to compile programs only once, see
+     * {@link PageFlip#setSharedResources(SharedGLResources)}
+     *
+     * @return shared GL resources
+     */
+    public SharedGLResources getSharedResources() {
+        return mResources;
+    }
+
+    /**
+     * Add a window surface and draw it with given page flip instance
+     *
+     * @param window {@link Surface}, {@link SurfaceHolder} or
+     *               {@link SurfaceTexture}
+     * @param width surface width
+     * @param height surface height
+     * @param pageFlip page flip instance created with GL backend of host
+     * @param renderer renderer of surface
+     * @return target of surface in host
+     * @throws IllegalArgumentException if window type is not supported or
+     *         page flip isn't created with GL backend of host
+     */
+    public Target addSurface(Object window, int width, int height,
+                             PageFlip pageFlip, Renderer renderer) {
+        if (!(window instanceof Surface || window instanceof SurfaceHolder ||
+              window instanceof SurfaceTexture)) {
+            throw new IllegalArgumentException("Unsupported window: " +
+                                               window);
+        }
+        if (pageFlip == null || pageFlip.getGLBackend() != mGL) {
+            throw new IllegalArgumentException("PageFlip isn't created " +
+                                               "with GL backend of host");
+        }
+        if (renderer == null) {
+            throw new IllegalArgumentException("Renderer is null");
+        }
+
+        final Target target = new Target(window, width, height, pageFlip,
+                                         renderer);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mTargets.add(target);
+                createSurface(target);
+            }
+        });
+        scheduleFrame();
+        return target;
+    }
+
+    /**
+     * Change size of surface
+     *
+     * @param target target of surface
+     * @param width new surface width
+     * @param height new surface height
+     */
+    public void resizeSurface(final Target target, final int width,
+                              final int height) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                target.mWidth = width;
+                target.mHeight = height;
+                if (target.mSurface != null && makeCurrent(target)) {
+                    target.mRenderer.onSurfaceChanged(width, height);
+                }
+            }
+        });
+        requestRender(target);
+    }
+
+    /**
+     * Remove surface from host
+     * <p>It blocks until EGL surface is destroyed, the window can be
+     * released after it returns</p>
+     *
+     * @param target target of surface
+     */
+    public void removeSurface(final Target target) {
+        runAndWait(new Runnable() {
+            @Override
+            public void run() {
+                if (mTargets.remove(target)) {
+                    destroySurface(target);
+                }
+            }
+        });
+    }
+
+    /**
+     * Request to draw a frame of surface
+     *
+     * @param target target of surface
+     */
+    public void requestRender(Target target) {
+        target.mIsDirty = true;
+        scheduleFrame();
+    }
+
+    /**
+     * Run a task in GL thread of host
+     *
+     * @param r task
+     */
+    public void queueEvent(Runnable r) {
+        mHandler.post(r);
+    }
+
+    /**
+     * Destroy all surfaces and GL context, then quit GL thread
+     * <p>It blocks until everything is destroyed, host can't be used after
+     * it</p>
+     */
+    public void release() {
+        mDriver.cancel();
+        runAndWait(new Runnable() {
+            @Override
+            public void run() {
+                for (Target target : mTargets) {
+                    destroySurface(target);
+                }
+                mTargets.clear();
+                destroyContext();
+            }
+        });
+        mThread.quit();
+    }
+
+    /**
+     * Request a frame at the next vsync of GL thread
+     */
+    private void scheduleFrame() {
+        mDriver.requestFrame();
+    }
+
+    /**
+     * Run task in GL thread and wait until it is done
+     *
+     * @param r task
+     */
+    private void runAndWait(final Runnable r) {
+        if (Looper.myLooper() == mThread.getLooper()) {
+            r.run();
+            return;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.run();
+                }
+                finally {
+                    latch.countDown();
+                }
+            }
+        });
+
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Draw a frame of every requested surface in GL thread
+     *
+     * @param frameTimeNanos vsync time of frame
+     * @return true if any surface is requested again when it is drawing
+     */
+    private boolean drawFrame(long frameTimeNanos) {
+        // only the last swap of frame waits for vsync, see setSwapInterval()
+        int last = -1;
+        for (int i = 0; i < mTargets.size(); ++i) {
+            final Target target = mTargets.get(i);
+            if (target.mIsDirty && target.mSurface != null) {
+                last = i;
+            }
+        }
+
+        for (int i = 0; i <= last; ++i) {
+            final Target target = mTargets.get(i);
+            if (!target.mIsDirty || target.mSurface == null ||
+                !makeCurrent(target)) {
+                continue;
+            }
+
+            // renderer may request the next frame when it is drawing
+            target.mIsDirty = false;
+            target.mRenderer.onDrawFrame(frameTimeNanos);
+            setSwapInterval(target, i == last ? 1 : 0);
+            if (!mEGL.eglSwapBuffers(mDisplay, target.mSurface)) {
+                final int error = mEGL.eglGetError();
+                Log.w(TAG, "Can't swap buffers, EGL error: " + error);
+                if (error == EGL_CONTEXT_LOST) {
+                    recreateContext();
+                    return false;
+                }
+            }
+        }
+
+        for (int i = 0; i < mTargets.size(); ++i) {
+            if (mTargets.get(i).mIsDirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make surface of target current and restore GL states of its page flip
+     *
+     * @param target target of surface
+     * @return true if surface is made current
+     */
+    private boolean makeCurrent(Target target) {
+        if (mCurrent == target) {
+            return true;
+        }
+
+        if (!mEGL.eglMakeCurrent(mDisplay, target.mSurface, target.mSurface,
+                                 mContext)) {
+            Log.w(TAG, "Can't make surface current, EGL error: " +
+                       mEGL.eglGetError());
+            mCurrent = null;
+            return false;
+        }
+
+        mCurrent = target;
+        target.mPageFlip.restoreContextState();
+        return true;
+    }
+
+    /**
+     * Set swap interval of target whose surface is current
+     * <p>
+     * With interval 1 a swap may wait for vsync when the surface has no free
+     * buffer, N surfaces swapped one by one could then take N vsyncs for one
+     * frame. Surfaces before the last one of frame are swapped with interval
+     * 0, they are still composited at vsync by system compositor. EGL10 has
+     * no swap interval, it is set by EGL14 on the current display since
+     * Android 4.2, older devices keep the default interval 1
+     * </p>
+     *
+     * @param target target of current surface
+     * @param interval swap interval
+     */
+    private void setSwapInterval(Target target, int interval) {
+        if (target.mSwapInterval == interval ||
+            Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return;
+        }
+
+        if (EGL14.eglSwapInterval(EGL14.eglGetCurrentDisplay(), interval)) {
+            target.mSwapInterval = interval;
+        }
+        else {
+            Log.w(TAG, "Can't set swap interval, EGL error: " +
+                       EGL14.eglGetError());
+        }
+    }
+
+    /**
+     * Create EGL context in GL thread, GLES 3.0 is tried first and GLES 2.0
+     * is used if it is unavailable
+     */
+    private void createContext() {
+        mEGL = (EGL10)EGLContext.getEGL();
+        mDisplay = mEGL.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        if (mDisplay == EGL10.EGL_NO_DISPLAY ||
+            !mEGL.eglInitialize(mDisplay, new int[2])) {
+            Log.e(TAG, "Can't initialize EGL display, EGL error: " +
+                       mEGL.eglGetError());
+            return;
+        }
+
+        // a GLES 3.0 context needs a config which is renderable by GLES 3.0
+        mConfig = chooseConfig(EGL_OPENGL_ES3_BIT_KHR);
+        if (mConfig != null) {
+            mContext = createContext(3);
+            if (mContext == null || mContext == EGL10.EGL_NO_CONTEXT) {
+                Log.d(TAG, "Can't create GLES 3.0 context, fall back to 2.0");
+                mContext = null;
+                mConfig = null;
+            }
+        }
+
+        if (mConfig == null) {
+            mConfig = chooseConfig(EGL_OPENGL_ES2_BIT);
+            if (mConfig == null) {
+                Log.e(TAG, "Can't choose EGL config, EGL error: " +
+                           mEGL.eglGetError());
+                return;
+            }
+
+            mContext = createContext(2);
+        }
+
+        if (mContext == null || mContext == EGL10.EGL_NO_CONTEXT) {
+            Log.e(TAG, "Can't create EGL context, EGL error: " +
+                       mEGL.eglGetError());
+            mContext = null;
+        }
+    }
+
+    /**
+     * Choose EGL config with given renderable type
+     *
+     * @param renderableType renderable type bit
+     * @return EGL config, null if no such config
+     */
+    private EGLConfig chooseConfig(int renderableType) {
+        final int[] attribs = {EGL10.EGL_RED_SIZE, 8,
+                               EGL10.EGL_GREEN_SIZE, 8,
+                               EGL10.EGL_BLUE_SIZE, 8,
+                               EGL10.EGL_DEPTH_SIZE, mDepthSize,
+                               EGL10.EGL_STENCIL_SIZE, mStencilSize,
+                               EGL10.EGL_RENDERABLE_TYPE, renderableType,
+                               EGL10.EGL_NONE};
+        final EGLConfig[] configs = new EGLConfig[1];
+        final int[] count = new int[1];
+        if (!mEGL.eglChooseConfig(mDisplay, attribs, configs, 1, count) ||
+            count[0] < 1) {
+            return null;
+        }
+
+        return configs[0];
+    }
+
+    /**
+     * Create EGL context with given GLES version
+     *
+     * @param version GLES version
+     * @return EGL context
+     */
+    private EGLContext createContext(int version) {
+        final int[] attribs = {EGL_CONTEXT_CLIENT_VERSION, version,
+                               EGL10.EGL_NONE};
+        return mEGL.eglCreateContext(mDisplay, mConfig, EGL10.EGL_NO_CONTEXT,
+                                     attribs);
+    }
+
+    /**
+     * Destroy EGL context in GL thread
+     */
+    private void destroyContext() {
+        if (mContext == null) {
+            return;
+        }
+
+        mEGL.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE,
+                            EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        if (!mEGL.eglDestroyContext(mDisplay, mContext)) {
+            Log.e(TAG, "Can't destroy EGL context, EGL error: " +
+                       mEGL.eglGetError());
+        }
+        mContext = null;
+        mCurrent = null;
+
+        // programs are gone with context, their names will be reused
+        mResources.invalidate();
+    }
+
+    /**
+     * Recreate EGL context and all surfaces when the context is lost, all
+     * GL resources of page flip instances are gone with it
+     */
+    private void recreateContext() {
+        for (Target target : mTargets) {
+            if (target.mSurface != null) {
+                mEGL.eglDestroySurface(mDisplay, target.mSurface);
+                target.mSurface = null;
+            }
+        }
+
+        destroyContext();
+        createContext();
+        for (Target target : mTargets) {
+            createSurface(target);
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Create EGL surface of target and notify its renderer
+     *
+     * @param target target of surface
+     */
+    private void createSurface(Target target) {
+        if (mContext == null) {
+            return;
+        }
+
+        target.mSurface = mEGL.eglCreateWindowSurface(mDisplay, mConfig,
+                                                      target.mWindow, null);
+        if (target.mSurface == null ||
+            target.mSurface == EGL10.EGL_NO_SURFACE) {
+            Log.e(TAG, "Can't create window surface, EGL error: " +
+                       mEGL.eglGetError());
+            target.mSurface = null;
+            return;
+        }
+
+        // EGL default swap interval of new surface
+        target.mSwapInterval = 1;
+        if (makeCurrent(target)) {
+            target.mRenderer.onSurfaceCreated();
+            target.mRenderer.onSurfaceChanged(target.mWidth, target.mHeight);
+            target.mIsDirty = true;
+        }
+    }
+
+    /**
+     * Notify renderer and destroy EGL surface of target
+     *
+     * @param target target of surface
+     */
+    private void destroySurface(Target target) {
+        if (target.mSurface == null) {
+            return;
+        }
+
+        // context is shared by other surfaces and lives on, resources of
+        // this surface must be deleted instead of forgotten
+        if (makeCurrent(target)) {
+            target.mRenderer.onSurfaceDestroyed();
+            target.mPageFlip.deleteGLResources();
+        }
+
+        mEGL.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE,
+                            EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        mCurrent = null;
+        mEGL.eglDestroySurface(mDisplay, target.mSurface);
+        target.mSurface = null;
+    }
+}
@@ -29,6 +29,16 @@ import android.graphics.Shader;
  */
 public class PageFlipUtils {
 
+    // color stops of gradient shadow on back of fold page
+    final static int[] GRADIENT_SHADOW_COLORS = new int[] {0x00FFFFFF,
+                                                           0x24000000,
+                                                           0x24101010,
+                                                           0x48000000};
+    final static float[] GRADIENT_SHADOW_POSITIONS = new float[] {0.5f,
+                                                                  0.9f,
+                                                                  0.94f,
+                                                                  1.0f};
+
     /**
      * Compute average color for given bitmap
      *
@@ -106,6 +116,7 @@ public class PageFlipUtils {
 
     /**
      * Create gradient bitmap for drawing lighting effect on back of fold page
+     * <p>Page flip computes the same gradient in fold back shader</p>
      *
      * @return gradient bitmap object
      */
@@ -115,13 +126,9 @@ public class PageFlipUtils {
         Bitmap bitmap = Bitmap.createBitmap(256, 1, Bitmap.Config.ARGB_8888);
 
         c.setBitmap(bitmap);
-        int[] colors = new int[]{0x00FFFFFF,
-                                 0x24000000,
-                                 0x24101010,
-                                 0x48000000};
-        float[] positions = new float[]{0.5f, 0.9f, 0.94f, 1.0f};
-        LinearGradient shader = new LinearGradient(0, 0, 256, 0, colors,
-                                                   positions,
+        LinearGradient shader = new LinearGradient(0, 0, 256, 0,
+                                                   GRADIENT_SHADOW_COLORS,
+                                                   GRADIENT_SHADOW_POSITIONS,
                                                    Shader.TileMode.CLAMP);
         paint.setShader(shader);
         c.drawRect(0, 0, 256, 1, paint);
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+import static android.opengl.GLES20.GL_CLAMP_TO_EDGE;
+import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_WRAP_S;
+import static android.opengl.GLES20.GL_TEXTURE_WRAP_T;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES30.GL_RGBA8;
+import static android.opengl.GLES30.GL_TEXTURE_2D_ARRAY;
+
+/**
+ * One texture which holds all page textures in its layers
+ * <p>
+ * With GLES 3.0, it is a 2D texture array and every page texture is a layer
+ * of it. With GLES 2.0, it is an atlas: a 2D texture divided into a grid of
+ * cells and every page texture is a cell. Since all page textures are in one
+ * texture, the pages which are using different textures can be drawn in one
+ * draw call, every vertex carries a layer index to select its texture.
+ * </p>
+ * <p>
+ * Layers are allocated and freed like texture ids by {@link Page}. All layers
+ * have the same size, bitmap with different size or config is converted
+ * before uploading. If the atlas is larger than the max texture size of GL,
+ * all cells are scaled down to fit in it.
+ * </p>
+ * <p>Texture is created lazily, all functions except {@link #alloc()},
+ * {@link #free(int)} and {@link #invalidate()} should be called in OpenGL
+ * thread</p>
+ *
+ * @author eschao
+ */
+
+final class PageTextureArray {
+
+    private final static String TAG = "PageTextureArray";
+
+    final static int INVALID_LAYER = -1;
+    private final static int INVALID_TEXTURE = 0;
+
+    // texture name, it is an array for glGenTextures/glDeleteTextures
+    private final int[] mTexRef;
+
+    // is texture array of GLES 3.0 or atlas of GLES 2.0
+    private final boolean mIsArray;
+
+    // size of layer in pixels and layer count
+    private final int mLayerW;
+    private final int mLayerH;
+    private final int mLayerCount;
+
+    // columns and rows of atlas grid, they are always 1 for texture array
+    private final int mCols;
+    private final int mRows;
+
+    // is layer allocated
+    private final boolean[] mIsUsed;
+
+    // pixels buffer for uploading bitmap to texture array
+    private ByteBuffer mPixels;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     * @param isArray true if it is texture array of GLES 3.0
+     * @param layerW layer width
+     * @param layerH layer height
+     * @param layerCount layer count
+     * @param cols columns of atlas grid
+     * @param rows rows of atlas grid
+     */
+    private PageTextureArray(GLBackend gl, boolean isArray, int layerW,
+                             int layerH, int layerCount, int cols, int rows) {
+        mGL = gl;
+        mIsArray = isArray;
+        mLayerW = layerW;
+        mLayerH = layerH;
+        mLayerCount = layerCount;
+        mCols = cols;
+        mRows = rows;
+        mIsUsed = new boolean[layerCount];
+        mTexRef = new int[] {INVALID_TEXTURE};
+        mPixels = null;
+    }
+
+    /**
+     * Create a texture array for given layers
+     *
+     * @param gl GL backend
+     * @param isGLES3 true if GLES 3.0 is active, a texture array will be
+     *                created, otherwise an atlas is created
+     * @param layerW layer width
+     * @param layerH layer height
+     * @param layerCount layer count
+     * @param maxTextureSize max texture size of GL
+     * @return texture array
+     */
+    static PageTextureArray create(GLBackend gl, boolean isGLES3, int layerW,
+                                   int layerH, int layerCount,
+                                   int maxTextureSize) {
+        if (layerW < 1 || layerH < 1 || layerCount < 1) {
+            throw new IllegalArgumentException("Invalid layer size: " +
+                                               layerW + "x" + layerH +
+                                               ", count: " + layerCount);
+        }
+
+        float scale = Math.min(1f, (float)maxTextureSize /
+                                   Math.max(layerW, layerH));
+        if (isGLES3) {
+            return new PageTextureArray(gl, true, (int)(layerW * scale),
+                                        (int)(layerH * scale), layerCount,
+                                        1, 1);
+        }
+
+        // choose the grid which keeps the largest cell
+        int cols = 1;
+        scale = 0;
+        for (int c = 1; c <= layerCount; ++c) {
+            int r = (layerCount + c - 1) / c;
+            float s = Math.min(1f, Math.min((float)maxTextureSize /
+                                            (c * layerW),
+                                            (float)maxTextureSize /
+                                            (r * layerH)));
+            if (s > scale) {
+                scale = s;
+                cols = c;
+            }
+        }
+
+        if (scale < 1f) {
+            Log.w(TAG, "Page textures are scaled by " + scale +
+                       " to fit in atlas");
+        }
+
+        return new PageTextureArray(gl, false, (int)(layerW * scale),
+                                    (int)(layerH * scale), layerCount, cols,
+                                    (layerCount + cols - 1) / cols);
+    }
+
+    /**
+     * Is it texture array of GLES 3.0?
+     *
+     * @return true if it is texture array, false if it is atlas
+     */
+    boolean isArray() {
+        return mIsArray;
+    }
+
+    /**
+     * Allocate a free layer
+     *
+     * @return layer index
+     * @throws IllegalStateException if there is no free layer
+     */
+    int alloc() {
+        for (int i = 0; i < mLayerCount; ++i) {
+            if (!mIsUsed[i]) {
+                mIsUsed[i] = true;
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("No free layer in page texture array");
+    }
+
+    /**
+     * Free a layer
+     *
+     * @param layer layer index, invalid index is ignored
+     */
+    void free(int layer) {
+        if (layer > INVALID_LAYER && layer < mLayerCount) {
+            mIsUsed[layer] = false;
+        }
+    }
+
+    /**
+     * Bind texture, create it if it isn't created yet
+     */
+    void bind() {
+        final int target = mIsArray ? GL_TEXTURE_2D_ARRAY : GL_TEXTURE_2D;
+        if (mTexRef[0] != INVALID_TEXTURE) {
+            mGL.glBindTexture(target, mTexRef[0]);
+            return;
+        }
+
+        mGL.glGenTextures(1, mTexRef, 0);
+        mGL.glBindTexture(target, mTexRef[0]);
+        mGL.glTexParameterf(target, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        mGL.glTexParameterf(target, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        mGL.glTexParameterf(target, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(target, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        if (mIsArray) {
+            mGL.glTexStorage3D(target, 1, GL_RGBA8, mLayerW, mLayerH,
+                               mLayerCount);
+        }
+        else {
+            mGL.glTexImage2D(target, 0, GL_RGBA, mCols * mLayerW,
+                             mRows * mLayerH, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                             null);
+        }
+    }
+
+    /**
+     * Upload bitmap to given layer
+     * <p>Texture is left bound on the active texture unit</p>
+     *
+     * @param layer layer index
+     * @param b bitmap
+     */
+    void upload(int layer, Bitmap b) {
+        if (layer <= INVALID_LAYER || layer >= mLayerCount) {
+            throw new IllegalArgumentException("Invalid layer: " + layer);
+        }
+
+        // convert bitmap to the size and config of layer
+        Bitmap bitmap = b;
+        if (bitmap.getWidth() != mLayerW || bitmap.getHeight() != mLayerH) {
+            bitmap = Bitmap.createScaledBitmap(bitmap, mLayerW, mLayerH,
+                                               true);
+        }
+
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            Bitmap copy = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            if (bitmap != b) {
+                bitmap.recycle();
+            }
+            bitmap = copy;
+        }
+
+        bind();
+        if (mIsArray) {
+            final int bytes = mLayerW * mLayerH * 4;
+            if (mPixels == null || mPixels.capacity() < bytes) {
+                mPixels = ByteBuffer.allocateDirect(bytes);
+            }
+
+            mPixels.clear();
+            bitmap.copyPixelsToBuffer(mPixels);
+            mPixels.position(0);
+            mGL.glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, mLayerW,
+                                mLayerH, 1, GL_RGBA, GL_UNSIGNED_BYTE,
+                                mPixels);
+        }
+        else {
+            mGL.texSubImage2D(GL_TEXTURE_2D, 0, (layer % mCols) * mLayerW,
+                              (layer / mCols) * mLayerH, bitmap);
+        }
+
+        if (bitmap != b) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Set atlas grid uniform: (columns, rows, half texel x, half texel y) of
+     * cell, the half texel is used to clamp texture coordinate in cell
+     * <p>Nothing is set for texture array</p>
+     *
+     * @param location uniform location of atlas grid
+     */
+    void setAtlasUniform(int location) {
+        if (!mIsArray) {
+            mGL.glUniform4f(location, mCols, mRows, 0.5f / mLayerW,
+                            0.5f / mLayerH);
+        }
+    }
+
+    /**
+     * Delete texture
+     */
+    void delete() {
+        if (mTexRef[0] != INVALID_TEXTURE) {
+            mGL.glDeleteTextures(1, mTexRef, 0);
+            mTexRef[0] = INVALID_TEXTURE;
+        }
+    }
+
+    /**
+     * Forget texture without deleting it when GL context is lost
+     */
+    void invalidate() {
+        mTexRef[0] = INVALID_TEXTURE;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static android.opengl.GLES20.GL_LINK_STATUS;
+import static android.opengl.GLES20.GL_RENDERER;
+import static android.opengl.GLES20.GL_VENDOR;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES30.GL_PROGRAM_BINARY_LENGTH;
+
+/**
+ * Persistent cache of linked GLES 3.0 program binaries
+ * <p>
+ * A linked program is saved to a file by glGetProgramBinary and loaded by
+ * glProgramBinary next time, so shader scripts don't need to be compiled and
+ * linked again. The file is keyed by a hash of driver vendor, renderer,
+ * version and the final shader sources, a binary of other driver or older
+ * scripts is never loaded. If a binary is rejected by driver, its file is
+ * deleted and the caller should compile program from sources.
+ * </p>
+ * <p>All functions should be called in OpenGL thread</p>
+ *
+ * @author eschao
+ */
+
+final class ProgramBinaryCache {
+
+    private final static String TAG = "ProgramBinaryCache";
+    private final static String FILE_SUFFIX = ".bin";
+
+    // directory of binary files
+    private final File mDir;
+
+    // driver identity which is a part of key
+    private final String mDriver;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     * <p>It queries driver identity from current GL context</p>
+     *
+     * @param gl GL backend
+     * @param dir directory of binary files
+     */
+    ProgramBinaryCache(GLBackend gl, File dir) {
+        mGL = gl;
+        mDir = dir;
+        mDriver = gl.glGetString(GL_VENDOR) + '|' +
+                  gl.glGetString(GL_RENDERER) + '|' +
+                  gl.glGetString(GL_VERSION);
+    }
+
+    /**
+     * Load binary to program
+     *
+     * @param program program which is created but not linked
+     * @param sources final vertex and fragment shader sources of program
+     * @return true if binary is loaded and program is linked successfully
+     */
+    boolean load(int program, String... sources) {
+        final File file = fileOf(sources);
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            final int format = in.readInt();
+            final int length = in.readInt();
+            if (length < 1 || length > file.length()) {
+                throw new IOException("Invalid binary length: " + length);
+            }
+
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            final ByteBuffer binary = ByteBuffer.allocateDirect(length)
+                                                .order(ByteOrder.nativeOrder());
+            binary.put(data).position(0);
+            mGL.glProgramBinary(program, format, binary, length);
+
+            final int[] result = new int[1];
+            mGL.glGetProgramiv(program, GL_LINK_STATUS, result, 0);
+            if (result[0] != 0) {
+                return true;
+            }
+
+            Log.d(TAG, "Program binary is rejected by driver: " + file);
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Can't read program binary: " + file, e);
+        }
+        finally {
+            close(in);
+        }
+
+        // driver may reject binary after it is updated, recompile next time
+        if (!file.delete()) {
+            Log.w(TAG, "Can't delete program binary: " + file);
+        }
+        return false;
+    }
+
+    /**
+     * Save binary of linked program
+     * <p>Program should be linked with GL_PROGRAM_BINARY_RETRIEVABLE_HINT</p>
+     *
+     * @param program linked program
+     * @param sources final vertex and fragment shader sources of program
+     */
+    void save(int program, String... sources) {
+        final File file = fileOf(sources);
+        final int[] length = new int[1];
+        mGL.glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (file == null || length[0] < 1) {
+            return;
+        }
+
+        final int[] format = new int[1];
+        final ByteBuffer binary = ByteBuffer.allocateDirect(length[0])
+                                            .order(ByteOrder.nativeOrder());
+        mGL.glGetProgramBinary(program, length[0], length, 0, format, 0,
+                               binary);
+        if (length[0] < 1) {
+            return;
+        }
+
+        final byte[] data = new byte[length[0]];
+        binary.position(0);
+        binary.get(data);
+
+        // write to a temporary file first, a broken file is never loaded
+        final File tmp = new File(mDir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                throw new IOException("Can't create directory: " + mDir);
+            }
+
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeInt(format[0]);
+            out.writeInt(data.length);
+            out.write(data);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Can't rename file: " + tmp);
+            }
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Can't write program binary: " + file, e);
+            close(out);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Get binary file for given shader sources
+     *
+     * @param sources final shader sources of program
+     * @return binary file, null if hash can't be computed
+     */
+    private File fileOf(String... sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(mDriver.getBytes("UTF-8"));
+            for (String source : sources) {
+                digest.update((byte)0);
+                digest.update(source.getBytes("UTF-8"));
+            }
+
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest()) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return new File(mDir, name.append(FILE_SUFFIX).toString());
+        }
+        catch (NoSuchAlgorithmException | IOException e) {
+            Log.w(TAG, "Can't compute hash of program", e);
+            return null;
+        }
+    }
+
+    /**
+     * Close stream quietly
+     *
+     * @param c stream
+     */
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,1632 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_COMPILE_STATUS;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_FRAMEBUFFER_BINDING;
+import static android.opengl.GLES20.GL_FRAMEBUFFER_COMPLETE;
+import static android.opengl.GLES20.GL_LINK_STATUS;
+import static android.opengl.GLES20.GL_MAX_TEXTURE_SIZE;
+import static android.opengl.GLES20.GL_NO_ERROR;
+import static android.opengl.GLES20.GL_RENDERER;
+import static android.opengl.GLES20.GL_SCISSOR_TEST;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_STENCIL_BITS;
+import static android.opengl.GLES20.GL_STENCIL_TEST;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_TRIANGLE_FAN;
+import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.GL_UNSIGNED_INT;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static android.opengl.GLES20.GL_VENDOR;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES20.GL_VIEWPORT;
+import static android.opengl.GLES30.GL_MAX_ARRAY_TEXTURE_LAYERS;
+import static android.opengl.GLES30.GL_READ_FRAMEBUFFER;
+import static android.opengl.GLES30.GL_UNIFORM_BUFFER;
+
+/**
+ * OpenGL backend which records GL commands without a GL context
+ * <p>
+ * Nothing is rendered, it only simulates the GL states which are relevant to
+ * page flip and counts:
+ * </p>
+ * <ul>
+ *     <li>calls of every GL function and draw calls</li>
+ *     <li>bytes uploaded to GL: client-side vertex arrays and indexes which
+ *     are copied at draw time, buffer objects, textures and uniforms</li>
+ *     <li>state transitions, including the redundant ones which set a state
+ *     with the same value it already has</li>
+ * </ul>
+ * <p>
+ * Object names(program, shader, buffer and texture) and variable locations
+ * returned by it are fake but consistent. Shader compiling and program
+ * linking are always successful. It is useful for measuring cost of a frame
+ * in JVM or catching regressions like an extra glUseProgram per frame.
+ * </p>
+ * <p>
+ * With {@link #setOverdrawCounting(boolean)}, triangles are transformed by
+ * the MVP matrix of program and rasterized in software to count the pixels
+ * shaded in every layer, a layer is the innermost group of
+ * {@link #glPushGroupMarker(String)}. See {@link OverdrawCounter} for what
+ * is simulated.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public class RecordingGLBackend implements GLBackend {
+
+    // max texture units being tracked
+    private final static int MAX_TEXTURE_UNITS = 32;
+
+    // limits reported by glGetIntegerv
+    private final static int MAX_TEXTURE_SIZE = 4096;
+    private final static int MAX_ARRAY_TEXTURE_LAYERS = 256;
+    private final static int STENCIL_BITS = 8;
+
+    // layer of drawings which are out of any marker group
+    public final static String NO_LAYER = "";
+
+    // is recording command text
+    private final boolean mIsLogging;
+
+    // is simulating GLES 3.0 context
+    private boolean mIsGLES30;
+
+    // recorded command text
+    private final List<String> mCommands;
+    // call counts of every GL function
+    private final Map<String, int[]> mCallCounts;
+
+    // statistics
+    private int mDrawCalls;
+    private int mStateChanges;
+    private int mRedundantStateChanges;
+    private long mVertexBytes;
+    private long mIndexBytes;
+    private long mBufferBytes;
+    private long mTextureBytes;
+    private long mUniformBytes;
+
+    // is counting overdraw, contents of buffer objects are kept for reading
+    // vertexes only when it is counting
+    private boolean mIsCountingOverdraw;
+    private final OverdrawCounter mOverdrawCounter;
+    private final Map<Integer, ByteBuffer> mBufferData;
+    // names of pushed group markers
+    private final List<String> mMarkers;
+
+    // next fake object name
+    private int mNextName;
+    // fake variable locations of every program
+    private final Map<String, Integer> mLocations;
+    private final Map<Integer, int[]> mNextLocations;
+    // names of programs which aren't deleted
+    private final Set<Integer> mPrograms;
+
+    // simulated GL states
+    private int mProgram;
+    private int mActiveTexture;
+    private final int[] mBoundTextures;
+    private int mArrayBuffer;
+    private int mUniformBuffer;
+    private int mVertexArray;
+    private VertexArray mVertexArrayState;
+    private final Map<Integer, VertexArray> mVertexArrays;
+    private int mFramebuffer;
+    private final Set<Integer> mEnabledCaps;
+    private final Map<Long, float[]> mUniforms;
+    private int mBlendSrc;
+    private int mBlendDst;
+    private final int[] mViewport;
+    private final int[] mScissor;
+    // uniform buffers of indexed bindings and bindings of uniform blocks
+    // keyed by program and block index
+    private final Map<Integer, Integer> mUniformBindings;
+    private final Map<Long, Integer> mBlockBindings;
+
+    /**
+     * Vertex attribute array, it is client-side array if ptr is not null,
+     * otherwise it is an offset in buffer object
+     */
+    private final static class AttribPointer {
+        int size;
+        int type;
+        int stride;
+        Buffer ptr;
+        int position;
+        int buffer;
+        int offset;
+
+        int bytesOfVertex() {
+            return stride > 0 ? stride : size * bytesOf(type);
+        }
+    }
+
+    /**
+     * States of vertex array object, the default one has name 0
+     */
+    private final static class VertexArray {
+        final Set<Integer> enabledAttribs = new HashSet<>();
+        final Map<Integer, AttribPointer> attribPointers = new HashMap<>();
+        int elementArrayBuffer;
+    }
+
+    /**
+     * Default constructor which records command text
+     */
+    public RecordingGLBackend() {
+        this(true);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param isLogging true if record text of every command, set it false to
+     *                  only keep statistics which costs less in benchmark
+     */
+    public RecordingGLBackend(boolean isLogging) {
+        mIsLogging = isLogging;
+        mCommands = new ArrayList<>();
+        mCallCounts = new HashMap<>();
+        mLocations = new HashMap<>();
+        mNextLocations = new HashMap<>();
+        mPrograms = new HashSet<>();
+        mBoundTextures = new int[MAX_TEXTURE_UNITS];
+        mEnabledCaps = new HashSet<>();
+        mVertexArrays = new HashMap<>();
+        mVertexArrayState = new VertexArray();
+        mVertexArrays.put(0, mVertexArrayState);
+        mUniforms = new HashMap<>();
+        mViewport = new int[4];
+        mScissor = new int[4];
+        mUniformBindings = new HashMap<>();
+        mBlockBindings = new HashMap<>();
+        mOverdrawCounter = new OverdrawCounter();
+        mBufferData = new HashMap<>();
+        mMarkers = new ArrayList<>();
+        mNextName = 1;
+        mActiveTexture = GL_TEXTURE0;
+        reset();
+    }
+
+    /**
+     * Simulate GLES 3.0 context or not
+     * <p>GLES 3.0 functions throw UnsupportedOperationException if it is not
+     * simulating GLES 3.0 context, default is false</p>
+     *
+     * @param isGLES30 true if simulating GLES 3.0 context
+     * @return self
+     */
+    public RecordingGLBackend setGLES30(boolean isGLES30) {
+        mIsGLES30 = isGLES30;
+        return this;
+    }
+
+    /**
+     * Reset recorded commands and statistics
+     * <p>The simulated GL states are kept, normally call it before a frame</p>
+     */
+    public void reset() {
+        mCommands.clear();
+        mCallCounts.clear();
+        mDrawCalls = 0;
+        mStateChanges = 0;
+        mRedundantStateChanges = 0;
+        mVertexBytes = 0;
+        mIndexBytes = 0;
+        mBufferBytes = 0;
+        mTextureBytes = 0;
+        mUniformBytes = 0;
+        mOverdrawCounter.reset();
+    }
+
+    /**
+     * Count overdraw or not, default is false
+     * <p>
+     * Contents of buffer objects are only kept while counting, enable it
+     * before vertexes are uploaded, for example: before
+     * {@link PageFlip#onSurfaceCreated()}. The draw calls whose vertexes
+     * can't be read are not counted
+     * </p>
+     *
+     * @param isCounting true if counting overdraw
+     * @return self
+     */
+    public RecordingGLBackend setOverdrawCounting(boolean isCounting) {
+        mIsCountingOverdraw = isCounting;
+        if (!isCounting) {
+            mBufferData.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Is counting overdraw?
+     *
+     * @return true if counting overdraw
+     */
+    public boolean isCountingOverdraw() {
+        return mIsCountingOverdraw;
+    }
+
+    /**
+     * Get pixels shaded in every layer since the last {@link #reset()}
+     * <p>A layer is named by the innermost group marker when drawing, the
+     * drawings out of any group are in {@link #NO_LAYER}</p>
+     *
+     * @return unmodifiable map of layer name and shaded pixels in the order
+     * of first drawing
+     */
+    public Map<String, Long> getShadedPixelsOfLayers() {
+        return mOverdrawCounter.getShadedPixelsOfLayers();
+    }
+
+    /**
+     * Get pixels shaded in all layers since the last {@link #reset()}
+     *
+     * @return shaded pixels
+     */
+    public long getShadedPixels() {
+        return mOverdrawCounter.getShadedPixels();
+    }
+
+    /**
+     * Get pixels which are shaded at least once since the last
+     * {@link #reset()}
+     *
+     * @return covered pixels
+     */
+    public long getCoveredPixels() {
+        return mOverdrawCounter.getCoveredPixels();
+    }
+
+    /**
+     * Get average times which every covered pixel is shaded
+     *
+     * @return overdraw ratio, 0 if nothing is drawn
+     */
+    public float getOverdrawRatio() {
+        final long covered = mOverdrawCounter.getCoveredPixels();
+        return covered > 0 ? (float)mOverdrawCounter.getShadedPixels() /
+                             covered : 0;
+    }
+
+    /**
+     * Get recorded command text
+     *
+     * @return unmodifiable command list
+     */
+    public List<String> getCommands() {
+        return Collections.unmodifiableList(mCommands);
+    }
+
+    /**
+     * Get call count of given GL function
+     *
+     * @param name GL function name, for example: glUseProgram
+     * @return call count
+     */
+    public int getCallCount(String name) {
+        int[] count = mCallCounts.get(name);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Get count of all GL calls
+     *
+     * @return call count
+     */
+    public int getTotalCallCount() {
+        int total = 0;
+        for (int[] count : mCallCounts.values()) {
+            total += count[0];
+        }
+        return total;
+    }
+
+    /**
+     * Get draw call count
+     *
+     * @return count of glDrawArrays and glDrawElements
+     */
+    public int getDrawCallCount() {
+        return mDrawCalls;
+    }
+
+    /**
+     * Get count of state transitions which really change GL states
+     *
+     * @return state transition count
+     */
+    public int getStateChangeCount() {
+        return mStateChanges;
+    }
+
+    /**
+     * Get count of state calls which set a state with its current value
+     *
+     * @return redundant state call count
+     */
+    public int getRedundantStateChangeCount() {
+        return mRedundantStateChanges;
+    }
+
+    /**
+     * Get bytes of client-side vertex arrays uploaded at draw time
+     *
+     * @return vertex bytes
+     */
+    public long getVertexBytesUploaded() {
+        return mVertexBytes;
+    }
+
+    /**
+     * Get bytes of client-side indexes uploaded at draw time
+     *
+     * @return index bytes
+     */
+    public long getIndexBytesUploaded() {
+        return mIndexBytes;
+    }
+
+    /**
+     * Get bytes uploaded to buffer objects by glBufferData and glBufferSubData
+     *
+     * @return buffer bytes
+     */
+    public long getBufferBytesUploaded() {
+        return mBufferBytes;
+    }
+
+    /**
+     * Get bytes of textures uploaded
+     *
+     * @return texture bytes
+     */
+    public long getTextureBytesUploaded() {
+        return mTextureBytes;
+    }
+
+    /**
+     * Get bytes of uniform values uploaded
+     *
+     * @return uniform bytes
+     */
+    public long getUniformBytesUploaded() {
+        return mUniformBytes;
+    }
+
+    /**
+     * Get total bytes uploaded to GL
+     *
+     * @return total bytes
+     */
+    public long getBytesUploaded() {
+        return mVertexBytes + mIndexBytes + mBufferBytes + mTextureBytes +
+               mUniformBytes;
+    }
+
+    /**
+     * Get current program
+     *
+     * @return program name in use
+     */
+    public int getCurrentProgram() {
+        return mProgram;
+    }
+
+    /**
+     * Get texture bound on given texture unit
+     *
+     * @param unit texture unit, for example: GL_TEXTURE0
+     * @return texture name
+     */
+    public int getBoundTexture(int unit) {
+        return mBoundTextures[unit - GL_TEXTURE0];
+    }
+
+    /**
+     * Get buffer bound on given target
+     *
+     * @param target GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER
+     * @return buffer name
+     */
+    public int getBoundBuffer(int target) {
+        return target == GL_ARRAY_BUFFER ? mArrayBuffer :
+               target == GL_ELEMENT_ARRAY_BUFFER ?
+               mVertexArrayState.elementArrayBuffer : 0;
+    }
+
+    /**
+     * Get bound vertex array object
+     *
+     * @return vertex array object name
+     */
+    public int getBoundVertexArray() {
+        return mVertexArray;
+    }
+
+    /**
+     * Is given capability enabled?
+     *
+     * @param cap GL capability, for example: GL_BLEND
+     * @return true if it is enabled
+     */
+    public boolean isEnabled(int cap) {
+        return mEnabledCaps.contains(cap);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        record("glActiveTexture", texture);
+        setState(mActiveTexture != texture);
+        mActiveTexture = texture;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        record("glAttachShader", program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        record("glBindBuffer", target, buffer);
+        if (target == GL_ARRAY_BUFFER) {
+            setState(mArrayBuffer != buffer);
+            mArrayBuffer = buffer;
+        }
+        else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            setState(mVertexArrayState.elementArrayBuffer != buffer);
+            mVertexArrayState.elementArrayBuffer = buffer;
+        }
+        else if (target == GL_UNIFORM_BUFFER) {
+            mUniformBuffer = buffer;
+        }
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        record("glBindFramebuffer", target, framebuffer);
+        // only draw frame buffer is tracked, read one is for blitting
+        if (target != GL_READ_FRAMEBUFFER) {
+            setState(mFramebuffer != framebuffer);
+            mFramebuffer = framebuffer;
+        }
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        record("glBindRenderbuffer", target, renderbuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        record("glBindTexture", target, texture);
+        final int unit = mActiveTexture - GL_TEXTURE0;
+        setState(mBoundTextures[unit] != texture);
+        mBoundTextures[unit] = texture;
+    }
+
+    @Override
+    public void glBlendFunc(int sFactor, int dFactor) {
+        record("glBlendFunc", sFactor, dFactor);
+        setState(mBlendSrc != sFactor || mBlendDst != dFactor);
+        mBlendSrc = sFactor;
+        mBlendDst = dFactor;
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        record("glBufferData", target, size, data == null ? "null" : "data",
+               usage);
+        if (data != null) {
+            mBufferBytes += size;
+        }
+
+        final int buffer = bufferOf(target);
+        if (mIsCountingOverdraw && buffer != 0) {
+            ByteBuffer copy = ByteBuffer.allocate(size)
+                                        .order(ByteOrder.nativeOrder());
+            if (data != null) {
+                copyBytes(copy, 0, data, size);
+            }
+            mBufferData.put(buffer, copy);
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size,
+                                Buffer data) {
+        record("glBufferSubData", target, offset, size);
+        mBufferBytes += size;
+
+        final ByteBuffer copy = mBufferData.get(bufferOf(target));
+        if (copy != null && offset + size <= copy.capacity()) {
+            copyBytes(copy, offset, data, size);
+        }
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        record("glCheckFramebufferStatus", target);
+        return GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void glClear(int mask) {
+        record("glClear", mask);
+        if (mIsCountingOverdraw) {
+            mOverdrawCounter.clear(mFramebuffer, mask, getClipRect());
+        }
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        record("glClearColor", red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClearDepthf(float depth) {
+        record("glClearDepthf", depth);
+    }
+
+    @Override
+    public void glClearStencil(int s) {
+        record("glClearStencil", s);
+        mOverdrawCounter.setClearStencil(s);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        record("glCompileShader", shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        record("glCreateProgram");
+        mPrograms.add(mNextName);
+        return mNextName++;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        record("glCreateShader", type);
+        return mNextName++;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        record("glDeleteBuffers", n, Arrays.toString(
+                Arrays.copyOfRange(buffers, offset, offset + n)));
+        for (int i = offset; i < offset + n; ++i) {
+            if (mArrayBuffer == buffers[i]) {
+                mArrayBuffer = 0;
+            }
+            if (mVertexArrayState.elementArrayBuffer == buffers[i]) {
+                mVertexArrayState.elementArrayBuffer = 0;
+            }
+            if (mUniformBuffer == buffers[i]) {
+                mUniformBuffer = 0;
+            }
+            mBufferData.remove(buffers[i]);
+        }
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        record("glDeleteFramebuffers", n, Arrays.toString(
+                Arrays.copyOfRange(framebuffers, offset, offset + n)));
+        for (int i = offset; i < offset + n; ++i) {
+            if (mFramebuffer == framebuffers[i]) {
+                mFramebuffer = 0;
+            }
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        record("glDeleteProgram", program);
+        mPrograms.remove(program);
+        if (mProgram == program) {
+            mProgram = 0;
+        }
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        record("glDeleteRenderbuffers", n, Arrays.toString(
+                Arrays.copyOfRange(renderbuffers, offset, offset + n)));
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        record("glDeleteShader", shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        record("glDeleteTextures", n, Arrays.toString(
+                Arrays.copyOfRange(textures, offset, offset + n)));
+        for (int i = offset; i < offset + n; ++i) {
+            for (int j = 0; j < MAX_TEXTURE_UNITS; ++j) {
+                if (mBoundTextures[j] == textures[i]) {
+                    mBoundTextures[j] = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        record("glDisable", cap);
+        setState(mEnabledCaps.remove(cap));
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        record("glDisableVertexAttribArray", index);
+        setState(mVertexArrayState.enabledAttribs.remove(index));
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        record("glDrawArrays", mode, first, count);
+        mDrawCalls++;
+        uploadVertexes(count);
+
+        if (mIsCountingOverdraw) {
+            final int[] indexes = new int[count];
+            for (int i = 0; i < count; ++i) {
+                indexes[i] = first + i;
+            }
+            countOverdraw(mode, indexes);
+        }
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        record("glDrawElements", mode, count, type);
+        mDrawCalls++;
+        mIndexBytes += (long)count * bytesOf(type);
+
+        // vertexes referenced by indexes are copied from client arrays
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        final int position = indices.position();
+        final int[] indexes = new int[count];
+        for (int i = 0; i < count; ++i) {
+            int index = indexAt(indices, type, position + i);
+            min = Math.min(min, index);
+            max = Math.max(max, index);
+            indexes[i] = index;
+        }
+
+        if (max >= min) {
+            uploadVertexes(max - min + 1);
+        }
+
+        if (mIsCountingOverdraw) {
+            countOverdraw(mode, indexes);
+        }
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        // indexes and vertexes are read from buffer objects, nothing is
+        // copied from client-side memory
+        record("glDrawElements", mode, count, type, offset);
+        mDrawCalls++;
+
+        final ByteBuffer data = mBufferData.get(
+                mVertexArrayState.elementArrayBuffer);
+        final int bytes = bytesOf(type);
+        if (mIsCountingOverdraw && data != null &&
+            offset + count * bytes <= data.capacity()) {
+            final int[] indexes = new int[count];
+            for (int i = 0; i < count; ++i) {
+                final int at = offset + i * bytes;
+                indexes[i] = bytes == 1 ? data.get(at) & 0xFF :
+                             bytes == 2 ? data.getShort(at) & 0xFFFF :
+                                          data.getInt(at);
+            }
+            countOverdraw(mode, indexes);
+        }
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        record("glEnable", cap);
+        setState(mEnabledCaps.add(cap));
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        record("glEnableVertexAttribArray", index);
+        setState(mVertexArrayState.enabledAttribs.add(index));
+    }
+
+    @Override
+    public void glFinish() {
+        record("glFinish");
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment,
+                                          int renderbufferTarget,
+                                          int renderbuffer) {
+        record("glFramebufferRenderbuffer", target, attachment,
+               renderbufferTarget, renderbuffer);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment,
+                                       int textureTarget, int texture,
+                                       int level) {
+        record("glFramebufferTexture2D", target, attachment, textureTarget,
+               texture, level);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        record("glGenBuffers", n);
+        for (int i = offset; i < offset + n; ++i) {
+            buffers[i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        record("glGenFramebuffers", n);
+        for (int i = offset; i < offset + n; ++i) {
+            framebuffers[i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        record("glGenRenderbuffers", n);
+        for (int i = offset; i < offset + n; ++i) {
+            renderbuffers[i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        record("glGenTextures", n);
+        for (int i = offset; i < offset + n; ++i) {
+            textures[i] = mNextName++;
+        }
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        record("glGetAttribLocation", program, name);
+        return locationOf(program, name, 0);
+    }
+
+    @Override
+    public int glGetError() {
+        record("glGetError");
+        return GL_NO_ERROR;
+    }
+
+    @Override
+    public void glGetIntegerv(int pName, int[] params, int offset) {
+        record("glGetIntegerv", pName);
+        switch (pName) {
+            case GL_MAX_TEXTURE_SIZE:
+                params[offset] = MAX_TEXTURE_SIZE;
+                break;
+            case GL_MAX_ARRAY_TEXTURE_LAYERS:
+                params[offset] = mIsGLES30 ? MAX_ARRAY_TEXTURE_LAYERS : 0;
+                break;
+            case GL_FRAMEBUFFER_BINDING:
+                params[offset] = mFramebuffer;
+                break;
+            case GL_VIEWPORT:
+                System.arraycopy(mViewport, 0, params, offset, 4);
+                break;
+            case GL_STENCIL_BITS:
+                params[offset] = STENCIL_BITS;
+                break;
+            default:
+                params[offset] = 0;
+                break;
+        }
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pName, int[] params,
+                               int offset) {
+        record("glGetProgramiv", program, pName);
+        params[offset] = pName == GL_LINK_STATUS ? 1 : 0;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        record("glGetShaderInfoLog", shader);
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pName, int[] params,
+                              int offset) {
+        record("glGetShaderiv", shader, pName);
+        params[offset] = pName == GL_COMPILE_STATUS ? 1 : 0;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        record("glGetString", name);
+        switch (name) {
+            case GL_VENDOR:
+            case GL_RENDERER:
+                return "Recording";
+            case GL_VERSION:
+                return mIsGLES30 ? "OpenGL ES 3.0 Recording" :
+                                   "OpenGL ES 2.0 Recording";
+            default:
+                return "";
+        }
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        record("glGetUniformLocation", program, name);
+        return locationOf(program, name, 1);
+    }
+
+    @Override
+    public boolean glIsProgram(int program) {
+        record("glIsProgram", program);
+        return mPrograms.contains(program);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        record("glLinkProgram", program);
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalFormat,
+                                      int width, int height) {
+        record("glRenderbufferStorage", target, internalFormat, width,
+               height);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        record("glScissor", x, y, width, height);
+        mScissor[0] = x;
+        mScissor[1] = y;
+        mScissor[2] = width;
+        mScissor[3] = height;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        record("glShaderSource", shader, source.length());
+    }
+
+    @Override
+    public void glStencilFunc(int func, int ref, int mask) {
+        record("glStencilFunc", func, ref, mask);
+        mOverdrawCounter.setStencilFunc(func, ref, mask);
+    }
+
+    @Override
+    public void glStencilMask(int mask) {
+        record("glStencilMask", mask);
+        mOverdrawCounter.setStencilMask(mask);
+    }
+
+    @Override
+    public void glStencilOp(int fail, int zFail, int zPass) {
+        record("glStencilOp", fail, zFail, zPass);
+        mOverdrawCounter.setStencilOp(fail, zFail, zPass);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat,
+                             int width, int height, int border, int format,
+                             int type, Buffer pixels) {
+        record("glTexImage2D", target, level, internalFormat, width, height,
+               pixels == null ? "null" : "data");
+        if (pixels != null) {
+            mTextureBytes += (long)width * height * 4;
+        }
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pName, float param) {
+        record("glTexParameterf", target, pName, param);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        record("glUniform1f", location, x);
+        setUniform(location, x);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        record("glUniform1i", location, x);
+        setUniform(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        record("glUniform2f", location, x, y);
+        setUniform(location, x, y);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        record("glUniform3f", location, x, y, z);
+        setUniform(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        record("glUniform4f", location, x, y, z, w);
+        setUniform(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        record("glUniform4fv", location, count);
+        setUniform(location, Arrays.copyOfRange(v, offset,
+                                                offset + (count << 2)));
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                   float[] value, int offset) {
+        record("glUniformMatrix4fv", location, count);
+        setUniform(location, Arrays.copyOfRange(value, offset,
+                                                offset + (count << 4)));
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        record("glUseProgram", program);
+        setState(mProgram != program);
+        mProgram = program;
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+                                      boolean normalized, int stride,
+                                      Buffer ptr) {
+        record("glVertexAttribPointer", index, size, type, stride);
+        setAttribPointer(index, size, type, stride, ptr, 0, 0);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+                                      boolean normalized, int stride,
+                                      int offset) {
+        record("glVertexAttribPointer", index, size, type, stride, offset);
+        setAttribPointer(index, size, type, stride, null, mArrayBuffer,
+                         offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        record("glViewport", x, y, width, height);
+        setState(mViewport[0] != x || mViewport[1] != y ||
+                 mViewport[2] != width || mViewport[3] != height);
+        mViewport[0] = x;
+        mViewport[1] = y;
+        mViewport[2] = width;
+        mViewport[3] = height;
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        record("texImage2D", target, level, bitmap.getWidth(),
+               bitmap.getHeight());
+        mTextureBytes += (long)bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xOffset, int yOffset,
+                              Bitmap bitmap) {
+        record("texSubImage2D", target, level, xOffset, yOffset,
+               bitmap.getWidth(), bitmap.getHeight());
+        mTextureBytes += (long)bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override
+    public void glPushGroupMarker(String marker) {
+        record("glPushGroupMarker", marker);
+        mMarkers.add(marker);
+    }
+
+    @Override
+    public void glPopGroupMarker() {
+        record("glPopGroupMarker");
+        if (!mMarkers.isEmpty()) {
+            mMarkers.remove(mMarkers.size() - 1);
+        }
+    }
+
+    @Override
+    public boolean hasGLES30() {
+        return mIsGLES30;
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer) {
+        checkGLES30();
+        record("glBindBufferBase", target, index, buffer);
+        if (target == GL_UNIFORM_BUFFER) {
+            mUniformBuffer = buffer;
+            mUniformBindings.put(index, buffer);
+        }
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                                  int dstX0, int dstY0, int dstX1, int dstY1,
+                                  int mask, int filter) {
+        checkGLES30();
+        record("glBlitFramebuffer", srcX0, srcY0, srcX1, srcY1, dstX0, dstY0,
+               dstX1, dstY1, mask, filter);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        checkGLES30();
+        record("glBindVertexArray", array);
+        setState(mVertexArray != array);
+        mVertexArray = array;
+        mVertexArrayState = mVertexArrays.get(array);
+        if (mVertexArrayState == null) {
+            mVertexArrayState = new VertexArray();
+            mVertexArrays.put(array, mVertexArrayState);
+        }
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        checkGLES30();
+        record("glDeleteVertexArrays", n, Arrays.toString(
+                Arrays.copyOfRange(arrays, offset, offset + n)));
+        for (int i = offset; i < offset + n; ++i) {
+            if (mVertexArray == arrays[i]) {
+                mVertexArray = 0;
+                mVertexArrayState = mVertexArrays.get(0);
+            }
+            if (arrays[i] != 0) {
+                mVertexArrays.remove(arrays[i]);
+            }
+        }
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        checkGLES30();
+        record("glGenVertexArrays", n);
+        for (int i = offset; i < offset + n; ++i) {
+            arrays[i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length,
+                                   int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary) {
+        checkGLES30();
+        record("glGetProgramBinary", program, bufSize);
+        // no binary is generated without a driver
+        length[lengthOffset] = 0;
+        binaryFormat[binaryFormatOffset] = 0;
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        checkGLES30();
+        record("glGetUniformBlockIndex", program, uniformBlockName);
+        return locationOf(program, uniformBlockName, 2);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                                int length) {
+        checkGLES30();
+        record("glProgramBinary", program, binaryFormat, length);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pName, int value) {
+        checkGLES30();
+        record("glProgramParameteri", program, pName, value);
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalFormat,
+                               int width, int height) {
+        checkGLES30();
+        record("glTexStorage2D", target, levels, internalFormat, width,
+               height);
+    }
+
+    @Override
+    public void glTexStorage3D(int target, int levels, int internalFormat,
+                               int width, int height, int depth) {
+        checkGLES30();
+        record("glTexStorage3D", target, levels, internalFormat, width,
+               height, depth);
+    }
+
+    @Override
+    public void glTexSubImage3D(int target, int level, int xOffset,
+                                int yOffset, int zOffset, int width,
+                                int height, int depth, int format, int type,
+                                Buffer pixels) {
+        checkGLES30();
+        record("glTexSubImage3D", target, level, xOffset, yOffset, zOffset,
+               width, height, depth);
+        mTextureBytes += (long)width * height * depth * 4;
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int blockIndex,
+                                      int blockBinding) {
+        checkGLES30();
+        record("glUniformBlockBinding", program, blockIndex, blockBinding);
+        mBlockBindings.put(((long)program << 32) |
+                           (blockIndex & 0xFFFFFFFFL), blockBinding);
+    }
+
+    /**
+     * Check if it is simulating GLES 3.0 context
+     *
+     * @throws UnsupportedOperationException if it isn't GLES 3.0 context
+     */
+    private void checkGLES30() {
+        if (!mIsGLES30) {
+            throw new UnsupportedOperationException("GLES 3.0 is not " +
+                                                    "simulated");
+        }
+    }
+
+    /**
+     * Record a GL command
+     *
+     * @param name GL function name
+     * @param args arguments of function
+     */
+    private void record(String name, Object... args) {
+        int[] count = mCallCounts.get(name);
+        if (count == null) {
+            count = new int[1];
+            mCallCounts.put(name, count);
+        }
+        count[0]++;
+
+        if (mIsLogging) {
+            StringBuilder s = new StringBuilder(name).append('(');
+            for (int i = 0; i < args.length; ++i) {
+                if (i > 0) {
+                    s.append(", ");
+                }
+                s.append(args[i]);
+            }
+            mCommands.add(s.append(')').toString());
+        }
+    }
+
+    /**
+     * Count a state transition
+     *
+     * @param isChanged true if the state is really changed
+     */
+    private void setState(boolean isChanged) {
+        if (isChanged) {
+            mStateChanges++;
+        }
+        else {
+            mRedundantStateChanges++;
+        }
+    }
+
+    /**
+     * Set uniform value of current program
+     *
+     * @param location uniform location
+     * @param values uniform values
+     */
+    private void setUniform(int location, float... values) {
+        mUniformBytes += values.length << 2;
+        final long key = ((long)mProgram << 32) | (location & 0xFFFFFFFFL);
+        float[] old = mUniforms.put(key, values);
+        setState(old == null || !Arrays.equals(old, values));
+    }
+
+    /**
+     * Set vertex attribute array
+     *
+     * @param index index of vertex attribute
+     * @param size component count of per vertex
+     * @param type component type
+     * @param stride stride in bytes
+     * @param ptr client-side array, null if it is in buffer object
+     * @param buffer buffer object, 0 if it is client-side array
+     * @param offset offset in buffer object
+     */
+    private void setAttribPointer(int index, int size, int type, int stride,
+                                  Buffer ptr, int buffer, int offset) {
+        AttribPointer p = mVertexArrayState.attribPointers.get(index);
+        if (p == null) {
+            p = new AttribPointer();
+            mVertexArrayState.attribPointers.put(index, p);
+        }
+
+        // client-side array starts from its position when it is specified
+        final int position = ptr != null ? ptr.position() : 0;
+        setState(p.size != size || p.type != type || p.stride != stride ||
+                 p.ptr != ptr || p.position != position ||
+                 p.buffer != buffer || p.offset != offset);
+        p.size = size;
+        p.type = type;
+        p.stride = stride;
+        p.ptr = ptr;
+        p.position = position;
+        p.buffer = buffer;
+        p.offset = offset;
+    }
+
+    /**
+     * Count bytes of client-side vertex arrays copied for drawing
+     *
+     * @param count vertex count
+     */
+    private void uploadVertexes(int count) {
+        for (Integer index : mVertexArrayState.enabledAttribs) {
+            AttribPointer p = mVertexArrayState.attribPointers.get(index);
+            if (p != null && p.ptr != null) {
+                mVertexBytes += (long)count * p.bytesOfVertex();
+            }
+        }
+    }
+
+    /**
+     * Get buffer object bound on given target
+     *
+     * @param target buffer target
+     * @return buffer name, 0 if no buffer is bound or target isn't tracked
+     */
+    private int bufferOf(int target) {
+        return target == GL_ARRAY_BUFFER ? mArrayBuffer :
+               target == GL_ELEMENT_ARRAY_BUFFER ?
+               mVertexArrayState.elementArrayBuffer :
+               target == GL_UNIFORM_BUFFER ? mUniformBuffer : 0;
+    }
+
+    /**
+     * Get clip rectangle of drawing: viewport clipped by scissor box if
+     * scissor test is enabled
+     *
+     * @return x, y, width and height of clip rectangle
+     */
+    private int[] getClipRect() {
+        int left = mViewport[0];
+        int bottom = mViewport[1];
+        int right = left + mViewport[2];
+        int top = bottom + mViewport[3];
+        if (mEnabledCaps.contains(GL_SCISSOR_TEST)) {
+            left = Math.max(left, mScissor[0]);
+            bottom = Math.max(bottom, mScissor[1]);
+            right = Math.min(right, mScissor[0] + mScissor[2]);
+            top = Math.min(top, mScissor[1] + mScissor[3]);
+        }
+
+        left = Math.max(0, left);
+        bottom = Math.max(0, bottom);
+        return new int[] {left, bottom, Math.max(0, right - left),
+                          Math.max(0, top - bottom)};
+    }
+
+    /**
+     * Rasterize triangles of a draw call and count shaded pixels in the
+     * layer of the innermost group marker
+     * <p>Vertex position is read from the attribute named
+     * {@link VertexProgram#VAR_VERTEX_POS} of current program</p>
+     *
+     * @param mode primitive mode, only triangles are counted
+     * @param indexes vertex indexes of primitives
+     */
+    private void countOverdraw(int mode, int[] indexes) {
+        if (mode != GL_TRIANGLES && mode != GL_TRIANGLE_STRIP &&
+            mode != GL_TRIANGLE_FAN) {
+            return;
+        }
+
+        final Integer location = findLocation(mProgram,
+                                              VertexProgram.VAR_VERTEX_POS,
+                                              0);
+        final AttribPointer p = location == null ? null :
+                                mVertexArrayState.attribPointers
+                                                 .get(location);
+        if (p == null ||
+            !mVertexArrayState.enabledAttribs.contains(location)) {
+            return;
+        }
+
+        // transform vertexes to window coordinate
+        final float[] mvp = getMVPMatrix();
+        final float[] v = new float[4];
+        final float[] xy = new float[indexes.length << 1];
+        for (int i = 0; i < indexes.length; ++i) {
+            if (!readVertex(p, indexes[i], v)) {
+                return;
+            }
+
+            float x = v[0];
+            float y = v[1];
+            float w = v[3];
+            if (mvp != null) {
+                x = mvp[0] * v[0] + mvp[4] * v[1] + mvp[8] * v[2] +
+                    mvp[12] * v[3];
+                y = mvp[1] * v[0] + mvp[5] * v[1] + mvp[9] * v[2] +
+                    mvp[13] * v[3];
+                w = mvp[3] * v[0] + mvp[7] * v[1] + mvp[11] * v[2] +
+                    mvp[15] * v[3];
+            }
+
+            xy[i << 1] = (x / w + 1) * 0.5f * mViewport[2] + mViewport[0];
+            xy[(i << 1) + 1] = (y / w + 1) * 0.5f * mViewport[3] +
+                               mViewport[1];
+        }
+
+        final String layer = mMarkers.isEmpty() ?
+                             NO_LAYER : mMarkers.get(mMarkers.size() - 1);
+        final int[] clip = getClipRect();
+        final boolean isStencilTest = mEnabledCaps.contains(GL_STENCIL_TEST);
+        final float[] triangle = new float[6];
+        final int n = indexes.length;
+        final int step = mode == GL_TRIANGLES ? 3 : 1;
+        for (int i = 0; i + 2 < n; i += step) {
+            // vertex order of triangle doesn't matter for counting
+            final int a = mode == GL_TRIANGLE_FAN ? 0 : i;
+            System.arraycopy(xy, a << 1, triangle, 0, 2);
+            System.arraycopy(xy, (i + 1) << 1, triangle, 2, 2);
+            System.arraycopy(xy, (i + 2) << 1, triangle, 4, 2);
+            mOverdrawCounter.drawTriangle(mFramebuffer, layer, triangle, clip,
+                                          isStencilTest);
+        }
+    }
+
+    /**
+     * Get MVP matrix of current program from its uniform block or uniform
+     *
+     * @return column-major matrix, null if it isn't set
+     */
+    private float[] getMVPMatrix() {
+        final Integer block = findLocation(mProgram, GLProgram.MVP_BLOCK, 2);
+        if (block != null) {
+            final Integer binding = mBlockBindings.get(
+                    ((long)mProgram << 32) | (block & 0xFFFFFFFFL));
+            final Integer buffer = binding == null ?
+                                   null : mUniformBindings.get(binding);
+            final ByteBuffer data = buffer == null ?
+                                    null : mBufferData.get(buffer);
+            if (data != null && data.capacity() >= 64) {
+                final float[] m = new float[16];
+                for (int i = 0; i < 16; ++i) {
+                    m[i] = data.getFloat(i << 2);
+                }
+                return m;
+            }
+        }
+
+        final Integer location = findLocation(mProgram,
+                                              VertexProgram.VAR_MVP_MATRIX,
+                                              1);
+        final float[] m = location == null ? null : mUniforms.get(
+                ((long)mProgram << 32) | (location & 0xFFFFFFFFL));
+        return m != null && m.length >= 16 ? m : null;
+    }
+
+    /**
+     * Read float components of a vertex attribute, the missing components
+     * are (0, 0, 0, 1)
+     *
+     * @param p attribute array
+     * @param vertex vertex index
+     * @param out 4 components of attribute
+     * @return false if attribute can't be read
+     */
+    private boolean readVertex(AttribPointer p, int vertex, float[] out) {
+        out[0] = 0;
+        out[1] = 0;
+        out[2] = 0;
+        out[3] = 1;
+        if (p.type != GL_FLOAT || p.size > 4) {
+            return false;
+        }
+
+        final int start = vertex * p.bytesOfVertex();
+        if (p.ptr instanceof FloatBuffer) {
+            final FloatBuffer b = (FloatBuffer)p.ptr;
+            final int at = p.position + (start >> 2);
+            if (at + p.size > b.limit()) {
+                return false;
+            }
+            for (int i = 0; i < p.size; ++i) {
+                out[i] = b.get(at + i);
+            }
+            return true;
+        }
+
+        final ByteBuffer b = p.ptr instanceof ByteBuffer ?
+                             (ByteBuffer)p.ptr : p.ptr == null ?
+                             mBufferData.get(p.buffer) : null;
+        final int at = p.ptr != null ? p.position + start : p.offset + start;
+        if (b == null || at + (p.size << 2) > b.limit()) {
+            return false;
+        }
+
+        for (int i = 0; i < p.size; ++i) {
+            out[i] = b.getFloat(at + (i << 2));
+        }
+        return true;
+    }
+
+    /**
+     * Copy bytes from a buffer which starts at its position
+     *
+     * @param dst destination buffer
+     * @param offset offset in destination in bytes
+     * @param src source buffer
+     * @param size bytes to be copied
+     */
+    private static void copyBytes(ByteBuffer dst, int offset, Buffer src,
+                                  int size) {
+        final int start = src.position();
+        if (src instanceof ByteBuffer) {
+            final ByteBuffer b = (ByteBuffer)src;
+            for (int i = 0; i < size && start + i < b.limit(); ++i) {
+                dst.put(offset + i, b.get(start + i));
+            }
+        }
+        else if (src instanceof FloatBuffer) {
+            final FloatBuffer b = (FloatBuffer)src;
+            for (int i = 0; i < size >> 2 && start + i < b.limit(); ++i) {
+                dst.putFloat(offset + (i << 2), b.get(start + i));
+            }
+        }
+        else if (src instanceof ShortBuffer) {
+            final ShortBuffer b = (ShortBuffer)src;
+            for (int i = 0; i < size >> 1 && start + i < b.limit(); ++i) {
+                dst.putShort(offset + (i << 1), b.get(start + i));
+            }
+        }
+        else if (src instanceof IntBuffer) {
+            final IntBuffer b = (IntBuffer)src;
+            for (int i = 0; i < size >> 2 && start + i < b.limit(); ++i) {
+                dst.putInt(offset + (i << 2), b.get(start + i));
+            }
+        }
+    }
+
+    /**
+     * Find fake variable location of program without allocating it
+     *
+     * @param program program name
+     * @param name variable name
+     * @param kind 0 for attribute, 1 for uniform, 2 for uniform block
+     * @return variable location, null if it isn't queried yet
+     */
+    private Integer findLocation(int program, String name, int kind) {
+        return mLocations.get(program + ":" + kind + ":" + name);
+    }
+
+    /**
+     * Get fake variable location of program
+     *
+     * @param program program name
+     * @param name variable name
+     * @param kind 0 for attribute, 1 for uniform, 2 for uniform block
+     * @return variable location
+     */
+    private int locationOf(int program, String name, int kind) {
+        final String key = program + ":" + kind + ":" + name;
+        Integer location = mLocations.get(key);
+        if (location == null) {
+            int[] next = mNextLocations.get(program);
+            if (next == null) {
+                next = new int[3];
+                mNextLocations.put(program, next);
+            }
+
+            location = next[kind]++;
+            mLocations.put(key, location);
+        }
+
+        return location;
+    }
+
+    /**
+     * Get index value from index buffer
+     *
+     * @param indices index buffer
+     * @param type index type
+     * @param i position of index
+     * @return index value
+     */
+    private static int indexAt(Buffer indices, int type, int i) {
+        if (indices instanceof ShortBuffer) {
+            return ((ShortBuffer)indices).get(i) & 0xFFFF;
+        }
+        else if (indices instanceof IntBuffer) {
+            return ((IntBuffer)indices).get(i);
+        }
+        else if (indices instanceof ByteBuffer) {
+            ByteBuffer b = (ByteBuffer)indices;
+            return type == GL_UNSIGNED_BYTE ? b.get(i) & 0xFF :
+                                              b.getShort(i << 1) & 0xFFFF;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Get bytes of GL data type
+     *
+     * @param type GL data type
+     * @return bytes of type
+     */
+    private static int bytesOf(int type) {
+        switch (type) {
+            case GL_UNSIGNED_BYTE:
+                return 1;
+            case GL_SHORT:
+            case GL_UNSIGNED_SHORT:
+                return 2;
+            case GL_FLOAT:
+            case GL_UNSIGNED_INT:
+            default:
+                return 4;
+        }
+    }
+}
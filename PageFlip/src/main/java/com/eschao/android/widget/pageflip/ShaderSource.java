@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Source of GLSL shader scripts
+ * <p>
+ * Scripts are read from raw resources of app by default, see
+ * {@link GLShader#fromResources(android.content.Context)}. JVM unit tests
+ * have no android context and read scripts from files instead
+ * </p>
+ *
+ * @author eschao
+ */
+
+interface ShaderSource {
+
+    /**
+     * Read shader script
+     *
+     * @param resId script resource id
+     * @return shader script contents
+     * @throws PageFlipException if fail to read script
+     */
+    String read(int resId) throws PageFlipException;
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import static android.opengl.GLES10.GL_SRC_ALPHA;
+import static android.opengl.GLES20.GL_BLEND;
+import static android.opengl.GLES20.GL_ONE_MINUS_SRC_ALPHA;
+import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
+
+/**
+ * Batch of two shadows which are drawn in one draw call
+ * <p>
+ * The vertexes of two shadows are put into vertex buffer as one triangle
+ * strip, they are joined by degenerate triangles: the last vertex of the
+ * first shadow and the first vertex of the second shadow are repeated. Every
+ * shadow keeps its own color and Z, shader picks them for vertex by comparing
+ * its vertex id with the boundary id where the second shadow starts. Blend
+ * state is changed once for both shadows.
+ * </p>
+ * <p>
+ * The vertexes of shadows are only put into buffer by batch, call
+ * {@link #toFloatBuffer()} after both shadows are computed and put to float
+ * buffer by themselves. Invisible shadow is skipped
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class ShadowBatch {
+
+    // shadows in drawing order
+    private final ShadowVertexes mFirst;
+    private final ShadowVertexes mSecond;
+
+    // vertex buffer and the index of the first vertex in it, vertex count
+    private final SharedVertexBuffer mBuffer;
+    private int mFirstVertex;
+    private int mVertexesSize;
+
+    // vertex id where the second shadow starts
+    private float mBoundary;
+
+    // Z and colors of two shadows
+    private final float[] mVertexZ;
+    private final float[] mColors;
+
+    // degenerate vertexes to join two shadows
+    private final float[] mJoint;
+
+    // static buffer object of vertex ids
+    private final VertexIdBuffer mVertexIds;
+
+    // vertex array object, it is only used when GLES 3.0 is enabled
+    private final GLVertexArray mVAO;
+    private boolean mIsVAOEnabled;
+
+    // is drawing triangle strip with indexed triangles
+    boolean mIsIndexed;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     * @param buffer shared vertex buffer which vertexes are put into
+     * @param first the first shadow to be drawn
+     * @param second the second shadow to be drawn
+     */
+    ShadowBatch(GLBackend gl, SharedVertexBuffer buffer,
+                ShadowVertexes first, ShadowVertexes second) {
+        mGL = gl;
+        mBuffer = buffer;
+        mFirst = first;
+        mSecond = second;
+        mFirst.mIsBatched = true;
+        mSecond.mIsBatched = true;
+        mVertexZ = new float[2];
+        mColors = new float[8];
+        mJoint = new float[4];
+        mVertexIds = new VertexIdBuffer(gl);
+        mVAO = new GLVertexArray(gl);
+        mIsVAOEnabled = false;
+        mIsIndexed = false;
+        mVertexesSize = 0;
+    }
+
+    /**
+     * Enable or disable vertex array object
+     * <p>It can only be enabled when GLES 3.0 context is used</p>
+     *
+     * @param isEnabled true if enable vertex array object
+     * @return self
+     */
+    ShadowBatch enableVAO(boolean isEnabled) {
+        mIsVAOEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Put vertexes of visible shadows into vertex buffer
+     * <p>The owner of shared buffer is responsible for resetting it</p>
+     */
+    void toFloatBuffer() {
+        ShadowVertexes first = mFirst.isVisible() ? mFirst : null;
+        ShadowVertexes second = mSecond.isVisible() ? mSecond : null;
+        if (first == null) {
+            first = second;
+            second = null;
+        }
+
+        mVertexesSize = 0;
+        mBoundary = ShadowVertexProgram.NO_BOUNDARY;
+        if (first == null) {
+            return;
+        }
+
+        // align the first vertex to a pair, start vertex is always at even
+        // index
+        mFirstVertex = mBuffer.put(first.mVertexes, first.mOffset,
+                                   first.mVertexesSize << 1,
+                                   ShadowVertexes.PAIR_SIZE) >> 1;
+        mVertexesSize = first.mVertexesSize;
+        setShadow(0, first);
+        if (second == null) {
+            return;
+        }
+
+        // join two strips with degenerate triangles, the second shadow still
+        // starts at even index since every shadow has even vertexes
+        final int last = first.mOffset + (first.mVertexesSize << 1) - 2;
+        mJoint[0] = first.mVertexes[last];
+        mJoint[1] = first.mVertexes[last + 1];
+        mJoint[2] = second.mVertexes[second.mOffset];
+        mJoint[3] = second.mVertexes[second.mOffset + 1];
+        mBuffer.put(mJoint, 0, mJoint.length, 2);
+        mBuffer.put(second.mVertexes, second.mOffset,
+                    second.mVertexesSize << 1, 2);
+        mBoundary = mFirstVertex + mVertexesSize + 1;
+        mVertexesSize += second.mVertexesSize + 2;
+        setShadow(1, second);
+    }
+
+    /**
+     * Keep Z and color of shadow for drawing
+     *
+     * @param index index of shadow in batch
+     * @param shadow shadow vertexes
+     */
+    private void setShadow(int index, ShadowVertexes shadow) {
+        int i = index << 2;
+        mVertexZ[index] = shadow.vertexZ;
+        mColors[i++] = shadow.mColor.startColor;
+        mColors[i++] = shadow.mColor.startAlpha;
+        mColors[i++] = shadow.mColor.endColor;
+        mColors[i] = shadow.mColor.endAlpha;
+    }
+
+    /**
+     * Is any shadow visible?
+     *
+     * @return true if there is shadow to be drawn
+     */
+    boolean isVisible() {
+        return mVertexesSize > 0;
+    }
+
+    /**
+     * Delete buffer objects
+     * <p>It should be called in OpenGL thread</p>
+     */
+    void deleteVBO() {
+        mVertexIds.delete();
+        mVAO.delete();
+    }
+
+    /**
+     * Forget buffer objects without deleting them when GL context is lost
+     */
+    void invalidateVBO() {
+        mVertexIds.invalidate();
+        mVAO.invalidate();
+    }
+
+    /**
+     * Draw shadows in one draw call
+     * <p>Nothing is drawn if no shadow is visible. Program should be in use
+     * with MVP matrix uploaded</p>
+     *
+     * @param program shadow vertex shader program
+     */
+    void draw(ShadowVertexProgram program) {
+        if (!isVisible()) {
+            return;
+        }
+
+        mGL.glUniform2f(program.mVertexZLoc, mVertexZ[0], mVertexZ[1]);
+        mGL.glUniform4fv(program.mShadowColorLoc, 2, mColors, 0);
+        mGL.glUniform1f(program.mBoundaryLoc, mBoundary);
+
+        mGL.glEnable(GL_BLEND);
+        mGL.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+
+        // vertexes are uploaded only if they are changed and attributes are
+        // recorded in vertex array object once
+        mVertexIds.ensureCapacity(mFirstVertex + mVertexesSize);
+        if (!mIsVAOEnabled) {
+            ShadowVertexes.setAttribPointer(mGL, program, mVertexIds, mBuffer);
+        }
+        else if (mIsIndexed) {
+            GLVertexArray.unbind(mGL);
+            ShadowVertexes.setAttribPointer(mGL, program, mVertexIds, mBuffer);
+        }
+        else if (mVAO.bind(program.mVertexPosLoc, program.mVertexIdLoc)) {
+            ShadowVertexes.setAttribPointer(mGL, program, mVertexIds, mBuffer);
+        }
+        else {
+            mBuffer.bind();
+        }
+
+        if (mIsIndexed) {
+            mBuffer.drawIndexedStrip(mFirstVertex, mVertexesSize);
+        }
+        else {
+            mGL.glDrawArrays(GL_TRIANGLE_STRIP, mFirstVertex, mVertexesSize);
+        }
+
+        mGL.glDisable(GL_BLEND);
+    }
+}
@@ -17,8 +17,6 @@ package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
 
-import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glGetUniformLocation;
 
 /**
  * Shadow vertex shader program which is used to load:
@@ -32,23 +30,44 @@ import static android.opengl.GLES20.glGetUniformLocation;
 public class ShadowVertexProgram extends GLProgram {
 
     // variable names defined in shader scripts
-    final static String VAR_MVP_MATRIX  = "u_MVPMatrix";
-    final static String VAR_VERTEX_Z    = "u_vexZ";
-    final static String VAR_VERTEX_POS  = "a_vexPosition";
+    final static String VAR_MVP_MATRIX   = "u_MVPMatrix";
+    final static String VAR_VERTEX_Z     = "u_vexZ";
+    final static String VAR_VERTEX_POS   = "a_vexPosition";
+    final static String VAR_VERTEX_ID    = "a_vexId";
+    final static String VAR_SHADOW_COLOR = "u_shadowColor";
+    final static String VAR_BOUNDARY     = "u_boundary";
+
+    // boundary which makes all vertexes belong to the first shadow
+    final static float NO_BOUNDARY = 65536f;
 
     int mMVPMatrixLoc;
     int mVertexZLoc;
     int mVertexPosLoc;
+    int mVertexIdLoc;
+    int mShadowColorLoc;
+    int mBoundaryLoc;
 
     /**
      * Constructor
      */
     public ShadowVertexProgram() {
-        super();
+        this(new GLES20Backend());
+    }
+
+    /**
+     * Constructor with GL backend
+     *
+     * @param gl GL backend
+     */
+    public ShadowVertexProgram(GLBackend gl) {
+        super(gl);
 
         mMVPMatrixLoc = INVALID_GL_HANDLE;
         mVertexZLoc = INVALID_GL_HANDLE;
         mVertexPosLoc = INVALID_GL_HANDLE;
+        mVertexIdLoc = INVALID_GL_HANDLE;
+        mShadowColorLoc = INVALID_GL_HANDLE;
+        mBoundaryLoc = INVALID_GL_HANDLE;
     }
 
     /**
@@ -72,9 +91,17 @@ public class ShadowVertexProgram extends GLProgram {
      */
     protected void getVarsLocation() {
         if (mProgramRef != 0) {
-            mVertexZLoc = glGetUniformLocation(mProgramRef, VAR_VERTEX_Z);
-            mVertexPosLoc = glGetAttribLocation(mProgramRef, VAR_VERTEX_POS);
-            mMVPMatrixLoc = glGetUniformLocation(mProgramRef, VAR_MVP_MATRIX);
+            mVertexZLoc = mGL.glGetUniformLocation(mProgramRef, VAR_VERTEX_Z);
+            mVertexPosLoc = mGL.glGetAttribLocation(mProgramRef,
+                                                    VAR_VERTEX_POS);
+            mMVPMatrixLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                     VAR_MVP_MATRIX);
+            mVertexIdLoc = mGL.glGetAttribLocation(mProgramRef,
+                                                   VAR_VERTEX_ID);
+            mShadowColorLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                       VAR_SHADOW_COLOR);
+            mBoundaryLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                    VAR_BOUNDARY);
         }
     }
 
@@ -87,5 +114,18 @@ public class ShadowVertexProgram extends GLProgram {
         mMVPMatrixLoc = INVALID_GL_HANDLE;
         mVertexZLoc = INVALID_GL_HANDLE;
         mVertexPosLoc = INVALID_GL_HANDLE;
+        mVertexIdLoc = INVALID_GL_HANDLE;
+        mShadowColorLoc = INVALID_GL_HANDLE;
+        mBoundaryLoc = INVALID_GL_HANDLE;
+    }
+
+    /**
+     * Upload MVP matrix if it is changed since the last upload
+     * <p>Program must be in use before calling it</p>
+     *
+     * @param matrix MVP matrix of page flip instance
+     */
+    public void updateMVPMatrix(float[] matrix) {
+        updateMVPMatrix(mMVPMatrixLoc, matrix);
     }
 }
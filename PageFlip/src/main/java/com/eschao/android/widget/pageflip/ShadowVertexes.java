@@ -15,40 +15,36 @@
  */
 package com.eschao.android.widget.pageflip;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 import static android.opengl.GLES10.GL_SRC_ALPHA;
 import static android.opengl.GLES20.GL_BLEND;
 import static android.opengl.GLES20.GL_FLOAT;
 import static android.opengl.GLES20.GL_ONE_MINUS_SRC_ALPHA;
-import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
-import static android.opengl.GLES20.glBlendFunc;
-import static android.opengl.GLES20.glDisable;
-import static android.opengl.GLES20.glDrawArrays;
-import static android.opengl.GLES20.glEnable;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
-import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
-import static android.opengl.GLES20.glVertexAttribPointer;
 
 /**
  * Shadow vertex which is used to store vertex data of fold shadow and draw
  * shadow with openGL
- * <p>Every vertex has 4 float data which are:</p>
+ * <p>Every vertex has 2 float data which are:</p>
  * <ul>
  *     <li>x coordinate</li>
  *     <li>y coordinate</li>
- *     <li>color (start color or end color)</li>
- *     <li>alpha (start alpha or end alpha)</li>
  * </ul>
+ * <p>
+ * Vertexes are always added in pairs: a start vertex and an end vertex, and
+ * the start vertex is always put at even index of vertex buffer. The shadow
+ * color of vertex is picked from start or end color of {@link ShadowColor}
+ * in shader by the parity of vertex id, see {@link VertexIdBuffer}, only the
+ * positions are uploaded for every frame. Shadow can be drawn with another
+ * one in a {@link ShadowBatch}
+ * </p>
  *
  * @author eschao
  */
 class ShadowVertexes {
 
+    // float count of a start and end vertex pair
+    final static int PAIR_SIZE = 4;
+
     // how many vertexes in vertex float buffer will be drawn on screen
     int mVertexesSize;
 
@@ -57,13 +53,33 @@ class ShadowVertexes {
     // issue
     float vertexZ;
 
-    // float array and float buffer for storing vertexes
+    // float array for storing vertexes
     float[] mVertexes;
-    FloatBuffer mVertexesBuffer;
+
+    // vertex buffer which float array is put into and the index of the first
+    // vertex in it, it can be shared with other meshes, see {@link Vertexes}
+    SharedVertexBuffer mBuffer;
+    int mFirstVertex;
+    boolean mIsBufferOwned;
+
+    // static buffer object of vertex ids
+    VertexIdBuffer mVertexIds;
+
+    // offset of vertexes to be drawn in float array, and is it drawn in a
+    // batch which puts its vertexes into buffer instead of self
+    int mOffset;
+    boolean mIsBatched;
+
+    // vertex array object, it is only used when GLES 3.0 is enabled
+    GLVertexArray mVAO;
+    boolean mIsVAOEnabled;
 
     // shadow color
     ShadowColor mColor;
 
+    // is drawing triangle strip with indexed triangles
+    boolean mIsIndexed;
+
     // the start position of backward vertexes
     int mMaxBackward;
 
@@ -80,27 +96,47 @@ class ShadowVertexes {
     private int mBackward;
     private int mForward;
 
+    // GL backend
+    private GLBackend mGL;
+
     /**
      * Default constructor
+     *
+     * @param gl GL backend
      */
-    public ShadowVertexes() {
+    public ShadowVertexes(GLBackend gl) {
         release();
+        mGL = gl;
+        mBuffer = new SharedVertexBuffer(gl);
+        mIsBufferOwned = true;
+        mVertexIds = new VertexIdBuffer(gl);
+        mIsBatched = false;
+        mVAO = new GLVertexArray(gl);
+        mIsVAOEnabled = false;
         mColor = new ShadowColor();
     }
 
     /**
      * Constructor
      *
+     * @param gl GL backend
      * @param spaceOfFrontRear reserve space for special usage
      * @param startColor shadow start color, range is [0 .. 1]
      * @param startAlpha shadow alpha, range is [0 .. 1]
      * @param endColor shadow end color, range is [0 .. 1]
      * @param endAlpha shadow end alpah, range is [0 .. 1]
      */
-    public ShadowVertexes(int spaceOfFrontRear,
+    public ShadowVertexes(GLBackend gl, int spaceOfFrontRear,
                           float startColor, float startAlpha,
                           float endColor, float endAlpha) {
         release();
+        mGL = gl;
+        mBuffer = new SharedVertexBuffer(gl);
+        mIsBufferOwned = true;
+        mVertexIds = new VertexIdBuffer(gl);
+        mIsBatched = false;
+        mVAO = new GLVertexArray(gl);
+        mIsVAOEnabled = false;
         mSpaceOfFrontRear = spaceOfFrontRear;
         mColor = new ShadowColor(startColor, startAlpha, endColor, endAlpha);
     }
@@ -113,17 +149,17 @@ class ShadowVertexes {
      */
     public ShadowVertexes set(int meshCount) {
         // every mesh need two vertexes:
-        // (startX, startY , startColor, startAlpha)  and
-        // (endX, endY, endColor, endAlpha), that is why it is meshCount * 8
-        mMaxBackward = meshCount << 3;
+        // (startX, startY) and (endX, endY), that is why it is meshCount * 4
+        mMaxBackward = meshCount * PAIR_SIZE;
 
         // double meshCount since fold shadow has two sides, for example:
         // fold edge shadow has left and right edge along the fold triangle
-        int size = (meshCount << 4) + (mSpaceOfFrontRear << 2);
+        int size = (mMaxBackward << 1) + (mSpaceOfFrontRear << 1);
         mVertexes = new float[size];
-        mVertexesBuffer = ByteBuffer.allocateDirect(size << 2)
-                                    .order(ByteOrder.nativeOrder())
-                                    .asFloatBuffer();
+        if (mIsBufferOwned) {
+            mBuffer.ensureCapacity(size);
+        }
+
         reset();
         return this;
     }
@@ -137,7 +173,37 @@ class ShadowVertexes {
         mMaxBackward = 0;
         mSpaceOfFrontRear = 0;
         mVertexes = null;
-        mVertexesBuffer = null;
+        mFirstVertex = 0;
+        mOffset = 0;
+    }
+
+    /**
+     * Put vertex data into a shared vertex buffer instead of its own buffer
+     * <p>
+     * The owner of shared buffer is responsible for making sure its capacity
+     * and resetting it before meshes are put into it for every frame
+     * </p>
+     *
+     * @param buffer shared vertex buffer
+     * @return self
+     */
+    public ShadowVertexes setSharedBuffer(SharedVertexBuffer buffer) {
+        mBuffer = buffer;
+        mFirstVertex = 0;
+        mIsBufferOwned = false;
+        return this;
+    }
+
+    /**
+     * Enable or disable vertex array object
+     * <p>It can only be enabled when GLES 3.0 context is used</p>
+     *
+     * @param isEnabled true if enable vertex array object
+     * @return self
+     */
+    public ShadowVertexes enableVAO(boolean isEnabled) {
+        mIsVAOEnabled = isEnabled;
+        return this;
     }
 
     /**
@@ -149,7 +215,7 @@ class ShadowVertexes {
     public void reset() {
         vertexZ = 0;
         mBackward = mMaxBackward;
-        mForward = mMaxBackward + (mSpaceOfFrontRear << 2);
+        mForward = mMaxBackward + (mSpaceOfFrontRear << 1);
     }
 
     /**
@@ -167,12 +233,8 @@ class ShadowVertexes {
                                       float endX, float endY) {
         mVertexes[offset++] = startX;
         mVertexes[offset++] = startY;
-        mVertexes[offset++] = mColor.startColor;
-        mVertexes[offset++] = mColor.startAlpha;
         mVertexes[offset++] = endX;
-        mVertexes[offset++] = endY;
-        mVertexes[offset++] = mColor.endColor;
-        mVertexes[offset] = mColor.endAlpha;
+        mVertexes[offset] = endY;
         return this;
     }
 
@@ -188,12 +250,8 @@ class ShadowVertexes {
      */
     public ShadowVertexes addVertexesBackward(float startX, float startY,
                                               float endX, float endY) {
-        mVertexes[--mBackward] = mColor.endAlpha;
-        mVertexes[--mBackward] = mColor.endColor;
         mVertexes[--mBackward] = endY;
         mVertexes[--mBackward] = endX;
-        mVertexes[--mBackward] = mColor.startAlpha;
-        mVertexes[--mBackward] = mColor.startColor;
         mVertexes[--mBackward] = startY;
         mVertexes[--mBackward] = startX;
         return this;
@@ -213,12 +271,8 @@ class ShadowVertexes {
                                              float endX, float endY) {
         mVertexes[mForward++] = startX;
         mVertexes[mForward++] = startY;
-        mVertexes[mForward++] = mColor.startColor;
-        mVertexes[mForward++] = mColor.startAlpha;
         mVertexes[mForward++] = endX;
         mVertexes[mForward++] = endY;
-        mVertexes[mForward++] = mColor.endColor;
-        mVertexes[mForward++] = mColor.endAlpha;
         return this;
     }
 
@@ -245,9 +299,8 @@ class ShadowVertexes {
      * Put data from float array to float buffer
      */
     public void toFloatBuffer() {
-        mVertexesSize = (mForward - mBackward) / 4;
-        mVertexesBuffer.put(mVertexes, mBackward, mForward - mBackward)
-                       .position(0);
+        mVertexesSize = (mForward - mBackward) >> 1;
+        putToBuffer(mBackward, mForward - mBackward);
     }
 
     /**
@@ -256,34 +309,141 @@ class ShadowVertexes {
      * @param length data length
      */
     public void toFloatBuffer(int length) {
-        mVertexesBuffer.put(mVertexes, 0, length).position(0);
-        mVertexesSize = length / 4;
+        putToBuffer(0, length);
+        mVertexesSize = length >> 1;
+    }
+
+    /**
+     * Put data from float array to vertex buffer
+     *
+     * @param offset data start offset in float array
+     * @param length data length
+     */
+    private void putToBuffer(int offset, int length) {
+        mOffset = offset;
+        if (mIsBatched) {
+            return;
+        }
+
+        if (mIsBufferOwned) {
+            mBuffer.reset();
+        }
+
+        // align the first vertex to a pair, start vertex is always at even
+        // index
+        mFirstVertex = mBuffer.put(mVertexes, offset, length, PAIR_SIZE) >> 1;
+    }
+
+    /**
+     * Delete buffer object if vertex buffer is owned by self
+     * <p>It should be called in OpenGL thread</p>
+     */
+    public void deleteVBO() {
+        if (mIsBufferOwned) {
+            mBuffer.delete();
+        }
+
+        mVertexIds.delete();
+        mVAO.delete();
+    }
+
+    /**
+     * Forget buffer object without deleting it when GL context is lost
+     */
+    public void invalidateVBO() {
+        mBuffer.invalidate();
+        mVertexIds.invalidate();
+        mVAO.invalidate();
+    }
+
+    /**
+     * Is shadow visible?
+     *
+     * @return true if shadow has vertexes and its color isn't transparent
+     */
+    public boolean isVisible() {
+        return mVertexesSize > 0 &&
+               (mColor.startAlpha > 0 || mColor.endAlpha > 0);
     }
 
     /**
      * Draw shadow
+     * <p>Nothing is drawn if shadow is invisible. Program should be in use
+     * with MVP matrix uploaded</p>
      *
      * @param program shadow vertex shader program
      */
     public void draw(ShadowVertexProgram program) {
-        if (mVertexesSize > 0) {
-            glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false,
-                               VertexProgram.MVPMatrix, 0);
+        if (isVisible()) {
+            mGL.glUniform2f(program.mVertexZLoc, vertexZ, vertexZ);
+            mGL.glUniform4f(program.mShadowColorLoc,
+                            mColor.startColor, mColor.startAlpha,
+                            mColor.endColor, mColor.endAlpha);
+            mGL.glUniform1f(program.mBoundaryLoc,
+                            ShadowVertexProgram.NO_BOUNDARY);
 
-            glUniform1f(program.mVertexZLoc, vertexZ);
+            // enable blend, GL_TEXTURE_2D is not a capability in GLES 2.0
+            // and disabling it only raises GL_INVALID_ENUM
+            mGL.glEnable(GL_BLEND);
+            mGL.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
 
-            // disable texture, and enable blend
-            glDisable(GL_TEXTURE_2D);
-            glEnable(GL_BLEND);
-            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            // draw shadow, vertexes are uploaded only if they are changed
+            // and attributes are recorded in vertex array object once
+            mVertexIds.ensureCapacity(mFirstVertex + mVertexesSize);
+            if (!mIsVAOEnabled) {
+                setAttribPointer(program);
+            }
+            else if (mIsIndexed) {
+                GLVertexArray.unbind(mGL);
+                setAttribPointer(program);
+            }
+            else if (mVAO.bind(program.mVertexPosLoc,
+                               program.mVertexIdLoc)) {
+                setAttribPointer(program);
+            }
+            else {
+                // upload changed vertexes, attributes are in vertex array
+                mBuffer.bind();
+            }
 
-            // draw shadow
-            glVertexAttribPointer(program.mVertexPosLoc, 4, GL_FLOAT, false, 0,
-                                  mVertexesBuffer);
-            glEnableVertexAttribArray(program.mVertexPosLoc);
-            glDrawArrays(GL_TRIANGLE_STRIP, 0, mVertexesSize);
+            if (mIsIndexed) {
+                mBuffer.drawIndexedStrip(mFirstVertex, mVertexesSize);
+            }
+            else {
+                mGL.glDrawArrays(GL_TRIANGLE_STRIP, mFirstVertex,
+                                 mVertexesSize);
+            }
 
-            glDisable(GL_BLEND);
+            mGL.glDisable(GL_BLEND);
         }
     }
+
+    /**
+     * Pass vertex data and ids in buffer objects to shader program
+     * <p>Vertex buffer is left bound after it</p>
+     *
+     * @param program shadow vertex shader program
+     */
+    private void setAttribPointer(ShadowVertexProgram program) {
+        setAttribPointer(mGL, program, mVertexIds, mBuffer);
+    }
+
+    /**
+     * Pass vertex data and ids in buffer objects to shader program
+     * <p>Vertex buffer is left bound after it</p>
+     *
+     * @param gl GL backend
+     * @param program shadow vertex shader program
+     * @param vertexIds vertex id buffer
+     * @param buffer vertex buffer
+     */
+    static void setAttribPointer(GLBackend gl, ShadowVertexProgram program,
+                                 VertexIdBuffer vertexIds,
+                                 SharedVertexBuffer buffer) {
+        vertexIds.setAttribPointer(program.mVertexIdLoc);
+        buffer.bind();
+        gl.glVertexAttribPointer(program.mVertexPosLoc, 2, GL_FLOAT, false,
+                                 0, 0);
+        gl.glEnableVertexAttribArray(program.mVertexPosLoc);
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of GL resources which are shared by page flip instances
+ * <p>
+ * Shader programs are the most expensive GL resources of page flip, they
+ * cost compiling time and driver memory. Give one registry to all page flip
+ * instances whose GL contexts are in one share group, see
+ * {@link PageFlip#setSharedResources(SharedGLResources)}, a program and its
+ * variants are compiled only once by the first instance which needs it,
+ * other instances reuse it. Programs are reference counted, a program is
+ * deleted when it is released by the last instance.
+ * </p>
+ * <p>
+ * Per-instance states like MVP matrix are kept by page flip instance and
+ * uploaded when a shared program is used. Programs keep uniform values in
+ * share group, so instances sharing a registry must draw one by one in one
+ * thread, for example driven by one render thread.
+ * </p>
+ * <p>
+ * Programs die with their share group and program names are reused by a
+ * new share group, so a stale program can't be detected by its name. Call
+ * {@link #invalidate()} when the share group is destroyed, for example when
+ * the context which other contexts share with is recreated.
+ * {@link PageFlipRenderHost} does it for its own context
+ * </p>
+ * <p>All functions should be called in OpenGL thread</p>
+ *
+ * @author eschao
+ */
+
+public final class SharedGLResources {
+
+    // shared programs keyed by program key, see GLProgram#getKey()
+    private final Map<String, Entry> mPrograms;
+
+    /**
+     * Reference counted program
+     */
+    private final static class Entry {
+        final GLProgram program;
+        int refs;
+
+        Entry(GLProgram program) {
+            this.program = program;
+            refs = 1;
+        }
+    }
+
+    /**
+     * Default constructor
+     */
+    public SharedGLResources() {
+        mPrograms = new HashMap<>();
+    }
+
+    /**
+     * Forget all programs since their share group is destroyed
+     * <p>Programs aren't deleted, they are gone with the share group and
+     * their names may be reused by new programs. Instances holding them
+     * compile again in their next {@link PageFlip#onSurfaceCreated()} and
+     * releasing them never deletes anything</p>
+     */
+    public void invalidate() {
+        mPrograms.clear();
+    }
+
+    /**
+     * Get count of programs in registry
+     *
+     * @return count of programs
+     */
+    public int getProgramCount() {
+        return mPrograms.size();
+    }
+
+    /**
+     * Acquire a compiled program with given key
+     *
+     * @param key key of program
+     * @return program whose reference count is increased, null if no such
+     *         program in current share group, caller should compile it and
+     *         put it by {@link #putProgram(GLProgram)}
+     */
+    GLProgram acquireProgram(String key) {
+        final Entry entry = mPrograms.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        ++entry.refs;
+        return entry.program;
+    }
+
+    /**
+     * Put a program which is compiled by caller, its reference count is 1
+     *
+     * @param program compiled program
+     */
+    void putProgram(GLProgram program) {
+        mPrograms.put(program.getKey(), new Entry(program));
+    }
+
+    /**
+     * Release program, it is removed from registry if it isn't used by any
+     * instance
+     * <p>Nothing is done if program isn't in registry</p>
+     *
+     * @param program program to be released
+     * @param isDeleted true if delete program when it is removed, false if
+     *                  GL context of caller is lost and program is gone
+     */
+    void releaseProgram(GLProgram program, boolean isDeleted) {
+        final String key = program.getKey();
+        final Entry entry = mPrograms.get(key);
+        if (entry == null || entry.program != program || --entry.refs > 0) {
+            return;
+        }
+
+        mPrograms.remove(key);
+        if (isDeleted) {
+            program.delete();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_STREAM_DRAW;
+
+/**
+ * Vertex buffer which can be shared by several meshes
+ * <p>
+ * Every mesh appends its vertex data by {@link #put(float[], int, int, int)}
+ * and remembers the returned offset, the data of all meshes are packed one by
+ * one in a direct float buffer and uploaded to a streamed buffer object
+ * together when the buffer is bound for drawing. So only one upload is needed
+ * for all meshes in a frame.
+ * </p>
+ * <p>
+ * The start of every mesh is aligned to its vertex stride, so a mesh can
+ * always point its vertex attributes at offset 0 and draw from the vertex
+ * index: offset / stride. The attribute pointers of mesh are never changed
+ * and can be recorded in a vertex array object.
+ * </p>
+ * <pre>
+ * +-----------+-----------+-----------+-----------+
+ * |  mesh A   |  mesh B   |  mesh C   |  mesh D   |
+ * +-----------+-----------+-----------+-----------+
+ * 0           ^ offset of mesh B
+ * </pre>
+ * <p>{@link #reset()} should be called before meshes append data for a new
+ * frame</p>
+ *
+ * @author eschao
+ */
+
+final class SharedVertexBuffer {
+
+    // float buffer for all meshes
+    private FloatBuffer mBuffer;
+
+    // capacity and used size in float
+    private int mCapacity;
+    private int mSize;
+
+    // streamed buffer object
+    private final GLBuffer mVBO;
+
+    // is float buffer changed since the last uploading
+    private boolean mIsDirty;
+
+    // indexes to draw triangle strip of meshes as triangles
+    private final StripIndexes mIndexes;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     */
+    SharedVertexBuffer(GLBackend gl) {
+        mVBO = new GLBuffer(gl, GL_ARRAY_BUFFER, GL_STREAM_DRAW);
+        mBuffer = null;
+        mCapacity = 0;
+        mSize = 0;
+        mIsDirty = false;
+        mIndexes = new StripIndexes(gl);
+    }
+
+    /**
+     * Make sure buffer can hold given float data
+     * <p>
+     * All appended data will be cleared if buffer is reallocated. The given
+     * capacity should include the padding for alignment: stride - 1 floats
+     * for every mesh at most
+     * </p>
+     *
+     * @param capacity capacity in float
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > mCapacity) {
+            mBuffer = ByteBuffer.allocateDirect(capacity << 2)
+                                .order(ByteOrder.nativeOrder())
+                                .asFloatBuffer();
+            mCapacity = capacity;
+            mVBO.reserve(capacity << 2);
+            reset();
+
+            // strip indexes are counted from the start of buffer, vertex has
+            // 2 floats at least
+            mIndexes.ensureCapacity(capacity >> 1);
+        }
+    }
+
+    /**
+     * Clear all appended data
+     */
+    void reset() {
+        mSize = 0;
+        mIsDirty = true;
+    }
+
+    /**
+     * Append float data
+     *
+     * @param data float array
+     * @param offset start offset in float array
+     * @param length data length to be appended
+     * @param stride float count of a vertex, the start of appended data will
+     *               be aligned to it
+     * @return offset of appended data in buffer, in float
+     */
+    int put(float[] data, int offset, int length, int stride) {
+        final int start = (mSize + stride - 1) / stride * stride;
+        if (start + length > mCapacity) {
+            throw new IllegalStateException("Vertex buffer overflow, " +
+                                            "capacity: " + mCapacity);
+        }
+
+        mBuffer.position(start);
+        mBuffer.put(data, offset, length).position(0);
+        mSize = start + length;
+        mIsDirty = true;
+        return start;
+    }
+
+    /**
+     * Bind buffer object for drawing, upload all appended data if they are
+     * changed since the last uploading
+     * <p>It should be called in OpenGL thread</p>
+     */
+    void bind() {
+        if (mIsDirty) {
+            mVBO.upload(mBuffer, mSize << 2);
+            mIsDirty = false;
+        }
+        else {
+            mVBO.bind();
+        }
+    }
+
+    /**
+     * Draw part of triangle strip in buffer as indexed triangles
+     * <p>It should be called in OpenGL thread after vertex attributes are
+     * set</p>
+     *
+     * @param offset vertex start offset from the start of buffer
+     * @param length vertex length of triangle strip
+     */
+    void drawIndexedStrip(int offset, int length) {
+        mIndexes.draw(offset, length);
+    }
+
+    /**
+     * Delete buffer objects
+     * <p>It should be called in OpenGL thread</p>
+     */
+    void delete() {
+        mVBO.delete();
+        mIndexes.delete();
+        mIsDirty = true;
+    }
+
+    /**
+     * Forget buffer object without deleting it when GL context is lost
+     */
+    void invalidate() {
+        mVBO.invalidate();
+        mIndexes.invalidate();
+        mIsDirty = true;
+    }
+}
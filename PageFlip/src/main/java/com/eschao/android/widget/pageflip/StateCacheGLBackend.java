@@ -0,0 +1,782 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+
+/**
+ * OpenGL backend which tracks GL states and drops calls which don't change
+ * any state
+ * <p>
+ * It wraps another backend and tracks: current program, active texture unit,
+ * 2D texture bound to every unit, array and element array buffers, vertex
+ * array object, enabled capabilities, enabled vertex attribute arrays, blend
+ * function, viewport and clear values. A state is unknown until it is set
+ * through this backend, so the first call is always forwarded.
+ * </p>
+ * <p>
+ * All states must be changed through this backend, otherwise the cache is
+ * out of date and {@link #invalidate()} should be called. The cache must also
+ * be invalidated when GL context is recreated. If it is disabled, all calls
+ * are forwarded as is.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public class StateCacheGLBackend implements GLBackend {
+
+    // unknown state
+    private final static int UNKNOWN = -1;
+    // max texture units being tracked
+    private final static int MAX_TEXTURE_UNITS = 32;
+    // max vertex attribute arrays being tracked
+    private final static int MAX_VERTEX_ATTRIBS = 16;
+    // max capabilities being tracked
+    private final static int MAX_CAPS = 16;
+
+    // wrapped backend
+    private final GLBackend mGL;
+
+    // is cache enabled
+    private boolean mIsEnabled;
+
+    // current program
+    private int mProgram;
+    // active texture unit, as GL_TEXTUREi
+    private int mActiveTexture;
+    // 2D texture bound to every texture unit
+    private final int[] mBoundTextures;
+    // buffers bound to GL_ARRAY_BUFFER and GL_ELEMENT_ARRAY_BUFFER
+    private final int[] mBoundBuffers;
+    // bound vertex array object
+    private int mVertexArray;
+    // enabled states of vertex attribute arrays
+    private final int[] mAttribArrays;
+    // enabled states of capabilities, mCapStates[i] is for mCaps[i]
+    private final int[] mCaps;
+    private final int[] mCapStates;
+    private int mCapsCount;
+    // blend function
+    private int mBlendSFactor;
+    private int mBlendDFactor;
+    // viewport
+    private final int[] mViewport;
+    // clear color and depth
+    private final float[] mClearColor;
+    private float mClearDepth;
+    private boolean mIsClearValuesKnown;
+    private boolean mIsClearDepthKnown;
+
+    /**
+     * Constructor
+     *
+     * @param gl wrapped GL backend
+     * @throws IllegalArgumentException if gl is null
+     */
+    public StateCacheGLBackend(GLBackend gl) {
+        if (gl == null) {
+            throw new IllegalArgumentException("GL backend is null");
+        }
+
+        mGL = gl;
+        mIsEnabled = true;
+        mBoundTextures = new int[MAX_TEXTURE_UNITS];
+        mBoundBuffers = new int[2];
+        mAttribArrays = new int[MAX_VERTEX_ATTRIBS];
+        mCaps = new int[MAX_CAPS];
+        mCapStates = new int[MAX_CAPS];
+        mViewport = new int[4];
+        mClearColor = new float[4];
+        invalidate();
+    }
+
+    /**
+     * Get wrapped GL backend
+     *
+     * @return wrapped GL backend
+     */
+    public GLBackend getBackend() {
+        return mGL;
+    }
+
+    /**
+     * Enable or disable cache
+     * <p>Cache is invalidated whenever it is enabled</p>
+     *
+     * @param isEnabled true if enabling cache
+     * @return self
+     */
+    public StateCacheGLBackend setEnabled(boolean isEnabled) {
+        if (isEnabled && !mIsEnabled) {
+            invalidate();
+        }
+
+        mIsEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Is cache enabled?
+     *
+     * @return true if cache is enabled
+     */
+    public boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    /**
+     * Mark all tracked states as unknown
+     * <p>Call it when GL context is recreated or GL states are changed
+     * outside of this backend</p>
+     */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        Arrays.fill(mBoundTextures, UNKNOWN);
+        Arrays.fill(mBoundBuffers, UNKNOWN);
+        mVertexArray = UNKNOWN;
+        Arrays.fill(mAttribArrays, UNKNOWN);
+        mCapsCount = 0;
+        mBlendSFactor = UNKNOWN;
+        mBlendDFactor = UNKNOWN;
+        mViewport[2] = UNKNOWN;
+        mIsClearValuesKnown = false;
+        mIsClearDepthKnown = false;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (!mIsEnabled || texture != mActiveTexture) {
+            mActiveTexture = texture;
+            mGL.glActiveTexture(texture);
+        }
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mGL.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        int i = target == GL_ARRAY_BUFFER ? 0 :
+                target == GL_ELEMENT_ARRAY_BUFFER ? 1 : UNKNOWN;
+        if (i == UNKNOWN) {
+            mGL.glBindBuffer(target, buffer);
+        }
+        else if (!mIsEnabled || mBoundBuffers[i] != buffer) {
+            mBoundBuffers[i] = buffer;
+            mGL.glBindBuffer(target, buffer);
+        }
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        mGL.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        mGL.glBindRenderbuffer(target, renderbuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        int unit = mActiveTexture - GL_TEXTURE0;
+        if (target != GL_TEXTURE_2D || unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+            mGL.glBindTexture(target, texture);
+        }
+        else if (!mIsEnabled || mBoundTextures[unit] != texture) {
+            mBoundTextures[unit] = texture;
+            mGL.glBindTexture(target, texture);
+        }
+    }
+
+    @Override
+    public void glBlendFunc(int sFactor, int dFactor) {
+        if (!mIsEnabled ||
+            sFactor != mBlendSFactor ||
+            dFactor != mBlendDFactor) {
+            mBlendSFactor = sFactor;
+            mBlendDFactor = dFactor;
+            mGL.glBlendFunc(sFactor, dFactor);
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size,
+                                Buffer data) {
+        mGL.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        return mGL.glCheckFramebufferStatus(target);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        mGL.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        if (!mIsEnabled ||
+            !mIsClearValuesKnown ||
+            red != mClearColor[0] ||
+            green != mClearColor[1] ||
+            blue != mClearColor[2] ||
+            alpha != mClearColor[3]) {
+            mClearColor[0] = red;
+            mClearColor[1] = green;
+            mClearColor[2] = blue;
+            mClearColor[3] = alpha;
+            mIsClearValuesKnown = true;
+            mGL.glClearColor(red, green, blue, alpha);
+        }
+    }
+
+    @Override
+    public void glClearDepthf(float depth) {
+        if (!mIsEnabled || !mIsClearDepthKnown || depth != mClearDepth) {
+            mClearDepth = depth;
+            mIsClearDepthKnown = true;
+            mGL.glClearDepthf(depth);
+        }
+    }
+
+    @Override
+    public void glClearStencil(int s) {
+        mGL.glClearStencil(s);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mGL.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return mGL.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return mGL.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        // deleted buffers are unbound from all targets
+        for (int i = offset; i < offset + n; ++i) {
+            for (int j = 0; j < mBoundBuffers.length; ++j) {
+                if (mBoundBuffers[j] == buffers[i]) {
+                    mBoundBuffers[j] = 0;
+                }
+            }
+        }
+
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        mGL.glDeleteFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        // the name may be reused by a new program
+        if (program == mProgram) {
+            mProgram = UNKNOWN;
+        }
+
+        mGL.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        mGL.glDeleteRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        mGL.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        // deleted textures are unbound from all units
+        for (int i = offset; i < offset + n; ++i) {
+            for (int j = 0; j < MAX_TEXTURE_UNITS; ++j) {
+                if (mBoundTextures[j] == textures[i]) {
+                    mBoundTextures[j] = 0;
+                }
+            }
+        }
+
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        if (setCapState(cap, 0)) {
+            mGL.glDisable(cap);
+        }
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (setAttribArrayState(index, 0)) {
+            mGL.glDisableVertexAttribArray(index);
+        }
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mGL.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        mGL.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        if (setCapState(cap, 1)) {
+            mGL.glEnable(cap);
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (setAttribArrayState(index, 1)) {
+            mGL.glEnableVertexAttribArray(index);
+        }
+    }
+
+    @Override
+    public void glFinish() {
+        mGL.glFinish();
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment,
+                                          int renderbufferTarget,
+                                          int renderbuffer) {
+        mGL.glFramebufferRenderbuffer(target, attachment, renderbufferTarget,
+                                     renderbuffer);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment,
+                                       int textureTarget, int texture,
+                                       int level) {
+        mGL.glFramebufferTexture2D(target, attachment, textureTarget, texture,
+                                  level);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        mGL.glGenFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        mGL.glGenRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        mGL.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return mGL.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetError() {
+        return mGL.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int pName, int[] params, int offset) {
+        mGL.glGetIntegerv(pName, params, offset);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pName, int[] params,
+                               int offset) {
+        mGL.glGetProgramiv(program, pName, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return mGL.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pName, int[] params, int offset) {
+        mGL.glGetShaderiv(shader, pName, params, offset);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return mGL.glGetString(name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public boolean glIsProgram(int program) {
+        return mGL.glIsProgram(program);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        mGL.glLinkProgram(program);
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalFormat,
+                                      int width, int height) {
+        mGL.glRenderbufferStorage(target, internalFormat, width, height);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        mGL.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        mGL.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glStencilFunc(int func, int ref, int mask) {
+        mGL.glStencilFunc(func, ref, mask);
+    }
+
+    @Override
+    public void glStencilMask(int mask) {
+        mGL.glStencilMask(mask);
+    }
+
+    @Override
+    public void glStencilOp(int fail, int zFail, int zPass) {
+        mGL.glStencilOp(fail, zFail, zPass);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat,
+                             int width, int height, int border, int format,
+                             int type, Buffer pixels) {
+        mGL.glTexImage2D(target, level, internalFormat, width, height, border,
+                         format, type, pixels);
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pName, float param) {
+        mGL.glTexParameterf(target, pName, param);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        mGL.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        mGL.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        mGL.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        mGL.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        mGL.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                   float[] value, int offset) {
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (!mIsEnabled || program != mProgram) {
+            mProgram = program;
+            mGL.glUseProgram(program);
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+                                      boolean normalized, int stride,
+                                      Buffer ptr) {
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride,
+                                  ptr);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type,
+                                      boolean normalized, int stride,
+                                      int offset) {
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride,
+                                  offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        if (!mIsEnabled ||
+            x != mViewport[0] ||
+            y != mViewport[1] ||
+            width != mViewport[2] ||
+            height != mViewport[3]) {
+            mViewport[0] = x;
+            mViewport[1] = y;
+            mViewport[2] = width;
+            mViewport[3] = height;
+            mGL.glViewport(x, y, width, height);
+        }
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        mGL.texImage2D(target, level, bitmap, border);
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xOffset, int yOffset,
+                              Bitmap bitmap) {
+        mGL.texSubImage2D(target, level, xOffset, yOffset, bitmap);
+    }
+
+    @Override
+    public void glPushGroupMarker(String marker) {
+        mGL.glPushGroupMarker(marker);
+    }
+
+    @Override
+    public void glPopGroupMarker() {
+        mGL.glPopGroupMarker();
+    }
+
+    @Override
+    public boolean hasGLES30() {
+        return mGL.hasGLES30();
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer) {
+        mGL.glBindBufferBase(target, index, buffer);
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                                  int dstX0, int dstY0, int dstX1, int dstY1,
+                                  int mask, int filter) {
+        mGL.glBlitFramebuffer(srcX0, srcY0, srcX1, srcY1, dstX0, dstY0, dstX1,
+                              dstY1, mask, filter);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        if (!mIsEnabled || array != mVertexArray) {
+            // enabled attribute arrays and element array buffer are states of
+            // vertex array object, they are unknown for another one
+            mVertexArray = array;
+            Arrays.fill(mAttribArrays, UNKNOWN);
+            mBoundBuffers[1] = UNKNOWN;
+            mGL.glBindVertexArray(array);
+        }
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        // binding reverts to default vertex array if the bound one is deleted
+        for (int i = offset; i < offset + n; ++i) {
+            if (arrays[i] == mVertexArray) {
+                mVertexArray = UNKNOWN;
+                Arrays.fill(mAttribArrays, UNKNOWN);
+                mBoundBuffers[1] = UNKNOWN;
+            }
+        }
+
+        mGL.glDeleteVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        mGL.glGenVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length,
+                                   int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary) {
+        mGL.glGetProgramBinary(program, bufSize, length, lengthOffset,
+                               binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName) {
+        return mGL.glGetUniformBlockIndex(program, uniformBlockName);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                                int length) {
+        mGL.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pName, int value) {
+        mGL.glProgramParameteri(program, pName, value);
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalFormat,
+                               int width, int height) {
+        mGL.glTexStorage2D(target, levels, internalFormat, width, height);
+    }
+
+    @Override
+    public void glTexStorage3D(int target, int levels, int internalFormat,
+                               int width, int height, int depth) {
+        mGL.glTexStorage3D(target, levels, internalFormat, width, height,
+                           depth);
+    }
+
+    @Override
+    public void glTexSubImage3D(int target, int level, int xOffset,
+                                int yOffset, int zOffset, int width,
+                                int height, int depth, int format, int type,
+                                Buffer pixels) {
+        mGL.glTexSubImage3D(target, level, xOffset, yOffset, zOffset, width,
+                            height, depth, format, type, pixels);
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int blockIndex,
+                                      int blockBinding) {
+        mGL.glUniformBlockBinding(program, blockIndex, blockBinding);
+    }
+
+    /**
+     * Update enabled state of a capability
+     *
+     * @param cap capability
+     * @param state 1 if enabled, 0 if disabled
+     * @return true if state is changed and call should be forwarded
+     */
+    private boolean setCapState(int cap, int state) {
+        int i = 0;
+        while (i < mCapsCount && mCaps[i] != cap) {
+            ++i;
+        }
+
+        if (i == mCapsCount) {
+            // too many capabilities, don't track it
+            if (i == MAX_CAPS) {
+                return true;
+            }
+
+            mCaps[i] = cap;
+            mCapStates[i] = UNKNOWN;
+            ++mCapsCount;
+        }
+
+        if (!mIsEnabled || mCapStates[i] != state) {
+            mCapStates[i] = state;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Update enabled state of a vertex attribute array
+     * <p>A negative index is the location of an attribute the shader compiler
+     * optimized out, the call is dropped since GL would only raise
+     * GL_INVALID_VALUE for it.</p>
+     *
+     * @param index index of vertex attribute
+     * @param state 1 if enabled, 0 if disabled
+     * @return true if state is changed and call should be forwarded
+     */
+    private boolean setAttribArrayState(int index, int state) {
+        if (index < 0) {
+            return false;
+        }
+
+        if (index >= MAX_VERTEX_ATTRIBS) {
+            return true;
+        }
+
+        if (!mIsEnabled || mAttribArrays[index] != state) {
+            mAttribArrays[index] = state;
+            return true;
+        }
+
+        return false;
+    }
+}
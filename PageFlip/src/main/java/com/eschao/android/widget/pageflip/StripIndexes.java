@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+
+/**
+ * Index buffer object to draw triangle strip as indexed triangles
+ * <p>
+ * For a triangle strip with N vertexes, the k-th triangle is composed by
+ * vertex k, k+1 and k+2. The index list of N vertexes is always the prefix
+ * of index list of M vertexes if N &lt; M, so only one index buffer with max
+ * capacity is needed for all meshes in a {@link SharedVertexBuffer}, it is
+ * uploaded to a static element array buffer once and a mesh is drawn from
+ * the byte offset of its first triangle. The triangles are kept in strip
+ * order, every triangle reuses two vertexes of the previous one which are
+ * still in post-transform vertex cache of GPU.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class StripIndexes {
+
+    // max vertex count can be indexed by unsigned short
+    private final static int MAX_VERTEX_COUNT = 65536;
+
+    // vertex count should be indexed and vertex count of uploaded indexes
+    private int mCapacity;
+    private int mUploaded;
+
+    // static element array buffer
+    private final GLBuffer mIBO;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     */
+    StripIndexes(GLBackend gl) {
+        mGL = gl;
+        mIBO = new GLBuffer(gl, GL_ELEMENT_ARRAY_BUFFER, GL_STATIC_DRAW);
+        mCapacity = 0;
+        mUploaded = 0;
+    }
+
+    /**
+     * Make sure index buffer is big enough for given vertex count
+     * <p>Indexes are built and uploaded lazily in the next drawing</p>
+     *
+     * @param vertexCount vertex count of triangle strip
+     */
+    void ensureCapacity(int vertexCount) {
+        if (vertexCount > MAX_VERTEX_COUNT) {
+            throw new IllegalArgumentException("Vertex count: " + vertexCount +
+                                               " is too large to be indexed");
+        }
+
+        if (vertexCount > mCapacity) {
+            mCapacity = vertexCount;
+        }
+    }
+
+    /**
+     * Build indexes of triangles and upload them to element array buffer
+     */
+    private void upload() {
+        int count = mCapacity > 2 ? (mCapacity - 2) * 3 : 0;
+        short[] indexes = new short[count];
+        for (int k = 0, i = 0; i < count; ++k) {
+            // keep the same winding order with triangle strip
+            if ((k & 1) == 0) {
+                indexes[i++] = (short)k;
+                indexes[i++] = (short)(k + 1);
+            }
+            else {
+                indexes[i++] = (short)(k + 1);
+                indexes[i++] = (short)k;
+            }
+            indexes[i++] = (short)(k + 2);
+        }
+
+        ShortBuffer buffer = ByteBuffer.allocateDirect(count << 1)
+                                       .order(ByteOrder.nativeOrder())
+                                       .asShortBuffer();
+        buffer.put(indexes).position(0);
+        mIBO.upload(buffer, count << 1);
+        mUploaded = mCapacity;
+    }
+
+    /**
+     * Draw part of triangle strip as indexed triangles
+     * <p>
+     * Vertex attributes must be set before calling it. The element array
+     * buffer binding is a state of vertex array object, it is recorded in
+     * the one currently bound
+     * </p>
+     *
+     * @param offset vertex start offset of triangle strip
+     * @param length vertex length of triangle strip
+     */
+    void draw(int offset, int length) {
+        if (length < 3) {
+            return;
+        }
+
+        if (!mIBO.isCreated() || mUploaded < mCapacity) {
+            upload();
+        }
+        else {
+            mIBO.bind();
+        }
+
+        // every triangle has 3 unsigned short indexes
+        mGL.glDrawElements(GL_TRIANGLES, (length - 2) * 3, GL_UNSIGNED_SHORT,
+                           offset * 3 * 2);
+    }
+
+    /**
+     * Delete index buffer object
+     * <p>It should be called in OpenGL thread</p>
+     */
+    void delete() {
+        mIBO.delete();
+        mUploaded = 0;
+    }
+
+    /**
+     * Forget index buffer object without deleting it when GL context is lost
+     */
+    void invalidate() {
+        mIBO.invalidate();
+        mUploaded = 0;
+    }
+}
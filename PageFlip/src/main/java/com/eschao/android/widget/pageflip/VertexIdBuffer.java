@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+
+/**
+ * Static buffer object of vertex ids: 0, 1, 2 ... N-1
+ * <p>
+ * GLES 2.0 has no gl_VertexID, this buffer is used as a vertex attribute to
+ * give every vertex its index in vertex buffer, shader can derive constant
+ * per-vertex data from it instead of uploading them for every frame. The
+ * attribute pointer is always at offset 0, so the id of a vertex is its
+ * index in the whole vertex buffer which it is drawn from. The buffer is grown
+ * by power of 2 and is uploaded only when it grows.
+ * </p>
+ * <p>All functions except {@link #invalidate()} should be called in OpenGL
+ * thread</p>
+ *
+ * @author eschao
+ */
+
+final class VertexIdBuffer {
+
+    // max vertex count can be held by unsigned short
+    private final static int MAX_VERTEX_COUNT = 65536;
+
+    // id count in buffer object
+    private int mCount;
+
+    // static buffer object of ids
+    private final GLBuffer mVBO;
+
+    // GL backend
+    private final GLBackend mGL;
+
+    /**
+     * Constructor
+     *
+     * @param gl GL backend
+     */
+    VertexIdBuffer(GLBackend gl) {
+        mGL = gl;
+        mVBO = new GLBuffer(gl, GL_ARRAY_BUFFER, GL_STATIC_DRAW);
+        mCount = 0;
+    }
+
+    /**
+     * Make sure buffer object covers given vertex count, it is uploaded
+     * again only if it grows
+     *
+     * @param count vertex count
+     */
+    void ensureCapacity(int count) {
+        if (count > MAX_VERTEX_COUNT) {
+            throw new IllegalArgumentException("Vertex count: " + count +
+                                               " is too large to have id");
+        }
+
+        if (count <= mCount && mVBO.isCreated()) {
+            return;
+        }
+
+        mCount = Math.min(MAX_VERTEX_COUNT,
+                          Math.max(mCount, Integer.highestOneBit(count) << 1));
+        ShortBuffer ids = ByteBuffer.allocateDirect(mCount << 1)
+                                    .order(ByteOrder.nativeOrder())
+                                    .asShortBuffer();
+        for (int i = 0; i < mCount; ++i) {
+            ids.put((short)i);
+        }
+
+        ids.position(0);
+        mVBO.upload(ids, mCount << 1);
+    }
+
+    /**
+     * Pass vertex ids to shader program as an unsigned short attribute
+     * <p>Buffer object is left bound after it</p>
+     *
+     * @param hVertexId vertex id var in shader program
+     */
+    void setAttribPointer(int hVertexId) {
+        mVBO.bind();
+        mGL.glVertexAttribPointer(hVertexId, 1, GL_UNSIGNED_SHORT, false, 0,
+                                  0);
+        mGL.glEnableVertexAttribArray(hVertexId);
+    }
+
+    /**
+     * Delete buffer object
+     */
+    void delete() {
+        mVBO.delete();
+    }
+
+    /**
+     * Forget buffer object without deleting it when GL context is lost
+     */
+    void invalidate() {
+        mVBO.invalidate();
+    }
+}
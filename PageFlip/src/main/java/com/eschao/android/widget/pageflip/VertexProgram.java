@@ -16,10 +16,8 @@
 package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
-import android.opengl.Matrix;
 
-import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glGetUniformLocation;
+import java.util.Arrays;
 
 /**
  * Vertex shader program which is used to load:
@@ -37,26 +35,42 @@ class VertexProgram extends GLProgram {
     final static String VAR_VERTEX_POS    = "a_vexPosition";
     final static String VAR_TEXTURE_COORD = "a_texCoord";
     final static String VAR_TEXTURE       = "u_texture";
+    final static String VAR_LAYER         = "a_layer";
+    final static String VAR_LAYERS        = "u_layers";
+    final static String VAR_ATLAS         = "u_atlas";
 
-    // universal model-view matrix
-    final static float[] MVMatrix = new float[16];
-    // universal model-view-project matrix
-    final static float[] MVPMatrix = new float[16];
+    // macro to draw page from page texture array
+    final static String DEFINE_PAGE_ARRAY = "PF_PAGE_ARRAY";
 
     // variable handles after compiled & linked shader scripts
     int mMVPMatrixLoc;
     int mVertexPosLoc;
     int mTexCoordLoc;
     int mTextureLoc;
+    int mLayerLoc;
+    int mLayersLoc;
+    int mAtlasLoc;
 
     public VertexProgram() {
-        super();
+        this(new GLES20Backend());
+    }
+
+    /**
+     * Constructor with GL backend
+     *
+     * @param gl GL backend
+     */
+    public VertexProgram(GLBackend gl) {
+        super(gl);
 
         // init with invalid value
         mTextureLoc = INVALID_GL_HANDLE;
         mMVPMatrixLoc = INVALID_GL_HANDLE;
         mTexCoordLoc = INVALID_GL_HANDLE;
         mVertexPosLoc = INVALID_GL_HANDLE;
+        mLayerLoc = INVALID_GL_HANDLE;
+        mLayersLoc = INVALID_GL_HANDLE;
+        mAtlasLoc = INVALID_GL_HANDLE;
     }
 
     /**
@@ -76,10 +90,16 @@ class VertexProgram extends GLProgram {
      */
     protected void getVarsLocation() {
         if (mProgramRef != 0) {
-            mVertexPosLoc = glGetAttribLocation(mProgramRef, VAR_VERTEX_POS);
-            mTexCoordLoc = glGetAttribLocation(mProgramRef, VAR_TEXTURE_COORD);
-            mMVPMatrixLoc = glGetUniformLocation(mProgramRef, VAR_MVP_MATRIX);
-            mTextureLoc = glGetUniformLocation(mProgramRef, VAR_TEXTURE);
+            mVertexPosLoc = mGL.glGetAttribLocation(mProgramRef,
+                                                    VAR_VERTEX_POS);
+            mTexCoordLoc = mGL.glGetAttribLocation(mProgramRef,
+                                                   VAR_TEXTURE_COORD);
+            mMVPMatrixLoc = mGL.glGetUniformLocation(mProgramRef,
+                                                     VAR_MVP_MATRIX);
+            mTextureLoc = mGL.glGetUniformLocation(mProgramRef, VAR_TEXTURE);
+            mLayerLoc = mGL.glGetAttribLocation(mProgramRef, VAR_LAYER);
+            mLayersLoc = mGL.glGetUniformLocation(mProgramRef, VAR_LAYERS);
+            mAtlasLoc = mGL.glGetUniformLocation(mProgramRef, VAR_ATLAS);
         }
     }
 
@@ -93,22 +113,47 @@ class VertexProgram extends GLProgram {
         mMVPMatrixLoc = INVALID_GL_HANDLE;
         mTexCoordLoc = INVALID_GL_HANDLE;
         mVertexPosLoc = INVALID_GL_HANDLE;
+        mLayerLoc = INVALID_GL_HANDLE;
+        mLayersLoc = INVALID_GL_HANDLE;
+        mAtlasLoc = INVALID_GL_HANDLE;
+    }
+
+    /**
+     * Upload MVP matrix if it is changed since the last upload
+     * <p>Program must be in use before calling it</p>
+     *
+     * @param matrix MVP matrix of page flip instance
+     */
+    public void updateMVPMatrix(float[] matrix) {
+        updateMVPMatrix(mMVPMatrixLoc, matrix);
     }
 
     /**
-     * Initiate matrix with view size
+     * Initiate MVP matrix with view size
+     * <p>Every page flip instance has its own matrix, programs may be shared
+     * by instances with different views</p>
      *
+     * @param matrix MVP matrix to be initiated
      * @param left view left
      * @param right view right
      * @param bottom view bottom
      * @param top view top
      */
-    public void initMatrix(float left, float right, float bottom, float top) {
-        float[] projectMatrix = new float[16];
-        Matrix.orthoM(projectMatrix, 0, left, right, bottom, top, 0, 6000);
-        Matrix.setIdentityM(MVMatrix, 0);
-        Matrix.setLookAtM(MVMatrix, 0, 0, 0, 3000, 0, 0, 0, 0, 1, 0);
-        Matrix.setIdentityM(MVPMatrix, 0);
-        Matrix.multiplyMM(MVPMatrix, 0, projectMatrix, 0, MVMatrix, 0);
+    public static void initMatrix(float[] matrix, float left, float right,
+                                  float bottom, float top) {
+        // orthographic projection with [0, 6000] depth range multiplied by
+        // the view of camera at (0, 0, 3000) looking at origin, the camera
+        // only translates Z, so the product is computed directly in Java
+        // instead of by android.opengl.Matrix
+        final float far = 6000;
+        final float eyeZ = 3000;
+        Arrays.fill(matrix, 0, 16, 0);
+        matrix[0] = 2 / (right - left);
+        matrix[5] = 2 / (top - bottom);
+        matrix[10] = -2 / far;
+        matrix[12] = -(right + left) / (right - left);
+        matrix[13] = -(top + bottom) / (top - bottom);
+        matrix[14] = -1 - matrix[10] * eyeZ;
+        matrix[15] = 1;
     }
 }
@@ -17,17 +17,33 @@ package com.eschao.android.widget.pageflip;
 
 import android.util.Log;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 import static android.opengl.GLES20.GL_FLOAT;
-import static android.opengl.GLES20.glDrawArrays;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
-import static android.opengl.GLES20.glVertexAttribPointer;
+import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
 
 /**
  * Vertexes is used to manage vertex and texture data for openGL drawing
+ * <p>
+ * Vertex and texture coordinates are interleaved in one float array, every
+ * vertex has mSizeOfPerVex float data followed by its texture coordinate:
+ * </p>
+ * <pre>
+ * +---+---+---+----+------+------+---+---+---+----+------+------+
+ * | x | y | z | w? | texX | texY | x | y | z | w? | texX | texY | ...
+ * +---+---+---+----+------+------+---+---+---+----+------+------+
+ * </pre>
+ * <p>
+ * The w is optional and normally used to pass other value to shader. An
+ * optional layer index can follow vertex data before texture coordinate, it
+ * selects the texture of vertex when all page textures are in one
+ * {@link PageTextureArray}. Vertex data are put into a
+ * {@link SharedVertexBuffer} which can be shared with other meshes, so all
+ * meshes are uploaded to GL once in a frame
+ * </p>
+ * <p>
+ * Vertex attributes always point at the start of buffer and drawing starts
+ * from the first vertex of mesh in buffer, so the attribute pointers can be
+ * recorded in a vertex array object when GLES 3.0 is used
+ * </p>
  *
  * @author eschao
  */
@@ -39,54 +55,91 @@ class Vertexes {
     // how many vertexes in vertex float buffer will be drawn on screen
     int mVertexesSize;
 
-    // how many float data is used for every vertex
+    // how many float data is used for every vertex, not including texture
+    // coordinates
     int mSizeOfPerVex;
 
-    // vertex data array
+    // how many float data is used for every vertex, including texture
+    // coordinates
+    int mStride;
+
+    // interleaved vertex and texture coordinates data array
     float[] mVertexes;
 
-    // texture coordinates array
-    float[] mTextureCoords;
+    // is there texture coordinates for every vertex
+    boolean mHasTexture;
 
-    // float buffer for vertexes data and texture coordinates data
-    FloatBuffer mVertexesBuf;
-    FloatBuffer mTextureCoordsBuf;
+    // is there layer index for every vertex and the layer index of vertexes
+    // which will be added
+    boolean mHasLayer;
+    float mLayer;
+
+    // vertex buffer which float array is put into and the index of the first
+    // vertex in it
+    SharedVertexBuffer mBuffer;
+    int mFirstVertex;
+    // is vertex buffer owned by self or shared with others
+    boolean mIsBufferOwned;
 
     // next index when add vertex to float array
     int mNext;
 
+    // is drawing triangle strip with indexed triangles
+    boolean mIsIndexed;
+
+    // vertex array object, it is only used when GLES 3.0 is enabled
+    GLVertexArray mVAO;
+    boolean mIsVAOEnabled;
+
+    // GL backend
+    GLBackend mGL;
 
     /**
-     * Default constructor
+     * Constructor
+     *
+     * @param gl GL backend
      */
-    public Vertexes() {
+    public Vertexes(GLBackend gl) {
+        mGL = gl;
         mNext = 0;
         mVertexesSize = 0;
         mSizeOfPerVex = 0;
+        mStride = 0;
         mVertexes = null;
-        mVertexesBuf = null;
-        mTextureCoords = null;
-        mTextureCoordsBuf = null;
+        mHasTexture = false;
+        mHasLayer = false;
+        mLayer = 0;
+        mBuffer = new SharedVertexBuffer(gl);
+        mFirstVertex = 0;
+        mIsBufferOwned = true;
+        mIsIndexed = false;
+        mVAO = new GLVertexArray(gl);
+        mIsVAOEnabled = false;
     }
 
     /**
      * Constructor with given vertex amount
      *
+     * @param gl GL backend
      * @param capacity vertex max amount
      * @param sizeOfPerVex how many float data is used for a vertex
      */
-    public Vertexes(int capacity, int sizeOfPerVex) {
+    public Vertexes(GLBackend gl, int capacity, int sizeOfPerVex) {
+        this(gl);
         set(capacity, sizeOfPerVex, true);
     }
 
     /**
      * Constructor with given vertex max amount and texture
      *
+     * @param gl GL backend
      * @param capacity vertex amount
      * @param sizeOfPerVex how many float data is used for a vertex
      * @param hasTexture if need texture buffer for texture coordinates
      */
-    public Vertexes(int capacity, int sizeOfPerVex, boolean hasTexture) {
+    public Vertexes(GLBackend gl, int capacity, int sizeOfPerVex,
+                    boolean hasTexture) {
+        this(gl);
         set(capacity, sizeOfPerVex, hasTexture);
     }
 
@@ -99,6 +152,21 @@ class Vertexes {
      * @return self
      */
     public Vertexes set(int capacity, int sizeOfPerVex, boolean hasTexture) {
+        return set(capacity, sizeOfPerVex, hasTexture, false);
+    }
+
+    /**
+     * Set max vertex amount and create buffer for vertex, layer index and
+     * texture
+     *
+     * @param capacity vertex amount
+     * @param sizeOfPerVex how many float data is used for a vertex
+     * @param hasTexture True if need texture buffer for texture coordinates
+     * @param hasLayer True if need layer index for every vertex
+     * @return self
+     */
+    public Vertexes set(int capacity, int sizeOfPerVex, boolean hasTexture,
+                        boolean hasLayer) {
         if (sizeOfPerVex < 2) {
             Log.w(TAG, "sizeOfPerVex is invalid: " + sizeOfPerVex);
             throw new IllegalArgumentException("sizeOfPerVex:" + sizeOfPerVex +
@@ -107,26 +175,84 @@ class Vertexes {
 
         // reset all
         mNext = 0;
-        mVertexes = null;
-        mVertexesBuf = null;
-        mTextureCoords = null;
-        mTextureCoordsBuf = null;
+        mVertexesSize = 0;
 
-        // create vertexes buffer
+        // create interleaved vertexes array
         mSizeOfPerVex = sizeOfPerVex;
-        mVertexes = new float[capacity * sizeOfPerVex];
-        mVertexesBuf = ByteBuffer.allocateDirect(capacity * sizeOfPerVex * 4)
-                                 .order(ByteOrder.nativeOrder())
-                                 .asFloatBuffer();
-
-        // if need, create texture buffer
-        if (hasTexture) {
-            mTextureCoords = new float[capacity << 1];
-            mTextureCoordsBuf =  ByteBuffer.allocateDirect(capacity << 3)
-                                           .order(ByteOrder.nativeOrder())
-                                           .asFloatBuffer();
+        mHasTexture = hasTexture;
+        mHasLayer = hasLayer;
+        mLayer = 0;
+        mStride = sizeOfPerVex + (hasLayer ? 1 : 0) + (hasTexture ? 2 : 0);
+        mVertexes = new float[capacity * mStride];
+        if (mIsBufferOwned) {
+            mBuffer.ensureCapacity(mVertexes.length);
+        }
+
+        return this;
+    }
+
+    /**
+     * Enable or disable vertex array object
+     * <p>
+     * It can only be enabled when GLES 3.0 context is used. Triangle strip
+     * drawn as indexed triangles doesn't use vertex array object, its element
+     * array buffer is bound to the default vertex array
+     * </p>
+     *
+     * @param isEnabled true if enable vertex array object
+     * @return self
+     */
+    public Vertexes enableVAO(boolean isEnabled) {
+        mIsVAOEnabled = isEnabled;
+        return this;
+    }
+
+    /**
+     * Set layer index of vertexes which will be added
+     * <p>It is ignored if there is no layer index for vertex</p>
+     *
+     * @param layer layer index
+     * @return self
+     */
+    public Vertexes setLayer(int layer) {
+        mLayer = layer;
+        return this;
+    }
+
+    /**
+     * Add a copy of the last vertex
+     * <p>
+     * It is used to join two separated triangle strips in one: repeat the
+     * last vertex of the first strip and the first vertex of the second
+     * strip, the triangles between them are degenerate and not rasterized
+     * </p>
+     *
+     * @return self
+     */
+    public Vertexes repeatLastVertex() {
+        if (mNext >= mStride) {
+            System.arraycopy(mVertexes, mNext - mStride, mVertexes, mNext,
+                             mStride);
+            mNext += mStride;
         }
+        return this;
+    }
 
+    /**
+     * Put vertex data into a shared vertex buffer instead of its own buffer
+     * <p>
+     * The owner of shared buffer is responsible for making sure its capacity
+     * and calling {@link SharedVertexBuffer#reset()} before meshes are put
+     * into it for every frame
+     * </p>
+     *
+     * @param buffer shared vertex buffer
+     * @return self
+     */
+    public Vertexes setSharedBuffer(SharedVertexBuffer buffer) {
+        mBuffer = buffer;
+        mFirstVertex = 0;
+        mIsBufferOwned = false;
         return this;
     }
 
@@ -139,34 +265,64 @@ class Vertexes {
         mNext = 0;
         mVertexesSize = 0;
         mSizeOfPerVex = 0;
+        mStride = 0;
         mVertexes = null;
-        mVertexesBuf = null;
-        mTextureCoords = null;
-        mTextureCoordsBuf = null;
         return this;
     }
 
+    /**
+     * Delete buffer object if vertex buffer is owned by self
+     * <p>It should be called in OpenGL thread</p>
+     */
+    public void deleteVBOs() {
+        if (mIsBufferOwned) {
+            mBuffer.delete();
+        }
+
+        mVAO.delete();
+    }
+
+    /**
+     * Forget buffer object without deleting it when GL context is lost
+     * <p>It will be created and uploaded again in the next drawing</p>
+     */
+    public void invalidateVBOs() {
+        mBuffer.invalidate();
+        mVAO.invalidate();
+    }
+
     /**
      * Get max vertex amount
      *
      * @return max vertex amount
      */
     public int capacity() {
-        return mVertexes == null ? 0 : mVertexes.length / mSizeOfPerVex;
+        return mVertexes == null ? 0 : mVertexes.length / mStride;
     }
 
     /**
-     * Reset index of float array before adding vertex to buffer
+     * Get amount of vertexes which are added since the last reset
+     *
+     * @return vertex amount
+     */
+    public int vertexCount() {
+        return mStride == 0 ? 0 : mNext / mStride;
+    }
+
+    /**
+     * Reset index of float array and layer index before adding vertex to
+     * buffer
      */
     public void reset() {
         mNext = 0;
+        mLayer = 0;
     }
 
 
     /**
      * Get float data with given index
      *
-     * @param index float data position index
+     * @param index float data position index in interleaved array
      * @return float data
      */
     public float getFloatAt(int index) {
@@ -218,16 +374,18 @@ class Vertexes {
     /**
      * Set texture coordinate(x, y) in given buffer position
      *
-     * @param i where to start saving texture coordinate
+     * @param i where to start saving texture coordinate, it is the position
+     *          in interleaved array, normally i = vertex index * mStride +
+     *          mSizeOfPerVex, plus 1 if there is layer index
      * @param x x value of texture coordinate
      * @param y y value of texture coordinate
      * @return self
      */
     public Vertexes setTextureCoord(int i, float x, float y) {
-        assert(i+1 < mTextureCoords.length);
+        assert(i+1 < mVertexes.length);
 
-        mTextureCoords[i] = x;
-        mTextureCoords[i + 1] = y;
+        mVertexes[i] = x;
+        mVertexes[i + 1] = y;
         return this;
     }
 
@@ -243,6 +401,9 @@ class Vertexes {
         mVertexes[mNext++] = x;
         mVertexes[mNext++] = y;
         mVertexes[mNext++] = z;
+        if (mHasLayer) {
+            mVertexes[mNext++] = mLayer;
+        }
         return this;
     }
 
@@ -258,13 +419,14 @@ class Vertexes {
      */
     public Vertexes addVertex(float x, float y, float z,
                               float coordX, float coordY) {
-        int j = mNext / mSizeOfPerVex * 2;
         mVertexes[mNext++] = x;
         mVertexes[mNext++] = y;
         mVertexes[mNext++] = z;
-
-        mTextureCoords[j++] = coordX;
-        mTextureCoords[j] = coordY;
+        if (mHasLayer) {
+            mVertexes[mNext++] = mLayer;
+        }
+        mVertexes[mNext++] = coordX;
+        mVertexes[mNext++] = coordY;
         return this;
     }
 
@@ -282,6 +444,9 @@ class Vertexes {
         mVertexes[mNext++] = y;
         mVertexes[mNext++] = z;
         mVertexes[mNext++] = w;
+        if (mHasLayer) {
+            mVertexes[mNext++] = mLayer;
+        }
         return this;
     }
 
@@ -298,14 +463,15 @@ class Vertexes {
      */
     public Vertexes addVertex(float x, float y, float z, float w,
                               float coordX, float coordY) {
-        int j = mNext / mSizeOfPerVex * 2;
         mVertexes[mNext++] = x;
         mVertexes[mNext++] = y;
         mVertexes[mNext++] = z;
         mVertexes[mNext++] = w;
-
-        mTextureCoords[j++] = coordX;
-        mTextureCoords[j] = coordY;
+        if (mHasLayer) {
+            mVertexes[mNext++] = mLayer;
+        }
+        mVertexes[mNext++] = coordX;
+        mVertexes[mNext++] = coordY;
         return this;
     }
 
@@ -316,49 +482,42 @@ class Vertexes {
      * @return self
      */
     public Vertexes addVertex(GLPoint point) {
-        int j = mNext / mSizeOfPerVex * 2;
         mVertexes[mNext++] = point.x;
         mVertexes[mNext++] = point.y;
         mVertexes[mNext++] = point.z;
-
-        mTextureCoords[j++] = point.texX;
-        mTextureCoords[j] = point.texY;
+        if (mHasLayer) {
+            mVertexes[mNext++] = mLayer;
+        }
+        mVertexes[mNext++] = point.texX;
+        mVertexes[mNext++] = point.texY;
         return this;
     }
 
     /**
-     * Put data from float array to float buffer
+     * Put data from float array to vertex buffer
      *
      * @param offset data start offset in float array
      * @param length data length to be put
      */
     public void toFloatBuffer(int offset, int length) {
-        mVertexesBuf.put(mVertexes, offset, length).position(0);
-        mVertexesSize = length / mSizeOfPerVex;
-
-        // has texture? put again
-        if (mTextureCoords != null) {
-            final int o = offset / mSizeOfPerVex * 2;
-            final int l = mVertexesSize * 2;
-            mTextureCoordsBuf.put(mTextureCoords, o, l).position(0);
+        if (mIsBufferOwned) {
+            mBuffer.reset();
         }
+
+        mFirstVertex = mBuffer.put(mVertexes, offset, length, mStride) /
+                       mStride;
+        mVertexesSize = length / mStride;
     }
 
     /**
-     * Put all data from float array to float buffer
+     * Put all data from float array to vertex buffer
      * <p>
      * The offset is 0 and the length is determined by mNext which is increased
      * after calling {@link #addVertex}
      * </p>
      */
     public void toFloatBuffer() {
-        mVertexesBuf.put(mVertexes, 0, mNext).position(0);
-        mVertexesSize = mNext / mSizeOfPerVex;
-
-        if (mTextureCoords != null) {
-            mTextureCoordsBuf.put(mTextureCoords, 0, mVertexesSize << 1)
-                             .position(0);
-        }
+        toFloatBuffer(0, mNext);
     }
 
     /**
@@ -369,18 +528,11 @@ class Vertexes {
      * @param hTextureCoord texture var in shader program
      */
     public void drawWith(int type, int hVertexPos, int hTextureCoord) {
-        // pass vertex data
-        glVertexAttribPointer(hVertexPos, mSizeOfPerVex, GL_FLOAT, false, 0,
-                              mVertexesBuf);
-        glEnableVertexAttribArray(hVertexPos);
-
-        // pass texture data
-        glVertexAttribPointer(hTextureCoord, 2, GL_FLOAT, false, 0,
-                              mTextureCoordsBuf);
-        glEnableVertexAttribArray(hTextureCoord);
+        // pass vertex and texture data
+        bindBuffer(hVertexPos, hTextureCoord, -1);
 
         // draw triangles
-        glDrawArrays(type, 0, mVertexesSize);
+        draw(type, 0, mVertexesSize);
     }
 
     /**
@@ -394,14 +546,119 @@ class Vertexes {
      */
     public void drawWith(int type, int hVertexPos, int hTextureCoord,
                          int offset, int length) {
-        glVertexAttribPointer(hVertexPos, mSizeOfPerVex, GL_FLOAT, false, 0,
-                              mVertexesBuf);
-        glEnableVertexAttribArray(hVertexPos);
+        bindBuffer(hVertexPos, hTextureCoord, -1);
+        draw(type, offset, length);
+    }
+
+    /**
+     * Draw all vertexes with layer index
+     *
+     * @param type openGL drawing type: TRIANGLE, STRIP, FAN
+     * @param hVertexPos vertex position var in shader program
+     * @param hTextureCoord texture var in shader program
+     * @param hLayer layer index var in shader program
+     */
+    public void drawWithLayer(int type, int hVertexPos, int hTextureCoord,
+                              int hLayer) {
+        drawWithLayer(type, hVertexPos, hTextureCoord, hLayer, 0);
+    }
+
+    /**
+     * Draw all vertexes with layer index in two parts: the vertexes from given
+     * offset to the end are drawn before the vertexes prior to the offset
+     * <p>It is used to draw without depth test, the later drawn part is
+     * above the former one</p>
+     *
+     * @param type openGL drawing type: TRIANGLE, STRIP, FAN
+     * @param hVertexPos vertex position var in shader program
+     * @param hTextureCoord texture var in shader program
+     * @param hLayer layer index var in shader program
+     * @param offset vertex offset of the part which is drawn first
+     */
+    public void drawWithLayer(int type, int hVertexPos, int hTextureCoord,
+                              int hLayer, int offset) {
+        hLayer = mHasLayer ? hLayer : -1;
+        boolean isVAOBound = bindBuffer(hVertexPos, hTextureCoord, hLayer);
+        draw(type, offset, mVertexesSize - offset);
+        if (offset > 0) {
+            draw(type, 0, offset);
+        }
+
+        // other programs don't have layer index, disable it if it isn't kept
+        // in vertex array object
+        if (!isVAOBound && hLayer >= 0) {
+            mGL.glDisableVertexAttribArray(hLayer);
+        }
+    }
 
-        glVertexAttribPointer(hTextureCoord, 2, GL_FLOAT, false, 0,
-                              mTextureCoordsBuf);
-        glEnableVertexAttribArray(hTextureCoord);
+    /**
+     * Bind vertex buffer and pass interleaved vertex and texture data in it to
+     * shader program
+     *
+     * @param hVertexPos vertex position var in shader program
+     * @param hTextureCoord texture var in shader program
+     * @param hLayer layer index var in shader program, -1 if not used
+     * @return true if vertex array object is bound
+     */
+    private boolean bindBuffer(int hVertexPos, int hTextureCoord,
+                               int hLayer) {
+        final int stride = mStride << 2;
+
+        // buffer must be bound before vertex array object since uploading
+        // doesn't change vertex array object state
+        mBuffer.bind();
+        final boolean isVAOBound = mIsVAOEnabled && !mIsIndexed;
+        if (isVAOBound) {
+            if (!mVAO.bind(hVertexPos, mHasTexture ? hTextureCoord : -1,
+                           hLayer)) {
+                return true;
+            }
+        }
+        else if (mIsVAOEnabled) {
+            GLVertexArray.unbind(mGL);
+        }
 
-        glDrawArrays(type, offset, length);
+        mGL.glVertexAttribPointer(hVertexPos, mSizeOfPerVex, GL_FLOAT, false,
+                                  stride, 0);
+        mGL.glEnableVertexAttribArray(hVertexPos);
+
+        int offset = mSizeOfPerVex << 2;
+        if (mHasLayer) {
+            if (hLayer >= 0) {
+                mGL.glVertexAttribPointer(hLayer, 1, GL_FLOAT, false, stride,
+                                          offset);
+                mGL.glEnableVertexAttribArray(hLayer);
+            }
+            offset += 4;
+        }
+
+        if (mHasTexture) {
+            mGL.glVertexAttribPointer(hTextureCoord, 2, GL_FLOAT, false,
+                                      stride, offset);
+            mGL.glEnableVertexAttribArray(hTextureCoord);
+        }
+
+        return isVAOBound;
+    }
+
+    /**
+     * Draw vertexes with given offset and length
+     * <p>
+     * Vertex data must be passed to shader program before calling it. If
+     * indexed drawing is enabled, triangle strip will be drawn as indexed
+     * triangles
+     * </p>
+     *
+     * @param type openGL drawing type: TRIANGLE, STRIP, FAN
+     * @param offset vertex start offset of mesh
+     * @param length vertex length to be drawn
+     */
+    public void draw(int type, int offset, int length) {
+        if (mIsIndexed && type == GL_TRIANGLE_STRIP) {
+            mBuffer.drawIndexedStrip(mFirstVertex + offset, length);
+        }
+        else {
+            mGL.glDrawArrays(type, mFirstVertex + offset, length);
+        }
     }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Vsync aligned frame driver of animation
+ * <p>
+ * Frame callback is called in the thread of given looper at every vsync
+ * with frame time, it should advance animation and render in the same
+ * callback, for example: call {@link PageFlip#animating(long)} and draw or
+ * request render, no message is sent between threads for every frame. It
+ * keeps calling back as long as callback returns true. Choreographer is used
+ * on Android 4.1 and later, otherwise frames are posted to handler with
+ * 16ms interval.
+ * </p>
+ * <p>{@link #requestFrame()} and {@link #cancel()} are thread safe</p>
+ *
+ * @author eschao
+ */
+
+public class VsyncDriver {
+
+    // frame interval of fallback handler
+    private final static long FRAME_INTERVAL_MS = 16;
+
+    /**
+     * Frame callback
+     */
+    public interface Callback {
+
+        /**
+         * Called at vsync in the thread of driver looper
+         *
+         * @param frameTimeNanos frame time in {@link System#nanoTime()} base
+         * @return true if the next frame is needed
+         */
+        boolean onFrame(long frameTimeNanos);
+    }
+
+    private final Callback mCallback;
+    private final Handler mHandler;
+    private final Looper mLooper;
+
+    // choreographer frame callback, null if it isn't available
+    private final ChoreographerFrame mChoreographerFrame;
+    // fallback frame of handler and uptime of the last frame
+    private final Runnable mHandlerFrame;
+    private long mLastFrameMillis;
+
+    // posts frame in looper thread when it is requested in other thread
+    private final Runnable mPostFrame;
+
+    // is frame requested and not called back yet
+    private boolean mIsFramePosted;
+
+    /**
+     * Choreographer frame callback, it is in a separated class to avoid
+     * loading Choreographer before Android 4.1
+     */
+    private final class ChoreographerFrame implements
+                                           Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            onFrame(frameTimeNanos);
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param looper looper of thread which callback is called in
+     * @param callback frame callback
+     * @throws IllegalArgumentException if looper or callback is null
+     */
+    public VsyncDriver(Looper looper, Callback callback) {
+        if (looper == null || callback == null) {
+            throw new IllegalArgumentException("Looper or callback is null");
+        }
+
+        mLooper = looper;
+        mCallback = callback;
+        mHandler = new Handler(looper);
+        mIsFramePosted = false;
+        mLastFrameMillis = 0;
+        mChoreographerFrame =
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ?
+                new ChoreographerFrame() : null;
+        mHandlerFrame = new Runnable() {
+            @Override
+            public void run() {
+                mLastFrameMillis = SystemClock.uptimeMillis();
+                onFrame(System.nanoTime());
+            }
+        };
+        mPostFrame = new Runnable() {
+            @Override
+            public void run() {
+                postFrame();
+            }
+        };
+    }
+
+    /**
+     * Request a frame at the next vsync, nothing is done if a frame is
+     * requested already
+     */
+    public void requestFrame() {
+        synchronized (this) {
+            if (mIsFramePosted) {
+                return;
+            }
+            mIsFramePosted = true;
+        }
+
+        // choreographer is per thread, frame is posted in looper thread
+        if (Looper.myLooper() == mLooper) {
+            postFrame();
+        }
+        else {
+            mHandler.post(mPostFrame);
+        }
+    }
+
+    /**
+     * Cancel the requested frame
+     */
+    public void cancel() {
+        synchronized (this) {
+            mIsFramePosted = false;
+        }
+
+        if (Looper.myLooper() == mLooper) {
+            removeFrame();
+        }
+        else {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    removeFrame();
+                }
+            });
+        }
+    }
+
+    /**
+     * Post frame callback in looper thread
+     */
+    private void postFrame() {
+        synchronized (this) {
+            if (!mIsFramePosted) {
+                return;
+            }
+        }
+
+        if (mChoreographerFrame != null) {
+            mChoreographerFrame.post();
+        }
+        else {
+            final long next = Math.max(SystemClock.uptimeMillis(),
+                                       mLastFrameMillis + FRAME_INTERVAL_MS);
+            mHandler.postAtTime(mHandlerFrame, next);
+        }
+    }
+
+    /**
+     * Remove frame callback in looper thread if it isn't requested again
+     */
+    private void removeFrame() {
+        synchronized (this) {
+            if (mIsFramePosted) {
+                return;
+            }
+        }
+
+        if (mChoreographerFrame != null) {
+            mChoreographerFrame.remove();
+        }
+        mHandler.removeCallbacks(mHandlerFrame);
+        mHandler.removeCallbacks(mPostFrame);
+    }
+
+    /**
+     * Call back at frame and request the next frame if it is needed
+     *
+     * @param frameTimeNanos frame time
+     */
+    private void onFrame(long frameTimeNanos) {
+        synchronized (this) {
+            if (!mIsFramePosted) {
+                return;
+            }
+            mIsFramePosted = false;
+        }
+
+        if (mCallback.onFrame(frameTimeNanos)) {
+            requestFrame();
+        }
+    }
+}
@@ -1,14 +1,106 @@
+// variant PF_EDGE_AA fades alpha across one pixel at page edges, pixel size
+// is from derivatives if they are available, otherwise from u_edgeScale
+#ifdef PF_EDGE_AA
+#ifdef PF_GLES3
+#define EDGE_DERIVATIVES
+#elif defined(GL_OES_standard_derivatives)
+#extension GL_OES_standard_derivatives : enable
+#define EDGE_DERIVATIVES
+#endif
+#endif
 precision mediump float;
+// variants: PF_NO_MASK, PF_NO_GRADIENT and PF_LOWP remove mask color, remove
+// gradient shadow and use low precision for color computing respectively
+#ifdef PF_LOWP
+#define COLOR_PRECISION lowp
+#else
+#define COLOR_PRECISION mediump
+#endif
+#ifdef PF_PAGE_ARRAY
+#ifdef PF_GLES3
+uniform mediump sampler2DArray u_texture;
+
+vec4 texturePage(vec2 coord, float layer) {
+    return texture(u_texture, vec3(coord, layer));
+}
+#else
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+#define ATLAS_PRECISION highp
+#else
+#define ATLAS_PRECISION mediump
+#endif
 uniform sampler2D u_texture;
-uniform sampler2D u_shadow;
-uniform vec4 u_maskColor;
-varying vec2 v_texCoord;
+// atlas grid: columns, rows and half texel of cell
+uniform ATLAS_PRECISION vec4 u_atlas;
+
+vec4 texturePage(vec2 coord, float layer) {
+    ATLAS_PRECISION float l = floor(layer + 0.5);
+    ATLAS_PRECISION float row = floor(l / u_atlas.x);
+    ATLAS_PRECISION vec2 cell = vec2(l - row * u_atlas.x, row);
+    ATLAS_PRECISION vec2 t = clamp(coord, u_atlas.zw, 1.0 - u_atlas.zw);
+    return texture2D(u_texture, (cell + t) / u_atlas.xy);
+}
+#endif
+#else
+uniform sampler2D u_texture;
+#endif
+#ifndef PF_NO_GRADIENT
+// gradient shadow: start positions and reciprocal lengths of 3 segments, and
+// premultiplied colors of 4 stops
+uniform vec3 u_shadowStops;
+uniform vec3 u_shadowScales;
+uniform COLOR_PRECISION vec4 u_shadowColors[4];
 varying float v_shadowX;
 
+COLOR_PRECISION vec4 gradientShadow(float x) {
+    vec3 t = clamp((vec3(x) - u_shadowStops) * u_shadowScales, 0.0, 1.0);
+    COLOR_PRECISION vec4 c = mix(u_shadowColors[0], u_shadowColors[1], t.x);
+    c = mix(c, u_shadowColors[2], t.y);
+    return mix(c, u_shadowColors[3], t.z);
+}
+#endif
+#ifndef PF_NO_MASK
+uniform COLOR_PRECISION vec4 u_maskColor;
+#endif
+varying vec2 v_texCoord;
+#ifdef PF_PAGE_ARRAY
+uniform float u_layer;
+#endif
+#ifdef PF_EDGE_AA
+#ifndef EDGE_DERIVATIVES
+// pixels per unit of texture coordinate
+uniform vec2 u_edgeScale;
+#endif
+
+// texture coordinate is the distance field of page edges, coverage of pixel
+// is 0.5 on edge and 1.0 at one pixel inside
+float edgeCoverage(vec2 coord) {
+    vec2 d = min(coord, 1.0 - coord);
+#ifdef EDGE_DERIVATIVES
+    d /= max(fwidth(coord), vec2(1e-5));
+#else
+    d *= u_edgeScale;
+#endif
+    return clamp(min(d.x, d.y) + 0.5, 0.0, 1.0);
+}
+#endif
+
 void main() {
-    vec4 texture = texture2D(u_texture, v_texCoord);
-    vec2 shadowCoord = vec2(v_shadowX, 0);
-    vec4 shadow = texture2D(u_shadow, shadowCoord);
-    vec4 maskedTexture = vec4(mix(texture.rgb, u_maskColor.rgb, u_maskColor.a), 1.0);
-    gl_FragColor = vec4(maskedTexture.rgb * (1.0 - shadow.a) + shadow.rgb, maskedTexture.a);
+#ifdef PF_PAGE_ARRAY
+    COLOR_PRECISION vec3 color = texturePage(v_texCoord, u_layer).rgb;
+#else
+    COLOR_PRECISION vec3 color = texture2D(u_texture, v_texCoord).rgb;
+#endif
+#ifndef PF_NO_MASK
+    color = mix(color, u_maskColor.rgb, u_maskColor.a);
+#endif
+#ifndef PF_NO_GRADIENT
+    COLOR_PRECISION vec4 shadow = gradientShadow(v_shadowX);
+    color = color * (1.0 - shadow.a) + shadow.rgb;
+#endif
+#ifdef PF_EDGE_AA
+    FRAG_COLOR = vec4(color, edgeCoverage(v_texCoord));
+#else
+    FRAG_COLOR = vec4(color, 1.0);
+#endif
 }
@@ -1,5 +1,11 @@
 precision mediump float;
+#ifdef PF_GLES3
+layout(std140) uniform MVPBlock {
+    mat4 u_MVPMatrix;
+};
+#else
 uniform mat4 u_MVPMatrix;
+#endif
 uniform float u_texXOffset;
 attribute vec4 a_vexPosition;
 attribute vec2 a_texCoord;
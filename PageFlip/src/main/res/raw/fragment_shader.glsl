@@ -1,7 +1,41 @@
 precision mediump float;
+#ifdef PF_PAGE_ARRAY
+#ifdef PF_GLES3
+uniform mediump sampler2DArray u_texture;
+
+vec4 texturePage(vec2 coord, float layer) {
+    return texture(u_texture, vec3(coord, layer));
+}
+#else
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+#define ATLAS_PRECISION highp
+#else
+#define ATLAS_PRECISION mediump
+#endif
+uniform sampler2D u_texture;
+// atlas grid: columns, rows and half texel of cell
+uniform ATLAS_PRECISION vec4 u_atlas;
+
+vec4 texturePage(vec2 coord, float layer) {
+    ATLAS_PRECISION float l = floor(layer + 0.5);
+    ATLAS_PRECISION float row = floor(l / u_atlas.x);
+    ATLAS_PRECISION vec2 cell = vec2(l - row * u_atlas.x, row);
+    ATLAS_PRECISION vec2 t = clamp(coord, u_atlas.zw, 1.0 - u_atlas.zw);
+    return texture2D(u_texture, (cell + t) / u_atlas.xy);
+}
+#endif
+#else
 uniform sampler2D u_texture;
+#endif
 varying vec2 v_texCoord;
+#ifdef PF_PAGE_ARRAY
+varying float v_layer;
+#endif
 
 void main() {
-    gl_FragColor = texture2D(u_texture, v_texCoord);
+#ifdef PF_PAGE_ARRAY
+    FRAG_COLOR = texturePage(v_texCoord, v_layer);
+#else
+    FRAG_COLOR = texture2D(u_texture, v_texCoord);
+#endif
 }
@@ -3,5 +3,5 @@ varying vec4 v_texColor;
 
 void main()
 {
-    gl_FragColor = v_texColor;
+    FRAG_COLOR = v_texColor;
 }
\ No newline at end of file
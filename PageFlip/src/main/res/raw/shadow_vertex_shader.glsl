@@ -1,11 +1,29 @@
 precision mediump float;
+#ifdef PF_GLES3
+layout(std140) uniform MVPBlock {
+    mat4 u_MVPMatrix;
+};
+#else
 uniform mat4 u_MVPMatrix;
-uniform float u_vexZ;
-attribute vec4 a_vexPosition;
+#endif
+// two shadows can be drawn in one triangle strip, the vertexes whose id is
+// less than boundary belong to the first shadow and others belong to the
+// second, every shadow has its own Z and color:
+// (start color, start alpha, end color, end alpha)
+uniform vec2 u_vexZ;
+uniform vec4 u_shadowColor[2];
+uniform highp float u_boundary;
+attribute vec2 a_vexPosition;
+// index of vertex in buffer, start vertex is at even index and end vertex is
+// at odd index
+attribute highp float a_vexId;
 varying vec4 v_texColor;
 
 void main() {
-    vec4 vexPos = vec4(a_vexPosition.xy, u_vexZ, 1.0);
-    v_texColor = vec4(a_vexPosition.z, a_vexPosition.z, a_vexPosition.z, a_vexPosition.w);
+    highp float second = step(u_boundary, a_vexId);
+    vec4 shadow = mix(u_shadowColor[0], u_shadowColor[1], second);
+    vec2 color = mix(shadow.xy, shadow.zw, mod(a_vexId, 2.0));
+    vec4 vexPos = vec4(a_vexPosition, mix(u_vexZ.x, u_vexZ.y, second), 1.0);
+    v_texColor = vec4(color.x, color.x, color.x, color.y);
     gl_Position = u_MVPMatrix * vexPos;
 }
\ No newline at end of file
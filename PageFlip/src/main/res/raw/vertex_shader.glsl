@@ -1,10 +1,25 @@
 precision mediump float;
+#ifdef PF_GLES3
+layout(std140) uniform MVPBlock {
+    mat4 u_MVPMatrix;
+};
+#else
 uniform mat4 u_MVPMatrix;
+#endif
 attribute vec4 a_vexPosition;
 attribute vec2 a_texCoord;
 varying vec2 v_texCoord;
+#ifdef PF_PAGE_ARRAY
+// vertex selects one of three page textures by its layer attribute
+uniform vec3 u_layers;
+attribute float a_layer;
+varying float v_layer;
+#endif
 
 void main() {
     gl_Position = u_MVPMatrix * a_vexPosition;
     v_texCoord = a_texCoord;
+#ifdef PF_PAGE_ARRAY
+    v_layer = dot(u_layers, vec3(equal(vec3(a_layer), vec3(0.0, 1.0, 2.0))));
+#endif
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of deformation models
+ *
+ * @author eschao
+ */
+
+public class DeformationModelTest {
+
+    private final static float R = 100f;
+    private final static float TX = 50f;
+    private final static float DELTA = 1e-3f;
+
+    private final float[] mOut = new float[DeformationModel.OUT_SIZE];
+
+    @Test
+    public void cylinderWrapsPageAroundHalfCylinder() {
+        DeformationModel model = new CylinderDeformation();
+
+        model.deform(TX, 0, TX, R, mOut);
+        assertEquals(TX, mOut[0], DELTA);
+        assertEquals(0, mOut[1], DELTA);
+        assertEquals(0, mOut[2], DELTA);
+
+        // quarter of circle reaches the top of cylinder
+        model.deform(TX + (float)Math.PI * R / 2, 0, TX, R, mOut);
+        assertEquals(TX + R, mOut[0], DELTA);
+        assertEquals(R, mOut[1], DELTA);
+        assertEquals(1, mOut[2], DELTA);
+
+        // half of circle is back above the fold line
+        model.deform(TX + (float)Math.PI * R, 0, TX, R, mOut);
+        assertEquals(TX, mOut[0], 0.01f);
+        assertEquals(2 * R, mOut[1], DELTA);
+    }
+
+    @Test
+    public void coneWithZeroSlopeIsCylinder() {
+        DeformationModel cone = new ConeDeformation(0);
+        DeformationModel cylinder = new CylinderDeformation();
+        float[] expected = new float[DeformationModel.OUT_SIZE];
+
+        for (float x = TX; x < TX + Math.PI * R; x += 7) {
+            cylinder.deform(x, 300, TX, R, expected);
+            cone.deform(x, 300, TX, R, mOut);
+            for (int i = 0; i < DeformationModel.OUT_SIZE; ++i) {
+                assertEquals(expected[i], mOut[i], DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void coneIsCylinderAtFlippingCorner() {
+        DeformationModel cone = new ConeDeformation();
+        DeformationModel cylinder = new CylinderDeformation();
+        float[] expected = new float[DeformationModel.OUT_SIZE];
+
+        for (float x = TX; x < TX + Math.PI * R; x += 7) {
+            cylinder.deform(x, 0, TX, R, expected);
+            cone.deform(x, 0, TX, R, mOut);
+            assertEquals(expected[0], mOut[0], DELTA);
+            assertEquals(expected[1], mOut[1], DELTA);
+        }
+    }
+
+    @Test
+    public void coneDoesNotStretchPaper() {
+        DeformationModel cone = new ConeDeformation(0.5f);
+
+        // arc length on curled surface must equal distance on flat page at
+        // any distance from flipping corner
+        for (float y : new float[] {0, 100, 400, 1000}) {
+            final int steps = 2000;
+            final float len = (float)Math.PI * R;
+            float arc = 0;
+            cone.deform(TX, y, TX, R, mOut);
+            float lastX = mOut[0];
+            float lastZ = mOut[1];
+            for (int i = 1; i <= steps; ++i) {
+                cone.deform(TX + len * i / steps, y, TX, R, mOut);
+                arc += Math.hypot(mOut[0] - lastX, mOut[1] - lastZ);
+                lastX = mOut[0];
+                lastZ = mOut[1];
+            }
+            assertEquals("y: " + y, len, arc, len * 1e-3f);
+        }
+    }
+
+    @Test
+    public void coneCurlsLessAwayFromCorner() {
+        DeformationModel cone = new ConeDeformation();
+
+        cone.deform(TX + R, 0, TX, R, mOut);
+        final float cornerZ = mOut[1];
+        cone.deform(TX + R, 500, TX, R, mOut);
+        assertTrue(mOut[1] < cornerZ);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void coneRejectsNegativeSlope() {
+        new ConeDeformation(-0.1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void coneRejectsTooLargeSlope() {
+        new ConeDeformation(1.1f);
+    }
+
+    @Test
+    public void flatFoldMirrorsPageOnFoldLine() {
+        DeformationModel model = new FlatFoldDeformation();
+        final float len = (float)Math.PI * R / 2;
+
+        // before fold line, page is kept flat in front
+        model.deform(TX + len / 2, 0, TX, R, mOut);
+        assertEquals(TX + len / 2, mOut[0], DELTA);
+        assertEquals(0.5f, mOut[2], DELTA);
+        final float frontZ = mOut[1];
+
+        // after fold line, page is mirrored and on top of front part
+        model.deform(TX + len * 1.5f, 0, TX, R, mOut);
+        assertEquals(TX + len / 2, mOut[0], DELTA);
+        assertEquals(0.5f, mOut[2], DELTA);
+        assertTrue(mOut[1] > frontZ);
+        assertTrue(frontZ > 0);
+    }
+
+    @Test
+    public void flatFoldUsesFewMeshes() {
+        assertEquals(2, new FlatFoldDeformation().meshCount(100));
+        assertEquals(1, new FlatFoldDeformation().meshCount(1));
+        assertEquals(100, new CylinderDeformation().meshCount(100));
+        assertEquals(100, new ConeDeformation().meshCount(100));
+    }
+
+    @Test
+    public void benchmarkReportsCostOfEveryModel() {
+        DeformationModel[] models = new DeformationModel[] {
+                new CylinderDeformation(),
+                new FlatFoldDeformation(),
+                new ConeDeformation()};
+        for (DeformationModel model : models) {
+            assertTrue(DeformationBenchmark.nanosPerVertex(model, 256) > 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void benchmarkRejectsNullModel() {
+        DeformationBenchmark.nanosPerVertex(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void benchmarkRejectsEmptyRound() {
+        DeformationBenchmark.nanosPerVertex(new CylinderDeformation(), 0);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Shader source which reads scripts from raw resource files of module
+ * <p>Resource id is mapped to its file name by fields of R.raw, unit tests
+ * are run in module directory</p>
+ *
+ * @author eschao
+ */
+
+class FileShaderSource implements ShaderSource {
+
+    private final static File RAW_DIR = new File("src/main/res/raw");
+
+    @Override
+    public String read(int resId) throws PageFlipException {
+        try {
+            for (Field field : R.raw.class.getFields()) {
+                if (field.getInt(null) == resId) {
+                    File file = new File(RAW_DIR, field.getName() + ".glsl");
+                    return new String(Files.readAllBytes(file.toPath()),
+                                      Charset.forName("UTF-8"));
+                }
+            }
+        }
+        catch (IllegalAccessException | IOException e) {
+            throw new PageFlipException("Could not open resource: " + resId,
+                                        e);
+        }
+
+        throw new PageFlipException("Unknown resource: " + resId);
+    }
+}
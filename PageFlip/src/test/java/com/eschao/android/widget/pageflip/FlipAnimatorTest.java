@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of flip animator driven by a virtual clock
+ *
+ * @author eschao
+ */
+
+public class FlipAnimatorTest {
+
+    private final static long SECOND = 1000000000L;
+    private final static long START = 5 * SECOND;
+    private final static int DURATION = 600;
+    private final static long DURATION_NANOS = DURATION * 1000000L;
+    private final static float START_X = 700f;
+    private final static float START_Y = 1200f;
+    private final static float DX = -1400f;
+    private final static float DY = -300f;
+    private final static float DELTA = 1e-3f;
+
+    private VirtualClock mClock;
+
+    @Before
+    public void setUp() {
+        mClock = new VirtualClock();
+        mClock.mNanos = START;
+    }
+
+    @Test
+    public void positionDependsOnlyOnFrameTime() {
+        // 100ms is a vsync timestamp of 60Hz, 90Hz and 120Hz
+        final float[] x = new float[3];
+        final float[] y = new float[3];
+        final int[] rates = new int[] {60, 90, 120};
+        for (int r = 0; r < rates.length; ++r) {
+            FlipAnimator animator = newAnimator();
+            for (int i = 1; i * SECOND / rates[r] <= 100000000L; ++i) {
+                assertTrue(animator.compute(START + i * SECOND / rates[r]));
+            }
+            x[r] = animator.getCurrX();
+            y[r] = animator.getCurrY();
+        }
+
+        assertTrue(x[0] < START_X && x[0] > START_X + DX);
+        assertEquals(x[0], x[1], DELTA);
+        assertEquals(x[0], x[2], DELTA);
+        assertEquals(y[0], y[1], DELTA);
+        assertEquals(y[0], y[2], DELTA);
+    }
+
+    @Test
+    public void positionMovesForwardAtEveryRefreshRate() {
+        for (int rate : new int[] {60, 90, 120}) {
+            FlipAnimator animator = newAnimator();
+            float lastX = START_X;
+            int frames = 0;
+            for (int i = 1; animator.compute(START + i * SECOND / rate); ++i) {
+                assertTrue(animator.getCurrX() < lastX);
+                lastX = animator.getCurrX();
+                ++frames;
+            }
+
+            // every vsync in duration and the finishing one are drawn
+            assertEquals(DURATION * rate / 1000, frames);
+            assertEquals(START_X + DX, animator.getCurrX(), DELTA);
+            assertEquals(START_Y + DY, animator.getCurrY(), DELTA);
+        }
+    }
+
+    @Test
+    public void lateFrameSkipsAhead() {
+        FlipAnimator smooth = newAnimator();
+        for (int i = 1; i <= 12; ++i) {
+            smooth.compute(START + i * SECOND / 60);
+        }
+
+        // frames 2 to 11 are missed, the late frame catches up
+        FlipAnimator late = newAnimator();
+        late.compute(START + SECOND / 60);
+        final float x = late.getCurrX();
+        assertTrue(late.compute(START + 12 * SECOND / 60));
+        assertEquals(smooth.getCurrX(), late.getCurrX(), DELTA);
+        assertEquals(smooth.getCurrY(), late.getCurrY(), DELTA);
+        assertTrue(x - late.getCurrX() > 0.1f * -DX);
+    }
+
+    @Test
+    public void computeReturnsTrueOnceWhenFinishing() {
+        FlipAnimator animator = newAnimator();
+        assertTrue(animator.compute(START + DURATION_NANOS - 1));
+        assertFalse(animator.isFinished());
+
+        assertTrue(animator.compute(START + DURATION_NANOS));
+        assertTrue(animator.isFinished());
+        assertEquals(START_X + DX, animator.getCurrX(), 0);
+        assertEquals(START_Y + DY, animator.getCurrY(), 0);
+
+        assertFalse(animator.compute(START + DURATION_NANOS + SECOND / 60));
+        assertFalse(animator.compute(START + 2 * DURATION_NANOS));
+    }
+
+    @Test
+    public void lateFirstFrameFinishesAtOnce() {
+        FlipAnimator animator = newAnimator();
+        assertTrue(animator.compute(START + 2 * DURATION_NANOS));
+        assertTrue(animator.isFinished());
+        assertFalse(animator.compute(START + 3 * DURATION_NANOS));
+    }
+
+    @Test
+    public void frameBeforeStartStaysAtStart() {
+        FlipAnimator animator = newAnimator();
+        assertTrue(animator.compute(START - SECOND / 60));
+        assertEquals(START_X, animator.getCurrX(), 0);
+        assertEquals(START_Y, animator.getCurrY(), 0);
+    }
+
+    @Test
+    public void abortMovesToEnd() {
+        FlipAnimator animator = newAnimator();
+        animator.compute(START + SECOND / 60);
+        animator.abort();
+
+        assertTrue(animator.isFinished());
+        assertEquals(START_X + DX, animator.getCurrX(), 0);
+        assertFalse(animator.compute(START + 2 * SECOND / 60));
+    }
+
+    /**
+     * Create animator which is started at the current time of clock
+     */
+    private FlipAnimator newAnimator() {
+        FlipAnimator animator = new FlipAnimator();
+        animator.setClock(mClock);
+        animator.start(START_X, START_Y, DX, DY, DURATION);
+        return animator;
+    }
+
+    /**
+     * Clock whose time is set by test
+     */
+    private final static class VirtualClock implements AnimationClock {
+
+        long mNanos;
+
+        @Override
+        public long nanoTime() {
+            return mNanos;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static android.opengl.GLES20.GL_ALWAYS;
+import static android.opengl.GLES20.GL_EQUAL;
+import static android.opengl.GLES20.GL_KEEP;
+import static android.opengl.GLES20.GL_NOTEQUAL;
+import static android.opengl.GLES20.GL_REPLACE;
+import static android.opengl.GLES20.GL_STENCIL_BUFFER_BIT;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of overdraw counter
+ *
+ * @author eschao
+ */
+
+public class OverdrawCounterTest {
+
+    private final static int FBO = 0;
+    private final static int[] SMALL_CLIP = new int[] {0, 0, 8, 8};
+    private final static int[] LARGE_CLIP = new int[] {0, 0, 32, 32};
+
+    private OverdrawCounter mCounter;
+
+    @Before
+    public void setUp() {
+        mCounter = new OverdrawCounter();
+    }
+
+    @Test
+    public void trianglesSharingEdgeShadePixelsOnce() {
+        drawRect("page", 0, 0, 8, 8, SMALL_CLIP, false);
+
+        assertEquals(64, mCounter.getShadedPixels());
+        assertEquals(64, mCounter.getCoveredPixels());
+    }
+
+    @Test
+    public void overdrawIsCountedPerLayer() {
+        drawRect("page", 0, 0, 8, 8, SMALL_CLIP, false);
+        drawRect("shadow", 0, 0, 4, 8, SMALL_CLIP, false);
+
+        Map<String, Long> layers = mCounter.getShadedPixelsOfLayers();
+        assertEquals(64L, (long)layers.get("page"));
+        assertEquals(32L, (long)layers.get("shadow"));
+        assertEquals(96, mCounter.getShadedPixels());
+        assertEquals(64, mCounter.getCoveredPixels());
+    }
+
+    @Test
+    public void drawingIsClippedToClipRectangle() {
+        drawRect("page", -4, -4, 12, 12, SMALL_CLIP, false);
+
+        assertEquals(64, mCounter.getShadedPixels());
+    }
+
+    @Test
+    public void growingSurfaceKeepsCounts() {
+        drawRect("page", 2, 3, 6, 8, SMALL_CLIP, false);
+        drawRect("page", 20, 20, 24, 24, LARGE_CLIP, false);
+
+        assertEquals(36, mCounter.getCoveredPixels());
+
+        // the first rectangle is still at its place after growing
+        drawRect("page", 2, 3, 6, 8, LARGE_CLIP, false);
+        assertEquals(36, mCounter.getCoveredPixels());
+        assertEquals(56, mCounter.getShadedPixels());
+    }
+
+    @Test
+    public void growingSurfaceKeepsStencil() {
+        mCounter.setClearStencil(1);
+        mCounter.clear(FBO, GL_STENCIL_BUFFER_BIT, new int[] {2, 3, 4, 5});
+        drawRect("page", 0, 0, 32, 32, LARGE_CLIP, false);
+        mCounter.reset();
+
+        mCounter.setStencilFunc(GL_EQUAL, 1, 0xFF);
+        drawRect("page", 0, 0, 32, 32, LARGE_CLIP, true);
+        assertEquals(20, mCounter.getShadedPixels());
+    }
+
+    @Test
+    public void stencilRejectsCoveredPixels() {
+        mCounter.setStencilFunc(GL_ALWAYS, 1, 0xFF);
+        mCounter.setStencilOp(GL_KEEP, GL_KEEP, GL_REPLACE);
+        drawRect("page", 0, 0, 4, 8, SMALL_CLIP, true);
+
+        mCounter.setStencilFunc(GL_NOTEQUAL, 1, 0xFF);
+        mCounter.setStencilOp(GL_KEEP, GL_KEEP, GL_KEEP);
+        drawRect("background", 0, 0, 8, 8, SMALL_CLIP, true);
+
+        Map<String, Long> layers = mCounter.getShadedPixelsOfLayers();
+        assertEquals(32L, (long)layers.get("page"));
+        assertEquals(32L, (long)layers.get("background"));
+        assertEquals(64, mCounter.getCoveredPixels());
+    }
+
+    @Test
+    public void resetClearsCounts() {
+        drawRect("page", 0, 0, 8, 8, SMALL_CLIP, false);
+        mCounter.reset();
+
+        assertEquals(0, mCounter.getShadedPixels());
+        assertEquals(0, mCounter.getCoveredPixels());
+        assertEquals(0, mCounter.getShadedPixelsOfLayers().size());
+    }
+
+    /**
+     * Draw rectangle with two triangles
+     */
+    private void drawRect(String layer, float left, float bottom,
+                          float right, float top, int[] clip,
+                          boolean isStencilTest) {
+        mCounter.drawTriangle(FBO, layer,
+                              new float[] {left, bottom, right, bottom,
+                                           right, top},
+                              clip, isStencilTest);
+        mCounter.drawTriangle(FBO, layer,
+                              new float[] {left, bottom, right, top,
+                                           left, top},
+                              clip, isStencilTest);
+    }
+}
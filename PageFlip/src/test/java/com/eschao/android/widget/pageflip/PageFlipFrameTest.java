@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static android.opengl.GLES20.GL_BLEND;
+import static android.opengl.GLES20.GL_DEPTH_TEST;
+import static android.opengl.GLES20.GL_STENCIL_INDEX8;
+import static android.opengl.GLES20.GL_STENCIL_TEST;
+import static android.opengl.GLES20.GL_VIEWPORT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Frame regression tests of page flip drawn by {@link RecordingGLBackend}
+ * in JVM
+ *
+ * @author eschao
+ */
+
+public class PageFlipFrameTest {
+
+    private final static int WIDTH = 720;
+    private final static int HEIGHT = 1280;
+
+    // programs used by a flip frame: front page, shadows and fold back
+    private final static int PROGRAMS_OF_FLIP_FRAME = 3;
+
+    private NameTrackingGLBackend mGL;
+    private PageFlip mPageFlip;
+    // time of virtual clock
+    private long mNanos;
+
+    @Before
+    public void setUp() throws PageFlipException {
+        mGL = new NameTrackingGLBackend();
+        mPageFlip = new PageFlip(null, mGL);
+        mPageFlip.setShaderSource(new FileShaderSource())
+                 .setListener(new OnPageFlipListener() {
+                     @Override
+                     public boolean canFlipForward() {
+                         return true;
+                     }
+
+                     @Override
+                     public boolean canFlipBackward() {
+                         return false;
+                     }
+                 });
+    }
+
+    /**
+     * Create GL resources and start flipping forward from bottom right
+     * corner
+     */
+    private void startFlip() throws PageFlipException {
+        mPageFlip.onSurfaceCreated();
+        mPageFlip.onSurfaceChanged(WIDTH, HEIGHT);
+        mPageFlip.onFingerDown(WIDTH - 10, HEIGHT - 10);
+        assertTrue(mPageFlip.onFingerMove(WIDTH * 0.7f, HEIGHT * 0.9f));
+        assertEquals(PageFlipState.FORWARD_FLIP, mPageFlip.getFlipState());
+
+        // the first frame uploads buffers and textures
+        mPageFlip.drawFlipFrame();
+    }
+
+    /**
+     * Move finger and draw the next flip frame with fresh statistics
+     *
+     * @param step step of finger moving
+     */
+    private void drawNextFrame(int step) {
+        mPageFlip.onFingerMove(WIDTH * 0.7f - step * 20, HEIGHT * 0.9f);
+        mGL.reset();
+        mPageFlip.drawFlipFrame();
+    }
+
+    @Test
+    public void mvpMatrixMapsViewToClipSpace() {
+        float[] m = new float[16];
+        VertexProgram.initMatrix(m, -360, 360, -640, 640);
+
+        // (x, y, 0, 1) is transformed to (m0 * x + m12, m5 * y + m13, m14)
+        assertEquals(-1, m[0] * -360 + m[12], 1e-6f);
+        assertEquals(1, m[0] * 360 + m[12], 1e-6f);
+        assertEquals(-1, m[5] * -640 + m[13], 1e-6f);
+        assertEquals(1, m[5] * 640 + m[13], 1e-6f);
+        assertEquals(0, m[14], 1e-6f);
+        assertEquals(1, m[15], 0);
+
+        // page is drawn in front of camera
+        assertTrue(m[10] < 0);
+    }
+
+    @Test
+    public void flipFrameUsesEveryProgramOnce() throws PageFlipException {
+        startFlip();
+        for (int i = 1; i <= 5; ++i) {
+            drawNextFrame(i);
+            assertEquals("frame " + i, PROGRAMS_OF_FLIP_FRAME,
+                         mGL.getCallCount("glUseProgram"));
+        }
+    }
+
+    @Test
+    public void flipFrameUsesEveryProgramOnceInGLES3()
+            throws PageFlipException {
+        mGL.setGLES30(true);
+        mPageFlip.enableGLES3(true);
+        startFlip();
+        for (int i = 1; i <= 5; ++i) {
+            drawNextFrame(i);
+            assertEquals("frame " + i, PROGRAMS_OF_FLIP_FRAME,
+                         mGL.getCallCount("glUseProgram"));
+        }
+    }
+
+    @Test
+    public void flipFrameCostIsStable() throws PageFlipException {
+        startFlip();
+        drawNextFrame(1);
+        final int calls = mGL.getTotalCallCount();
+        final int draws = mGL.getDrawCallCount();
+        final long bytes = mGL.getBytesUploaded();
+
+        // finger moves by the same step, every frame costs the same
+        for (int i = 2; i <= 5; ++i) {
+            drawNextFrame(i);
+            assertEquals("frame " + i, calls, mGL.getTotalCallCount());
+            assertEquals("frame " + i, draws, mGL.getDrawCallCount());
+            assertTrue("frame " + i, mGL.getBytesUploaded() <= bytes * 2);
+        }
+    }
+
+    @Test
+    public void deleteGLResourcesDeletesEveryObject()
+            throws PageFlipException {
+        mGL.setGLES30(true);
+        mPageFlip.enableGLES3(true);
+        startFlip();
+        drawNextFrame(1);
+        mPageFlip.onFingerUp(WIDTH * 0.5f, HEIGHT * 0.9f, 1000);
+        mPageFlip.drawPageFrame();
+        assertTrue(mGL.mNames.size() > 0);
+
+        mPageFlip.deleteGLResources();
+        assertEquals(mGL.mNames.toString(), 0, mGL.mNames.size());
+    }
+
+    @Test
+    public void indexedMeshesAreDrawnFromElementBuffer()
+            throws PageFlipException {
+        mGL.setGLES30(true);
+        mPageFlip.enableGLES3(true).enableIndexedMeshes(true);
+        startFlip();
+        for (int i = 1; i <= 3; ++i) {
+            drawNextFrame(i);
+            assertTrue("frame " + i, mGL.getCallCount("glDrawElements") > 0);
+            assertEquals("frame " + i, 0, mGL.getIndexBytesUploaded());
+        }
+
+        mPageFlip.deleteGLResources();
+        assertEquals(mGL.mNames.toString(), 0, mGL.mNames.size());
+    }
+
+    @Test
+    public void slowFramesScaleResolutionDown() throws PageFlipException {
+        startDynamicResolution();
+        drawFramesEvery(25000000L, 3);
+        assertTrue(mPageFlip.getResolutionScale() < 1f);
+    }
+
+    @Test
+    public void fingerPauseIsNotSlowFrame() throws PageFlipException {
+        startDynamicResolution();
+        drawFramesEvery(16000000L, 3);
+        drawFramesEvery(1000000000L, 3);
+        drawFramesEvery(16000000L, 3);
+        assertEquals(1f, mPageFlip.getResolutionScale(), 0);
+    }
+
+    @Test
+    public void frameTimeIsComparedWithRefreshPeriod()
+            throws PageFlipException {
+        startDynamicResolution();
+        drawFramesEvery(16000000L, 3);
+        assertEquals(1f, mPageFlip.getResolutionScale(), 0);
+
+        // a 60Hz frame is slow on a 120Hz display
+        mPageFlip.setRefreshRate(120);
+        drawFramesEvery(16000000L, 3);
+        assertTrue(mPageFlip.getResolutionScale() < 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refreshRateMustBePositive() {
+        mPageFlip.setRefreshRate(0);
+    }
+
+    /**
+     * Start flip with dynamic resolution driven by virtual clock
+     */
+    private void startDynamicResolution() throws PageFlipException {
+        mNanos = 1000000000L;
+        mPageFlip.enableDynamicResolution(true, 0.5f)
+                 .setAnimationClock(new AnimationClock() {
+                     @Override
+                     public long nanoTime() {
+                         return mNanos;
+                     }
+                 });
+        startFlip();
+    }
+
+    /**
+     * Draw flip frames with given interval of virtual clock
+     *
+     * @param interval interval in nanoseconds
+     * @param count count of frames
+     */
+    private void drawFramesEvery(long interval, int count) {
+        for (int i = 0; i < count; ++i) {
+            mNanos += interval;
+            drawNextFrame(i);
+        }
+    }
+
+    @Test
+    public void warmUpDrawsWithStatesOfFlipFrame() throws PageFlipException {
+        assertWarmUpMatchesFlipFrame();
+    }
+
+    @Test
+    public void warmUpDrawsWithStatesOfEdgeAntialiasing()
+            throws PageFlipException {
+        mPageFlip.enableEdgeAntialiasing(true);
+        assertWarmUpMatchesFlipFrame();
+    }
+
+    @Test
+    public void warmUpDrawsWithStatesOfStencilRejection()
+            throws PageFlipException {
+        mPageFlip.enableDepthTest(false).enableStencilRejection(true);
+        assertWarmUpMatchesFlipFrame();
+        assertTrue(mGL.mHasStencilStorage);
+    }
+
+    /**
+     * Warm up before the first flip frame and check every program and state
+     * of the flip frame has been drawn with in a 1x1 viewport
+     */
+    private void assertWarmUpMatchesFlipFrame() throws PageFlipException {
+        mPageFlip.onSurfaceCreated();
+        mPageFlip.onSurfaceChanged(WIDTH, HEIGHT);
+        mPageFlip.onFingerDown(WIDTH - 10, HEIGHT - 10);
+        assertTrue(mPageFlip.onFingerMove(WIDTH * 0.7f, HEIGHT * 0.9f));
+
+        mGL.mDrawStates.clear();
+        mGL.mDrawViewports.clear();
+        mPageFlip.warmUp();
+        final Set<String> warmUpStates = new HashSet<>(mGL.mDrawStates);
+        assertEquals("[1x1]", mGL.mDrawViewports.toString());
+
+        mGL.mDrawStates.clear();
+        mPageFlip.drawFlipFrame();
+        assertTrue(warmUpStates + " " + mGL.mDrawStates,
+                   warmUpStates.containsAll(mGL.mDrawStates));
+    }
+
+    @Test
+    public void programsAreUsedOnceInPageFrame() throws PageFlipException {
+        mPageFlip.onSurfaceCreated();
+        mPageFlip.onSurfaceChanged(WIDTH, HEIGHT);
+        mPageFlip.drawPageFrame();
+        mGL.reset();
+        mPageFlip.drawPageFrame();
+        assertTrue(mGL.getCallCount("glUseProgram") <= 1);
+    }
+
+    /**
+     * Recording backend which tracks names of programs, buffers, frame
+     * buffers, render buffers, textures and vertex arrays which aren't
+     * deleted
+     */
+    private final static class NameTrackingGLBackend
+            extends RecordingGLBackend {
+
+        final Set<String> mNames = new HashSet<>();
+
+        // program and enabled states of every drawing, viewport sizes of
+        // drawings
+        final Set<String> mDrawStates = new HashSet<>();
+        final Set<String> mDrawViewports = new HashSet<>();
+        boolean mHasStencilStorage;
+
+        NameTrackingGLBackend() {
+            super(false);
+        }
+
+        private void recordDrawState() {
+            mDrawStates.add(getCurrentProgram() +
+                            (isEnabled(GL_BLEND) ? " blend" : "") +
+                            (isEnabled(GL_STENCIL_TEST) ? " stencil" : "") +
+                            (isEnabled(GL_DEPTH_TEST) ? " depth" : ""));
+            final int[] viewport = new int[4];
+            glGetIntegerv(GL_VIEWPORT, viewport, 0);
+            mDrawViewports.add(viewport[2] + "x" + viewport[3]);
+        }
+
+        @Override
+        public void glDrawArrays(int mode, int first, int count) {
+            super.glDrawArrays(mode, first, count);
+            recordDrawState();
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type,
+                                   Buffer indices) {
+            super.glDrawElements(mode, count, type, indices);
+            recordDrawState();
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type,
+                                   int offset) {
+            super.glDrawElements(mode, count, type, offset);
+            recordDrawState();
+        }
+
+        @Override
+        public void glRenderbufferStorage(int target, int internalFormat,
+                                          int width, int height) {
+            super.glRenderbufferStorage(target, internalFormat, width,
+                                        height);
+            mHasStencilStorage |= internalFormat == GL_STENCIL_INDEX8;
+        }
+
+        private void gen(String type, int n, int[] names, int offset) {
+            for (int i = offset; i < offset + n; ++i) {
+                mNames.add(type + names[i]);
+            }
+        }
+
+        private void delete(String type, int n, int[] names, int offset) {
+            for (int i = offset; i < offset + n; ++i) {
+                mNames.remove(type + names[i]);
+            }
+        }
+
+        @Override
+        public int glCreateProgram() {
+            final int program = super.glCreateProgram();
+            mNames.add("program" + program);
+            return program;
+        }
+
+        @Override
+        public void glDeleteProgram(int program) {
+            super.glDeleteProgram(program);
+            mNames.remove("program" + program);
+        }
+
+        @Override
+        public void glGenBuffers(int n, int[] buffers, int offset) {
+            super.glGenBuffers(n, buffers, offset);
+            gen("buffer", n, buffers, offset);
+        }
+
+        @Override
+        public void glDeleteBuffers(int n, int[] buffers, int offset) {
+            super.glDeleteBuffers(n, buffers, offset);
+            delete("buffer", n, buffers, offset);
+        }
+
+        @Override
+        public void glGenFramebuffers(int n, int[] framebuffers,
+                                      int offset) {
+            super.glGenFramebuffers(n, framebuffers, offset);
+            gen("framebuffer", n, framebuffers, offset);
+        }
+
+        @Override
+        public void glDeleteFramebuffers(int n, int[] framebuffers,
+                                         int offset) {
+            super.glDeleteFramebuffers(n, framebuffers, offset);
+            delete("framebuffer", n, framebuffers, offset);
+        }
+
+        @Override
+        public void glGenRenderbuffers(int n, int[] renderbuffers,
+                                       int offset) {
+            super.glGenRenderbuffers(n, renderbuffers, offset);
+            gen("renderbuffer", n, renderbuffers, offset);
+        }
+
+        @Override
+        public void glDeleteRenderbuffers(int n, int[] renderbuffers,
+                                          int offset) {
+            super.glDeleteRenderbuffers(n, renderbuffers, offset);
+            delete("renderbuffer", n, renderbuffers, offset);
+        }
+
+        @Override
+        public void glGenTextures(int n, int[] textures, int offset) {
+            super.glGenTextures(n, textures, offset);
+            gen("texture", n, textures, offset);
+        }
+
+        @Override
+        public void glDeleteTextures(int n, int[] textures, int offset) {
+            super.glDeleteTextures(n, textures, offset);
+            delete("texture", n, textures, offset);
+        }
+
+        @Override
+        public void glGenVertexArrays(int n, int[] arrays, int offset) {
+            super.glGenVertexArrays(n, arrays, offset);
+            gen("vertex array", n, arrays, offset);
+        }
+
+        @Override
+        public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+            super.glDeleteVertexArrays(n, arrays, offset);
+            delete("vertex array", n, arrays, offset);
+        }
+    }
+}
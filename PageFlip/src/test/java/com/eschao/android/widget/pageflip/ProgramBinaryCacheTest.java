@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static android.opengl.GLES20.GL_LINK_STATUS;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES30.GL_PROGRAM_BINARY_LENGTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of program binary cache keying
+ *
+ * @author eschao
+ */
+
+public class ProgramBinaryCacheTest {
+
+    private final static String VERTEX = "void main() { gl_Position = a; }";
+    private final static String FRAGMENT = "void main() { gl_FragColor = c; }";
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("binary").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void binaryIsLoadedWithSameDriverAndSources() {
+        BinaryGLBackend gl = new BinaryGLBackend("3.0 V1");
+        new ProgramBinaryCache(gl, mDir).save(1, VERTEX, FRAGMENT);
+
+        assertTrue(new ProgramBinaryCache(gl, mDir).load(2, VERTEX, FRAGMENT));
+        assertEquals(1, gl.getCallCount("glProgramBinary"));
+    }
+
+    @Test
+    public void binaryOfOtherDriverVersionIsNotLoaded() {
+        BinaryGLBackend old = new BinaryGLBackend("3.0 V1");
+        new ProgramBinaryCache(old, mDir).save(1, VERTEX, FRAGMENT);
+
+        BinaryGLBackend updated = new BinaryGLBackend("3.0 V2");
+        assertFalse(new ProgramBinaryCache(updated, mDir)
+                        .load(2, VERTEX, FRAGMENT));
+        assertEquals(0, updated.getCallCount("glProgramBinary"));
+    }
+
+    @Test
+    public void binaryOfOtherSourcesIsNotLoaded() {
+        BinaryGLBackend gl = new BinaryGLBackend("3.0 V1");
+        ProgramBinaryCache cache = new ProgramBinaryCache(gl, mDir);
+        cache.save(1, VERTEX, FRAGMENT);
+
+        assertFalse(cache.load(2, VERTEX, FRAGMENT + " "));
+        assertFalse(cache.load(2, FRAGMENT, VERTEX));
+        assertEquals(0, gl.getCallCount("glProgramBinary"));
+    }
+
+    @Test
+    public void sourceBoundaryIsPartOfKey() {
+        BinaryGLBackend gl = new BinaryGLBackend("3.0 V1");
+        ProgramBinaryCache cache = new ProgramBinaryCache(gl, mDir);
+        cache.save(1, "ab", "c");
+
+        assertFalse(cache.load(2, "a", "bc"));
+        assertTrue(cache.load(2, "ab", "c"));
+    }
+
+    @Test
+    public void rejectedBinaryIsDeleted() {
+        BinaryGLBackend gl = new BinaryGLBackend("3.0 V1");
+        ProgramBinaryCache cache = new ProgramBinaryCache(gl, mDir);
+        cache.save(1, VERTEX, FRAGMENT);
+        assertEquals(1, mDir.listFiles().length);
+
+        gl.mLinkStatus = 0;
+        assertFalse(cache.load(2, VERTEX, FRAGMENT));
+        assertEquals(0, mDir.listFiles().length);
+    }
+
+    /**
+     * Recording backend which returns a fake program binary and reports
+     * the given driver version
+     */
+    private final static class BinaryGLBackend extends RecordingGLBackend {
+
+        private final String mVersion;
+        private int mLinkStatus;
+
+        BinaryGLBackend(String version) {
+            super(false);
+            setGLES30(true);
+            mVersion = version;
+            mLinkStatus = 1;
+        }
+
+        @Override
+        public String glGetString(int name) {
+            return name == GL_VERSION ? mVersion : super.glGetString(name);
+        }
+
+        @Override
+        public void glGetProgramiv(int program, int pName, int[] params,
+                                   int offset) {
+            super.glGetProgramiv(program, pName, params, offset);
+            if (pName == GL_PROGRAM_BINARY_LENGTH) {
+                params[offset] = 4;
+            }
+            else if (pName == GL_LINK_STATUS) {
+                params[offset] = mLinkStatus;
+            }
+        }
+
+        @Override
+        public void glGetProgramBinary(int program, int bufSize,
+                                       int[] length, int lengthOffset,
+                                       int[] binaryFormat,
+                                       int binaryFormatOffset,
+                                       Buffer binary) {
+            super.glGetProgramBinary(program, bufSize, length, lengthOffset,
+                                     binaryFormat, binaryFormatOffset,
+                                     binary);
+            ((ByteBuffer)binary).putInt(0, program);
+            length[lengthOffset] = 4;
+            binaryFormat[binaryFormatOffset] = 1;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests of reference counted programs in shared GL resources
+ *
+ * @author eschao
+ */
+
+public class SharedGLResourcesTest {
+
+    private RecordingGLBackend mGL;
+    private SharedGLResources mResources;
+
+    @Before
+    public void setUp() {
+        mGL = new RecordingGLBackend(false);
+        mResources = new SharedGLResources();
+    }
+
+    @Test
+    public void acquiredProgramIsShared() throws PageFlipException {
+        VertexProgram program = newProgram();
+        mResources.putProgram(program);
+
+        assertSame(program, mResources.acquireProgram(program.getKey()));
+        assertEquals(1, mResources.getProgramCount());
+        assertNull(mResources.acquireProgram("unknown"));
+    }
+
+    @Test
+    public void programIsDeletedByLastRelease() throws PageFlipException {
+        VertexProgram program = newProgram();
+        mResources.putProgram(program);
+        mResources.acquireProgram(program.getKey());
+
+        mResources.releaseProgram(program, true);
+        assertEquals(0, mGL.getCallCount("glDeleteProgram"));
+        assertEquals(1, mResources.getProgramCount());
+
+        mResources.releaseProgram(program, true);
+        assertEquals(1, mGL.getCallCount("glDeleteProgram"));
+        assertEquals(0, mResources.getProgramCount());
+    }
+
+    @Test
+    public void programOfLostContextIsNotDeleted() throws PageFlipException {
+        VertexProgram program = newProgram();
+        mResources.putProgram(program);
+
+        mResources.releaseProgram(program, false);
+        assertEquals(0, mGL.getCallCount("glDeleteProgram"));
+        assertEquals(0, mResources.getProgramCount());
+    }
+
+    @Test
+    public void invalidateForgetsPrograms() throws PageFlipException {
+        VertexProgram old = newProgram();
+        mResources.putProgram(old);
+
+        mResources.invalidate();
+        assertEquals(0, mResources.getProgramCount());
+        assertNull(mResources.acquireProgram(old.getKey()));
+
+        // releasing a forgotten program never touches its successor
+        VertexProgram program = newProgram();
+        mResources.putProgram(program);
+        mResources.releaseProgram(old, true);
+        assertEquals(0, mGL.getCallCount("glDeleteProgram"));
+        assertSame(program, mResources.acquireProgram(program.getKey()));
+    }
+
+    @Test
+    public void instancesCompileProgramsOnce() throws PageFlipException {
+        PageFlip first = newPageFlip();
+        PageFlip second = newPageFlip();
+        first.onSurfaceCreated();
+        second.onSurfaceCreated();
+        final int programs = mGL.getCallCount("glCreateProgram");
+        assertEquals(programs, mResources.getProgramCount());
+
+        // share group is recreated, names of old programs may be reused
+        mResources.invalidate();
+        mGL.reset();
+        first.onSurfaceCreated();
+        second.onSurfaceCreated();
+        assertEquals(programs, mGL.getCallCount("glCreateProgram"));
+        assertEquals(0, mGL.getCallCount("glDeleteProgram"));
+
+        first.releasePrograms();
+        assertEquals(0, mGL.getCallCount("glDeleteProgram"));
+        second.releasePrograms();
+        assertEquals(programs, mGL.getCallCount("glDeleteProgram"));
+        assertEquals(0, mResources.getProgramCount());
+    }
+
+    @Test
+    public void programsOfInvalidatedGroupAreNotDeleted()
+            throws PageFlipException {
+        PageFlip pageFlip = newPageFlip();
+        pageFlip.onSurfaceCreated();
+
+        mResources.invalidate();
+        pageFlip.releasePrograms();
+        assertEquals(0, mGL.getCallCount("glDeleteProgram"));
+    }
+
+    /**
+     * Create a compiled vertex program
+     */
+    private VertexProgram newProgram() throws PageFlipException {
+        VertexProgram program = new VertexProgram(mGL);
+        program.init(new FileShaderSource(), R.raw.vertex_shader,
+                     R.raw.fragment_shader);
+        return program;
+    }
+
+    /**
+     * Create page flip which shares resources of test
+     */
+    private PageFlip newPageFlip() {
+        PageFlip pageFlip = new PageFlip(null, mGL);
+        pageFlip.setShaderSource(new FileShaderSource())
+                .setSharedResources(mResources);
+        return pageFlip;
+    }
+}
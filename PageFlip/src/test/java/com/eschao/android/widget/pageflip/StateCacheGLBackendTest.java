@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_BLEND;
+import static android.opengl.GLES20.GL_ONE_MINUS_SRC_ALPHA;
+import static android.opengl.GLES20.GL_SRC_ALPHA;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of StateCacheGLBackend over RecordingGLBackend
+ *
+ * @author eschao
+ */
+
+public class StateCacheGLBackendTest {
+
+    private RecordingGLBackend mRecorder;
+    private StateCacheGLBackend mGL;
+
+    @Before
+    public void setUp() {
+        mRecorder = new RecordingGLBackend(false);
+        mGL = new StateCacheGLBackend(mRecorder);
+    }
+
+    @Test
+    public void redundantStateCallsAreDropped() {
+        for (int i = 0; i < 3; ++i) {
+            mGL.glUseProgram(1);
+            mGL.glActiveTexture(GL_TEXTURE0 + 1);
+            mGL.glBindTexture(GL_TEXTURE_2D, 2);
+            mGL.glBindBuffer(GL_ARRAY_BUFFER, 3);
+            mGL.glEnable(GL_BLEND);
+            mGL.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            mGL.glEnableVertexAttribArray(0);
+            mGL.glViewport(0, 0, 720, 1280);
+        }
+
+        assertEquals(1, mRecorder.getCallCount("glUseProgram"));
+        assertEquals(1, mRecorder.getCallCount("glActiveTexture"));
+        assertEquals(1, mRecorder.getCallCount("glBindTexture"));
+        assertEquals(1, mRecorder.getCallCount("glBindBuffer"));
+        assertEquals(1, mRecorder.getCallCount("glEnable"));
+        assertEquals(1, mRecorder.getCallCount("glBlendFunc"));
+        assertEquals(1, mRecorder.getCallCount("glEnableVertexAttribArray"));
+        assertEquals(1, mRecorder.getCallCount("glViewport"));
+        assertEquals(0, mRecorder.getRedundantStateChangeCount());
+    }
+
+    @Test
+    public void stateChangesAreForwarded() {
+        mGL.glUseProgram(1);
+        mGL.glUseProgram(2);
+        mGL.glUseProgram(1);
+        mGL.glEnable(GL_BLEND);
+        mGL.glDisable(GL_BLEND);
+        mGL.glEnableVertexAttribArray(1);
+        mGL.glDisableVertexAttribArray(1);
+
+        assertEquals(3, mRecorder.getCallCount("glUseProgram"));
+        assertEquals(1, mRecorder.getCurrentProgram());
+        assertFalse(mRecorder.isEnabled(GL_BLEND));
+        assertEquals(1, mRecorder.getCallCount("glDisableVertexAttribArray"));
+    }
+
+    @Test
+    public void textureBindingIsTrackedPerUnit() {
+        mGL.glActiveTexture(GL_TEXTURE0);
+        mGL.glBindTexture(GL_TEXTURE_2D, 2);
+        mGL.glActiveTexture(GL_TEXTURE0 + 1);
+        mGL.glBindTexture(GL_TEXTURE_2D, 2);
+        mGL.glActiveTexture(GL_TEXTURE0);
+        mGL.glBindTexture(GL_TEXTURE_2D, 2);
+
+        assertEquals(2, mRecorder.getCallCount("glBindTexture"));
+        assertEquals(2, mRecorder.getBoundTexture(GL_TEXTURE0 + 1));
+    }
+
+    @Test
+    public void negativeAttribIndexIsIgnored() {
+        mGL.glEnableVertexAttribArray(-1);
+        mGL.glDisableVertexAttribArray(-1);
+
+        assertEquals(0, mRecorder.getCallCount("glEnableVertexAttribArray"));
+        assertEquals(0, mRecorder.getCallCount("glDisableVertexAttribArray"));
+    }
+
+    @Test
+    public void invalidateForwardsNextCalls() {
+        mGL.glUseProgram(1);
+        mGL.glEnable(GL_BLEND);
+        mGL.invalidate();
+        mGL.glUseProgram(1);
+        mGL.glEnable(GL_BLEND);
+
+        assertEquals(2, mRecorder.getCallCount("glUseProgram"));
+        assertEquals(2, mRecorder.getCallCount("glEnable"));
+    }
+
+    @Test
+    public void disabledCacheForwardsEveryCall() {
+        mGL.setEnabled(false);
+        mGL.glUseProgram(1);
+        mGL.glUseProgram(1);
+
+        assertEquals(2, mRecorder.getCallCount("glUseProgram"));
+        assertTrue(mRecorder.getRedundantStateChangeCount() > 0);
+    }
+
+    @Test
+    public void deletedProgramIsNotCachedAsCurrent() {
+        mGL.glUseProgram(1);
+        mGL.glDeleteProgram(1);
+        mGL.glUseProgram(1);
+
+        assertEquals(2, mRecorder.getCallCount("glUseProgram"));
+    }
+}
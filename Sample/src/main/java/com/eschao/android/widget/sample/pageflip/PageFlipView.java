@@ -19,18 +19,22 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
-import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.util.Log;
 
+import com.eschao.android.widget.pageflip.OnWarmUpListener;
 import com.eschao.android.widget.pageflip.PageFlip;
 import com.eschao.android.widget.pageflip.PageFlipException;
+import com.eschao.android.widget.pageflip.VsyncDriver;
 
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.opengles.GL10;
 
 /**
@@ -45,7 +49,7 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
 
     int mPageNo;
     int mDuration;
-    Handler mHandler;
+    VsyncDriver mVsyncDriver;
     PageFlip mPageFlip;
     PageRender mPageRender;
     ReentrantLock mDrawLock;
@@ -60,8 +64,8 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
         init(context);
     }
     private void init(Context context) {
-        // create handler to tackle message
-        newHandler();
+        // create vsync driver to advance animation
+        newVsyncDriver();
 
         // load preferences
         SharedPreferences pref = PreferenceManager
@@ -76,14 +80,26 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                 .setShadowWidthOfFoldEdges(5, 60, 0.3f)
                 .setShadowWidthOfFoldBase(5, 80, 0.4f)
                 .setPixelsOfMesh(pixelsOfMesh)
+                .enableGLES3(true)
+                .enableProgramBinaryCache(true)
+                .enableDepthTest(false)
+                .enableEdgeAntialiasing(true)
+                .setOnWarmUpListener(new OnWarmUpListener() {
+                    @Override
+                    public void onWarmUpFinished(long nanos) {
+                        Log.d(TAG, "Shader warm-up takes " +
+                                   nanos / 1000000 + "ms");
+                    }
+                })
                 .enableAutoPage(isAuto);
-        setEGLContextClientVersion(2);
+        // GLES 3.0 context is only created on a config which supports it
+        setEGLConfigChooser(new ConfigChooser());
+        setEGLContextFactory(new ContextFactory());
 
         // init others
         mPageNo = 1;
         mDrawLock = new ReentrantLock();
-        mPageRender = new SinglePageRender(context, mPageFlip,
-                mHandler, mPageNo);
+        mPageRender = new SinglePageRender(context, mPageFlip, mPageNo);
         // configure render
         setRenderer(this);
         setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
@@ -112,7 +128,6 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                     mPageRender instanceof SinglePageRender) {
                     mPageRender = new DoublePagesRender(getContext(),
                                                         mPageFlip,
-                                                        mHandler,
                                                         mPageNo);
                     mPageRender.onSurfaceChanged(mPageFlip.getSurfaceWidth(),
                                                  mPageFlip.getSurfaceHeight());
@@ -121,7 +136,6 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                          mPageRender instanceof DoublePagesRender) {
                     mPageRender = new SinglePageRender(getContext(),
                                                        mPageFlip,
-                                                       mHandler,
                                                        mPageNo);
                     mPageRender.onSurfaceChanged(mPageFlip.getSurfaceWidth(),
                                                  mPageFlip.getSurfaceHeight());
@@ -219,6 +233,7 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                 if (mPageRender != null &&
                     mPageRender.onFingerUp(x, y)) {
                     requestRender();
+                    mVsyncDriver.requestFrame();
                 }
             }
             finally {
@@ -239,6 +254,25 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
             if (mPageRender != null) {
                 mPageRender.onDrawFrame();
             }
+
+            // warm up shaders in idle time after the first frame is shown,
+            // GL thread is idle until the next render request
+            if (mPageFlip.isWarmUpNeeded()) {
+                queueEvent(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            mDrawLock.lock();
+                            if (mPageFlip.isWarmUpNeeded()) {
+                                mPageFlip.warmUp();
+                            }
+                        }
+                        finally {
+                            mDrawLock.unlock();
+                        }
+                    }
+                });
+            }
         }
         finally {
             mDrawLock.unlock();
@@ -264,7 +298,6 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                     mPageRender.release();
                     mPageRender = new DoublePagesRender(getContext(),
                                                         mPageFlip,
-                                                        mHandler,
                                                         pageNo);
                 }
             }
@@ -273,7 +306,6 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                 mPageRender.release();
                 mPageRender = new SinglePageRender(getContext(),
                                                    mPageFlip,
-                                                   mHandler,
                                                    pageNo);
             }
 
@@ -302,33 +334,159 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
     }
 
     /**
-     * Create message handler to cope with messages from page render,
-     * Page render will send message in GL thread, but we want to handle those
-     * messages in main thread that why we need handler here
+     * Create vsync driver to advance animation in main thread, every vsync
+     * frame calculates the next animation frame and requests render in the
+     * same callback, no message is sent back from GL thread
      */
-    private void newHandler() {
-        mHandler = new Handler() {
-            public void handleMessage(Message msg) {
-                switch (msg.what) {
-                    case PageRender.MSG_ENDED_DRAWING_FRAME:
-                        try {
-                            mDrawLock.lock();
-                            // notify page render to handle ended drawing
-                            // message
-                            if (mPageRender != null &&
-                                mPageRender.onEndedDrawing(msg.arg1)) {
-                                requestRender();
-                            }
-                        }
-                        finally {
-                            mDrawLock.unlock();
-                        }
-                        break;
+    private void newVsyncDriver() {
+        mVsyncDriver = new VsyncDriver(Looper.getMainLooper(),
+                                       new VsyncDriver.Callback() {
+            @Override
+            public boolean onFrame(long frameTimeNanos) {
+                try {
+                    mDrawLock.lock();
+                    if (mPageRender == null ||
+                        !mPageRender.isAnimatingFrame()) {
+                        return false;
+                    }
 
-                    default:
-                        break;
+                    // notify page render to calculate the next frame
+                    if (mPageRender.onAnimationFrame(frameTimeNanos)) {
+                        requestRender();
+                    }
+                    return mPageRender.isAnimatingFrame();
                 }
+                finally {
+                    mDrawLock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * EGL config chooser which picks a RGB888 config renderable by GLES 3.0
+     * and falls back to a GLES 2.0 config only if there is no such config
+     */
+    private static class ConfigChooser implements EGLConfigChooser {
+
+        private final static int EGL_OPENGL_ES2_BIT = 0x0004;
+        private final static int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+
+        public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+            EGLConfig config = chooseConfig(egl, display,
+                                            EGL_OPENGL_ES3_BIT_KHR);
+            if (config == null) {
+                Log.d(TAG, "No GLES 3.0 config, fall back to 2.0");
+                config = chooseConfig(egl, display, EGL_OPENGL_ES2_BIT);
             }
-        };
+
+            if (config == null) {
+                throw new IllegalArgumentException("No config chosen");
+            }
+            return config;
+        }
+
+        /**
+         * Is config renderable by GLES 3.0?
+         *
+         * @param egl EGL
+         * @param display EGL display
+         * @param config EGL config
+         * @return true if GLES 3.0 context can be created on config
+         */
+        static boolean isGLES3(EGL10 egl, EGLDisplay display,
+                               EGLConfig config) {
+            return (getAttrib(egl, display, config,
+                              EGL10.EGL_RENDERABLE_TYPE) &
+                    EGL_OPENGL_ES3_BIT_KHR) != 0;
+        }
+
+        private EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
+                                       int renderableType) {
+            // pages are drawn in painter's order, depth buffer isn't needed
+            int[] attribs = {EGL10.EGL_RED_SIZE, 8,
+                             EGL10.EGL_GREEN_SIZE, 8,
+                             EGL10.EGL_BLUE_SIZE, 8,
+                             EGL10.EGL_ALPHA_SIZE, 0,
+                             EGL10.EGL_DEPTH_SIZE, 0,
+                             EGL10.EGL_STENCIL_SIZE, 0,
+                             EGL10.EGL_RENDERABLE_TYPE, renderableType,
+                             EGL10.EGL_NONE};
+            int[] count = new int[1];
+            if (!egl.eglChooseConfig(display, attribs, null, 0, count) ||
+                count[0] <= 0) {
+                return null;
+            }
+
+            EGLConfig[] configs = new EGLConfig[count[0]];
+            if (!egl.eglChooseConfig(display, attribs, configs, count[0],
+                                     count)) {
+                return null;
+            }
+
+            // configs with deeper color are sorted first, pick the exact
+            // RGB888 one like the default chooser of GLSurfaceView
+            for (int i = 0; i < count[0]; ++i) {
+                EGLConfig config = configs[i];
+                if (getAttrib(egl, display, config, EGL10.EGL_RED_SIZE) == 8 &&
+                    getAttrib(egl, display, config,
+                              EGL10.EGL_GREEN_SIZE) == 8 &&
+                    getAttrib(egl, display, config,
+                              EGL10.EGL_BLUE_SIZE) == 8 &&
+                    getAttrib(egl, display, config,
+                              EGL10.EGL_ALPHA_SIZE) == 0) {
+                    return config;
+                }
+            }
+            return null;
+        }
+
+        private static int getAttrib(EGL10 egl, EGLDisplay display,
+                                     EGLConfig config, int attrib) {
+            int[] value = new int[1];
+            return egl.eglGetConfigAttrib(display, config, attrib, value) ?
+                   value[0] : 0;
+        }
+    }
+
+    /**
+     * EGL context factory which creates GLES 3.0 context if the chosen config
+     * supports it and falls back to GLES 2.0 context, PageFlip will use
+     * GLES 3.0 if it is available
+     */
+    private static class ContextFactory implements EGLContextFactory {
+
+        private final static int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+        public EGLContext createContext(EGL10 egl, EGLDisplay display,
+                                        EGLConfig config) {
+            EGLContext context = EGL10.EGL_NO_CONTEXT;
+            if (ConfigChooser.isGLES3(egl, display, config)) {
+                context = createContext(egl, display, config, 3);
+            }
+
+            if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+                Log.d(TAG, "Can't create GLES 3.0 context, fall back to 2.0");
+                context = createContext(egl, display, config, 2);
+            }
+
+            return context;
+        }
+
+        public void destroyContext(EGL10 egl, EGLDisplay display,
+                                   EGLContext context) {
+            if (!egl.eglDestroyContext(display, context)) {
+                Log.e(TAG, "Failed to destroy context, EGL error: " +
+                           egl.eglGetError());
+            }
+        }
+
+        private EGLContext createContext(EGL10 egl, EGLDisplay display,
+                                         EGLConfig config, int version) {
+            int[] attribs = {EGL_CONTEXT_CLIENT_VERSION, version,
+                             EGL10.EGL_NONE};
+            return egl.eglCreateContext(display, config,
+                                        EGL10.EGL_NO_CONTEXT, attribs);
+        }
     }
 }
@@ -18,7 +18,6 @@ package com.eschao.android.widget.sample.pageflip;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.os.Handler;
 
 import com.eschao.android.widget.pageflip.OnPageFlipListener;
 import com.eschao.android.widget.pageflip.PageFlip;
@@ -31,7 +30,6 @@ import com.eschao.android.widget.pageflip.PageFlip;
 
 public abstract class PageRender implements OnPageFlipListener {
 
-    public final static int MSG_ENDED_DRAWING_FRAME = 1;
     private final static String TAG = "PageRender";
 
     final static int DRAW_MOVING_FRAME = 0;
@@ -46,18 +44,15 @@ public abstract class PageRender implements OnPageFlipListener {
     Canvas mCanvas;
     Bitmap mBackgroundBitmap;
     Context mContext;
-    Handler mHandler;
     PageFlip mPageFlip;
 
-    public PageRender(Context context, PageFlip pageFlip,
-                      Handler handler, int pageNo) {
+    public PageRender(Context context, PageFlip pageFlip, int pageNo) {
         mContext = context;
         mPageFlip = pageFlip;
         mPageNo = pageNo;
         mDrawCommand = DRAW_FULL_PAGE;
         mCanvas = new Canvas();
         mPageFlip.setListener(this);
-        mHandler = handler;
     }
 
     /**
@@ -133,10 +128,19 @@ public abstract class PageRender implements OnPageFlipListener {
     abstract void onSurfaceChanged(int width, int height);
 
     /**
-     * Handle drawing ended event
+     * Is animating frame being drawn?
      *
-     * @param what draw command
+     * @return true if animating frame is drawn
+     */
+    public boolean isAnimatingFrame() {
+        return mDrawCommand == DRAW_ANIMATING_FRAME;
+    }
+
+    /**
+     * Handle vsync frame of animation, advance animation to the next frame
+     *
+     * @param frameTimeNanos vsync frame time in nanoseconds
      * @return true if render is needed
      */
-    abstract boolean onEndedDrawing(int what);
+    abstract boolean onAnimationFrame(long frameTimeNanos);
 }
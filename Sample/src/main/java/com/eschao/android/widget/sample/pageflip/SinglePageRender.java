@@ -20,8 +20,6 @@ import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.os.Handler;
-import android.os.Message;
 import android.widget.Toast;
 
 import com.eschao.android.widget.pageflip.Page;
@@ -47,11 +45,10 @@ public class SinglePageRender extends PageRender {
 
     /**
      * Constructor
-     * @see {@link #PageRender(Context, PageFlip, Handler, int)}
+     * @see {@link #PageRender(Context, PageFlip, int)}
      */
-    public SinglePageRender(Context context, PageFlip pageFlip,
-                            Handler handler, int pageNo) {
-        super(context, pageFlip, handler, pageNo);
+    public SinglePageRender(Context context, PageFlip pageFlip, int pageNo) {
+        super(context, pageFlip, pageNo);
     }
 
     /**
@@ -92,15 +89,6 @@ public class SinglePageRender extends PageRender {
 
             mPageFlip.drawPageFrame();
         }
-
-        // 3. send message to main thread to notify drawing is ended so that
-        // we can continue to calculate next animation frame if need.
-        // Remember: the drawing operation is always in GL thread instead of
-        // main thread
-        Message msg = Message.obtain();
-        msg.what = MSG_ENDED_DRAWING_FRAME;
-        msg.arg1 = mDrawCommand;
-        mHandler.sendMessage(msg);
     }
 
     /**
@@ -129,17 +117,17 @@ public class SinglePageRender extends PageRender {
     }
 
     /**
-     * Handle ended drawing event
-     * In here, we only tackle the animation drawing event, If we need to
+     * Handle vsync frame of animation
+     * In here, we advance animation to the next frame. If we need to
      * continue requesting render, please return true. Remember this function
      * will be called in main thread
      *
-     * @param what event type
+     * @param frameTimeNanos vsync frame time in nanoseconds
      * @return ture if need render again
      */
-    public boolean onEndedDrawing(int what) {
-        if (what == DRAW_ANIMATING_FRAME) {
-            boolean isAnimating = mPageFlip.animating();
+    public boolean onAnimationFrame(long frameTimeNanos) {
+        if (mDrawCommand == DRAW_ANIMATING_FRAME) {
+            boolean isAnimating = mPageFlip.animating(frameTimeNanos);
             // continue animating
             if (isAnimating) {
                 mDrawCommand = DRAW_ANIMATING_FRAME;